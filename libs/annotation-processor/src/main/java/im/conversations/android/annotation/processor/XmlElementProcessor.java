@@ -82,6 +82,7 @@ public class XmlElementProcessor extends AbstractProcessor {
             }
             out.println("EXTENSION_CLASS_MAP = builder.build();");
             out.println("}");
+            writeFactory(out, maps);
             out.println(" private Extensions() {}");
             out.println("}");
             // writing generated file to out …
@@ -91,6 +92,34 @@ public class XmlElementProcessor extends AbstractProcessor {
         return true;
     }
 
+    // emits a constructor call per element in a switch on namespace and name; the element reader
+    // calls this for every start tag so it must neither allocate a lookup key nor use reflection
+    private static void writeFactory(final PrintWriter out, final Map<Id, String> maps) {
+        out.println("public static Extension create(final String name, final String namespace) {");
+        out.println("switch (namespace) {");
+        String namespace = null;
+        for (final Map.Entry<Id, String> entry : maps.entrySet()) {
+            final Id id = entry.getKey();
+            if (!id.namespace.equals(namespace)) {
+                if (namespace != null) {
+                    out.println("default: return null;");
+                    out.println("}");
+                }
+                namespace = id.namespace;
+                out.format("case \"%s\":", namespace);
+                out.print("\n");
+                out.println("switch (name) {");
+            }
+            out.format("case \"%s\": return new %s();", id.name, entry.getValue());
+            out.print("\n");
+        }
+        out.println("default: return null;");
+        out.println("}");
+        out.println("default: return null;");
+        out.println("}");
+        out.println("}");
+    }
+
     private static Id of(final TypeElement typeElement) {
         final XmlElement xmlElement = typeElement.getAnnotation(XmlElement.class);
         final PackageElement packageElement = getPackageElement(typeElement);
@@ -11,6 +11,7 @@ import androidx.collection.LruCache;
 import com.google.common.base.Strings;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -21,10 +22,14 @@ import java.time.Duration;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.minidns.AbstractDnsClient;
 import org.minidns.dnsmessage.DnsMessage;
 import org.minidns.dnsmessage.Question;
@@ -37,11 +42,20 @@ public class AndroidDNSClient extends AbstractDnsClient {
 
     private static final long DNS_MAX_TTL = 86_400L;
 
+    // RFC 8767 suggests serving stale answers for one to three days after they expired
+    private static final long STALE_ANSWER_WINDOW = TimeUnit.DAYS.toMillis(1);
+
     private static final ScheduledExecutorService SCHEDULED_EXECUTOR_SERVICE =
             Executors.newSingleThreadScheduledExecutor();
 
     private static final LruCache<QuestionServerTuple, DnsMessage> QUERY_CACHE =
             new LruCache<>(1024);
+    private static final Set<QuestionServerTuple> REFRESHING = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_STALE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+
     private final Context context;
     private final NetworkDataSource networkDataSource = new NetworkDataSource();
     private boolean askForDnssec = false;
@@ -110,9 +124,13 @@ public class AndroidDNSClient extends AbstractDnsClient {
             return Futures.immediateFailedFuture(new IllegalStateException("DNS Server was null"));
         }
         final QuestionServerTuple cacheKey = new QuestionServerTuple(dnsServer, question);
-        final DnsMessage cachedResponse = queryCache(cacheKey);
+        final CachedResponse cachedResponse = queryCache(cacheKey);
         if (cachedResponse != null) {
-            return Futures.immediateFuture(new CachedDnsQueryResult(question, cachedResponse));
+            if (cachedResponse.stale) {
+                refresh(cacheKey, question, dnsServer);
+            }
+            return Futures.immediateFuture(
+                    new CachedDnsQueryResult(question, cachedResponse.response));
         }
         final var future = this.networkDataSource.query(question, dnsServer);
         final var transformedFuture =
@@ -219,25 +237,105 @@ public class AndroidDNSClient extends AbstractDnsClient {
         return dnsServerBuilder.build();
     }
 
-    private DnsMessage queryCache(final QuestionServerTuple key) {
+    /**
+     * Answers that expired less than {@link #STALE_ANSWER_WINDOW} ago are still returned (marked
+     * as stale) so the caller can go ahead with them while the answer is refreshed in the
+     * background. Only positive answers are served stale.
+     */
+    private CachedResponse queryCache(final QuestionServerTuple key) {
         final DnsMessage cachedResponse;
+        final long expiresIn;
         synchronized (QUERY_CACHE) {
             cachedResponse = QUERY_CACHE.get(key);
             if (cachedResponse == null) {
+                CACHE_MISSES.incrementAndGet();
                 return null;
             }
-            final long expiresIn = expiresIn(cachedResponse);
-            if (expiresIn < 0) {
+            expiresIn = expiresIn(cachedResponse);
+            if (expiresIn < 0
+                    && (-expiresIn > STALE_ANSWER_WINDOW || !isPositive(cachedResponse))) {
                 QUERY_CACHE.remove(key);
+                CACHE_MISSES.incrementAndGet();
                 return null;
             }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                Log.d(
-                        Config.LOGTAG,
-                        "DNS query came from cache. expires in " + Duration.ofMillis(expiresIn));
+        }
+        final boolean stale = expiresIn < 0;
+        (stale ? CACHE_STALE_HITS : CACHE_HITS).incrementAndGet();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Log.d(
+                    Config.LOGTAG,
+                    String.format(
+                            "DNS query came from cache. %s %s (%d hits, %d stale, %d misses)",
+                            stale ? "expired" : "expires in",
+                            Duration.ofMillis(Math.abs(expiresIn)),
+                            CACHE_HITS.get(),
+                            CACHE_STALE_HITS.get(),
+                            CACHE_MISSES.get()));
+        }
+        return new CachedResponse(cachedResponse, stale);
+    }
+
+    private void refresh(
+            final QuestionServerTuple key, final DnsMessage question, final DNSServer dnsServer) {
+        if (!REFRESHING.add(key)) {
+            return;
+        }
+        Futures.addCallback(
+                this.networkDataSource.query(question, dnsServer),
+                new FutureCallback<>() {
+                    @Override
+                    public void onSuccess(final StandardDnsQueryResult result) {
+                        REFRESHING.remove(key);
+                        final var response = result == null ? null : result.response;
+                        if (response != null
+                                && (response.responseCode == DnsMessage.RESPONSE_CODE.NO_ERROR
+                                        || response.responseCode
+                                                == DnsMessage.RESPONSE_CODE.NX_DOMAIN)) {
+                            cacheQuery(key, response);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull final Throwable throwable) {
+                        REFRESHING.remove(key);
+                        Log.d(Config.LOGTAG, "could not refresh stale DNS answer", throwable);
+                    }
+                },
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Drops answers that are past their TTL. Fresh answers are kept; they are cached per DNS
+     * server, so they remain correct when the network changes. Stale ones are not worth serving on
+     * a new network.
+     */
+    public static void clearCache() {
+        synchronized (QUERY_CACHE) {
+            for (final Map.Entry<QuestionServerTuple, DnsMessage> entry :
+                    QUERY_CACHE.snapshot().entrySet()) {
+                if (expiresIn(entry.getValue()) < 0) {
+                    QUERY_CACHE.remove(entry.getKey());
+                }
             }
         }
-        return cachedResponse;
+    }
+
+    public static long getCacheHits() {
+        return CACHE_HITS.get();
+    }
+
+    public static long getCacheStaleHits() {
+        return CACHE_STALE_HITS.get();
+    }
+
+    public static long getCacheMisses() {
+        return CACHE_MISSES.get();
+    }
+
+    private static boolean isPositive(final DnsMessage response) {
+        return response.responseCode == DnsMessage.RESPONSE_CODE.NO_ERROR
+                && response.answerSection != null
+                && !response.answerSection.isEmpty();
     }
 
     private void cacheQuery(final QuestionServerTuple key, final DnsMessage response) {
@@ -272,6 +370,8 @@ public class AndroidDNSClient extends AbstractDnsClient {
         return expiresAt(dnsMessage) - System.currentTimeMillis();
     }
 
+    private record CachedResponse(DnsMessage response, boolean stale) {}
+
     private record QuestionServerTuple(DNSServer dnsServer, DnsMessage question) {
         private QuestionServerTuple(final DNSServer dnsServer, final DnsMessage question) {
             this.dnsServer = dnsServer;
@@ -100,6 +100,10 @@ public final class Config {
 
     public static final int REFRESH_UI_INTERVAL = 500;
 
+    // message notifications are rebuilt at most once in this many milliseconds; the first update
+    // after a quiet period is shown right away
+    public static final long NOTIFICATION_BATCH_WINDOW = 1000;
+
     public static final int MAX_DISPLAY_MESSAGE_CHARS = 4096;
     public static final int MAX_STORAGE_MESSAGE_CHARS = 2 * 1024 * 1024; // 2MB
 
@@ -110,6 +114,14 @@ public final class Config {
     // online.
     public static final long OMEMO_AUTO_EXPIRY = 42 * MILLISECONDS_IN_DAY;
 
+    // sending the same file again within this time reuses the previous upload (if the server still
+    // has it). Many servers delete uploads after a week.
+    public static final long HTTP_UPLOAD_REUSE_MAX_AGE = 3 * MILLISECONDS_IN_DAY;
+
+    // message changes kept for incremental backups; a backup chain that falls further behind
+    // starts over with a new base
+    public static final int MAX_MESSAGE_CHANGES = 100_000;
+
     public static final boolean REMOVE_BROKEN_DEVICES = false;
     public static final boolean OMEMO_PADDING = false;
     public static final boolean PUT_AUTH_TAG_INTO_KEY = true;
@@ -120,6 +132,9 @@ public final class Config {
     public static final boolean USE_JINGLE_MESSAGE_INIT = true;
 
     public static final boolean ENABLE_CAPS_CACHE = true;
+    // allows resuming TLS sessions after the process has been restarted. The session secrets are
+    // written to the cache directory unencrypted
+    public static final boolean PERSIST_TLS_SESSIONS = false;
 
     public static final boolean ENABLE_HTTP_UPLOAD = true;
     public static final boolean EXTENDED_SM_LOGGING = false; // log stanza counts
@@ -287,9 +287,14 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
                 Config.LOGTAG,
                 account.getJid().asBareJid()
                         + ": destroying old axolotl service. no longer in use");
+        axolotlStore.destroy();
         mXmppConnectionService.databaseBackend.wipeAxolotlDb(account);
     }
 
+    public void flushSessions() {
+        axolotlStore.flushSessions();
+    }
+
     public AxolotlService makeNew() {
         Log.d(Config.LOGTAG, account.getJid().asBareJid() + ": make new axolotl service");
         return new AxolotlService(this.account, this.mXmppConnectionService);
@@ -1635,6 +1640,8 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
         } else {
             success = buildHeader(axolotlMessage, (Conversation) message.getConversation());
         }
+        // the ratchet has to be on disk before the ciphertext leaves the device
+        axolotlStore.flushSessions();
         return success ? axolotlMessage : null;
     }
 
@@ -1723,6 +1730,7 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
                             descriptionTransport.description,
                             encryptedTransportInfo));
         }
+        axolotlStore.flushSessions();
         return Futures.immediateFuture(
                 new OmemoVerifiedPayload<>(
                         omemoVerification,
@@ -1770,6 +1778,7 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
                             descriptionTransport.description,
                             decryptedTransport.payload));
         }
+        axolotlStore.flushSessions();
         processPostponed();
         final ImmutableList<ListenableFuture<XmppAxolotlSession>> sessionFutures =
                 pepVerificationFutures.build();
@@ -1847,6 +1856,7 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
                     final XmppAxolotlMessage axolotlMessage =
                             new XmppAxolotlMessage(account.getJid().asBareJid(), getOwnDeviceId());
                     if (buildHeader(axolotlMessage, conversation)) {
+                        axolotlStore.flushSessions();
                         return axolotlMessage;
                     } else {
                         throw new IllegalStateException("No session to decrypt to");
@@ -1930,6 +1940,7 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
                     e);
         }
 
+        axolotlStore.flushSessions();
         if (session.isFresh() && plaintextMessage != null) {
             putFreshSession(session);
         }
@@ -2077,6 +2088,7 @@ public class AxolotlService implements OnAdvancedStreamFeaturesLoaded {
             return null;
         }
 
+        axolotlStore.flushSessions();
         if (session.isFresh() && keyTransportMessage != null) {
             putFreshSession(session);
         }
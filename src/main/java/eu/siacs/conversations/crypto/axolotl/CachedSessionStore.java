@@ -0,0 +1,207 @@
+package eu.siacs.conversations.crypto.axolotl;
+
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.persistance.DatabaseBackend;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.SessionStore;
+
+/**
+ * Keeps the serialized sessions of one account in memory and writes stored sessions behind, so
+ * that encrypting a message for several devices neither reads nor writes a row per device.
+ *
+ * <p>Sessions that have been stored but not yet written are pending; they are never evicted and
+ * are written in a single transaction by {@link #flush()}, either after a short delay or
+ * explicitly. A ratchet step is only durable after the flush, so anyone about to hand out
+ * ciphertext (or to delete the pre key a session was built from) has to flush first. Deletes are
+ * written through immediately and drop pending writes of the same session.
+ */
+public class CachedSessionStore implements SessionStore {
+
+    private static final int NUM_SESSIONS_TO_CACHE = 200;
+    private static final long WRITE_DELAY = 1000; // in milliseconds
+
+    private static final ScheduledExecutorService WRITE_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "SessionWriter"));
+
+    private final DatabaseBackend databaseBackend;
+    private final Account account;
+
+    // both guarded by lock
+    private final Object lock = new Object();
+    private final LruCache<SignalProtocolAddress, byte[]> cache =
+            new LruCache<>(NUM_SESSIONS_TO_CACHE);
+    private final Map<SignalProtocolAddress, byte[]> pending = new HashMap<>();
+    private boolean writeScheduled = false;
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    public CachedSessionStore(final DatabaseBackend databaseBackend, final Account account) {
+        this.databaseBackend = databaseBackend;
+        this.account = account;
+    }
+
+    @Override
+    public SessionRecord loadSession(final SignalProtocolAddress address) {
+        final byte[] serialized;
+        synchronized (lock) {
+            serialized = get(address);
+        }
+        if (serialized == null) {
+            return new SessionRecord();
+        }
+        try {
+            // a fresh record each time; changes only count once they are stored
+            return new SessionRecord(serialized);
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private byte[] get(final SignalProtocolAddress address) {
+        final byte[] pending = this.pending.get(address);
+        if (pending != null) {
+            return pending;
+        }
+        final byte[] cached = cache.get(address);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] serialized = databaseBackend.loadSession(account, address);
+        if (serialized != null) {
+            cache.put(address, serialized);
+        }
+        return serialized;
+    }
+
+    @Override
+    public List<Integer> getSubDeviceSessions(final String name) {
+        synchronized (lock) {
+            final List<Integer> devices =
+                    databaseBackend.getSubDeviceSessions(
+                            account, new SignalProtocolAddress(name, 0));
+            for (final SignalProtocolAddress address : pending.keySet()) {
+                if (address.getName().equals(name) && !devices.contains(address.getDeviceId())) {
+                    devices.add(address.getDeviceId());
+                }
+            }
+            return devices;
+        }
+    }
+
+    public List<String> getKnownAddresses() {
+        synchronized (lock) {
+            final List<String> addresses = databaseBackend.getKnownSignalAddresses(account);
+            for (final SignalProtocolAddress address : pending.keySet()) {
+                if (!addresses.contains(address.getName())) {
+                    addresses.add(address.getName());
+                }
+            }
+            return addresses;
+        }
+    }
+
+    @Override
+    public void storeSession(final SignalProtocolAddress address, final SessionRecord record) {
+        final byte[] serialized = record.serialize();
+        synchronized (lock) {
+            pending.put(address, serialized);
+            cache.put(address, serialized);
+            stored.incrementAndGet();
+            if (!writeScheduled) {
+                writeScheduled = true;
+                WRITE_EXECUTOR.schedule(this::flush, WRITE_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsSession(final SignalProtocolAddress address) {
+        synchronized (lock) {
+            return get(address) != null;
+        }
+    }
+
+    @Override
+    public void deleteSession(final SignalProtocolAddress address) {
+        synchronized (lock) {
+            pending.remove(address);
+            cache.remove(address);
+            databaseBackend.deleteSession(account, address);
+        }
+    }
+
+    @Override
+    public void deleteAllSessions(final String name) {
+        synchronized (lock) {
+            pending.keySet().removeIf(address -> address.getName().equals(name));
+            for (final SignalProtocolAddress address : cache.snapshot().keySet()) {
+                if (address.getName().equals(name)) {
+                    cache.remove(address);
+                }
+            }
+            databaseBackend.deleteAllSessions(account, new SignalProtocolAddress(name, 0));
+        }
+    }
+
+    /**
+     * Writes all pending sessions in one transaction. If the write fails they stay pending.
+     *
+     * @return the number of sessions written
+     */
+    public int flush() {
+        synchronized (lock) {
+            writeScheduled = false;
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            final int count = databaseBackend.storeSessions(account, pending);
+            pending.clear();
+            written.addAndGet(count);
+            return count;
+        }
+    }
+
+    /** Forgets pending and cached sessions; used when the database is wiped underneath. */
+    public void discard() {
+        synchronized (lock) {
+            pending.clear();
+            cache.evictAll();
+        }
+    }
+
+    public void destroy() {
+        synchronized (lock) {
+            flush();
+            cache.evictAll();
+        }
+        Log.d(Config.LOGTAG, AxolotlService.getLogprefix(account) + this);
+    }
+
+    public long getStored() {
+        return stored.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CachedSessionStore{stored=" + stored.get() + ", written=" + written.get() + "}";
+    }
+}
@@ -32,6 +32,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
     public static final String DEVICE_ID = "device_id";
     public static final String ID = "id";
     public static final String KEY = "key";
+    public static final String RECORD = "record";
     public static final String FINGERPRINT = "fingerprint";
     public static final String NAME = "name";
     public static final String TRUSTED = "trusted"; // no longer used
@@ -55,6 +56,8 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
 
     private final HashSet<Integer> preKeysMarkedForRemoval = new HashSet<>();
 
+    private final CachedSessionStore sessionStore;
+
     private final LruCache<String, FingerprintStatus> trustCache =
             new LruCache<String, FingerprintStatus>(NUM_TRUSTS_TO_CACHE) {
                 @Override
@@ -84,6 +87,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
     public SQLiteAxolotlStore(Account account, XmppConnectionService service) {
         this.account = account;
         this.mXmppConnectionService = service;
+        this.sessionStore = new CachedSessionStore(service.databaseBackend, account);
         this.localRegistrationId = loadRegistrationId();
         this.currentPreKeyId = loadCurrentPreKeyId();
     }
@@ -162,6 +166,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
     }
 
     public void regenerate() {
+        sessionStore.discard();
         mXmppConnectionService.databaseBackend.wipeAxolotlDb(account);
         trustCache.evictAll();
         account.setKey(JSONKEY_CURRENT_PREKEY_ID, Integer.toString(0));
@@ -303,9 +308,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
      */
     @Override
     public SessionRecord loadSession(SignalProtocolAddress address) {
-        SessionRecord session =
-                mXmppConnectionService.databaseBackend.loadSession(this.account, address);
-        return (session != null) ? session : new SessionRecord();
+        return sessionStore.loadSession(address);
     }
 
     /**
@@ -316,23 +319,24 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
      */
     @Override
     public List<Integer> getSubDeviceSessions(String name) {
-        return mXmppConnectionService.databaseBackend.getSubDeviceSessions(
-                account, new SignalProtocolAddress(name, 0));
+        return sessionStore.getSubDeviceSessions(name);
     }
 
     public List<String> getKnownAddresses() {
-        return mXmppConnectionService.databaseBackend.getKnownSignalAddresses(account);
+        return sessionStore.getKnownAddresses();
     }
 
     /**
      * Commit to storage the {@link SessionRecord} for a given recipientId + deviceId tuple.
      *
+     * <p>The record is written behind; see {@link #flushSessions()}.
+     *
      * @param address the address of the remote client.
      * @param record the current SessionRecord for the remote client.
      */
     @Override
     public void storeSession(SignalProtocolAddress address, SessionRecord record) {
-        mXmppConnectionService.databaseBackend.storeSession(account, address, record);
+        sessionStore.storeSession(address, record);
     }
 
     /**
@@ -344,7 +348,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
      */
     @Override
     public boolean containsSession(SignalProtocolAddress address) {
-        return mXmppConnectionService.databaseBackend.containsSession(account, address);
+        return sessionStore.containsSession(address);
     }
 
     /**
@@ -354,7 +358,7 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
      */
     @Override
     public void deleteSession(SignalProtocolAddress address) {
-        mXmppConnectionService.databaseBackend.deleteSession(account, address);
+        sessionStore.deleteSession(address);
     }
 
     /**
@@ -364,8 +368,19 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
      */
     @Override
     public void deleteAllSessions(String name) {
-        SignalProtocolAddress address = new SignalProtocolAddress(name, 0);
-        mXmppConnectionService.databaseBackend.deleteAllSessions(account, address);
+        sessionStore.deleteAllSessions(name);
+    }
+
+    /**
+     * Makes the sessions stored so far durable. Has to be called before ciphertext produced with
+     * them leaves the device.
+     */
+    public void flushSessions() {
+        sessionStore.flush();
+    }
+
+    public void destroy() {
+        sessionStore.destroy();
     }
 
     // --------------------------------------
@@ -434,6 +449,8 @@ public class SQLiteAxolotlStore implements SignalProtocolStore {
 
     public boolean flushPreKeys() {
         Log.d(Config.LOGTAG, "flushing pre keys");
+        // the sessions built from the pre keys have to outlive them
+        flushSessions();
         int count = 0;
         synchronized (preKeysMarkedForRemoval) {
             for (Integer preKeyId : preKeysMarkedForRemoval) {
@@ -67,6 +67,9 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     private String mLastPresence = null;
     private RtpCapability.Capability rtpCapability;
 
+    // set whenever a persisted field changes; cleared by the roster writer before it reads them
+    private volatile boolean dirty = false;
+
     public Contact(
             final String account,
             final String systemName,
@@ -212,6 +215,26 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
         }
     }
 
+    /**
+     * @return true if a persisted field changed since the last {@link #markClean()}
+     */
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    /**
+     * Called before the content values are read for writing. A change that happens while the
+     * write is in progress marks the contact dirty again and is picked up by the next write.
+     */
+    public void markClean() {
+        this.dirty = false;
+    }
+
+    /** Called when a write failed so that the next write picks the contact up again. */
+    public void markDirty() {
+        this.dirty = true;
+    }
+
     public Account getAccount() {
         return this.account;
     }
@@ -269,9 +292,11 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     public boolean setPhotoUri(String uri) {
         if (uri != null && !uri.equals(this.photoUri)) {
             this.photoUri = uri;
+            this.dirty = true;
             return true;
         } else if (this.photoUri != null && uri == null) {
             this.photoUri = null;
+            this.dirty = true;
             return true;
         } else {
             return false;
@@ -279,17 +304,20 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     }
 
     public void setServerName(String serverName) {
+        this.dirty |= !Objects.equals(this.serverName, serverName);
         this.serverName = serverName;
     }
 
     public boolean setSystemName(String systemName) {
         final String old = getDisplayName();
+        this.dirty |= !Objects.equals(this.systemName, systemName);
         this.systemName = systemName;
         return !old.equals(getDisplayName());
     }
 
     public boolean setPresenceName(String presenceName) {
         final String old = getDisplayName();
+        this.dirty |= !Objects.equals(this.presenceName, presenceName);
         this.presenceName = presenceName;
         return !old.equals(getDisplayName());
     }
@@ -299,6 +327,7 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     }
 
     public void setSystemAccount(Uri lookupUri) {
+        this.dirty |= !Objects.equals(this.systemAccount, lookupUri);
         this.systemAccount = lookupUri;
     }
 
@@ -332,6 +361,7 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
         synchronized (this.keys) {
             try {
                 this.keys.put("pgp_keyid", keyId);
+                this.dirty |= previousKeyId != keyId;
                 return previousKeyId != keyId;
             } catch (final JSONException ignored) {
             }
@@ -340,11 +370,16 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     }
 
     public void setOption(int option) {
-        this.subscription |= 1 << option;
+        setSubscription(this.subscription | 1 << option);
     }
 
     public void resetOption(int option) {
-        this.subscription &= ~(1 << option);
+        setSubscription(this.subscription & ~(1 << option));
+    }
+
+    private void setSubscription(final int subscription) {
+        this.dirty |= this.subscription != subscription;
+        this.subscription = subscription;
     }
 
     public boolean getOption(int option) {
@@ -406,12 +441,14 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     }
 
     public void parseGroupsFromElement(Element item) {
-        this.groups = new JSONArray();
+        final JSONArray groups = new JSONArray();
         for (Element element : item.getChildren()) {
             if (element.getName().equals("group") && element.getContent() != null) {
-                this.groups.put(element.getContent());
+                groups.put(element.getContent());
             }
         }
+        this.dirty |= !groups.toString().equals(this.groups.toString());
+        this.groups = groups;
     }
 
     @Override
@@ -428,6 +465,7 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
             return false;
         }
         this.avatar = avatar;
+        this.dirty = true;
         return true;
     }
 
@@ -472,6 +510,7 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     }
 
     public void setLastResource(String resource) {
+        this.dirty |= !Objects.equals(this.mLastPresence, resource);
         this.mLastPresence = resource;
     }
 
@@ -523,7 +562,9 @@ public class Contact implements ListItem, Blockable, MucOptions.IdentifiableUser
     public boolean refreshRtpCapability() {
         final RtpCapability.Capability previous = this.rtpCapability;
         this.rtpCapability = RtpCapability.check(this, getPresences());
-        return !Objects.equals(previous, this.rtpCapability);
+        final boolean changed = !Objects.equals(previous, this.rtpCapability);
+        this.dirty |= changed;
+        return changed;
     }
 
     public RtpCapability.Capability getRtpCapability() {
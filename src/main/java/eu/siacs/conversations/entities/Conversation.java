@@ -28,7 +28,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -63,7 +62,7 @@ public class Conversation extends AbstractEntity
     private static final String ATTRIBUTE_CRYPTO_TARGETS = "crypto_targets";
     private static final String ATTRIBUTE_NEXT_ENCRYPTION = "next_encryption";
     private static final String ATTRIBUTE_CORRECTING_MESSAGE = "correcting_message";
-    protected final ArrayList<Message> messages = new ArrayList<>();
+    protected final MessageList messages = new MessageList();
     public AtomicBoolean messagesLoaded = new AtomicBoolean(true);
     protected Account account = null;
     private String draftMessage;
@@ -232,10 +231,9 @@ public class Conversation extends AbstractEntity
 
     public Message findUnsentMessageWithUuid(String uuid) {
         synchronized (this.messages) {
-            for (final Message message : this.messages) {
+            for (final Message message : this.messages.withUuid(uuid)) {
                 final int s = message.getStatus();
-                if ((s == Message.STATUS_UNSEND || s == Message.STATUS_WAITING)
-                        && message.getUuid().equals(uuid)) {
+                if (s == Message.STATUS_UNSEND || s == Message.STATUS_WAITING) {
                     return message;
                 }
             }
@@ -274,12 +272,11 @@ public class Conversation extends AbstractEntity
 
     public Message findMessageWithFileAndUuid(final String uuid) {
         synchronized (this.messages) {
-            for (final Message message : this.messages) {
+            for (final Message message : this.messages.withUuid(uuid)) {
                 final Transferable transferable = message.getTransferable();
                 final boolean unInitiatedButKnownSize =
                         MessageUtils.unInitiatedButKnownSize(message);
-                if (message.getUuid().equals(uuid)
-                        && message.getEncryption() != Message.ENCRYPTION_PGP
+                if (message.getEncryption() != Message.ENCRYPTION_PGP
                         && (message.isFileOrImage()
                                 || message.treatAsDownloadable()
                                 || unInitiatedButKnownSize
@@ -295,21 +292,16 @@ public class Conversation extends AbstractEntity
 
     public Message findMessageWithUuid(final String uuid) {
         synchronized (this.messages) {
-            for (final Message message : this.messages) {
-                if (message.getUuid().equals(uuid)) {
-                    return message;
-                }
-            }
+            return this.messages.findByUuid(uuid);
         }
-        return null;
     }
 
     public boolean markAsDeleted(final List<String> uuids) {
         boolean deleted = false;
         final PgpDecryptionService pgpDecryptionService = account.getPgpDecryptionService();
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (uuids.contains(message.getUuid())) {
+            for (final String uuid : uuids) {
+                for (final Message message : this.messages.withUuid(uuid)) {
                     message.setDeleted(true);
                     deleted = true;
                     if (message.getEncryption() == Message.ENCRYPTION_PGP
@@ -326,17 +318,16 @@ public class Conversation extends AbstractEntity
         boolean changed = false;
         final PgpDecryptionService pgpDecryptionService = account.getPgpDecryptionService();
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                for (final DatabaseBackend.FilePathInfo file : files)
-                    if (file.uuid.toString().equals(message.getUuid())) {
-                        message.setDeleted(file.deleted);
-                        changed = true;
-                        if (file.deleted
-                                && message.getEncryption() == Message.ENCRYPTION_PGP
-                                && pgpDecryptionService != null) {
-                            pgpDecryptionService.discard(message);
-                        }
+            for (final DatabaseBackend.FilePathInfo file : files) {
+                for (final Message message : this.messages.withUuid(file.uuid.toString())) {
+                    message.setDeleted(file.deleted);
+                    changed = true;
+                    if (file.deleted
+                            && message.getEncryption() == Message.ENCRYPTION_PGP
+                            && pgpDecryptionService != null) {
+                        pgpDecryptionService.discard(message);
                     }
+                }
             }
         }
         return changed;
@@ -381,97 +372,84 @@ public class Conversation extends AbstractEntity
 
     public Message findSentMessageWithUuidOrRemoteId(String id) {
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (id.equals(message.getUuid())
-                        || (message.getStatus() >= Message.STATUS_SEND
-                                && id.equals(message.getRemoteMsgId()))) {
-                    return message;
+            final var candidates = new ArrayList<>(this.messages.withUuid(id));
+            for (final Message message : this.messages.withRemoteMsgId(id)) {
+                if (message.getStatus() >= Message.STATUS_SEND) {
+                    candidates.add(message);
                 }
             }
+            return this.messages.first(candidates);
         }
-        return null;
     }
 
     public Message findMessageWithUuidOrRemoteId(final String id) {
         synchronized (this.messages) {
-            for (final Message message : this.messages) {
-                if (id.equals(message.getUuid()) || id.equals(message.getRemoteMsgId())) {
-                    return message;
-                }
-            }
+            final var candidates = new ArrayList<>(this.messages.withUuid(id));
+            candidates.addAll(this.messages.withRemoteMsgId(id));
+            return this.messages.first(candidates);
         }
-        return null;
     }
 
     public Message findMessageWithRemoteIdAndCounterpart(
             String id, Jid counterpart, boolean received, boolean carbon) {
         synchronized (this.messages) {
-            for (int i = this.messages.size() - 1; i >= 0; --i) {
-                final Message message = messages.get(i);
-                final Jid mcp = message.getCounterpart();
-                if (mcp == null) {
-                    continue;
-                }
-                if (mcp.equals(counterpart)
-                        && ((message.getStatus() == Message.STATUS_RECEIVED) == received)
-                        && (carbon == message.isCarbon() || received)) {
-                    if (id.equals(message.getRemoteMsgId())
-                            && !message.isFileOrImage()
-                            && !message.treatAsDownloadable()) {
-                        return message;
-                    } else {
-                        return null;
-                    }
-                }
+            // only the last message exchanged with the counterpart in that direction may match
+            final Message message =
+                    this.messages.lastMatchingIfCandidate(
+                            this.messages.withRemoteMsgId(id),
+                            m -> {
+                                final Jid mcp = m.getCounterpart();
+                                return mcp != null
+                                        && mcp.equals(counterpart)
+                                        && ((m.getStatus() == Message.STATUS_RECEIVED) == received)
+                                        && (carbon == m.isCarbon() || received);
+                            });
+            if (message == null || message.isFileOrImage() || message.treatAsDownloadable()) {
+                return null;
             }
+            return message;
         }
-        return null;
     }
 
     public Message findSentMessageWithUuid(String id) {
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (id.equals(message.getUuid())) {
-                    return message;
-                }
-            }
+            return this.messages.findByUuid(id);
         }
-        return null;
     }
 
     public Message findMessageWithRemoteId(String id, Jid counterpart) {
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (counterpart.equals(message.getCounterpart())
-                        && (id.equals(message.getRemoteMsgId()) || id.equals(message.getUuid()))) {
-                    return message;
+            final var candidates = new ArrayList<Message>();
+            for (final Message message : this.messages.withRemoteMsgId(id)) {
+                if (counterpart.equals(message.getCounterpart())) {
+                    candidates.add(message);
+                }
+            }
+            for (final Message message : this.messages.withUuid(id)) {
+                if (counterpart.equals(message.getCounterpart())) {
+                    candidates.add(message);
                 }
             }
+            return this.messages.first(candidates);
         }
-        return null;
     }
 
     public Message findReceivedWithRemoteId(final String id) {
         synchronized (this.messages) {
-            for (final Message message : this.messages) {
-                if (message.getStatus() == Message.STATUS_RECEIVED
-                        && id.equals(message.getRemoteMsgId())) {
-                    return message;
+            final var candidates = new ArrayList<Message>();
+            for (final Message message : this.messages.withRemoteMsgId(id)) {
+                if (message.getStatus() == Message.STATUS_RECEIVED) {
+                    candidates.add(message);
                 }
             }
+            return this.messages.first(candidates);
         }
-        return null;
     }
 
     public Message findMessageWithServerMsgId(String id) {
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (id != null && id.equals(message.getServerMsgId())) {
-                    return message;
-                }
-            }
+            return this.messages.first(this.messages.withServerMsgId(id));
         }
-        return null;
     }
 
     public boolean hasMessageWithCounterpart(Jid counterpart) {
@@ -851,16 +829,15 @@ public class Conversation extends AbstractEntity
 
     public Message findRtpSession(final String sessionId, final int s) {
         synchronized (this.messages) {
-            for (int i = this.messages.size() - 1; i >= 0; --i) {
-                final Message message = this.messages.get(i);
+            final var candidates = new ArrayList<Message>();
+            for (final Message message : this.messages.withRemoteMsgId(sessionId)) {
                 if ((message.getStatus() == s)
-                        && (message.getType() == Message.TYPE_RTP_SESSION)
-                        && sessionId.equals(message.getRemoteMsgId())) {
-                    return message;
+                        && (message.getType() == Message.TYPE_RTP_SESSION)) {
+                    candidates.add(message);
                 }
             }
+            return this.messages.last(candidates);
         }
-        return null;
     }
 
     public boolean possibleDuplicate(final String serverMsgId, final String remoteMsgId) {
@@ -868,14 +845,9 @@ public class Conversation extends AbstractEntity
             return false;
         }
         synchronized (this.messages) {
-            for (Message message : this.messages) {
-                if (serverMsgId.equals(message.getServerMsgId())
-                        || remoteMsgId.equals(message.getRemoteMsgId())) {
-                    return true;
-                }
-            }
+            return this.messages.hasServerMsgId(serverMsgId)
+                    || this.messages.hasRemoteMsgId(remoteMsgId);
         }
-        return false;
     }
 
     public MamReference getLastMessageTransmitted() {
@@ -1044,12 +1016,7 @@ public class Conversation extends AbstractEntity
 
     public void expireOldMessages(long timestamp) {
         synchronized (this.messages) {
-            for (ListIterator<Message> iterator = this.messages.listIterator();
-                    iterator.hasNext(); ) {
-                if (iterator.next().getTimeSent() < timestamp) {
-                    iterator.remove();
-                }
-            }
+            this.messages.removeIf(message -> message.getTimeSent() < timestamp);
             untieMessages();
         }
     }
@@ -0,0 +1,182 @@
+package eu.siacs.conversations.entities;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The open conversations as a copy-on-write list that additionally maintains hash indexes by uuid
+ * and by account and bare address. Lookups read the indexes without locking; every modification of
+ * the list updates them.
+ *
+ * <p>Conversations have to have their account set before they are added, and neither account nor
+ * bare address may change while they are in the list. Modifications through {@link #subList(int,
+ * int)} are not indexed.
+ */
+public class ConversationList extends CopyOnWriteArrayList<Conversation> {
+
+    private final Map<String, Conversation> byUuid = new ConcurrentHashMap<>();
+    private final Map<Address, Conversation> byAddress = new ConcurrentHashMap<>();
+
+    @Nullable
+    public Conversation findByUuid(@Nullable final String uuid) {
+        return uuid == null ? null : byUuid.get(uuid);
+    }
+
+    @Nullable
+    public Conversation find(@NonNull final Account account, @Nullable final Jid address) {
+        return address == null ? null : byAddress.get(new Address(account, address.asBareJid()));
+    }
+
+    /**
+     * @return true if this exact instance (not just a conversation with the same uuid) is in the
+     *     list
+     */
+    public boolean containsInstance(final Conversation conversation) {
+        return byUuid.get(conversation.getUuid()) == conversation;
+    }
+
+    @Override
+    public synchronized boolean add(final Conversation conversation) {
+        super.add(conversation);
+        index(conversation);
+        return true;
+    }
+
+    @Override
+    public synchronized void add(final int index, final Conversation conversation) {
+        super.add(index, conversation);
+        index(conversation);
+    }
+
+    @Override
+    public synchronized boolean addIfAbsent(final Conversation conversation) {
+        if (super.addIfAbsent(conversation)) {
+            index(conversation);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean addAll(final Collection<? extends Conversation> c) {
+        final boolean changed = super.addAll(c);
+        c.forEach(this::index);
+        return changed;
+    }
+
+    @Override
+    public synchronized boolean addAll(
+            final int index, final Collection<? extends Conversation> c) {
+        final boolean changed = super.addAll(index, c);
+        c.forEach(this::index);
+        return changed;
+    }
+
+    @Override
+    public synchronized int addAllAbsent(final Collection<? extends Conversation> c) {
+        final int added = super.addAllAbsent(c);
+        c.forEach(this::index);
+        return added;
+    }
+
+    @Override
+    public synchronized Conversation set(final int index, final Conversation conversation) {
+        final Conversation previous = super.set(index, conversation);
+        unindex(previous);
+        index(conversation);
+        return previous;
+    }
+
+    @Override
+    public synchronized Conversation remove(final int index) {
+        final Conversation conversation = super.remove(index);
+        unindex(conversation);
+        return conversation;
+    }
+
+    @Override
+    public synchronized boolean remove(final Object o) {
+        if (super.remove(o)) {
+            unindex((Conversation) o);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean removeAll(final Collection<?> c) {
+        return reindexIf(super.removeAll(c));
+    }
+
+    @Override
+    public synchronized boolean retainAll(final Collection<?> c) {
+        return reindexIf(super.retainAll(c));
+    }
+
+    @Override
+    public synchronized boolean removeIf(final Predicate<? super Conversation> filter) {
+        return reindexIf(super.removeIf(filter));
+    }
+
+    @Override
+    public synchronized void replaceAll(final UnaryOperator<Conversation> operator) {
+        super.replaceAll(operator);
+        reindexIf(true);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        byUuid.clear();
+        byAddress.clear();
+    }
+
+    private void index(final Conversation conversation) {
+        // like a linear search, lookups return the first of several equal conversations
+        byUuid.putIfAbsent(conversation.getUuid(), conversation);
+        byAddress.putIfAbsent(Address.of(conversation), conversation);
+    }
+
+    private void unindex(final Conversation conversation) {
+        if (conversation == null || contains(conversation)) {
+            return;
+        }
+        final Address address = Address.of(conversation);
+        final boolean removed =
+                byUuid.remove(conversation.getUuid(), conversation)
+                        | byAddress.remove(address, conversation);
+        if (removed) {
+            // a duplicate that was hidden behind the removed conversation becomes visible again
+            for (final Conversation remaining : this) {
+                if (remaining.getUuid().equals(conversation.getUuid())
+                        || Address.of(remaining).equals(address)) {
+                    index(remaining);
+                }
+            }
+        }
+    }
+
+    private boolean reindexIf(final boolean changed) {
+        if (changed) {
+            byUuid.clear();
+            byAddress.clear();
+            for (final Conversation conversation : this) {
+                index(conversation);
+            }
+        }
+        return changed;
+    }
+
+    private record Address(Account account, Jid address) {
+        private static Address of(final Conversation conversation) {
+            return new Address(conversation.getAccount(), conversation.getAddress().asBareJid());
+        }
+    }
+}
@@ -452,6 +452,7 @@ public class Message extends AbstractEntity
 
     public void setRemoteMsgId(String id) {
         this.remoteMsgId = id;
+        reindex();
     }
 
     public String getServerMsgId() {
@@ -460,6 +461,7 @@ public class Message extends AbstractEntity
 
     public void setServerMsgId(String id) {
         this.serverMsgId = id;
+        reindex();
     }
 
     public boolean isRead() {
@@ -757,6 +759,13 @@ public class Message extends AbstractEntity
 
     public void setUuid(String uuid) {
         this.uuid = uuid;
+        reindex();
+    }
+
+    private void reindex() {
+        if (this.conversation instanceof Conversation c) {
+            c.messages.reindex(this);
+        }
     }
 
     public String getEditedId() {
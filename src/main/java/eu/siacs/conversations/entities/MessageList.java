@@ -0,0 +1,354 @@
+package eu.siacs.conversations.entities;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Ordered list of the messages a {@link Conversation} has loaded into memory that additionally
+ * maintains hash indexes by uuid, remote message id and server message id. Indexes are updated on
+ * every structural modification and, through {@link #reindex(Message)}, whenever one of the indexed
+ * ids of a contained message changes.
+ *
+ * <p>Like the plain list it replaces, callers are expected to synchronize on the instance itself.
+ */
+public class MessageList extends AbstractList<Message> implements RandomAccess {
+
+    private final ArrayList<Message> messages = new ArrayList<>();
+
+    private final IdentityHashMap<Message, IndexedKeys> keys = new IdentityHashMap<>();
+    private final ListMultimap<String, Message> byUuid = ArrayListMultimap.create();
+    private final ListMultimap<String, Message> byRemoteMsgId = ArrayListMultimap.create();
+    private final ListMultimap<String, Message> byServerMsgId = ArrayListMultimap.create();
+
+    @Override
+    public Message get(final int index) {
+        return messages.get(index);
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    @Override
+    public void add(final int index, final Message message) {
+        messages.add(index, message);
+        index(message);
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(final int index, @NonNull final Collection<? extends Message> c) {
+        final boolean changed = messages.addAll(index, c);
+        for (final Message message : c) {
+            index(message);
+        }
+        modCount++;
+        return changed;
+    }
+
+    @Override
+    public Message set(final int index, final Message message) {
+        final Message previous = messages.set(index, message);
+        unindex(previous);
+        index(message);
+        return previous;
+    }
+
+    @Override
+    public Message remove(final int index) {
+        final Message message = messages.remove(index);
+        unindex(message);
+        modCount++;
+        return message;
+    }
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+        final List<Message> range = messages.subList(fromIndex, toIndex);
+        for (final Message message : range) {
+            unindex(message);
+        }
+        range.clear();
+        modCount++;
+    }
+
+    @Override
+    public boolean removeIf(@NonNull final Predicate<? super Message> filter) {
+        final ArrayList<Message> retained = new ArrayList<>(messages.size());
+        for (final Message message : messages) {
+            if (filter.test(message)) {
+                unindex(message);
+            } else {
+                retained.add(message);
+            }
+        }
+        if (retained.size() == messages.size()) {
+            return false;
+        }
+        messages.clear();
+        messages.addAll(retained);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        messages.clear();
+        keys.clear();
+        byUuid.clear();
+        byRemoteMsgId.clear();
+        byServerMsgId.clear();
+        modCount++;
+    }
+
+    @Override
+    public void sort(@Nullable final Comparator<? super Message> comparator) {
+        // reordering does not change membership; sort the backing list to leave indexes untouched
+        messages.sort(comparator);
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        if (!(o instanceof Message message)) {
+            return -1;
+        }
+        final IndexedKeys indexed = keys.get(message);
+        if (indexed == null) {
+            return -1;
+        }
+        if (indexed.occurrences > 1) {
+            for (int i = 0; i < messages.size(); ++i) {
+                if (messages.get(i) == message) {
+                    return i;
+                }
+            }
+        }
+        return positionOf(message);
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        if (!(o instanceof Message message) || !keys.containsKey(message)) {
+            return -1;
+        }
+        return positionOf(message);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof Message message && keys.containsKey(message);
+    }
+
+    /** Updates the indexes after uuid, remote or server message id of a message have changed. */
+    public synchronized void reindex(final Message message) {
+        final IndexedKeys indexed = keys.get(message);
+        if (indexed == null) {
+            return;
+        }
+        final IndexedKeys current = IndexedKeys.of(message, indexed.occurrences);
+        if (current.equals(indexed)) {
+            return;
+        }
+        removeFromIndexes(message, indexed);
+        addToIndexes(message, current);
+        keys.put(message, current);
+    }
+
+    @Nullable
+    public Message findByUuid(final String uuid) {
+        return uuid == null ? null : first(byUuid.get(uuid));
+    }
+
+    public List<Message> withUuid(final String uuid) {
+        return uuid == null ? ImmutableList.of() : ImmutableList.copyOf(byUuid.get(uuid));
+    }
+
+    public List<Message> withRemoteMsgId(final String remoteMsgId) {
+        return remoteMsgId == null
+                ? ImmutableList.of()
+                : ImmutableList.copyOf(byRemoteMsgId.get(remoteMsgId));
+    }
+
+    public List<Message> withServerMsgId(final String serverMsgId) {
+        return serverMsgId == null
+                ? ImmutableList.of()
+                : ImmutableList.copyOf(byServerMsgId.get(serverMsgId));
+    }
+
+    public boolean hasRemoteMsgId(final String remoteMsgId) {
+        return remoteMsgId != null && byRemoteMsgId.containsKey(remoteMsgId);
+    }
+
+    public boolean hasServerMsgId(final String serverMsgId) {
+        return serverMsgId != null && byServerMsgId.containsKey(serverMsgId);
+    }
+
+    /** Returns the candidate that comes first in list order. */
+    @Nullable
+    public Message first(final List<Message> candidates) {
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        Message first = null;
+        int firstPosition = Integer.MAX_VALUE;
+        for (final Message candidate : candidates) {
+            final int position = positionOf(candidate);
+            if (position >= 0 && position < firstPosition) {
+                first = candidate;
+                firstPosition = position;
+            }
+        }
+        return first;
+    }
+
+    /** Returns the candidate that comes last in list order. */
+    @Nullable
+    public Message last(final List<Message> candidates) {
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        Message last = null;
+        int lastPosition = -1;
+        for (final Message candidate : candidates) {
+            final int position = positionOf(candidate);
+            if (position > lastPosition) {
+                last = candidate;
+                lastPosition = position;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Returns the last message in list order that matches the filter, but only if it is one of the
+     * candidates. The list is only scanned if at least one candidate matches the filter.
+     */
+    @Nullable
+    public Message lastMatchingIfCandidate(
+            final List<Message> candidates, final Predicate<Message> filter) {
+        final List<Message> matching = new ArrayList<>(candidates.size());
+        for (final Message candidate : candidates) {
+            if (filter.test(candidate)) {
+                matching.add(candidate);
+            }
+        }
+        if (matching.isEmpty()) {
+            return null;
+        }
+        for (int i = messages.size() - 1; i >= 0; --i) {
+            final Message message = messages.get(i);
+            if (filter.test(message)) {
+                return containsIdentity(matching, message) ? message : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsIdentity(final List<Message> bucket, final Message message) {
+        for (final Message candidate : bucket) {
+            if (candidate == message) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the last position of the message. Searches from the end since lookups are mostly for
+     * recent messages.
+     */
+    private int positionOf(final Message message) {
+        for (int i = messages.size() - 1; i >= 0; --i) {
+            if (messages.get(i) == message) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void index(final Message message) {
+        final IndexedKeys indexed = keys.get(message);
+        if (indexed != null) {
+            keys.put(message, indexed.withOccurrences(indexed.occurrences + 1));
+            return;
+        }
+        final IndexedKeys current = IndexedKeys.of(message, 1);
+        addToIndexes(message, current);
+        keys.put(message, current);
+    }
+
+    private void unindex(final Message message) {
+        final IndexedKeys indexed = keys.get(message);
+        if (indexed == null) {
+            return;
+        }
+        if (indexed.occurrences > 1) {
+            keys.put(message, indexed.withOccurrences(indexed.occurrences - 1));
+            return;
+        }
+        keys.remove(message);
+        removeFromIndexes(message, indexed);
+    }
+
+    private void addToIndexes(final Message message, final IndexedKeys indexed) {
+        if (indexed.uuid != null) {
+            byUuid.put(indexed.uuid, message);
+        }
+        if (indexed.remoteMsgId != null) {
+            byRemoteMsgId.put(indexed.remoteMsgId, message);
+        }
+        if (indexed.serverMsgId != null) {
+            byServerMsgId.put(indexed.serverMsgId, message);
+        }
+    }
+
+    private void removeFromIndexes(final Message message, final IndexedKeys indexed) {
+        if (indexed.uuid != null) {
+            removeIdentity(byUuid.get(indexed.uuid), message);
+        }
+        if (indexed.remoteMsgId != null) {
+            removeIdentity(byRemoteMsgId.get(indexed.remoteMsgId), message);
+        }
+        if (indexed.serverMsgId != null) {
+            removeIdentity(byServerMsgId.get(indexed.serverMsgId), message);
+        }
+    }
+
+    private static void removeIdentity(final List<Message> bucket, final Message message) {
+        for (int i = 0; i < bucket.size(); ++i) {
+            if (bucket.get(i) == message) {
+                bucket.remove(i);
+                return;
+            }
+        }
+    }
+
+    private record IndexedKeys(
+            String uuid, String remoteMsgId, String serverMsgId, int occurrences) {
+
+        private static IndexedKeys of(final Message message, final int occurrences) {
+            return new IndexedKeys(
+                    message.getUuid(),
+                    message.getRemoteMsgId(),
+                    message.getServerMsgId(),
+                    occurrences);
+        }
+
+        private IndexedKeys withOccurrences(final int occurrences) {
+            return new IndexedKeys(uuid, remoteMsgId, serverMsgId, occurrences);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package eu.siacs.conversations.http;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.common.base.Ticker;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import eu.siacs.conversations.Config;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides which file downloads run. At most {@code maxConcurrent} downloads run at a time and at
+ * most {@code maxPerHost} of them against the same host. Waiting downloads start in the order of
+ * their {@link Priority}; interactive and visible ones first in the order they were asked for,
+ * background ones newest first. Background downloads never take the last free slot, so there is
+ * always room for the download the user just tapped, and they do not start while the active
+ * network is metered.
+ */
+public class DownloadScheduler {
+
+    private static final int METER_WINDOW = 5; // in seconds
+
+    public enum Priority {
+        INTERACTIVE,
+        VISIBLE,
+        BACKGROUND
+    }
+
+    private static final Comparator<Task> ORDER =
+            (a, b) -> {
+                if (a.priority != b.priority) {
+                    return a.priority.compareTo(b.priority);
+                }
+                if (a.priority == Priority.BACKGROUND) {
+                    return Long.compare(b.sequence, a.sequence);
+                }
+                return Long.compare(a.sequence, b.sequence);
+            };
+
+    private final Executor executor;
+    private final BooleanSupplier metered;
+    private final Ticker ticker;
+    private final int maxConcurrent;
+    private final int maxPerHost;
+
+    // all guarded by this
+    private final TreeSet<Task> queue = new TreeSet<>(ORDER);
+    private final Map<Object, Task> tasks = new HashMap<>();
+    private final Multiset<String> runningPerHost = HashMultiset.create();
+    private int running = 0;
+    private long sequence = 0;
+
+    private final Map<Priority, Meter> meters = new EnumMap<>(Priority.class);
+
+    public DownloadScheduler(
+            final Executor executor,
+            final BooleanSupplier metered,
+            final Ticker ticker,
+            final int maxConcurrent,
+            final int maxPerHost) {
+        this.executor = executor;
+        this.metered = metered;
+        this.ticker = ticker;
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+        for (final Priority priority : Priority.values()) {
+            meters.put(priority, new Meter());
+        }
+    }
+
+    /**
+     * Queues a download. If the owner already has a queued or running download, that one is kept
+     * and only raised to the given priority.
+     */
+    public synchronized Task schedule(
+            final Object owner,
+            final String host,
+            final Priority priority,
+            final Runnable runnable) {
+        final Task existing = tasks.get(owner);
+        if (existing != null) {
+            promote(existing, priority);
+            return existing;
+        }
+        final Task task = new Task(owner, host, priority, sequence++, runnable);
+        tasks.put(owner, task);
+        queue.add(task);
+        dispatch();
+        return task;
+    }
+
+    /** Raises the priority of the download of the owner. Lowering is not possible. */
+    public synchronized void promote(final Object owner, final Priority priority) {
+        final Task task = tasks.get(owner);
+        if (task != null) {
+            promote(task, priority);
+        }
+    }
+
+    private void promote(final Task task, final Priority priority) {
+        if (priority.compareTo(task.priority) >= 0) {
+            return;
+        }
+        // the queue is ordered by priority; it has to be taken out before changing it
+        final boolean queued = queue.remove(task);
+        task.priority = priority;
+        if (queued) {
+            queue.add(task);
+            dispatch();
+        }
+    }
+
+    /** Drops the download of the owner if it has not started yet. */
+    public synchronized void cancel(final Object owner) {
+        final Task task = tasks.get(owner);
+        if (task != null && queue.remove(task)) {
+            tasks.remove(owner);
+        }
+    }
+
+    /** Starts whatever the limits allow; to be called when the network changed. */
+    public synchronized void dispatch() {
+        boolean metered = false;
+        boolean meteredChecked = false;
+        final Iterator<Task> iterator = queue.iterator();
+        while (iterator.hasNext() && running < maxConcurrent) {
+            final Task task = iterator.next();
+            if (task.priority == Priority.BACKGROUND) {
+                if (running >= Math.max(1, maxConcurrent - 1)) {
+                    break;
+                }
+                if (!meteredChecked) {
+                    metered = this.metered.getAsBoolean();
+                    meteredChecked = true;
+                }
+                if (metered) {
+                    break;
+                }
+            }
+            if (runningPerHost.count(task.host) >= maxPerHost) {
+                continue;
+            }
+            iterator.remove();
+            running++;
+            runningPerHost.add(task.host);
+            executor.execute(() -> run(task));
+        }
+    }
+
+    private void run(final Task task) {
+        try {
+            task.runnable.run();
+        } finally {
+            finished(task);
+        }
+    }
+
+    private synchronized void finished(final Task task) {
+        running--;
+        runningPerHost.remove(task.host);
+        tasks.remove(task.owner);
+        if (running == 0 && queue.isEmpty()) {
+            Log.d(Config.LOGTAG, "all downloads finished. " + this);
+        }
+        dispatch();
+    }
+
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public long getBytesPerSecond(final Priority priority) {
+        return meters.get(priority).rate();
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder("DownloadScheduler{queued=");
+        builder.append(queue.size()).append(", running=").append(running);
+        for (final Priority priority : Priority.values()) {
+            builder.append(", ")
+                    .append(priority.name().toLowerCase(Locale.ROOT))
+                    .append('=')
+                    .append(getBytesPerSecond(priority))
+                    .append("B/s");
+        }
+        return builder.append('}').toString();
+    }
+
+    public class Task {
+
+        private final Object owner;
+        private final String host;
+        private final long sequence;
+        private final Runnable runnable;
+        private Priority priority;
+
+        private Task(
+                final Object owner,
+                final String host,
+                final Priority priority,
+                final long sequence,
+                final Runnable runnable) {
+            this.owner = owner;
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        /** Accounts transferred bytes to the class the download currently belongs to. */
+        public void transferred(final long bytes) {
+            final Priority priority;
+            synchronized (DownloadScheduler.this) {
+                priority = this.priority;
+            }
+            meters.get(priority).mark(bytes);
+        }
+
+        public Priority getPriority() {
+            synchronized (DownloadScheduler.this) {
+                return priority;
+            }
+        }
+    }
+
+    /** Bytes per second over the last few seconds, in one second buckets. */
+    private class Meter {
+
+        private final long[] buckets = new long[METER_WINDOW];
+        private long second = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+
+        private synchronized void mark(final long bytes) {
+            advance();
+            buckets[(int) (second % METER_WINDOW)] += bytes;
+        }
+
+        private synchronized long rate() {
+            advance();
+            long sum = 0;
+            for (final long bucket : buckets) {
+                sum += bucket;
+            }
+            return sum / METER_WINDOW;
+        }
+
+        private void advance() {
+            final long now = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+            if (now - second >= METER_WINDOW) {
+                Arrays.fill(buckets, 0);
+            } else {
+                for (long s = second + 1; s <= now; ++s) {
+                    buckets[(int) (s % METER_WINDOW)] = 0;
+                }
+            }
+            second = Math.max(second, now);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package eu.siacs.conversations.http;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
 import android.os.Build;
 import android.util.Log;
+import com.google.common.base.Ticker;
 import de.gultsch.common.TrustManagers;
 import eu.siacs.conversations.BuildConfig;
 import eu.siacs.conversations.Config;
@@ -10,6 +12,7 @@ import eu.siacs.conversations.entities.Account;
 import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.services.AbstractConnectionManager;
 import eu.siacs.conversations.services.XmppConnectionService;
+import eu.siacs.conversations.utils.Compatibility;
 import eu.siacs.conversations.utils.TLSSocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,6 +44,11 @@ public class HttpConnectionManager extends AbstractConnectionManager {
 
     public static final Executor EXECUTOR = Executors.newFixedThreadPool(4);
 
+    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+    private static final int MAX_CONCURRENT_DOWNLOADS_PER_HOST = 2;
+
+    private final DownloadScheduler downloadScheduler;
+
     private static final OkHttpClient OK_HTTP_CLIENT;
 
     static {
@@ -64,6 +72,30 @@ public class HttpConnectionManager extends AbstractConnectionManager {
 
     public HttpConnectionManager(XmppConnectionService service) {
         super(service);
+        this.downloadScheduler =
+                new DownloadScheduler(
+                        Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS),
+                        this::isActiveNetworkMetered,
+                        Ticker.systemTicker(),
+                        MAX_CONCURRENT_DOWNLOADS,
+                        MAX_CONCURRENT_DOWNLOADS_PER_HOST);
+    }
+
+    private boolean isActiveNetworkMetered() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return false;
+        }
+        return Compatibility.isActiveNetworkMetered(
+                mXmppConnectionService.getSystemService(ConnectivityManager.class));
+    }
+
+    DownloadScheduler getDownloadScheduler() {
+        return this.downloadScheduler;
+    }
+
+    /** Starts downloads that had been waiting for an unmetered network. */
+    public void onNetworkChanged() {
+        downloadScheduler.dispatch();
     }
 
     public static Proxy getProxy() {
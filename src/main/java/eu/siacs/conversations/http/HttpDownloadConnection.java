@@ -47,6 +47,7 @@ public class HttpDownloadConnection implements Transferable {
     private boolean acceptedAutomatically = false;
     private int mProgress = 0;
     private Call mostRecentCall;
+    private volatile DownloadScheduler.Task downloadTask;
 
     HttpDownloadConnection(Message message, HttpConnectionManager manager) {
         this.message = message;
@@ -144,7 +145,28 @@ public class HttpDownloadConnection implements Transferable {
     }
 
     private void download(final boolean interactive) {
-        EXECUTOR.execute(new FileDownloader(interactive));
+        // stays on offer while queued; tapping it again moves the download to the front.
+        // FileDownloader switches to downloading once the scheduler starts it
+        if (this.mStatus != STATUS_OFFER) {
+            changeStatus(STATUS_OFFER);
+        }
+        this.downloadTask =
+                mHttpConnectionManager
+                        .getDownloadScheduler()
+                        .schedule(
+                                this,
+                                mUrl.host(),
+                                interactive
+                                        ? DownloadScheduler.Priority.INTERACTIVE
+                                        : DownloadScheduler.Priority.BACKGROUND,
+                                new FileDownloader(interactive));
+    }
+
+    /** Called when the message is about to be shown so the download gets ahead of history. */
+    public void setVisible() {
+        mHttpConnectionManager
+                .getDownloadScheduler()
+                .promote(this, DownloadScheduler.Priority.VISIBLE);
     }
 
     private void checkFileSize(final boolean interactive) {
@@ -153,6 +175,7 @@ public class HttpDownloadConnection implements Transferable {
 
     @Override
     public void cancel() {
+        mHttpConnectionManager.getDownloadScheduler().cancel(this);
         final Call call = this.mostRecentCall;
         if (call != null && !call.isCanceled()) {
             call.cancel();
@@ -162,7 +185,7 @@ public class HttpDownloadConnection implements Transferable {
         if (message.isFileOrImage()) {
             message.setDeleted(true);
         }
-        mHttpConnectionManager.updateConversationUi(true);
+        mHttpConnectionManager.updateConversationUi(message, true);
     }
 
     private void decryptFile() throws IOException {
@@ -204,7 +227,7 @@ public class HttpDownloadConnection implements Transferable {
                             .getPgpDecryptionService()
                             .decrypt(message, notify);
         }
-        mHttpConnectionManager.updateConversationUi(true);
+        mHttpConnectionManager.updateConversationUi(message, true);
         final boolean notifyAfterScan = notify;
         final DownloadableFile file =
                 mXmppConnectionService.getFileBackend().getFile(message, true);
@@ -227,7 +250,7 @@ public class HttpDownloadConnection implements Transferable {
 
     private void changeStatus(final int status) {
         this.mStatus = status;
-        mHttpConnectionManager.updateConversationUi(true);
+        mHttpConnectionManager.updateConversationUi(message, true);
     }
 
     private void showToastForException(final Exception e) {
@@ -255,7 +278,7 @@ public class HttpDownloadConnection implements Transferable {
 
     private void updateProgress(long i) {
         this.mProgress = (int) i;
-        mHttpConnectionManager.updateConversationUi(false);
+        mHttpConnectionManager.updateConversationUi(message, false);
     }
 
     @Override
@@ -319,7 +342,7 @@ public class HttpDownloadConnection implements Transferable {
             }
             persistFileSize(size);
             message.setOob(true);
-            mXmppConnectionService.databaseBackend.updateMessage(message, true);
+            mXmppConnectionService.getMessageWriter().updateMessage(message, true, false);
             file.setExpectedSize(size);
             message.resetFileParams();
             if (mHttpConnectionManager.hasStoragePermission()
@@ -403,6 +426,14 @@ public class HttpDownloadConnection implements Transferable {
             this.interactive = interactive;
         }
 
+        // a background download is promoted when the user taps it while it is queued
+        private boolean isInteractive() {
+            final DownloadScheduler.Task task = downloadTask;
+            return interactive
+                    || (task != null
+                            && task.getPriority() == DownloadScheduler.Priority.INTERACTIVE);
+        }
+
         @Override
         public void run() {
             try {
@@ -422,7 +453,7 @@ public class HttpDownloadConnection implements Transferable {
                         message.getConversation().getAccount().getJid().asBareJid()
                                 + ": unable to download file",
                         e);
-                if (interactive) {
+                if (isInteractive()) {
                     showToastForException(e);
                 } else {
                     HttpDownloadConnection.this.acceptedAutomatically = false;
@@ -448,7 +479,7 @@ public class HttpDownloadConnection implements Transferable {
             }
             final OkHttpClient client =
                     mHttpConnectionManager.buildHttpClient(
-                            mUrl, message.getConversation().getAccount(), interactive);
+                            mUrl, message.getConversation().getAccount(), isInteractive());
 
             final Request.Builder requestBuilder =
                     new Request.Builder().url(URL.stripFragment(mUrl));
@@ -524,6 +555,7 @@ public class HttpDownloadConnection implements Transferable {
                 final long offset,
                 final long expected)
                 throws IOException, FileWriterException {
+            final DownloadScheduler.Task task = downloadTask;
             long transmitted = offset;
             int count;
             final byte[] buffer = new byte[4096];
@@ -535,6 +567,9 @@ public class HttpDownloadConnection implements Transferable {
                 } catch (final IOException e) {
                     throw new FileWriterException(file);
                 }
+                if (task != null) {
+                    task.transferred(count);
+                }
                 if (transmitted > expected) {
                     throw new InvalidFileException(
                             String.format("File exceeds expected size of %d", expected));
@@ -1,10 +1,13 @@
 package eu.siacs.conversations.http;
 
+import static eu.siacs.conversations.http.HttpConnectionManager.EXECUTOR;
 import static eu.siacs.conversations.utils.Random.SECURE_RANDOM;
 
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.google.common.base.Strings;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -24,6 +27,7 @@ import java.util.List;
 import java.util.concurrent.Future;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -46,6 +50,9 @@ public class HttpUploadConnection
     private long transmitted = 0;
     private Call mostRecentCall;
     private ListenableFuture<HttpUploadManager.Slot> slotFuture;
+    private volatile boolean cancelled = false;
+    // what to remember about this upload once it is done; null if it is not to be reused
+    private volatile UploadIndex.Entry uploadIndexEntry;
 
     public HttpUploadConnection(
             final Message message, final HttpConnectionManager httpConnectionManager) {
@@ -79,6 +86,7 @@ public class HttpUploadConnection
 
     @Override
     public void cancel() {
+        this.cancelled = true;
         final ListenableFuture<HttpUploadManager.Slot> slotFuture = this.slotFuture;
         if (slotFuture != null && !slotFuture.isDone()) {
             if (slotFuture.cancel(true)) {
@@ -111,8 +119,6 @@ public class HttpUploadConnection
     }
 
     public void init(final boolean delay) {
-        final Account account = message.getConversation().getAccount();
-        final var connection = account.getXmppConnection();
         this.file = mXmppConnectionService.getFileBackend().getFile(message, false);
         final String mime;
         if (message.getEncryption() == Message.ENCRYPTION_PGP
@@ -131,6 +137,104 @@ public class HttpUploadConnection
         }
         this.file.setExpectedSize(originalFileSize + (file.getKey() != null ? 16 : 0));
         message.resetFileParams();
+        message.setTransferable(this);
+        mXmppConnectionService.markMessage(message, Message.STATUS_UNSEND);
+        final String scope = UploadIndex.scope(message);
+        if (scope == null) {
+            requestSlot(mime);
+        } else {
+            // hashing a video takes a while; so does the HEAD request when there is a match
+            EXECUTOR.execute(
+                    () -> {
+                        if (!reusePreviousUpload(scope)) {
+                            requestSlot(mime);
+                        }
+                    });
+        }
+    }
+
+    private boolean reusePreviousUpload(final String scope) {
+        final Account account = message.getConversation().getAccount();
+        final String hash;
+        try {
+            hash = UploadIndex.hash(file);
+        } catch (final IOException e) {
+            Log.d(Config.LOGTAG, "unable to hash " + file.getAbsolutePath(), e);
+            return false;
+        }
+        this.uploadIndexEntry =
+                new UploadIndex.Entry(account.getUuid(), scope, hash, null, 0, 0);
+        final var previous =
+                mXmppConnectionService.databaseBackend.findUpload(
+                        account.getUuid(), scope, hash, System.currentTimeMillis());
+        if (previous == null) {
+            return false;
+        }
+        if (cancelled) {
+            fail(Message.ERROR_MESSAGE_CANCELLED);
+            return true;
+        }
+        final HttpUrl url = AesGcmURL.of(previous.url());
+        final long expectedSize =
+                file.getSize() + (url.fragment() == null ? 0 : GCM_AUTHENTICATION_TAG_LENGTH);
+        final boolean available;
+        try {
+            available = isStillAvailable(account, url, expectedSize);
+        } catch (final IOException e) {
+            if (cancelled) {
+                fail(Message.ERROR_MESSAGE_CANCELLED);
+                return true;
+            }
+            // the entry stays; this might just have been a bad moment for the network
+            Log.d(Config.LOGTAG, "unable to check availability of previous upload", e);
+            return false;
+        }
+        if (!available) {
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid() + ": " + URL.stripFragment(url) + " is gone");
+            mXmppConnectionService.databaseBackend.deleteUpload(previous);
+            return false;
+        }
+        mXmppConnectionService.databaseBackend.countUploadReuse(previous);
+        Log.d(
+                Config.LOGTAG,
+                account.getJid().asBareJid()
+                        + ": reusing previous upload of "
+                        + hash
+                        + " (hits="
+                        + (previous.hits() + 1)
+                        + ")");
+        this.uploadIndexEntry = null;
+        sent(previous.url());
+        return true;
+    }
+
+    private boolean isStillAvailable(
+            final Account account, final HttpUrl url, final long expectedSize)
+            throws IOException {
+        final OkHttpClient client = mHttpConnectionManager.buildHttpClient(url, account, false);
+        final Request request =
+                new Request.Builder()
+                        .url(URL.stripFragment(url))
+                        .addHeader("Accept-Encoding", "identity")
+                        .head()
+                        .build();
+        this.mostRecentCall = client.newCall(request);
+        try (final Response response = this.mostRecentCall.execute()) {
+            final Long size =
+                    Longs.tryParse(Strings.nullToEmpty(response.header("Content-Length")));
+            return response.isSuccessful() && size != null && size == expectedSize;
+        }
+    }
+
+    private void requestSlot(final String mime) {
+        final Account account = message.getConversation().getAccount();
+        final var connection = account.getXmppConnection();
+        if (cancelled) {
+            fail(Message.ERROR_MESSAGE_CANCELLED);
+            return;
+        }
         this.slotFuture = connection.getManager(HttpUploadManager.class).request(file, mime);
         Futures.addCallback(
                 this.slotFuture,
@@ -157,8 +261,34 @@ public class HttpUploadConnection
                     }
                 },
                 MoreExecutors.directExecutor());
-        message.setTransferable(this);
-        mXmppConnectionService.markMessage(message, Message.STATUS_UNSEND);
+    }
+
+    private void sent(final String get) {
+        mXmppConnectionService.getFileBackend().updateFileParams(message, get);
+        mXmppConnectionService.updateMessage(message);
+        mXmppConnectionService.getFileBackend().updateMediaScanner(file);
+        finish();
+        if (!message.isPrivateMessage()) {
+            message.setCounterpart(message.getConversation().getAddress().asBareJid());
+        }
+        mXmppConnectionService.resendMessage(message, delayed);
+    }
+
+    private void remember(final String get) {
+        final var entry = this.uploadIndexEntry;
+        if (entry == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        mXmppConnectionService.databaseBackend.storeUpload(
+                new UploadIndex.Entry(
+                        entry.account(),
+                        entry.scope(),
+                        entry.hash(),
+                        get,
+                        UploadIndex.expires(now, slot.headers.getDate("Expires")),
+                        0),
+                now);
     }
 
     private void upload() {
@@ -194,15 +324,8 @@ public class HttpUploadConnection
                             } else {
                                 get = slot.get.toString();
                             }
-                            mXmppConnectionService.getFileBackend().updateFileParams(message, get);
-                            mXmppConnectionService.updateMessage(message);
-                            mXmppConnectionService.getFileBackend().updateMediaScanner(file);
-                            finish();
-                            if (!message.isPrivateMessage()) {
-                                message.setCounterpart(
-                                        message.getConversation().getAddress().asBareJid());
-                            }
-                            mXmppConnectionService.resendMessage(message, delayed);
+                            remember(get);
+                            sent(get);
                         } else {
                             Log.d(
                                     Config.LOGTAG,
@@ -220,6 +343,6 @@ public class HttpUploadConnection
     @Override
     public void onProgress(final long progress) {
         this.transmitted = progress;
-        mHttpConnectionManager.updateConversationUi(false);
+        mHttpConnectionManager.updateConversationUi(message, false);
     }
 }
@@ -0,0 +1,100 @@
+package eu.siacs.conversations.http;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import androidx.annotation.Nullable;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.entities.Message;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Where files have been uploaded to before, by their SHA-256, so that sending the same file again
+ * (forwarding it, sharing it into several chats) can reuse the previous upload.
+ *
+ * <p>Unencrypted uploads can be reused by any conversation of the account; the URL is all there
+ * is to it. The key of an encrypted upload must not reach anyone who did not already receive it,
+ * and the ciphertext on the server can not be re-keyed without uploading it again, so encrypted
+ * uploads are only reused within the conversation they were sent to. Entries expire after {@link
+ * Config#HTTP_UPLOAD_REUSE_MAX_AGE} or when the server said the file expires, whatever comes
+ * first; a reuse is still preceded by a HEAD request since servers may purge files earlier.
+ */
+public final class UploadIndex {
+
+    public static final String TABLENAME = "upload_index";
+
+    public static final String ACCOUNT = "accountUuid";
+    public static final String SCOPE = "scope";
+    public static final String HASH = "hash";
+    public static final String URL = "url";
+    public static final String EXPIRES = "expires";
+    public static final String HITS = "hits";
+
+    private static final String SCOPE_PLAIN = "plain";
+    private static final String SCOPE_AESGCM = "aesgcm:";
+
+    private UploadIndex() {
+        throw new IllegalStateException("Do not instantiate me");
+    }
+
+    /**
+     * The scope in which an upload of the file attached to the message may be reused, or null if
+     * it may not be reused at all (OpenPGP encrypts for the recipients of each message).
+     */
+    @Nullable
+    public static String scope(final Message message) {
+        final int encryption = message.getEncryption();
+        if (encryption == Message.ENCRYPTION_PGP || encryption == Message.ENCRYPTION_DECRYPTED) {
+            return null;
+        }
+        if (Config.ENCRYPT_ON_HTTP_UPLOADED || encryption == Message.ENCRYPTION_AXOLOTL) {
+            if (message.isPrivateMessage()) {
+                // not everyone in the conversation has seen the key
+                return null;
+            }
+            return SCOPE_AESGCM + message.getConversation().getUuid();
+        }
+        return SCOPE_PLAIN;
+    }
+
+    public static String hash(final File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * When an upload made now stops being reusable, taking into account an {@code Expires} header
+     * the server might have sent along with the slot.
+     */
+    public static long expires(final long now, @Nullable final Date serverExpiry) {
+        final long maxAge = now + Config.HTTP_UPLOAD_REUSE_MAX_AGE;
+        return serverExpiry == null ? maxAge : Math.min(maxAge, serverExpiry.getTime());
+    }
+
+    public record Entry(
+            String account, String scope, String hash, String url, long expires, int hits) {
+
+        public static Entry fromCursor(final Cursor cursor) {
+            return new Entry(
+                    cursor.getString(cursor.getColumnIndexOrThrow(ACCOUNT)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(SCOPE)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(HASH)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(URL)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(EXPIRES)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(HITS)));
+        }
+
+        public ContentValues getContentValues() {
+            final ContentValues contentValues = new ContentValues();
+            contentValues.put(ACCOUNT, account);
+            contentValues.put(SCOPE, scope);
+            contentValues.put(HASH, hash);
+            contentValues.put(URL, url);
+            contentValues.put(EXPIRES, expires);
+            contentValues.put(HITS, hits);
+            return contentValues;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import eu.siacs.conversations.entities.Reaction;
 import eu.siacs.conversations.entities.ReadByMarker;
 import eu.siacs.conversations.entities.RtpSessionStatus;
 import eu.siacs.conversations.http.HttpConnectionManager;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.utils.CryptoHelper;
 import eu.siacs.conversations.xml.Element;
@@ -567,8 +568,9 @@ public class MessageParser extends AbstractParser
                                 && previouslySent.getServerMsgId() == null
                                 && serverMsgId != null) {
                             previouslySent.setServerMsgId(serverMsgId);
-                            mXmppConnectionService.databaseBackend.updateMessage(
-                                    previouslySent, false);
+                            mXmppConnectionService
+                                    .getMessageWriter()
+                                    .updateMessage(previouslySent, false, batchWrites(query));
                             Log.d(
                                     Config.LOGTAG,
                                     account.getJid().asBareJid()
@@ -737,8 +739,9 @@ public class MessageParser extends AbstractParser
                             && duplicate.getServerMsgId() == null
                             && message.getServerMsgId() != null) {
                         duplicate.setServerMsgId(message.getServerMsgId());
-                        if (mXmppConnectionService.databaseBackend.updateMessage(
-                                duplicate, false)) {
+                        if (mXmppConnectionService
+                                .getMessageWriter()
+                                .updateMessage(duplicate, false, batchWrites(query))) {
                             serverMsgIdUpdated = true;
                         } else {
                             serverMsgIdUpdated = false;
@@ -803,7 +806,9 @@ public class MessageParser extends AbstractParser
                 getManager(DeliveryReceiptManager.class).processRequest(packet, query);
             }
 
-            mXmppConnectionService.databaseBackend.createMessage(message);
+            mXmppConnectionService.getMessageWriter().createMessage(message, batchWrites(query));
+            mXmppConnectionService.updateConversationUi(
+                    message, ConversationUpdate.Kind.MESSAGE_ADDED);
             final HttpConnectionManager manager =
                     this.mXmppConnectionService.getHttpConnectionManager();
             if (message.trusted()
@@ -873,7 +878,8 @@ public class MessageParser extends AbstractParser
                                         .setSubject(subject.content)) {
                             mXmppConnectionService.updateConversation(conversation);
                         }
-                        mXmppConnectionService.updateConversationUi();
+                        mXmppConnectionService.updateConversationUi(
+                                conversation, ConversationUpdate.Kind.CONVERSATION);
                         return;
                     }
                 }
@@ -1003,7 +1009,9 @@ public class MessageParser extends AbstractParser
                     message.setTime(timestamp);
                     message.setBody(new RtpSessionStatus(false, 0).toString());
                     c.add(message);
-                    mXmppConnectionService.databaseBackend.createMessage(message);
+                    mXmppConnectionService
+                            .getMessageWriter()
+                            .createMessage(message, batchWrites(query));
                 }
             } else if (jingleMessage instanceof Proceed proceed) {
                 // status needs to be flipped to find the original propose
@@ -1061,12 +1069,20 @@ public class MessageParser extends AbstractParser
                         c.add(message);
                     }
                     query.incrementActualMessageCount();
-                    mXmppConnectionService.databaseBackend.createMessage(message);
+                    mXmppConnectionService
+                            .getMessageWriter()
+                            .createMessage(message, batchWrites(query));
                 }
             }
         }
     }
 
+    private boolean batchWrites(final MessageArchiveManager.Query query) {
+        return (query != null && query.isCatchup())
+                || connection.isWaitingForSmCatchup()
+                || getManager(MessageArchiveManager.class).inCatchup();
+    }
+
     private void processDisplayed(
             final Displayed displayed,
             final im.conversations.android.xmpp.model.stanza.Message packet,
@@ -1172,6 +1188,7 @@ public class MessageParser extends AbstractParser
                 if (inMemoryMessage != null) {
                     message = inMemoryMessage;
                 } else {
+                    mXmppConnectionService.getMessageWriter().flush();
                     message =
                             mXmppConnectionService.databaseBackend.getMessageWithServerMsgId(
                                     conversation, reactingTo);
@@ -1199,6 +1216,7 @@ public class MessageParser extends AbstractParser
             if (inMemoryMessage != null) {
                 message = inMemoryMessage;
             } else {
+                mXmppConnectionService.getMessageWriter().flush();
                 message =
                         mXmppConnectionService.databaseBackend.getMessageWithUuidOrRemoteId(
                                 conversation, reactingTo);
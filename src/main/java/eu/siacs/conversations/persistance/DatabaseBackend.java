@@ -4,17 +4,26 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.CancellationSignal;
 import android.os.Environment;
 import android.os.SystemClock;
 import android.util.Base64;
 import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import eu.siacs.conversations.Config;
 import eu.siacs.conversations.crypto.axolotl.AxolotlService;
 import eu.siacs.conversations.crypto.axolotl.FingerprintStatus;
@@ -24,8 +33,10 @@ import eu.siacs.conversations.entities.Contact;
 import eu.siacs.conversations.entities.Conversation;
 import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.entities.PresenceTemplate;
+import eu.siacs.conversations.http.UploadIndex;
 import eu.siacs.conversations.services.QuickConversationsService;
 import eu.siacs.conversations.services.ShortcutService;
+import eu.siacs.conversations.utils.BackupChain;
 import eu.siacs.conversations.utils.CryptoHelper;
 import eu.siacs.conversations.utils.CursorUtils;
 import eu.siacs.conversations.utils.FtsUtils;
@@ -36,6 +47,7 @@ import eu.siacs.conversations.xmpp.mam.MamReference;
 import im.conversations.android.xml.XmlElementReader;
 import im.conversations.android.xmpp.EntityCapabilities;
 import im.conversations.android.xmpp.EntityCapabilities2;
+import im.conversations.android.xmpp.model.Hash;
 import im.conversations.android.xmpp.model.disco.info.InfoQuery;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -51,9 +63,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import org.json.JSONObject;
 import org.jxmpp.jid.parts.Localpart;
 import org.jxmpp.stringprep.XmppStringprepException;
@@ -62,13 +78,22 @@ import org.whispersystems.libsignal.IdentityKeyPair;
 import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.SignalProtocolAddress;
 import org.whispersystems.libsignal.state.PreKeyRecord;
-import org.whispersystems.libsignal.state.SessionRecord;
 import org.whispersystems.libsignal.state.SignedPreKeyRecord;
 
 public class DatabaseBackend extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "history";
-    private static final int DATABASE_VERSION = 54;
+    private static final int DATABASE_VERSION = 60;
+
+    // number of conversations per compound select; keeps well below SQLITE_MAX_VARIABLE_NUMBER
+    private static final int RESTORE_CHUNK_SIZE = 100;
+
+    // distinct disco#info results kept parsed in memory; each is keyed by both its hashes
+    private static final int CAPS_CACHE_SIZE = 256;
+
+    public static final String SEARCH_ROWID = "search_rowid";
+    public static final String SEARCH_SNIPPET = "search_snippet";
+    private static final int SEARCH_SNIPPET_TOKENS = 24;
 
     private static boolean requiresMessageIndexRebuild = false;
     private static DatabaseBackend instance = null;
@@ -190,7 +215,9 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                     + SQLiteAxolotlStore.DEVICE_ID
                     + " INTEGER, "
                     + SQLiteAxolotlStore.KEY
-                    + " TEXT, FOREIGN KEY("
+                    + " TEXT, "
+                    + SQLiteAxolotlStore.RECORD
+                    + " BLOB, FOREIGN KEY("
                     + SQLiteAxolotlStore.ACCOUNT
                     + ") REFERENCES "
                     + Account.TABLENAME
@@ -276,6 +303,96 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                     + ") ON CONFLICT REPLACE"
                     + ");";
 
+    // one row per message that was inserted, updated or deleted since the oldest backup watermark
+    static final String MESSAGE_CHANGES_TABLENAME = "message_changes";
+    private static final String CREATE_MESSAGE_CHANGES_TABLE =
+            "CREATE TABLE "
+                    + MESSAGE_CHANGES_TABLENAME
+                    + " (seq INTEGER PRIMARY KEY AUTOINCREMENT, uuid TEXT NOT NULL UNIQUE,"
+                    + " conversationUuid TEXT)";
+    // a change moves the message to the end of the log. Deleting first instead of relying on
+    // INSERT OR REPLACE keeps the outer statement's conflict clause from overriding ours. Nothing
+    // is logged unless there is a backup chain to continue
+    private static final String WHEN_BACKUP_CHAIN_EXISTS =
+            " WHEN EXISTS (SELECT 1 FROM " + BackupChain.TABLENAME + ")";
+    private static final String CREATE_MESSAGE_CHANGES_INSERT_TRIGGER =
+            "CREATE TRIGGER message_changes_insert AFTER INSERT ON "
+                    + Message.TABLENAME
+                    + WHEN_BACKUP_CHAIN_EXISTS
+                    + " BEGIN DELETE FROM message_changes WHERE uuid=NEW.uuid;"
+                    + " INSERT INTO message_changes(uuid,conversationUuid)"
+                    + " VALUES(NEW.uuid,NEW.conversationUuid); END;";
+    private static final String CREATE_MESSAGE_CHANGES_UPDATE_TRIGGER =
+            "CREATE TRIGGER message_changes_update AFTER UPDATE ON "
+                    + Message.TABLENAME
+                    + WHEN_BACKUP_CHAIN_EXISTS
+                    + " BEGIN DELETE FROM message_changes WHERE uuid IN (OLD.uuid,NEW.uuid);"
+                    + " INSERT INTO message_changes(uuid,conversationUuid)"
+                    + " SELECT OLD.uuid,OLD.conversationUuid WHERE OLD.uuid IS NOT NEW.uuid;"
+                    + " INSERT INTO message_changes(uuid,conversationUuid)"
+                    + " VALUES(NEW.uuid,NEW.conversationUuid); END;";
+    private static final String CREATE_MESSAGE_CHANGES_DELETE_TRIGGER =
+            "CREATE TRIGGER message_changes_delete AFTER DELETE ON "
+                    + Message.TABLENAME
+                    + WHEN_BACKUP_CHAIN_EXISTS
+                    + " BEGIN DELETE FROM message_changes WHERE uuid=OLD.uuid;"
+                    + " INSERT INTO message_changes(uuid,conversationUuid)"
+                    + " VALUES(OLD.uuid,OLD.conversationUuid); END;";
+
+    private static final String CREATE_BACKUP_CHAINS_TABLE =
+            "CREATE TABLE "
+                    + BackupChain.TABLENAME
+                    + "("
+                    + BackupChain.ACCOUNT
+                    + " TEXT PRIMARY KEY,"
+                    + BackupChain.LOCATION
+                    + " TEXT,"
+                    + BackupChain.CHAIN
+                    + " NUMBER,"
+                    + BackupChain.FILES
+                    + " TEXT,"
+                    + BackupChain.WATERMARK
+                    + " NUMBER,"
+                    + BackupChain.BASE_POSITION
+                    + " NUMBER,"
+                    + BackupChain.PASSWORD_DIGEST
+                    + " TEXT, FOREIGN KEY("
+                    + BackupChain.ACCOUNT
+                    + ") REFERENCES "
+                    + Account.TABLENAME
+                    + "("
+                    + Account.UUID
+                    + ") ON DELETE CASCADE);";
+
+    private static final String CREATE_UPLOAD_INDEX_TABLE =
+            "CREATE TABLE "
+                    + UploadIndex.TABLENAME
+                    + "("
+                    + UploadIndex.ACCOUNT
+                    + " TEXT,"
+                    + UploadIndex.SCOPE
+                    + " TEXT,"
+                    + UploadIndex.HASH
+                    + " TEXT,"
+                    + UploadIndex.URL
+                    + " TEXT,"
+                    + UploadIndex.EXPIRES
+                    + " NUMBER,"
+                    + UploadIndex.HITS
+                    + " NUMBER, FOREIGN KEY("
+                    + UploadIndex.ACCOUNT
+                    + ") REFERENCES "
+                    + Account.TABLENAME
+                    + "("
+                    + Account.UUID
+                    + ") ON DELETE CASCADE, UNIQUE("
+                    + UploadIndex.ACCOUNT
+                    + ","
+                    + UploadIndex.SCOPE
+                    + ","
+                    + UploadIndex.HASH
+                    + ") ON CONFLICT REPLACE);";
+
     private static final String CREATE_MESSAGE_TIME_INDEX =
             "CREATE INDEX message_time_index ON "
                     + Message.TABLENAME
@@ -288,6 +405,20 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                     + "("
                     + Message.CONVERSATION
                     + ")";
+    private static final String CREATE_MESSAGE_CONVERSATION_TIME_INDEX =
+            "CREATE INDEX message_conversation_time_index ON "
+                    + Message.TABLENAME
+                    + "("
+                    + Message.CONVERSATION
+                    + ","
+                    + Message.TIME_SENT
+                    + ")";
+    private static final String CREATE_CONVERSATION_ACCOUNT_INDEX =
+            "CREATE INDEX conversation_account_index ON "
+                    + Conversation.TABLENAME
+                    + "("
+                    + Conversation.ACCOUNT
+                    + ")";
     private static final String CREATE_MESSAGE_DELETED_INDEX =
             "CREATE INDEX message_deleted_index ON "
                     + Message.TABLENAME
@@ -303,11 +434,37 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     private static final String CREATE_MESSAGE_TYPE_INDEX =
             "CREATE INDEX message_type_index ON " + Message.TABLENAME + "(" + Message.TYPE + ")";
 
+    // hot queries; kept as constants so DatabaseQueryPlanTest can check their query plans
+    static final String QUERY_MESSAGES =
+            "SELECT * FROM messages WHERE conversationUuid=? ORDER BY timeSent DESC";
+    static final String QUERY_MESSAGES_BEFORE =
+            "SELECT * FROM messages WHERE conversationUuid=? AND timeSent<? ORDER BY timeSent DESC";
+    static final String QUERY_LAST_MESSAGE_RECEIVED =
+            "select messages.timeSent,messages.serverMsgId from accounts join conversations on"
+                + " accounts.uuid=conversations.accountUuid join messages on"
+                + " conversations.uuid=messages.conversationUuid where accounts.uuid=? and"
+                + " (messages.status=0 or messages.carbon=1 or messages.serverMsgId not null) and"
+                + " (conversations.mode=0 or (messages.serverMsgId not null and messages.type=4))"
+                + " order by messages.timesent desc limit 1";
+    static final String QUERY_LAST_TIME_FINGERPRINT_USED =
+            "select messages.timeSent from accounts join conversations on"
+                    + " accounts.uuid=conversations.accountUuid join messages on"
+                    + " conversations.uuid=messages.conversationUuid where accounts.uuid=? and"
+                    + " messages.axolotl_fingerprint=? order by messages.timesent desc limit 1";
+    static final String QUERY_CONVERSATION_ATTRIBUTES =
+            "SELECT attributes FROM conversations WHERE accountUuid=?";
+    static final String QUERY_MESSAGE_WITH_SERVER_MSG_ID =
+            "select * from messages where conversationUuid=? and serverMsgId=? LIMIT 1";
+    static final String QUERY_MESSAGE_WITH_UUID_OR_REMOTE_ID =
+            "select * from messages where conversationUuid=? and (uuid=? OR remoteMsgId=?) LIMIT 1";
+
+    // the platform SQLite has no FTS5. Every search term is a prefix query; the prefix indexes
+    // spare those a scan over all terms of the index
     private static final String CREATE_MESSAGE_INDEX_TABLE =
             "CREATE VIRTUAL TABLE messages_index USING fts4"
                     + " (uuid,body,notindexed=\"uuid\",content=\""
                     + Message.TABLENAME
-                    + "\",tokenize='unicode61')";
+                    + "\",tokenize='unicode61',prefix=\"2,3\")";
     private static final String CREATE_MESSAGE_INSERT_TRIGGER =
             "CREATE TRIGGER after_message_insert AFTER INSERT ON "
                     + Message.TABLENAME
@@ -325,6 +482,13 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     private static final String COPY_PREEXISTING_ENTRIES =
             "INSERT INTO messages_index(messages_index) VALUES('rebuild');";
 
+    // parsed caps_cache rows, shared by all accounts. Empty values record hashes the table does not
+    // know, so that a MUC join does not query the same unknown hash once per occupant
+    private final LruCache<EntityCapabilities.Hash, Optional<InfoQuery>> capsCache =
+            new LruCache<>(CAPS_CACHE_SIZE * 2);
+    // bumped on every insert; a miss that raced an insert must not be cached as negative
+    private final AtomicLong capsCacheGeneration = new AtomicLong();
+
     private DatabaseBackend(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -490,7 +654,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                         + Conversation.UUID
                         + ") ON DELETE CASCADE);");
         db.execSQL(CREATE_MESSAGE_TIME_INDEX);
-        db.execSQL(CREATE_MESSAGE_CONVERSATION_INDEX);
+        db.execSQL(CREATE_MESSAGE_CONVERSATION_TIME_INDEX);
+        db.execSQL(CREATE_CONVERSATION_ACCOUNT_INDEX);
         db.execSQL(CREATE_MESSAGE_DELETED_INDEX);
         db.execSQL(CREATE_MESSAGE_RELATIVE_FILE_PATH_INDEX);
         db.execSQL(CREATE_MESSAGE_TYPE_INDEX);
@@ -508,6 +673,12 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         db.execSQL(CREATE_CAPS_CACHE_TABLE);
         db.execSQL(CREATE_CAPS_CACHE_INDEX_CAPS);
         db.execSQL(CREATE_CAPS_CACHE_INDEX_CAPS2);
+        db.execSQL(CREATE_BACKUP_CHAINS_TABLE);
+        db.execSQL(CREATE_MESSAGE_CHANGES_TABLE);
+        db.execSQL(CREATE_MESSAGE_CHANGES_INSERT_TRIGGER);
+        db.execSQL(CREATE_MESSAGE_CHANGES_UPDATE_TRIGGER);
+        db.execSQL(CREATE_MESSAGE_CHANGES_DELETE_TRIGGER);
+        db.execSQL(CREATE_UPLOAD_INDEX_TABLE);
     }
 
     @Override
@@ -1085,6 +1256,64 @@ public class DatabaseBackend extends SQLiteOpenHelper {
             db.execSQL(CREATE_CAPS_CACHE_INDEX_CAPS);
             db.execSQL(CREATE_CAPS_CACHE_INDEX_CAPS2);
         }
+        if (oldVersion < 55 && newVersion >= 55) {
+            // the composite index serves every lookup the single column index did
+            db.execSQL("DROP INDEX IF EXISTS message_conversation_index");
+            db.execSQL(CREATE_MESSAGE_CONVERSATION_TIME_INDEX);
+            db.execSQL(CREATE_CONVERSATION_ACCOUNT_INDEX);
+        }
+        if (oldVersion < 56 && newVersion >= 56) {
+            // existing messages are not logged; the first incremental backup is a base anyway
+            db.execSQL(CREATE_BACKUP_CHAINS_TABLE);
+            db.execSQL(CREATE_MESSAGE_CHANGES_TABLE);
+            db.execSQL(CREATE_MESSAGE_CHANGES_INSERT_TRIGGER);
+            db.execSQL(CREATE_MESSAGE_CHANGES_UPDATE_TRIGGER);
+            db.execSQL(CREATE_MESSAGE_CHANGES_DELETE_TRIGGER);
+        }
+        if (oldVersion < 57 && newVersion >= 57) {
+            // existing rows keep their Base64 key until the session is stored the next time
+            db.execSQL(
+                    "ALTER TABLE "
+                            + SQLiteAxolotlStore.SESSION_TABLENAME
+                            + " ADD COLUMN "
+                            + SQLiteAxolotlStore.RECORD
+                            + " BLOB");
+        }
+        if (oldVersion < 58 && newVersion >= 58) {
+            db.beginTransaction();
+            try {
+                db.execSQL("DROP TRIGGER IF EXISTS after_message_insert;");
+                db.execSQL("DROP TRIGGER IF EXISTS after_message_update;");
+                db.execSQL("DROP TRIGGER IF EXISTS after_message_delete;");
+                db.execSQL("DROP TABLE IF EXISTS messages_index;");
+                db.execSQL(CREATE_MESSAGE_INDEX_TABLE);
+                db.execSQL(CREATE_MESSAGE_INSERT_TRIGGER);
+                db.execSQL(CREATE_MESSAGE_UPDATE_TRIGGER);
+                db.execSQL(CREATE_MESSAGE_DELETE_TRIGGER);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            requiresMessageIndexRebuild = true;
+        }
+        if (oldVersion < 59 && newVersion >= 59) {
+            db.execSQL(CREATE_UPLOAD_INDEX_TABLE);
+        }
+        if (oldVersion < 60 && newVersion >= 60) {
+            // only log message changes while there is a backup chain
+            db.beginTransaction();
+            try {
+                db.execSQL("DROP TRIGGER IF EXISTS message_changes_insert;");
+                db.execSQL("DROP TRIGGER IF EXISTS message_changes_update;");
+                db.execSQL("DROP TRIGGER IF EXISTS message_changes_delete;");
+                db.execSQL(CREATE_MESSAGE_CHANGES_INSERT_TRIGGER);
+                db.execSQL(CREATE_MESSAGE_CHANGES_UPDATE_TRIGGER);
+                db.execSQL(CREATE_MESSAGE_CHANGES_DELETE_TRIGGER);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
     }
 
     private void canonicalizeJids(SQLiteDatabase db) {
@@ -1218,6 +1447,26 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         db.insert(Message.TABLENAME, null, message.getContentValues());
     }
 
+    public void writeMessages(final Map<String, MessageWriter.PendingWrite> writes) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (final var entry : writes.entrySet()) {
+                final var write = entry.getValue();
+                if (write.insert) {
+                    db.insert(Message.TABLENAME, null, write.contentValues);
+                } else {
+                    final String[] args = {entry.getKey()};
+                    db.update(
+                            Message.TABLENAME, write.contentValues, Message.UUID + "=?", args);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public void createAccount(Account account) {
         SQLiteDatabase db = this.getWritableDatabase();
         db.insert(Account.TABLENAME, null, account.getContentValues());
@@ -1230,6 +1479,159 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         db.insert(RESOLVER_RESULTS_TABLENAME, null, contentValues);
     }
 
+    public BackupChain findBackupChain(final String account) {
+        final SQLiteDatabase db = this.getReadableDatabase();
+        try (final Cursor cursor =
+                db.query(
+                        BackupChain.TABLENAME,
+                        null,
+                        BackupChain.ACCOUNT + "=?",
+                        new String[] {account},
+                        null,
+                        null,
+                        null)) {
+            if (cursor.moveToFirst()) {
+                return BackupChain.fromCursor(cursor);
+            }
+        }
+        return null;
+    }
+
+    public void saveBackupChain(final BackupChain chain) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.insertWithOnConflict(
+                BackupChain.TABLENAME,
+                null,
+                chain.getContentValues(),
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /** Returns a previous upload of the file with the given hash that has not expired yet. */
+    @Nullable
+    public UploadIndex.Entry findUpload(
+            final String account, final String scope, final String hash, final long now) {
+        final SQLiteDatabase db = this.getReadableDatabase();
+        try (final Cursor cursor =
+                db.query(
+                        UploadIndex.TABLENAME,
+                        null,
+                        UploadIndex.ACCOUNT
+                                + "=? AND "
+                                + UploadIndex.SCOPE
+                                + "=? AND "
+                                + UploadIndex.HASH
+                                + "=? AND "
+                                + UploadIndex.EXPIRES
+                                + ">?",
+                        new String[] {account, scope, hash, String.valueOf(now)},
+                        null,
+                        null,
+                        null)) {
+            if (cursor.moveToFirst()) {
+                return UploadIndex.Entry.fromCursor(cursor);
+            }
+        }
+        return null;
+    }
+
+    /** Remembers an upload and forgets the ones that have expired in the meantime. */
+    public void storeUpload(final UploadIndex.Entry entry, final long now) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(
+                    UploadIndex.TABLENAME,
+                    UploadIndex.EXPIRES + "<=?",
+                    new String[] {String.valueOf(now)});
+            db.insert(UploadIndex.TABLENAME, null, entry.getContentValues());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void countUploadReuse(final UploadIndex.Entry entry) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL(
+                "UPDATE "
+                        + UploadIndex.TABLENAME
+                        + " SET "
+                        + UploadIndex.HITS
+                        + "="
+                        + UploadIndex.HITS
+                        + "+1 WHERE "
+                        + UploadIndex.ACCOUNT
+                        + "=? AND "
+                        + UploadIndex.SCOPE
+                        + "=? AND "
+                        + UploadIndex.HASH
+                        + "=?",
+                new String[] {entry.account(), entry.scope(), entry.hash()});
+    }
+
+    public void deleteUpload(final UploadIndex.Entry entry) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(
+                UploadIndex.TABLENAME,
+                UploadIndex.ACCOUNT
+                        + "=? AND "
+                        + UploadIndex.SCOPE
+                        + "=? AND "
+                        + UploadIndex.HASH
+                        + "=?",
+                new String[] {entry.account(), entry.scope(), entry.hash()});
+    }
+
+    /** Returns the sequence number of the most recent message change. */
+    public long getLastMessageChange() {
+        final SQLiteDatabase db = this.getReadableDatabase();
+        try (final Cursor cursor =
+                db.rawQuery("SELECT max(seq) FROM " + MESSAGE_CHANGES_TABLENAME, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Drops message changes that every backup chain already contains. A chain is saved before its
+     * base is exported, so changes made while the base is being written are kept for the first
+     * delta. Without any chain the next incremental backup is a base, so none of the changes are
+     * needed. At most {@link
+     * Config#MAX_MESSAGE_CHANGES} are kept; chains that would need older changes than that are
+     * dropped as well and start over with a new base.
+     */
+    public int pruneMessageChanges() {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final long cutoff = getLastMessageChange() - Config.MAX_MESSAGE_CHANGES;
+            if (cutoff > 0) {
+                final int chains =
+                        db.delete(
+                                BackupChain.TABLENAME,
+                                BackupChain.WATERMARK + "<?",
+                                new String[] {String.valueOf(cutoff)});
+                if (chains > 0) {
+                    Log.d(Config.LOGTAG, "dropped " + chains + " backup chains that fell behind");
+                }
+            }
+            final int pruned =
+                    db.delete(
+                            MESSAGE_CHANGES_TABLENAME,
+                            "seq<=coalesce((SELECT min("
+                                    + BackupChain.WATERMARK
+                                    + ") FROM "
+                                    + BackupChain.TABLENAME
+                                    + "),(SELECT max(seq) FROM "
+                                    + MESSAGE_CHANGES_TABLENAME
+                                    + "))",
+                            null);
+            db.setTransactionSuccessful();
+            return pruned;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public synchronized Resolver.Result findResolverResult(String domain) {
         SQLiteDatabase db = this.getReadableDatabase();
         String where = Resolver.Result.DOMAIN + "=?";
@@ -1329,28 +1731,10 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         Cursor cursor;
         if (timestamp == -1) {
             String[] selectionArgs = {conversation.getUuid()};
-            cursor =
-                    db.query(
-                            Message.TABLENAME,
-                            null,
-                            Message.CONVERSATION + "=?",
-                            selectionArgs,
-                            null,
-                            null,
-                            Message.TIME_SENT + " DESC",
-                            String.valueOf(limit));
+            cursor = db.rawQuery(QUERY_MESSAGES + " LIMIT " + limit, selectionArgs);
         } else {
             String[] selectionArgs = {conversation.getUuid(), Long.toString(timestamp)};
-            cursor =
-                    db.query(
-                            Message.TABLENAME,
-                            null,
-                            Message.CONVERSATION + "=? and " + Message.TIME_SENT + "<?",
-                            selectionArgs,
-                            null,
-                            null,
-                            Message.TIME_SENT + " DESC",
-                            String.valueOf(limit));
+            cursor = db.rawQuery(QUERY_MESSAGES_BEFORE + " LIMIT " + limit, selectionArgs);
         }
         CursorUtils.upgradeCursorWindowSize(cursor);
         while (cursor.moveToNext()) {
@@ -1364,10 +1748,122 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         return list;
     }
 
-    public Cursor getMessageSearchCursor(final List<String> term, final String uuid) {
+    /**
+     * Loads the newest {@code limit} messages of every conversation with one compound query per
+     * {@link #RESTORE_CHUNK_SIZE} conversations instead of one query per conversation. Each branch
+     * of the compound select is an index-backed {@code ORDER BY ... LIMIT} so large conversations
+     * are not fully sorted (as a {@code ROW_NUMBER()} window over all their messages would). Rows
+     * are copied out of the cursor on the calling thread and hydrated into {@link Message}s in
+     * parallel.
+     */
+    public Map<Conversation, List<Message>> getMessages(
+            final List<Conversation> conversations, final int limit) {
+        final SQLiteDatabase db = this.getReadableDatabase();
+        final Stopwatch queryStopwatch = Stopwatch.createStarted();
+        final Map<String, MatrixCursor> rows = new HashMap<>();
+        for (final List<Conversation> chunk : Lists.partition(conversations, RESTORE_CHUNK_SIZE)) {
+            final String[] selectionArgs = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); ++i) {
+                selectionArgs[i] = chunk.get(i).getUuid();
+            }
+            final String sql = restoreMessagesQuery(chunk.size(), limit);
+            try (final Cursor cursor = db.rawQuery(sql, selectionArgs)) {
+                CursorUtils.upgradeCursorWindowSize(cursor);
+                final String[] columns = cursor.getColumnNames();
+                final int conversationColumn = cursor.getColumnIndexOrThrow(Message.CONVERSATION);
+                while (cursor.moveToNext()) {
+                    final String conversationUuid = cursor.getString(conversationColumn);
+                    final MatrixCursor target =
+                            rows.computeIfAbsent(conversationUuid, k -> new MatrixCursor(columns));
+                    target.addRow(CursorUtils.copyRow(cursor));
+                }
+            }
+        }
+        queryStopwatch.stop();
+        final Stopwatch hydrationStopwatch = Stopwatch.createStarted();
+        final int threads =
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        final ListeningExecutorService executor =
+                MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+        final ImmutableMap.Builder<Conversation, ListenableFuture<List<Message>>> futures =
+                new ImmutableMap.Builder<>();
+        for (final Conversation conversation : conversations) {
+            final MatrixCursor cursor = rows.get(conversation.getUuid());
+            if (cursor == null) {
+                continue;
+            }
+            futures.put(conversation, executor.submit(() -> hydrate(cursor, conversation)));
+        }
+        final ImmutableMap.Builder<Conversation, List<Message>> messages =
+                new ImmutableMap.Builder<>();
+        try {
+            for (final var entry : futures.buildOrThrow().entrySet()) {
+                messages.put(entry.getKey(), Futures.getUnchecked(entry.getValue()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Log.d(
+                Config.LOGTAG,
+                "batch loaded messages of "
+                        + rows.size()
+                        + " conversations. query: "
+                        + queryStopwatch
+                        + ", hydration: "
+                        + hydrationStopwatch.stop()
+                        + " ("
+                        + threads
+                        + " threads)");
+        return messages.buildOrThrow();
+    }
+
+    static String restoreMessagesQuery(final int conversations, final int limit) {
+        final StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < conversations; ++i) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT * FROM (")
+                    .append(QUERY_MESSAGES)
+                    .append(" LIMIT ")
+                    .append(limit)
+                    .append(")");
+        }
+        return sql.toString();
+    }
+
+    private static List<Message> hydrate(final Cursor cursor, final Conversation conversation) {
+        final ArrayList<Message> list = new ArrayList<>(cursor.getCount());
+        try (cursor) {
+            while (cursor.moveToNext()) {
+                try {
+                    list.add(0, Message.fromCursor(cursor, conversation));
+                } catch (final Exception e) {
+                    Log.e(Config.LOGTAG, "unable to restore message", e);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Queries one page of search results, newest first. The rows carry the {@link #SEARCH_ROWID}
+     * to continue after and, as {@link #SEARCH_SNIPPET}, an excerpt of the body around the matches.
+     *
+     * @param beforeTime the time sent of the last row of the previous page or {@link
+     *     Long#MAX_VALUE} for the first page
+     * @param beforeRowId the {@link #SEARCH_ROWID} of the last row of the previous page
+     */
+    public Cursor getMessageSearchCursor(
+            final List<String> term,
+            final String uuid,
+            final long beforeTime,
+            final long beforeRowId,
+            final int limit,
+            final CancellationSignal cancellationSignal) {
         final SQLiteDatabase db = this.getReadableDatabase();
         final StringBuilder SQL = new StringBuilder();
-        final String[] selectionArgs;
+        final List<String> selectionArgs = new ArrayList<>();
         SQL.append(
                 "SELECT "
                         + Message.TABLENAME
@@ -1383,6 +1879,14 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                         + Conversation.TABLENAME
                         + "."
                         + Conversation.MODE
+                        + ","
+                        + Message.TABLENAME
+                        + ".rowid AS "
+                        + SEARCH_ROWID
+                        + ",snippet(messages_index,'','','…',1,"
+                        + SEARCH_SNIPPET_TOKENS
+                        + ") AS "
+                        + SEARCH_SNIPPET
                         + " FROM "
                         + Message.TABLENAME
                         + " JOIN "
@@ -1412,15 +1916,40 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                         + ","
                         + Message.TYPE_PRIVATE
                         + ") AND messages_index.body MATCH ?");
-        if (uuid == null) {
-            selectionArgs = new String[] {FtsUtils.toMatchString(term)};
-        } else {
-            selectionArgs = new String[] {FtsUtils.toMatchString(term), uuid};
+        selectionArgs.add(FtsUtils.toMatchString(term));
+        if (uuid != null) {
             SQL.append(" AND " + Conversation.TABLENAME + '.' + Conversation.UUID + "=?");
+            selectionArgs.add(uuid);
+        }
+        if (beforeTime != Long.MAX_VALUE) {
+            // keyset pagination; an offset would make SQLite produce and skip all earlier pages
+            SQL.append(
+                    " AND ("
+                            + Message.TABLENAME
+                            + "."
+                            + Message.TIME_SENT
+                            + "<? OR ("
+                            + Message.TABLENAME
+                            + "."
+                            + Message.TIME_SENT
+                            + "=? AND "
+                            + Message.TABLENAME
+                            + ".rowid<?))");
+            selectionArgs.add(String.valueOf(beforeTime));
+            selectionArgs.add(String.valueOf(beforeTime));
+            selectionArgs.add(String.valueOf(beforeRowId));
         }
-        SQL.append(" ORDER BY " + Message.TIME_SENT + " DESC limit " + Config.MAX_SEARCH_RESULTS);
-        Log.d(Config.LOGTAG, "search term: " + FtsUtils.toMatchString(term));
-        return db.rawQuery(SQL.toString(), selectionArgs);
+        SQL.append(
+                " ORDER BY "
+                        + Message.TABLENAME
+                        + "."
+                        + Message.TIME_SENT
+                        + " DESC,"
+                        + Message.TABLENAME
+                        + ".rowid DESC LIMIT "
+                        + limit);
+        return db.rawQuery(
+                SQL.toString(), selectionArgs.toArray(new String[0]), cancellationSignal);
     }
 
     public List<String> markFileAsDeleted(final File file, final boolean internal) {
@@ -1539,10 +2068,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     public Message getMessageWithServerMsgId(
             final Conversation conversation, final String messageId) {
         final var db = this.getReadableDatabase();
-        final String sql =
-                "select * from messages where conversationUuid=? and serverMsgId=? LIMIT 1";
         final String[] args = {conversation.getUuid(), messageId};
-        final Cursor cursor = db.rawQuery(sql, args);
+        final Cursor cursor = db.rawQuery(QUERY_MESSAGE_WITH_SERVER_MSG_ID, args);
         if (cursor == null) {
             return null;
         }
@@ -1559,11 +2086,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     public Message getMessageWithUuidOrRemoteId(
             final Conversation conversation, final String messageId) {
         final var db = this.getReadableDatabase();
-        final String sql =
-                "select * from messages where conversationUuid=? and (uuid=? OR remoteMsgId=?)"
-                        + " LIMIT 1";
         final String[] args = {conversation.getUuid(), messageId, messageId};
-        final Cursor cursor = db.rawQuery(sql, args);
+        final Cursor cursor = db.rawQuery(QUERY_MESSAGE_WITH_UUID_OR_REMOTE_ID, args);
         if (cursor == null) {
             return null;
         }
@@ -1588,9 +2112,34 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         getWritableDatabase()
                 .insertWithOnConflict(
                         "caps_cache", null, contentValues, SQLiteDatabase.CONFLICT_REPLACE);
+        capsCacheGeneration.incrementAndGet();
+        capsCache.put(caps, Optional.of(infoQuery));
+        capsCache.put(caps2, Optional.of(infoQuery));
     }
 
+    /**
+     * Looks up a disco#info result by its caps or caps2 hash. Results are parsed once and then
+     * served from memory; the returned instance is shared and must not be modified.
+     */
     public InfoQuery getInfoQuery(final EntityCapabilities.Hash hash) {
+        if (hash == null) {
+            return null;
+        }
+        final var cached = capsCache.get(hash);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        final long generation = capsCacheGeneration.get();
+        final var infoQuery = readInfoQuery(hash);
+        if (infoQuery != null) {
+            capsCache.put(hash, Optional.of(infoQuery));
+        } else if (generation == capsCacheGeneration.get()) {
+            capsCache.put(hash, Optional.empty());
+        }
+        return infoQuery;
+    }
+
+    private InfoQuery readInfoQuery(final EntityCapabilities.Hash hash) {
         final String selection;
         final String[] args;
         if (hash instanceof EntityCapabilities.EntityCapsHash) {
@@ -1613,23 +2162,78 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                                 null,
                                 null)) {
             if (cursor.moveToFirst()) {
-                final var cached = cursor.getString(0);
-                try {
-                    final var element = XmlElementReader.read(cached);
-                    if (element instanceof InfoQuery infoQuery) {
-                        return infoQuery;
-                    }
-                } catch (final IOException e) {
-                    Log.e(Config.LOGTAG, "could not restore info query from cache", e);
-                    return null;
-                }
+                return parseInfoQuery(cursor.getString(0));
             } else {
                 return null;
             }
         }
+    }
+
+    private static InfoQuery parseInfoQuery(final String cached) {
+        try {
+            final var element = XmlElementReader.read(cached);
+            if (element instanceof InfoQuery infoQuery) {
+                return infoQuery;
+            }
+        } catch (final IOException e) {
+            Log.e(Config.LOGTAG, "could not restore info query from cache", e);
+        }
         return null;
     }
 
+    /** Parses the most recently stored disco#info results into the in-memory caps cache. */
+    public void prewarmCapsCache() {
+        final var stopwatch = Stopwatch.createStarted();
+        int count = 0;
+        try (final Cursor cursor =
+                getReadableDatabase()
+                        .rawQuery(
+                                "SELECT caps,caps2,disco_info FROM caps_cache ORDER BY rowid DESC"
+                                        + " LIMIT "
+                                        + CAPS_CACHE_SIZE,
+                                null)) {
+            while (cursor.moveToNext()) {
+                final var infoQuery = parseInfoQuery(cursor.getString(2));
+                if (infoQuery == null) {
+                    continue;
+                }
+                final var caps = cursor.getString(0);
+                final var caps2 = cursor.getString(1);
+                try {
+                    if (caps != null) {
+                        capsCache.put(
+                                EntityCapabilities.EntityCapsHash.of(caps),
+                                Optional.of(infoQuery));
+                    }
+                    if (caps2 != null) {
+                        // insertCapsCache only ever stores the default SHA-256 caps2 hash
+                        capsCache.put(
+                                EntityCapabilities2.EntityCaps2Hash.of(
+                                        Hash.Algorithm.SHA_256, caps2),
+                                Optional.of(infoQuery));
+                    }
+                } catch (final IllegalArgumentException e) {
+                    Log.w(Config.LOGTAG, "skipping caps cache entry with invalid hash", e);
+                    continue;
+                }
+                count++;
+            }
+        }
+        Log.d(
+                Config.LOGTAG,
+                "prewarmed caps cache with " + count + " entries in " + stopwatch.stop());
+    }
+
+    public double getCapsCacheHitRate() {
+        final int hits = capsCache.hitCount();
+        final int lookups = hits + capsCache.missCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public String getCapsCacheStats() {
+        return capsCache.toString();
+    }
+
     public static class FilePath {
         public final UUID uuid;
         public final String path;
@@ -1845,30 +2449,50 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         return builder.buildKeepingLast();
     }
 
-    public void writeRoster(
-            final Account account, final String version, final List<Contact> contacts) {
+    /**
+     * Inserts or deletes the given contacts; callers pass only the contacts that changed.
+     *
+     * @return the number of rows that were written
+     */
+    public int writeRoster(
+            final Account account, final String version, final Collection<Contact> contacts) {
         final long start = SystemClock.elapsedRealtime();
         final SQLiteDatabase db = this.getWritableDatabase();
+        int rows = 0;
         db.beginTransaction();
-        for (final Contact contact : contacts) {
-            if (contact.getOption(Contact.Options.IN_ROSTER)
-                    || contact.hasAvatarOrPresenceName()
-                    || contact.getOption(Contact.Options.SYNCED_VIA_OTHER)) {
-                db.insert(Contact.TABLENAME, null, contact.getContentValues());
-            } else {
-                String where = Contact.ACCOUNT + "=? AND " + Contact.JID + "=?";
-                String[] whereArgs = {account.getUuid(), contact.getAddress().toString()};
-                db.delete(Contact.TABLENAME, where, whereArgs);
+        try {
+            for (final Contact contact : contacts) {
+                if (contact.getOption(Contact.Options.IN_ROSTER)
+                        || contact.hasAvatarOrPresenceName()
+                        || contact.getOption(Contact.Options.SYNCED_VIA_OTHER)) {
+                    db.insert(Contact.TABLENAME, null, contact.getContentValues());
+                    rows++;
+                } else {
+                    String where = Contact.ACCOUNT + "=? AND " + Contact.JID + "=?";
+                    String[] whereArgs = {account.getUuid(), contact.getAddress().toString()};
+                    rows += db.delete(Contact.TABLENAME, where, whereArgs);
+                }
             }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (!Objects.equals(version, account.getRosterVersion())) {
+            account.setRosterVersion(version);
+            updateAccount(account);
         }
-        db.setTransactionSuccessful();
-        db.endTransaction();
-        account.setRosterVersion(version);
-        updateAccount(account);
         long duration = SystemClock.elapsedRealtime() - start;
         Log.d(
                 Config.LOGTAG,
-                account.getJid().asBareJid() + ": persisted roster in " + duration + "ms");
+                account.getJid().asBareJid()
+                        + ": persisted "
+                        + rows
+                        + " roster rows ("
+                        + contacts.size()
+                        + " changed contacts) in "
+                        + duration
+                        + "ms");
+        return rows;
     }
 
     public void deleteMessagesInConversation(Conversation conversation) {
@@ -1903,15 +2527,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         Cursor cursor = null;
         try {
             SQLiteDatabase db = this.getReadableDatabase();
-            String sql =
-                    "select messages.timeSent,messages.serverMsgId from accounts join conversations"
-                        + " on accounts.uuid=conversations.accountUuid join messages on"
-                        + " conversations.uuid=messages.conversationUuid where accounts.uuid=? and"
-                        + " (messages.status=0 or messages.carbon=1 or messages.serverMsgId not"
-                        + " null) and (conversations.mode=0 or (messages.serverMsgId not null and"
-                        + " messages.type=4)) order by messages.timesent desc limit 1";
             String[] args = {account.getUuid()};
-            cursor = db.rawQuery(sql, args);
+            cursor = db.rawQuery(QUERY_LAST_MESSAGE_RECEIVED, args);
             if (cursor.getCount() == 0) {
                 return null;
             } else {
@@ -1928,13 +2545,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     }
 
     public long getLastTimeFingerprintUsed(Account account, String fingerprint) {
-        String SQL =
-                "select messages.timeSent from accounts join conversations on"
-                        + " accounts.uuid=conversations.accountUuid join messages on"
-                        + " conversations.uuid=messages.conversationUuid where accounts.uuid=? and"
-                        + " messages.axolotl_fingerprint=? order by messages.timesent desc limit 1";
         String[] args = {account.getUuid(), fingerprint};
-        Cursor cursor = getReadableDatabase().rawQuery(SQL, args);
+        Cursor cursor = getReadableDatabase().rawQuery(QUERY_LAST_TIME_FINGERPRINT_USED, args);
         long time;
         if (cursor.moveToFirst()) {
             time = cursor.getLong(0);
@@ -1947,11 +2559,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
 
     public MamReference getLastClearDate(Account account) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String[] columns = {Conversation.ATTRIBUTES};
-        String selection = Conversation.ACCOUNT + "=?";
         String[] args = {account.getUuid()};
-        Cursor cursor =
-                db.query(Conversation.TABLENAME, columns, selection, args, null, null, null);
+        Cursor cursor = db.rawQuery(QUERY_CONVERSATION_ATTRIBUTES, args);
         MamReference maxClearDate = new MamReference(0);
         while (cursor.moveToNext()) {
             try {
@@ -1989,25 +2598,26 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                 null);
     }
 
-    public SessionRecord loadSession(Account account, SignalProtocolAddress contact) {
-        SessionRecord session = null;
-        Cursor cursor = getCursorForSession(account, contact);
-        if (cursor.getCount() != 0) {
-            cursor.moveToFirst();
-            try {
-                session =
-                        new SessionRecord(
-                                Base64.decode(
-                                        cursor.getString(
-                                                cursor.getColumnIndex(SQLiteAxolotlStore.KEY)),
-                                        Base64.DEFAULT));
-            } catch (IOException e) {
-                cursor.close();
-                throw new AssertionError(e);
+    /**
+     * @return the serialized session or null if there is none
+     */
+    public byte[] loadSession(final Account account, final SignalProtocolAddress contact) {
+        try (final Cursor cursor = getCursorForSession(account, contact)) {
+            if (cursor.moveToFirst()) {
+                return getSessionRecord(cursor);
             }
         }
-        cursor.close();
-        return session;
+        return null;
+    }
+
+    /** Reads the record column and falls back to the Base64 key written by versions before 57. */
+    public static byte[] getSessionRecord(final Cursor cursor) {
+        final int recordIndex = cursor.getColumnIndexOrThrow(SQLiteAxolotlStore.RECORD);
+        if (!cursor.isNull(recordIndex)) {
+            return cursor.getBlob(recordIndex);
+        }
+        final String key = cursor.getString(cursor.getColumnIndexOrThrow(SQLiteAxolotlStore.KEY));
+        return key == null ? null : Base64.decode(key, Base64.DEFAULT);
     }
 
     public List<Integer> getSubDeviceSessions(Account account, SignalProtocolAddress contact) {
@@ -2066,16 +2676,29 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         return count != 0;
     }
 
-    public void storeSession(
-            Account account, SignalProtocolAddress contact, SessionRecord session) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(SQLiteAxolotlStore.NAME, contact.getName());
-        values.put(SQLiteAxolotlStore.DEVICE_ID, contact.getDeviceId());
-        values.put(
-                SQLiteAxolotlStore.KEY, Base64.encodeToString(session.serialize(), Base64.DEFAULT));
-        values.put(SQLiteAxolotlStore.ACCOUNT, account.getUuid());
-        db.insert(SQLiteAxolotlStore.SESSION_TABLENAME, null, values);
+    /**
+     * Writes all sessions in one transaction; either every one of them is stored or none is.
+     *
+     * @return the number of sessions written
+     */
+    public int storeSessions(
+            final Account account, final Map<SignalProtocolAddress, byte[]> sessions) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (final Map.Entry<SignalProtocolAddress, byte[]> entry : sessions.entrySet()) {
+                final ContentValues values = new ContentValues();
+                values.put(SQLiteAxolotlStore.NAME, entry.getKey().getName());
+                values.put(SQLiteAxolotlStore.DEVICE_ID, entry.getKey().getDeviceId());
+                values.put(SQLiteAxolotlStore.RECORD, entry.getValue());
+                values.put(SQLiteAxolotlStore.ACCOUNT, account.getUuid());
+                db.insert(SQLiteAxolotlStore.SESSION_TABLENAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return sessions.size();
     }
 
     public void deleteSession(Account account, SignalProtocolAddress contact) {
@@ -69,6 +69,7 @@ public class FileBackend {
     private static final String FILE_PROVIDER = ".files";
     private static final float IGNORE_PADDING = 0.15f;
     private final XmppConnectionService mXmppConnectionService;
+    private final ThumbnailDiskCache thumbnailDiskCache;
 
     private static final List<String> STORAGE_TYPES;
 
@@ -88,6 +89,11 @@ public class FileBackend {
 
     public FileBackend(XmppConnectionService service) {
         this.mXmppConnectionService = service;
+        this.thumbnailDiskCache = new ThumbnailDiskCache(service);
+    }
+
+    public String getThumbnailDiskCacheStats() {
+        return thumbnailDiskCache.toString();
     }
 
     public static long getFileSize(Context context, Uri uri) {
@@ -425,6 +431,12 @@ public class FileBackend {
         if (cached != null || cacheOnly) {
             return cached;
         }
+        final String diskCacheKey = "attachment-" + attachment.getUuid().toString();
+        final Bitmap fromDisk = thumbnailDiskCache.get(diskCacheKey, size);
+        if (fromDisk != null) {
+            cache.put(key, fromDisk);
+            return fromDisk;
+        }
         final String mime = attachment.getMime();
         final Bitmap bitmap;
         if ("application/pdf".equals(mime)) {
@@ -461,6 +473,7 @@ public class FileBackend {
         }
         if (bitmap != null) {
             cache.put(key, bitmap);
+            thumbnailDiskCache.put(diskCacheKey, size, bitmap);
         }
         return bitmap;
     }
@@ -951,6 +964,11 @@ public class FileBackend {
                 if (thumbnail != null) {
                     return thumbnail;
                 }
+                thumbnail = thumbnailDiskCache.get(uuid, size);
+                if (thumbnail != null) {
+                    cache.put(uuid, thumbnail);
+                    return thumbnail;
+                }
                 DownloadableFile file = getFile(message);
                 final String mime = file.getMimeType();
                 if ("application/pdf".equals(mime)) {
@@ -977,11 +995,16 @@ public class FileBackend {
                     }
                 }
                 cache.put(uuid, thumbnail);
+                thumbnailDiskCache.put(uuid, size, thumbnail);
             }
         }
         return thumbnail;
     }
 
+    public void evictThumbnails(final String uuid) {
+        thumbnailDiskCache.invalidate(uuid);
+    }
+
     private Bitmap getFullSizeImagePreview(File file, int size) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inSampleSize = calcSampleSize(file, size);
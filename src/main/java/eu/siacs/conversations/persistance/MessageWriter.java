@@ -0,0 +1,189 @@
+package eu.siacs.conversations.persistance;
+
+import android.content.ContentValues;
+import android.util.Log;
+import com.google.common.base.Stopwatch;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.entities.Message;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group-commit sink for message inserts and updates. While a connection is catching up (MAM or
+ * stream management resumption) writes are buffered and committed in bounded transactions on a
+ * dedicated thread instead of one implicit transaction per stanza on the reader thread. Outside of
+ * catch-up writes go straight to the database unless older writes are still pending or being
+ * committed, in which case they are queued behind those to keep the order intact.
+ *
+ * <p>The in-memory conversation already holds the message objects, so only database reads need to
+ * call {@link #flush()} first to see their own writes.
+ */
+public class MessageWriter {
+
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long MAX_BATCH_DELAY = 500; // in milliseconds
+
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "MessageWriter"));
+
+    private final DatabaseBackend databaseBackend;
+
+    // keyed by message uuid; a pending insert absorbs later updates to the same message
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+    // writes that have been taken from pending but are not committed yet; guarded by pending
+    private int inFlight = 0;
+    private final Object commitLock = new Object();
+    private ScheduledFuture<?> scheduledCommit;
+
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong nanosInTransactions = new AtomicLong();
+
+    public MessageWriter(final DatabaseBackend databaseBackend) {
+        this.databaseBackend = databaseBackend;
+    }
+
+    public void createMessage(final Message message, final boolean batch) {
+        if (writeThrough(batch)) {
+            databaseBackend.createMessage(message);
+            return;
+        }
+        enqueue(message.getUuid(), new PendingWrite(true, message.getContentValues()), batch);
+    }
+
+    public boolean updateMessage(
+            final Message message, final boolean includeBody, final boolean batch) {
+        if (writeThrough(batch)) {
+            return databaseBackend.updateMessage(message, includeBody);
+        }
+        final var contentValues = message.getContentValues();
+        contentValues.remove(Message.UUID);
+        if (!includeBody) {
+            contentValues.remove(Message.BODY);
+        }
+        enqueue(message.getUuid(), new PendingWrite(false, contentValues), batch);
+        return true;
+    }
+
+    private boolean writeThrough(final boolean batch) {
+        if (batch) {
+            return false;
+        }
+        synchronized (this.pending) {
+            // a batch that is still being written would overwrite a direct write with older values
+            return this.pending.isEmpty() && this.inFlight == 0;
+        }
+    }
+
+    private void enqueue(final String uuid, final PendingWrite write, final boolean batch) {
+        synchronized (this.pending) {
+            final var existing = this.pending.get(uuid);
+            if (existing == null) {
+                this.pending.put(uuid, write);
+            } else {
+                existing.contentValues.putAll(write.contentValues);
+            }
+            if (!batch || this.pending.size() >= MAX_BATCH_SIZE) {
+                if (this.scheduledCommit != null) {
+                    this.scheduledCommit.cancel(false);
+                }
+                this.scheduledCommit = executor.submit(this::commit);
+            } else if (this.scheduledCommit == null || this.scheduledCommit.isDone()) {
+                this.scheduledCommit =
+                        executor.schedule(this::commit, MAX_BATCH_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Commits all pending writes on the calling thread. */
+    public void flush() {
+        commit();
+    }
+
+    /** Schedules a commit of all pending writes without waiting for it. */
+    public void flushAsync() {
+        synchronized (this.pending) {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            if (this.scheduledCommit != null) {
+                this.scheduledCommit.cancel(false);
+            }
+            this.scheduledCommit = executor.submit(this::commit);
+        }
+    }
+
+    private void commit() {
+        synchronized (this.commitLock) {
+            final Map<String, PendingWrite> batch;
+            synchronized (this.pending) {
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(this.pending);
+                this.pending.clear();
+                this.inFlight = batch.size();
+            }
+            final var stopwatch = Stopwatch.createStarted();
+            try {
+                databaseBackend.writeMessages(batch);
+            } finally {
+                synchronized (this.pending) {
+                    this.inFlight = 0;
+                }
+            }
+            final long nanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+            final long total = messagesWritten.addAndGet(batch.size());
+            final long totalNanos = nanosInTransactions.addAndGet(nanos);
+            transactions.incrementAndGet();
+            Log.d(
+                    Config.LOGTAG,
+                    "committed "
+                            + batch.size()
+                            + " message writes in "
+                            + stopwatch.stop()
+                            + " ("
+                            + messagesPerSecond(batch.size(), nanos)
+                            + " msg/s, lifetime "
+                            + messagesPerSecond(total, totalNanos)
+                            + " msg/s)");
+        }
+    }
+
+    private static long messagesPerSecond(final long count, final long nanos) {
+        return nanos <= 0 ? 0 : count * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    int getPendingWrites() {
+        synchronized (this.pending) {
+            return this.pending.size();
+        }
+    }
+
+    public long getMessagesWritten() {
+        return messagesWritten.get();
+    }
+
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    public long getMessagesPerSecond() {
+        return messagesPerSecond(messagesWritten.get(), nanosInTransactions.get());
+    }
+
+    public static final class PendingWrite {
+        public final boolean insert;
+        public final ContentValues contentValues;
+
+        private PendingWrite(final boolean insert, final ContentValues contentValues) {
+            this.insert = insert;
+            this.contentValues = contentValues;
+        }
+    }
+}
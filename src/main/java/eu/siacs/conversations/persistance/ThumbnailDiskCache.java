@@ -0,0 +1,176 @@
+package eu.siacs.conversations.persistance;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import eu.siacs.conversations.Config;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Byte-bounded LRU cache of pre-scaled thumbnails on disk. Unlike the in-memory bitmap cache it
+ * survives restarts, so previews in a media heavy chat do not have to be decoded from the original
+ * file again after a cold start. Entries are keyed by message (or attachment) uuid and target
+ * size.
+ */
+public class ThumbnailDiskCache {
+
+    private static final String DIRECTORY = "thumbnails";
+    private static final long MAX_SIZE = 64 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private final File directory;
+
+    // access ordered; file name to length in bytes
+    private LinkedHashMap<String, Long> entries = null;
+    private long totalSize = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public ThumbnailDiskCache(final Context context) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    public synchronized Bitmap get(final String uuid, final int size) {
+        final var entries = getEntries();
+        final String name = name(uuid, size);
+        if (entries.get(name) == null) {
+            misses++;
+            return null;
+        }
+        final File file = new File(directory, name);
+        final Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (bitmap == null) {
+            remove(name);
+            misses++;
+            return null;
+        }
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            Log.d(Config.LOGTAG, "unable to touch " + file.getAbsolutePath());
+        }
+        hits++;
+        return bitmap;
+    }
+
+    public synchronized void put(final String uuid, final int size, final Bitmap bitmap) {
+        final var entries = getEntries();
+        final String name = name(uuid, size);
+        final File file = new File(directory, name);
+        final File temporary = new File(directory, name + ".tmp");
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.d(Config.LOGTAG, "unable to create thumbnail cache directory");
+            return;
+        }
+        final boolean alpha = FileBackend.hasAlpha(bitmap);
+        try (final FileOutputStream os = new FileOutputStream(temporary)) {
+            if (!bitmap.compress(
+                    alpha ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                    JPEG_QUALITY,
+                    os)) {
+                throw new IOException("unable to compress thumbnail");
+            }
+        } catch (final IOException e) {
+            Log.d(Config.LOGTAG, "unable to write thumbnail to disk cache", e);
+            if (!temporary.delete()) {
+                Log.d(Config.LOGTAG, "unable to delete " + temporary.getAbsolutePath());
+            }
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.d(Config.LOGTAG, "unable to move thumbnail into disk cache");
+            return;
+        }
+        final Long previous = entries.put(name, file.length());
+        totalSize += file.length() - (previous == null ? 0 : previous);
+        trim();
+    }
+
+    /** Removes the thumbnails of all sizes for the given message or attachment uuid. */
+    public synchronized void invalidate(final String uuid) {
+        final String prefix = uuid + "_";
+        final Iterator<Map.Entry<String, Long>> iterator = getEntries().entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                delete(entry.getKey());
+                totalSize -= entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        final long accesses = hits + misses;
+        return String.format(
+                Locale.ROOT,
+                "ThumbnailDiskCache[size=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                totalSize,
+                hits,
+                misses,
+                accesses == 0 ? 0 : 100 * hits / accesses);
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > MAX_SIZE && iterator.hasNext()) {
+            final var eldest = iterator.next();
+            delete(eldest.getKey());
+            totalSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(final String name) {
+        final Long length = entries.remove(name);
+        if (length != null) {
+            totalSize -= length;
+        }
+        delete(name);
+    }
+
+    private void delete(final String name) {
+        final File file = new File(directory, name);
+        if (file.exists() && !file.delete()) {
+            Log.d(Config.LOGTAG, "unable to delete " + file.getAbsolutePath());
+        }
+    }
+
+    private LinkedHashMap<String, Long> getEntries() {
+        if (this.entries != null) {
+            return this.entries;
+        }
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (final File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    if (!file.delete()) {
+                        Log.d(Config.LOGTAG, "unable to delete " + file.getAbsolutePath());
+                    }
+                    continue;
+                }
+                entries.put(file.getName(), file.length());
+                totalSize += file.length();
+            }
+        }
+        trim();
+        return this.entries;
+    }
+
+    private static String name(final String uuid, final int size) {
+        return uuid + "_" + size;
+    }
+}
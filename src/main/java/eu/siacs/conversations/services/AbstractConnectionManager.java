@@ -9,6 +9,7 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import eu.siacs.conversations.R;
 import eu.siacs.conversations.entities.DownloadableFile;
+import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.utils.Compatibility;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -99,13 +100,14 @@ public class AbstractConnectionManager {
         return Compatibility.hasStoragePermission(mXmppConnectionService);
     }
 
-    public void updateConversationUi(boolean force) {
+    public void updateConversationUi(final Message message, final boolean force) {
         synchronized (LAST_UI_UPDATE_CALL) {
             if (force
                     || SystemClock.elapsedRealtime() - LAST_UI_UPDATE_CALL.get()
                             >= UI_REFRESH_THRESHOLD) {
                 LAST_UI_UPDATE_CALL.set(SystemClock.elapsedRealtime());
-                mXmppConnectionService.updateConversationUi();
+                mXmppConnectionService.updateConversationUi(
+                        message, ConversationUpdate.Kind.MESSAGE_CHANGED);
             }
         }
     }
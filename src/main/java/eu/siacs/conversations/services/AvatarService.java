@@ -44,6 +44,7 @@ import im.conversations.android.model.Bookmark;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AvatarService {
 
@@ -68,6 +69,8 @@ public class AvatarService {
     private final Cache<String, AvatarWithSurface> cache =
             CacheBuilder.newBuilder().maximumSize(256).build();
     private final Set<Integer> sizes = new HashSet<>();
+    // bumped whenever avatars are cleared; lets views tell whether an avatar they show is stale
+    private final AtomicLong generation = new AtomicLong();
     private final Multimap<String, String> conversationDependentKeys = ArrayListMultimap.create();
 
     protected final XmppConnectionService mXmppConnectionService;
@@ -308,7 +311,12 @@ public class AvatarService {
         return getImpl(getFirstLetter(avatar), avatar.getAvatarBackgroundColor(), surface, size);
     }
 
+    public long getGeneration() {
+        return generation.get();
+    }
+
     public void clear(final Contact contact) {
+        generation.incrementAndGet();
         synchronized (this.sizes) {
             for (final Integer size : sizes) {
                 this.cache.invalidate(key(contact, Surface.REGULAR, size));
@@ -495,6 +503,7 @@ public class AvatarService {
     }
 
     public void clear(final MucOptions options) {
+        generation.incrementAndGet();
         if (options == null) {
             return;
         }
@@ -574,6 +583,7 @@ public class AvatarService {
     }
 
     public void clear(final Account account) {
+        generation.incrementAndGet();
         synchronized (this.sizes) {
             for (final var size : sizes) {
                 this.cache.invalidate(key(account, Surface.REGULAR, size));
@@ -583,6 +593,7 @@ public class AvatarService {
     }
 
     public void clear(final MucOptions.User user) {
+        generation.incrementAndGet();
         synchronized (this.sizes) {
             for (Integer size : sizes) {
                 this.cache.invalidate(key(user, size));
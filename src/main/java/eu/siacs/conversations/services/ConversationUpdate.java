@@ -0,0 +1,65 @@
+package eu.siacs.conversations.services;
+
+import androidx.annotation.NonNull;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * What changed since the last time {@link XmppConnectionService.OnConversationUpdate} listeners
+ * were called. Updates from all threads are merged until the next frame, so a single update can
+ * cover many conversations and messages.
+ *
+ * <p>Callers that do not say what they changed produce an update that affects {@link #everything()
+ * everything}; listeners have to treat that like they treated every update before.
+ */
+public record ConversationUpdate(
+        boolean everything, Set<Kind> kinds, Set<String> conversations, Set<String> messages) {
+
+    public static final ConversationUpdate EVERYTHING =
+            new ConversationUpdate(true, ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of());
+
+    public enum Kind {
+        /** a conversation was created, archived or had its attributes (name, mode…) changed */
+        CONVERSATION,
+        MESSAGE_ADDED,
+        /** status, receipts, markers, reactions, edits or file transfer progress */
+        MESSAGE_CHANGED,
+        MESSAGE_REMOVED,
+        READ,
+        CHAT_STATE
+    }
+
+    public boolean affects(final Conversational conversation) {
+        return everything || conversations.contains(conversation.getUuid());
+    }
+
+    public boolean affects(final Message message) {
+        return everything || messages.contains(message.getUuid());
+    }
+
+    /**
+     * @return true if this update is not for everything and only consists of the given kinds
+     */
+    public boolean isOnly(final Kind... kinds) {
+        return !everything && Sets.immutableEnumSet(Arrays.asList(kinds)).containsAll(this.kinds);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        if (everything) {
+            return "ConversationUpdate{everything}";
+        }
+        return "ConversationUpdate{kinds="
+                + kinds
+                + ", conversations="
+                + conversations.size()
+                + ", messages="
+                + messages.size()
+                + "}";
+    }
+}
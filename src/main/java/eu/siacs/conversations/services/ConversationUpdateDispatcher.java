@@ -0,0 +1,129 @@
+package eu.siacs.conversations.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Merges conversation UI updates emitted from any thread into at most one {@link
+ * ConversationUpdate} per frame and hands that to the listeners on the main thread. A burst of
+ * incoming messages, receipts and markers (for example after a MAM catch-up) then costs one
+ * refresh instead of one per stanza.
+ */
+public class ConversationUpdateDispatcher {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Consumer<ConversationUpdate> listeners;
+
+    private final Object lock = new Object();
+    private boolean scheduled = false;
+    private boolean everything = false;
+    private final EnumSet<ConversationUpdate.Kind> kinds =
+            EnumSet.noneOf(ConversationUpdate.Kind.class);
+    private final Set<String> conversations = new HashSet<>();
+    private final Set<String> messages = new HashSet<>();
+
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+
+    public ConversationUpdateDispatcher(final Consumer<ConversationUpdate> listeners) {
+        this.listeners = listeners;
+    }
+
+    /** Something changed that the caller can not narrow down. */
+    public void emit() {
+        synchronized (lock) {
+            this.everything = true;
+            schedule();
+        }
+    }
+
+    public void emit(final ConversationUpdate.Kind kind, final Conversational conversation) {
+        emit(kind, conversation, null);
+    }
+
+    public void emit(final ConversationUpdate.Kind kind, final Message message) {
+        emit(kind, message.getConversation(), message);
+    }
+
+    private void emit(
+            final ConversationUpdate.Kind kind,
+            @Nullable final Conversational conversation,
+            @Nullable final Message message) {
+        synchronized (lock) {
+            this.kinds.add(kind);
+            if (conversation != null) {
+                this.conversations.add(conversation.getUuid());
+            }
+            if (message != null) {
+                this.messages.add(message.getUuid());
+            }
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        emitted.incrementAndGet();
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(this::dispatch);
+        } else {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(this::dispatch));
+        }
+    }
+
+    private void dispatch(final long frameTimeNanos) {
+        final ConversationUpdate update;
+        synchronized (lock) {
+            if (everything) {
+                update = ConversationUpdate.EVERYTHING;
+            } else {
+                update =
+                        new ConversationUpdate(
+                                false,
+                                Sets.immutableEnumSet(kinds),
+                                ImmutableSet.copyOf(conversations),
+                                ImmutableSet.copyOf(messages));
+            }
+            this.everything = false;
+            this.kinds.clear();
+            this.conversations.clear();
+            this.messages.clear();
+            this.scheduled = false;
+        }
+        dispatched.incrementAndGet();
+        listeners.accept(update);
+    }
+
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final long emitted = this.emitted.get();
+        final long dispatched = this.dispatched.get();
+        return String.format(
+                "ConversationUpdateDispatcher{emitted=%d, dispatched=%d, coalesced=%.1f}",
+                emitted, dispatched, dispatched == 0 ? 0.0 : (double) emitted / dispatched);
+    }
+}
@@ -130,6 +130,7 @@ public class MemorizingTrustManager {
     private final X509TrustManager defaultTrustManager;
     private X509TrustManager appTrustManager;
     private String poshCacheDir;
+    private Runnable onKeyStoreUpdated;
 
     /**
      * Creates an instance of the MemorizingTrustManager class that falls back to a custom
@@ -362,6 +363,19 @@ public class MemorizingTrustManager {
                 }
             }
         }
+        final Runnable onKeyStoreUpdated = this.onKeyStoreUpdated;
+        if (onKeyStoreUpdated != null) {
+            onKeyStoreUpdated.run();
+        }
+    }
+
+    /**
+     * Sets a callback that runs whenever a certificate has been added to or removed from the key
+     * store. Anything that caches the outcome of a certificate check (like resumable TLS sessions)
+     * has to be dropped at that point.
+     */
+    public void setOnKeyStoreUpdated(final Runnable onKeyStoreUpdated) {
+        this.onKeyStoreUpdated = onKeyStoreUpdated;
     }
 
     // if the certificate is stored in the app key store, it is considered "known"
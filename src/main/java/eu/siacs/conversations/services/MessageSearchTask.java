@@ -30,12 +30,18 @@
 package eu.siacs.conversations.services;
 
 import android.database.Cursor;
-import android.os.SystemClock;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
-import java.util.ArrayList;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import eu.siacs.conversations.Config;
 import eu.siacs.conversations.entities.Account;
@@ -44,22 +50,38 @@ import eu.siacs.conversations.entities.Conversational;
 import eu.siacs.conversations.entities.IndividualMessage;
 import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.entities.StubConversation;
+import eu.siacs.conversations.persistance.DatabaseBackend;
 import eu.siacs.conversations.ui.interfaces.OnSearchResultsAvailable;
 import eu.siacs.conversations.utils.Cancellable;
+import eu.siacs.conversations.utils.FtsUtils;
 import eu.siacs.conversations.utils.MessageUtils;
 import eu.siacs.conversations.utils.ReplacingSerialSingleThreadExecutor;
 import eu.siacs.conversations.xmpp.Jid;
 
+/**
+ * Runs a full text search and hands out the results in pages, newest first, as soon as each page
+ * is read. Starting another search cancels the running one, including a query that is still
+ * executing.
+ */
 public class MessageSearchTask implements Runnable, Cancellable {
 
 	private static final ReplacingSerialSingleThreadExecutor EXECUTOR = new ReplacingSerialSingleThreadExecutor(MessageSearchTask.class.getName());
 
+	private static final int PAGE_SIZE = 50;
+
 	private final XmppConnectionService xmppConnectionService;
 	private final List<String> term;
 	private final String uuid;
 	private final OnSearchResultsAvailable onSearchResultsAvailable;
+	private final CancellationSignal cancellationSignal = new CancellationSignal();
 
-	private boolean isCancelled = false;
+	/**
+	 * @param messages the messages of this page, newest first and older than those of all
+	 *     previous pages
+	 * @param excerpts the part of the body around the matches, by message uuid, for messages that
+	 *     are too long to be shown in full
+	 */
+	public record Page(List<String> term, List<Message> messages, Map<String, String> excerpts, boolean first, boolean complete) {}
 
 	private MessageSearchTask(XmppConnectionService xmppConnectionService, List<String> term, final String uuid, OnSearchResultsAvailable onSearchResultsAvailable) {
 		this.xmppConnectionService = xmppConnectionService;
@@ -78,62 +100,84 @@ public class MessageSearchTask implements Runnable, Cancellable {
 
 	@Override
 	public void cancel() {
-		this.isCancelled = true;
+		this.cancellationSignal.cancel();
 	}
 
 	@Override
 	public void run() {
-		long startTimestamp = SystemClock.elapsedRealtime();
-		Cursor cursor = null;
+		final Stopwatch total = Stopwatch.createStarted();
+		final Stopwatch database = Stopwatch.createUnstarted();
+		final HashMap<String, Conversational> conversationCache = new HashMap<>();
+		long beforeTime = Long.MAX_VALUE;
+		long beforeRowId = Long.MAX_VALUE;
+		int rows = 0;
+		int found = 0;
+		int pages = 0;
+		long firstPage = 0;
 		try {
-			final HashMap<String, Conversational> conversationCache = new HashMap<>();
-			final List<Message> result = new ArrayList<>();
-			cursor = xmppConnectionService.databaseBackend.getMessageSearchCursor(term, uuid);
-			long dbTimer = SystemClock.elapsedRealtime();
-			if (isCancelled) {
-				Log.d(Config.LOGTAG, "canceled search task");
-				return;
-			}
-			if (cursor != null && cursor.getCount() > 0) {
-				cursor.moveToLast();
-				final int indexBody = cursor.getColumnIndex(Message.BODY);
-				final int indexOob = cursor.getColumnIndex(Message.OOB);
-				final int indexConversation = cursor.getColumnIndex(Message.CONVERSATION);
-				final int indexAccount = cursor.getColumnIndex(Conversation.ACCOUNT);
-				final int indexContact = cursor.getColumnIndex(Conversation.CONTACTJID);
-				final int indexMode = cursor.getColumnIndex(Conversation.MODE);
-				do {
-					if (isCancelled) {
-						Log.d(Config.LOGTAG, "canceled search task");
-						return;
+			boolean complete = false;
+			while (!complete) {
+				final int limit = Math.min(PAGE_SIZE, Config.MAX_SEARCH_RESULTS - rows);
+				final ImmutableList.Builder<Message> messages = new ImmutableList.Builder<>();
+				final Map<String, String> excerpts = new HashMap<>();
+				int pageRows = 0;
+				database.start();
+				try (final Cursor cursor = xmppConnectionService.databaseBackend.getMessageSearchCursor(term, uuid, beforeTime, beforeRowId, limit, cancellationSignal)) {
+					// the query runs when the cursor window is first filled
+					boolean hasNext = cursor.moveToFirst();
+					database.stop();
+					final int indexBody = cursor.getColumnIndex(Message.BODY);
+					final int indexOob = cursor.getColumnIndex(Message.OOB);
+					final int indexTimeSent = cursor.getColumnIndex(Message.TIME_SENT);
+					final int indexConversation = cursor.getColumnIndex(Message.CONVERSATION);
+					final int indexAccount = cursor.getColumnIndex(Conversation.ACCOUNT);
+					final int indexContact = cursor.getColumnIndex(Conversation.CONTACTJID);
+					final int indexMode = cursor.getColumnIndex(Conversation.MODE);
+					final int indexRowId = cursor.getColumnIndex(DatabaseBackend.SEARCH_ROWID);
+					final int indexSnippet = cursor.getColumnIndex(DatabaseBackend.SEARCH_SNIPPET);
+					for (; hasNext; hasNext = cursor.moveToNext()) {
+						cancellationSignal.throwIfCanceled();
+						pageRows++;
+						beforeTime = cursor.getLong(indexTimeSent);
+						beforeRowId = cursor.getLong(indexRowId);
+						final String body = cursor.getString(indexBody);
+						final boolean oob = cursor.getInt(indexOob) > 0;
+						if (MessageUtils.treatAsDownloadable(body,oob)) {
+							continue;
+						}
+						final String conversationUuid = cursor.getString(indexConversation);
+						Conversational conversation = conversationCache.get(conversationUuid);
+						if (conversation == null) {
+							String accountUuid = cursor.getString(indexAccount);
+							String contactJid = cursor.getString(indexContact);
+							int mode = cursor.getInt(indexMode);
+							conversation = findOrGenerateStub(conversationUuid, accountUuid, contactJid, mode);
+							conversationCache.put(conversationUuid, conversation);
+						}
+						Message message = IndividualMessage.fromCursor(cursor, conversation);
+						messages.add(message);
+						// bodies that fit are rendered in full; the excerpt would hide most of them
+						final String snippet = cursor.getString(indexSnippet);
+						if (snippet != null && body != null && body.length() > Config.MAX_DISPLAY_MESSAGE_CHARS) {
+							excerpts.put(message.getUuid(), snippet);
+						}
 					}
-					final String body = cursor.getString(indexBody);
-					final boolean oob = cursor.getInt(indexOob) > 0;
-					if (MessageUtils.treatAsDownloadable(body,oob)) {
-						continue;
-					}
-					final String conversationUuid = cursor.getString(indexConversation);
-					Conversational conversation = conversationCache.get(conversationUuid);
-					if (conversation == null) {
-						String accountUuid = cursor.getString(indexAccount);
-						String contactJid = cursor.getString(indexContact);
-						int mode = cursor.getInt(indexMode);
-						conversation = findOrGenerateStub(conversationUuid, accountUuid, contactJid, mode);
-						conversationCache.put(conversationUuid, conversation);
-					}
-					Message message = IndividualMessage.fromCursor(cursor, conversation);
-					result.add(message);
-				} while (cursor.moveToPrevious());
+				}
+				rows += pageRows;
+				complete = pageRows < limit || rows >= Config.MAX_SEARCH_RESULTS;
+				final Page page = new Page(term, messages.build(), ImmutableMap.copyOf(excerpts), pages == 0, complete);
+				found += page.messages().size();
+				if (pages++ == 0) {
+					firstPage = total.elapsed(TimeUnit.MILLISECONDS);
+				}
+				cancellationSignal.throwIfCanceled();
+				onSearchResultsAvailable.onSearchResultsAvailable(page);
 			}
-			long stopTimestamp = SystemClock.elapsedRealtime();
-			Log.d(Config.LOGTAG, "found " + result.size() + " messages in " + (stopTimestamp - startTimestamp) + "ms"+ " (db was "+(dbTimer - startTimestamp)+"ms)");
-			onSearchResultsAvailable.onSearchResultsAvailable(term, result);
+			Log.d(Config.LOGTAG, String.format("found %d messages for '%s' in %d pages. first page after %dms, all after %dms (db was %dms)", found, FtsUtils.toMatchString(term), pages, firstPage, total.elapsed(TimeUnit.MILLISECONDS), database.elapsed(TimeUnit.MILLISECONDS)));
+		} catch (OperationCanceledException e) {
+			Log.d(Config.LOGTAG, "canceled search task after " + pages + " pages and " + total.elapsed(TimeUnit.MILLISECONDS) + "ms");
 		} catch (Exception e) {
 			Log.d(Config.LOGTAG, "exception while searching ", e);
-		} finally {
-			if (cursor != null) {
-				cursor.close();
-			}
 		}
 	}
 
@@ -0,0 +1,185 @@
+package eu.siacs.conversations.services;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Merges requests to update the message notifications into batches. The first request after a
+ * quiet period is handed on right away, so the notification (and its alert) appears without
+ * delay. Requests arriving within {@code window} milliseconds of a rebuild are collected and
+ * handed on together once the window has passed. A batch only alerts if the rebuild before it did
+ * not, or if it contains a conversation that has not alerted since the last quiet period; during a
+ * long burst of messages the phone makes a sound every other window at most instead of once per
+ * message, while a conversation joining the burst still gets its own alert.
+ */
+public class NotificationCoalescer {
+
+    private final Handler handler;
+    private final long window;
+    private final Consumer<Batch> rebuild;
+
+    private final Object lock = new Object();
+    private boolean scheduled = false;
+    private long lastRebuild;
+    private boolean lastRebuildAlerted = false;
+    // conversations that alerted since the last quiet period
+    private boolean allAlerted = false;
+    private final Set<String> alerted = new HashSet<>();
+
+    // the pending batch
+    private int requests = 0;
+    private boolean notify = false;
+    private boolean allAlerting = false;
+    private final Set<String> alerting = new HashSet<>();
+    private boolean allChanged = false;
+    private final Set<String> changed = new HashSet<>();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong rebuilt = new AtomicLong();
+
+    public NotificationCoalescer(
+            final Handler handler, final long window, final Consumer<Batch> rebuild) {
+        this.handler = handler;
+        this.window = window;
+        this.rebuild = rebuild;
+        this.lastRebuild = -window;
+    }
+
+    /**
+     * @param notify whether the update should alert the user
+     * @param conversations the conversations that changed; null if it could be any of them
+     * @param summaryOnly whether only the summary (and none of the conversations) changed
+     */
+    public void request(
+            final boolean notify,
+            @Nullable final Collection<String> conversations,
+            final boolean summaryOnly) {
+        requested.incrementAndGet();
+        final Batch batch;
+        synchronized (lock) {
+            this.requests++;
+            if (notify) {
+                this.notify = true;
+                if (conversations == null) {
+                    this.allAlerting = true;
+                } else {
+                    this.alerting.addAll(conversations);
+                }
+            }
+            if (!summaryOnly) {
+                if (conversations == null) {
+                    this.allChanged = true;
+                } else {
+                    this.changed.addAll(conversations);
+                }
+            }
+            if (scheduled) {
+                return;
+            }
+            final long now = SystemClock.elapsedRealtime();
+            if (now - lastRebuild < window) {
+                scheduled = true;
+                handler.postDelayed(this::flush, lastRebuild + window - now);
+                return;
+            }
+            batch = drain(now, true);
+        }
+        hand(batch);
+    }
+
+    private void flush() {
+        final Batch batch;
+        synchronized (lock) {
+            scheduled = false;
+            batch = drain(SystemClock.elapsedRealtime(), false);
+        }
+        hand(batch);
+    }
+
+    private Batch drain(final long now, final boolean quiet) {
+        if (quiet) {
+            this.allAlerted = false;
+            this.alerted.clear();
+        }
+        final boolean notify =
+                this.notify && (quiet || !lastRebuildAlerted || alertsNewConversation());
+        if (notify) {
+            if (allAlerting) {
+                this.allAlerted = true;
+            } else {
+                this.alerted.addAll(alerting);
+            }
+        }
+        final Batch batch =
+                new Batch(
+                        notify,
+                        allAlerting ? null : ImmutableSet.copyOf(alerting),
+                        allChanged ? null : ImmutableSet.copyOf(changed),
+                        requests);
+        this.requests = 0;
+        this.notify = false;
+        this.allAlerting = false;
+        this.alerting.clear();
+        this.allChanged = false;
+        this.changed.clear();
+        this.lastRebuild = now;
+        this.lastRebuildAlerted = notify;
+        return batch;
+    }
+
+    private boolean alertsNewConversation() {
+        if (allAlerting || allAlerted) {
+            // no telling which conversations asked (or have been alerted for)
+            return false;
+        }
+        return !alerted.containsAll(alerting);
+    }
+
+    private void hand(final Batch batch) {
+        rebuilt.incrementAndGet();
+        rebuild.accept(batch);
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getRebuilt() {
+        return rebuilt.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final long requested = this.requested.get();
+        final long rebuilt = this.rebuilt.get();
+        return String.format(
+                "NotificationCoalescer{requested=%d, rebuilt=%d, coalesced=%.1f}",
+                requested, rebuilt, rebuilt == 0 ? 0.0 : (double) requested / rebuilt);
+    }
+
+    /**
+     * @param alert whether to alert the user
+     * @param alerting the conversations that asked to alert; null if all of them
+     * @param changed the conversations to rebuild; null if all of them, empty if only the summary
+     * @param requests how many requests went into this batch
+     */
+    public record Batch(
+            boolean alert,
+            @Nullable Set<String> alerting,
+            @Nullable Set<String> changed,
+            int requests) {
+
+        public boolean hasChanged(final String conversation) {
+            return changed == null || changed.contains(conversation);
+        }
+    }
+}
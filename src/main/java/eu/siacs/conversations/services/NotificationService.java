@@ -21,6 +21,8 @@ import android.media.AudioManager;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
@@ -83,6 +85,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -108,6 +111,11 @@ public class NotificationService {
             NOTIFICATION_ID_MULTIPLIER * 14;
     private final XmppConnectionService mXmppConnectionService;
     private final LinkedHashMap<String, ArrayList<Message>> notifications = new LinkedHashMap<>();
+    // guarded by notifications
+    private final HashMap<String, ConversationState> conversationStates = new HashMap<>();
+    private final HandlerThread notificationThread = new HandlerThread("notifications");
+    private final NotificationCoalescer notificationCoalescer;
+    private final AtomicLong rebuiltConversations = new AtomicLong();
     private final HashMap<Conversation, AtomicInteger> mBacklogMessageCounter = new HashMap<>();
     private final LinkedHashMap<Conversational, MissedCallsInfo> mMissedCalls =
             new LinkedHashMap<>();
@@ -122,6 +130,12 @@ public class NotificationService {
 
     NotificationService(final XmppConnectionService service) {
         this.mXmppConnectionService = service;
+        this.notificationThread.start();
+        this.notificationCoalescer =
+                new NotificationCoalescer(
+                        new Handler(notificationThread.getLooper()),
+                        Config.NOTIFICATION_BATCH_WINDOW,
+                        this::rebuildNotification);
     }
 
     private static boolean displaySnoozeAction(List<Message> messages) {
@@ -486,6 +500,11 @@ public class NotificationService {
         finishBacklog(false, null);
     }
 
+    /** Stops the thread that rebuilds coalesced notifications; batches still pending are dropped. */
+    void shutdown() {
+        notificationThread.quitSafely();
+    }
+
     private void pushToStack(final Message message) {
         final String conversationUuid = message.getConversationUuid();
         if (notifications.containsKey(conversationUuid)) {
@@ -901,7 +920,8 @@ public class NotificationService {
             Message last = messages.get(messages.size() - 1);
             if (last.getStatus() != Message.STATUS_RECEIVED) {
                 if (mXmppConnectionService.markRead((Conversation) last.getConversation(), false)) {
-                    mXmppConnectionService.updateConversationUi();
+                    mXmppConnectionService.updateConversationUi(
+                            last.getConversation(), ConversationUpdate.Kind.READ);
                 }
             }
         }
@@ -927,16 +947,44 @@ public class NotificationService {
 
     private void updateNotification(
             final boolean notify, final List<String> conversations, final boolean summaryOnly) {
+        if (notifications.isEmpty()) {
+            // nothing left to show; no reason to wait for the next batch
+            cancel(NOTIFICATION_ID);
+        }
+        notificationCoalescer.request(notify, conversations, summaryOnly);
+    }
+
+    private void rebuildNotification(final NotificationCoalescer.Batch batch) {
+        synchronized (notifications) {
+            rebuildNotificationLocked(batch);
+        }
+        if (batch.requests() > 1) {
+            Log.d(
+                    Config.LOGTAG,
+                    "coalesced "
+                            + batch.requests()
+                            + " notification updates. "
+                            + notificationCoalescer
+                            + ", rebuilt conversations="
+                            + rebuiltConversations.get());
+        }
+    }
+
+    private void rebuildNotificationLocked(final NotificationCoalescer.Batch batch) {
         final SharedPreferences preferences =
                 PreferenceManager.getDefaultSharedPreferences(mXmppConnectionService);
+        final boolean notify = batch.alert();
+        final Set<String> alerting = batch.alerting();
 
         final boolean notifyOnlyOneChild =
                 notify
-                        && conversations != null
-                        && conversations.size()
+                        && alerting != null
+                        && alerting.size()
                                 == 1; // if this check is changed to > 0 catchup messages will
         // create one notification per conversation
 
+        conversationStates.keySet().retainAll(notifications.keySet());
+
         if (notifications.isEmpty()) {
             cancel(NOTIFICATION_ID);
         } else {
@@ -947,6 +995,7 @@ public class NotificationService {
             if (notifications.size() == 1 && Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
                 mBuilder =
                         buildSingleConversations(notifications.values().iterator().next(), notify);
+                rebuiltConversations.incrementAndGet();
                 modifyForSoundVibrationAndLight(mBuilder, notify, preferences);
                 notify(NOTIFICATION_ID, mBuilder.build());
             } else {
@@ -955,22 +1004,27 @@ public class NotificationService {
                     mBuilder.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
                 }
                 modifyForSoundVibrationAndLight(mBuilder, notify, preferences);
-                if (!summaryOnly) {
-                    for (Map.Entry<String, ArrayList<Message>> entry : notifications.entrySet()) {
-                        String uuid = entry.getKey();
-                        final boolean notifyThis =
-                                notifyOnlyOneChild ? conversations.contains(uuid) : notify;
-                        Builder singleBuilder =
-                                buildSingleConversations(entry.getValue(), notifyThis);
-                        if (!notifyOnlyOneChild) {
-                            singleBuilder.setGroupAlertBehavior(
-                                    NotificationCompat.GROUP_ALERT_SUMMARY);
-                        }
-                        modifyForSoundVibrationAndLight(singleBuilder, notifyThis, preferences);
-                        singleBuilder.setGroup(MESSAGES_GROUP);
-                        setNotificationColor(singleBuilder);
-                        notify(entry.getKey(), NOTIFICATION_ID, singleBuilder.build());
+                // before N the previous update might have been a single (untagged) notification
+                final boolean rebuildAll =
+                        Build.VERSION.SDK_INT < Build.VERSION_CODES.N
+                                && (batch.changed() == null || !batch.changed().isEmpty());
+                for (Map.Entry<String, ArrayList<Message>> entry : notifications.entrySet()) {
+                    String uuid = entry.getKey();
+                    if (!rebuildAll && !batch.hasChanged(uuid)) {
+                        // what has been posted for this conversation is still up to date
+                        continue;
+                    }
+                    final boolean notifyThis =
+                            notifyOnlyOneChild ? alerting.contains(uuid) : notify;
+                    Builder singleBuilder = buildSingleConversations(entry.getValue(), notifyThis);
+                    rebuiltConversations.incrementAndGet();
+                    if (!notifyOnlyOneChild) {
+                        singleBuilder.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
                     }
+                    modifyForSoundVibrationAndLight(singleBuilder, notifyThis, preferences);
+                    singleBuilder.setGroup(MESSAGES_GROUP);
+                    setNotificationColor(singleBuilder);
+                    notify(entry.getKey(), NOTIFICATION_ID, singleBuilder.build());
                 }
                 notify(NOTIFICATION_ID, mBuilder.build());
             }
@@ -1452,17 +1506,31 @@ public class NotificationService {
         }
     }
 
-    private Person getPerson(Message message) {
+    private Person getPerson(final ConversationState state, final Message message) {
         final Contact contact = message.getContact();
+        final String name =
+                contact != null
+                        ? contact.getDisplayName()
+                        : UIHelper.getMessageDisplayName(message);
+        final String key = message.getCounterpart() + "\0" + name;
+        final Person cached = state.senders.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final Person person = getPerson(contact, name, message);
+        state.senders.put(key, person);
+        return person;
+    }
+
+    private Person getPerson(
+            @Nullable final Contact contact, final String name, final Message message) {
         final Person.Builder builder = new Person.Builder();
+        builder.setName(name);
         if (contact != null) {
-            builder.setName(contact.getDisplayName());
             final Uri uri = contact.getSystemAccount();
             if (uri != null) {
                 builder.setUri(uri.toString());
             }
-        } else {
-            builder.setName(UIHelper.getMessageDisplayName(message));
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             builder.setIcon(
@@ -1481,19 +1549,33 @@ public class NotificationService {
     private void modifyForTextOnly(final Builder builder, final ArrayList<Message> messages) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             final Conversation conversation = (Conversation) messages.get(0).getConversation();
-            final Person.Builder meBuilder =
-                    new Person.Builder().setName(mXmppConnectionService.getString(R.string.me));
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                meBuilder.setIcon(
-                        IconCompat.createWithBitmap(
-                                mXmppConnectionService
-                                        .getAvatarService()
-                                        .get(
-                                                conversation.getAccount(),
-                                                AvatarService.getSystemUiAvatarSize(
-                                                        mXmppConnectionService))));
+            final ConversationState state =
+                    conversationStates.computeIfAbsent(
+                            conversation.getUuid(), uuid -> new ConversationState());
+            final long avatarGeneration = mXmppConnectionService.getAvatarService().getGeneration();
+            if (state.avatarGeneration != avatarGeneration) {
+                // someone's avatar changed; the icons of the people are outdated
+                state.senders.clear();
+                state.me = null;
+                state.avatarGeneration = avatarGeneration;
+            }
+            if (state.me == null) {
+                final Person.Builder meBuilder =
+                        new Person.Builder()
+                                .setName(mXmppConnectionService.getString(R.string.me));
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                    meBuilder.setIcon(
+                            IconCompat.createWithBitmap(
+                                    mXmppConnectionService
+                                            .getAvatarService()
+                                            .get(
+                                                    conversation.getAccount(),
+                                                    AvatarService.getSystemUiAvatarSize(
+                                                            mXmppConnectionService))));
+                }
+                state.me = meBuilder.build();
             }
-            final Person me = meBuilder.build();
+            final Person me = state.me;
             NotificationCompat.MessagingStyle messagingStyle =
                     new NotificationCompat.MessagingStyle(me);
             final boolean multiple = conversation.getMode() == Conversation.MODE_MULTI;
@@ -1502,7 +1584,9 @@ public class NotificationService {
             }
             for (Message message : messages) {
                 final Person sender =
-                        message.getStatus() == Message.STATUS_RECEIVED ? getPerson(message) : null;
+                        message.getStatus() == Message.STATUS_RECEIVED
+                                ? getPerson(state, message)
+                                : null;
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && isImageMessage(message)) {
                     final Uri dataUri =
                             FileBackend.getMediaUri(
@@ -2077,6 +2161,17 @@ public class NotificationService {
         }
     }
 
+    /**
+     * What stays the same between rebuilds of the notification of a conversation: the people in
+     * its MessagingStyle along with their avatars. Dropped once the notification is gone, or when
+     * the avatar generation moves on.
+     */
+    private static class ConversationState {
+        private final HashMap<String, Person> senders = new HashMap<>();
+        private Person me;
+        private long avatarGeneration = -1;
+    }
+
     private static class MissedCallsInfo {
         private int numberOfCalls;
         private long lastTime;
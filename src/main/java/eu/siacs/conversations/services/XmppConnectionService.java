@@ -49,6 +49,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
@@ -71,6 +72,7 @@ import eu.siacs.conversations.entities.Account;
 import eu.siacs.conversations.entities.Blockable;
 import eu.siacs.conversations.entities.Contact;
 import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.ConversationList;
 import eu.siacs.conversations.entities.Conversational;
 import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.entities.MucOptions;
@@ -84,6 +86,7 @@ import eu.siacs.conversations.http.HttpConnectionManager;
 import eu.siacs.conversations.http.ServiceOutageStatus;
 import eu.siacs.conversations.persistance.DatabaseBackend;
 import eu.siacs.conversations.persistance.FileBackend;
+import eu.siacs.conversations.persistance.MessageWriter;
 import eu.siacs.conversations.persistance.UnifiedPushDatabase;
 import eu.siacs.conversations.receiver.SystemEventReceiver;
 import eu.siacs.conversations.ui.ChooseAccountForProfilePictureActivity;
@@ -103,6 +106,7 @@ import eu.siacs.conversations.utils.QuickLoader;
 import eu.siacs.conversations.utils.ReplacingSerialSingleThreadExecutor;
 import eu.siacs.conversations.utils.Resolver;
 import eu.siacs.conversations.utils.SerialSingleThreadExecutor;
+import eu.siacs.conversations.utils.TlsContextCache;
 import eu.siacs.conversations.utils.TorServiceUtils;
 import eu.siacs.conversations.utils.WakeLockHelper;
 import eu.siacs.conversations.utils.XmppUri;
@@ -148,13 +152,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -217,10 +220,11 @@ public class XmppConnectionService extends Service {
     private final SerialSingleThreadExecutor mNotificationExecutor =
             new SerialSingleThreadExecutor("NotificationExecutor");
     private final IBinder mBinder = new XmppConnectionBinder();
-    private final List<Conversation> conversations = new CopyOnWriteArrayList<>();
+    private final ConversationList conversations = new ConversationList();
     private final IqGenerator mIqGenerator = new IqGenerator(this);
     public final HashSet<Jid> mLowPingTimeoutMode = new HashSet<>();
     public DatabaseBackend databaseBackend;
+    private MessageWriter messageWriter;
     private final ReplacingSerialSingleThreadExecutor mContactMergerExecutor =
             new ReplacingSerialSingleThreadExecutor("ContactMerger");
     private long mLastActivity = 0;
@@ -228,6 +232,7 @@ public class XmppConnectionService extends Service {
     private final AppSettings appSettings = new AppSettings(this);
     private final FileBackend fileBackend = new FileBackend(this);
     private MemorizingTrustManager mMemorizingTrustManager;
+    private TlsContextCache tlsContextCache;
     private final NotificationService mNotificationService = new NotificationService(this);
     private final UnifiedPushBroker unifiedPushBroker = new UnifiedPushBroker(this);
     private final ChannelDiscoveryService mChannelDiscoveryService =
@@ -291,6 +296,9 @@ public class XmppConnectionService extends Service {
 
     private final Object LISTENER_LOCK = new Object();
 
+    private final ConversationUpdateDispatcher conversationUpdateDispatcher =
+            new ConversationUpdateDispatcher(this::dispatchConversationUpdate);
+
     public final Set<String> FILENAMES_TO_IGNORE_DELETION = new HashSet<>();
 
     private final AtomicLong mLastExpiryRun = new AtomicLong(0);
@@ -451,7 +459,10 @@ public class XmppConnectionService extends Service {
     }
 
     public Conversation find(final Account account, final Jid jid) {
-        return find(getConversations(), account, jid);
+        if (account == null) {
+            return find(getConversations(), null, jid);
+        }
+        return this.conversations.find(account, jid);
     }
 
     public void search(
@@ -491,6 +502,7 @@ public class XmppConnectionService extends Service {
                     }
                     Resolver.clearCache();
                 }
+                mHttpConnectionManager.onNetworkChanged();
                 break;
             case Intent.ACTION_SHUTDOWN:
                 logoutAndSave(true);
@@ -749,8 +761,8 @@ public class XmppConnectionService extends Service {
         final Message report = new Message(conversation, message, Message.ENCRYPTION_NONE);
         report.setStatus(Message.STATUS_RECEIVED);
         conversation.add(report);
-        databaseBackend.createMessage(report);
-        updateConversationUi();
+        messageWriter.createMessage(report, false);
+        updateConversationUi(report, ConversationUpdate.Kind.MESSAGE_ADDED);
     }
 
     public void manageAccountConnectionStatesInternal() {
@@ -1037,6 +1049,7 @@ public class XmppConnectionService extends Service {
                 () -> {
                     long timestamp = getAutomaticMessageDeletionDate();
                     if (timestamp > 0) {
+                        messageWriter.flush();
                         databaseBackend.expireOldMessages(timestamp);
                         synchronized (XmppConnectionService.this.conversations) {
                             for (Conversation conversation :
@@ -1050,6 +1063,7 @@ public class XmppConnectionService extends Service {
                         }
                         updateConversationUi();
                     }
+                    databaseBackend.pruneMessageChanges();
                 });
     }
 
@@ -1092,6 +1106,11 @@ public class XmppConnectionService extends Service {
         toggleForegroundService();
         this.destroyed = false;
         OmemoSetting.load(this);
+        this.tlsContextCache =
+                new TlsContextCache(
+                        Config.PERSIST_TLS_SESSIONS
+                                ? new File(getCacheDir(), "tls_sessions")
+                                : null);
         updateMemorizingTrustManager();
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
         final int cacheSize = maxMemory / 8;
@@ -1109,6 +1128,7 @@ public class XmppConnectionService extends Service {
 
         Log.d(Config.LOGTAG, "initializing database...");
         this.databaseBackend = DatabaseBackend.getInstance(getApplicationContext());
+        this.messageWriter = new MessageWriter(databaseBackend);
         Log.d(Config.LOGTAG, "restoring accounts...");
         this.accounts = databaseBackend.getAccounts();
         for (final var account : this.accounts) {
@@ -1271,6 +1291,8 @@ public class XmppConnectionService extends Service {
         if (level >= TRIM_MEMORY_COMPLETE) {
             Log.d(Config.LOGTAG, "clear cache due to low memory");
             getBitmapCache().evictAll();
+            // the thumbnails on disk are kept; they are what makes refilling the cache cheap
+            Log.d(Config.LOGTAG, fileBackend.getThumbnailDiskCacheStats());
         }
     }
 
@@ -1286,6 +1308,15 @@ public class XmppConnectionService extends Service {
         destroyed = false;
         fileObserver.stopWatching();
         internalPingExecutor.shutdown();
+        if (messageWriter != null) {
+            messageWriter.flush();
+        }
+        if (accounts != null) {
+            for (final Account account : accounts) {
+                account.getAxolotlService().flushSessions();
+            }
+        }
+        mNotificationService.shutdown();
         super.onDestroy();
     }
 
@@ -1428,6 +1459,7 @@ public class XmppConnectionService extends Service {
         for (final Account account : accounts) {
             if (account.isConnectionEnabled()) {
                 account.getXmppConnection().getManager(RosterManager.class).writeToDatabase();
+                account.getAxolotlService().flushSessions();
                 activeAccounts++;
             }
             XmppConnection.RECONNNECTION_EXECUTOR.execute(() -> disconnect(account, false));
@@ -1657,13 +1689,15 @@ public class XmppConnectionService extends Service {
                         if (message.edited()) {
                             message.setBody(decryptedBody);
                             message.setEncryption(Message.ENCRYPTION_DECRYPTED);
+                            messageWriter.flush();
                             if (!databaseBackend.updateMessage(message, message.getEditedId())) {
                                 Log.e(Config.LOGTAG, "error updated message in DB after edit");
                             }
-                            updateConversationUi();
+                            updateConversationUi(
+                                    message, ConversationUpdate.Kind.MESSAGE_CHANGED);
                             return;
                         } else {
-                            databaseBackend.createMessage(message);
+                            messageWriter.createMessage(message, false);
                             saveInDb = false;
                             message.setBody(decryptedBody);
                             message.setEncryption(Message.ENCRYPTION_DECRYPTED);
@@ -1695,13 +1729,18 @@ public class XmppConnectionService extends Service {
                 conversation.add(message);
             }
             if (saveInDb) {
-                databaseBackend.createMessage(message);
+                messageWriter.createMessage(message, false);
             } else if (message.edited()) {
+                messageWriter.flush();
                 if (!databaseBackend.updateMessage(message, message.getEditedId())) {
                     Log.e(Config.LOGTAG, "error updated message in DB after edit");
                 }
             }
-            updateConversationUi();
+            updateConversationUi(
+                    message,
+                    message.edited()
+                            ? ConversationUpdate.Kind.MESSAGE_CHANGED
+                            : ConversationUpdate.Kind.MESSAGE_ADDED);
         }
         if (packet != null) {
             if (delay) {
@@ -1773,21 +1812,21 @@ public class XmppConnectionService extends Service {
                     ImmutableMap.copyOf(Maps.uniqueIndex(this.accounts, Account::getUuid));
             Log.d(Config.LOGTAG, "restoring conversations...");
             final long startTimeConversationsRestore = SystemClock.elapsedRealtime();
-            this.conversations.addAll(
-                    databaseBackend.getConversations(Conversation.STATUS_AVAILABLE));
-            for (Iterator<Conversation> iterator = conversations.listIterator();
-                    iterator.hasNext(); ) {
-                Conversation conversation = iterator.next();
-                Account account = accountLookupTable.get(conversation.getAccountUuid());
+            // accounts are set before adding because the conversation list is indexed by them
+            final List<Conversation> restored = new ArrayList<>();
+            for (final Conversation conversation :
+                    databaseBackend.getConversations(Conversation.STATUS_AVAILABLE)) {
+                final Account account = accountLookupTable.get(conversation.getAccountUuid());
                 if (account != null) {
                     conversation.setAccount(account);
+                    restored.add(conversation);
                 } else {
                     Log.e(
                             Config.LOGTAG,
                             "unable to restore Conversations with " + conversation.getAddress());
-                    iterator.remove();
                 }
             }
+            this.conversations.addAll(restored);
             long diffConversationsRestore =
                     SystemClock.elapsedRealtime() - startTimeConversationsRestore;
             Log.d(
@@ -1807,6 +1846,8 @@ public class XmppConnectionService extends Service {
                                             + AbstractGenerator.getTimestamp(deletionDate));
                             databaseBackend.expireOldMessages(deletionDate);
                         }
+                        databaseBackend.pruneMessageChanges();
+                        databaseBackend.prewarmCapsCache();
                         Log.d(Config.LOGTAG, "restoring roster...");
                         for (final Account account : accounts) {
                             account.getXmppConnection().getManager(RosterManager.class).restore();
@@ -1829,11 +1870,25 @@ public class XmppConnectionService extends Service {
                                             + diffMessageRestore
                                             + "ms");
                         }
-                        for (Conversation conversation : this.conversations) {
-                            if (quickLoad != conversation) {
-                                restoreMessages(conversation);
-                            }
+                        final List<Conversation> remaining =
+                                ImmutableList.copyOf(
+                                        Collections2.filter(
+                                                this.conversations, c -> c != quickLoad));
+                        final Map<Conversation, List<Message>> restored =
+                                databaseBackend.getMessages(remaining, Config.PAGE_SIZE);
+                        final long startAttach = SystemClock.elapsedRealtime();
+                        for (final Conversation conversation : remaining) {
+                            restoreMessages(
+                                    conversation,
+                                    restored.getOrDefault(conversation, Collections.emptyList()));
                         }
+                        Log.d(
+                                Config.LOGTAG,
+                                "attached restored messages to "
+                                        + remaining.size()
+                                        + " conversations in "
+                                        + (SystemClock.elapsedRealtime() - startAttach)
+                                        + "ms");
                         mNotificationService.finishBacklog();
                         restoredFromDatabaseLatch.countDown();
                         final long diffMessageRestore =
@@ -1849,7 +1904,11 @@ public class XmppConnectionService extends Service {
     }
 
     private void restoreMessages(Conversation conversation) {
-        conversation.addAll(0, databaseBackend.getMessages(conversation, Config.PAGE_SIZE));
+        restoreMessages(conversation, databaseBackend.getMessages(conversation, Config.PAGE_SIZE));
+    }
+
+    private void restoreMessages(final Conversation conversation, final List<Message> messages) {
+        conversation.addAll(0, messages);
         conversation.findUnsentTextMessages(
                 message -> markMessage(message, Message.STATUS_WAITING));
         conversation.findUnreadMessagesAndCalls(mNotificationService::pushFromBacklog);
@@ -1934,6 +1993,9 @@ public class XmppConnectionService extends Service {
         for (Conversation conversation : getConversations()) {
             changed |= conversation.markAsChanged(infos);
         }
+        for (final DatabaseBackend.FilePathInfo info : infos) {
+            evictPreview(info.uuid.toString());
+        }
         if (changed) {
             updateConversationUi();
         }
@@ -1945,13 +2007,13 @@ public class XmppConnectionService extends Service {
 
     public void populateWithOrderedConversations(
             final List<Conversation> list, final boolean includeNoFileUpload, final boolean sort) {
-        final List<String> orderedUuids;
+        final Map<String, Integer> orderedUuids;
         if (sort) {
             orderedUuids = null;
         } else {
-            orderedUuids = new ArrayList<>();
-            for (Conversation conversation : list) {
-                orderedUuids.add(conversation.getUuid());
+            orderedUuids = new HashMap<>();
+            for (final Conversation conversation : list) {
+                orderedUuids.putIfAbsent(conversation.getUuid(), orderedUuids.size());
             }
         }
         list.clear();
@@ -1971,8 +2033,8 @@ public class XmppConnectionService extends Service {
                 Collections.sort(
                         list,
                         (a, b) -> {
-                            final int indexA = orderedUuids.indexOf(a.getUuid());
-                            final int indexB = orderedUuids.indexOf(b.getUuid());
+                            final int indexA = orderedUuids.getOrDefault(a.getUuid(), -1);
+                            final int indexB = orderedUuids.getOrDefault(b.getUuid(), -1);
                             if (indexA == -1 || indexB == -1 || indexA == indexB) {
                                 return a.compareTo(b);
                             }
@@ -2051,12 +2113,9 @@ public class XmppConnectionService extends Service {
     }
 
     public Conversation find(final Contact contact) {
-        for (final Conversation conversation : this.conversations) {
-            if (conversation.getContact() == contact) {
-                return conversation;
-            }
-        }
-        return null;
+        final var conversation =
+                this.conversations.find(contact.getAccount(), contact.getAddress());
+        return conversation != null && conversation.getContact() == contact ? conversation : null;
     }
 
     public Conversation find(
@@ -2064,6 +2123,9 @@ public class XmppConnectionService extends Service {
         if (jid == null) {
             return null;
         }
+        if (haystack == this.conversations && account != null) {
+            return this.conversations.find(account, jid);
+        }
         for (final Conversation conversation : haystack) {
             if ((account == null || conversation.getAccount() == account)
                     && (conversation.getAddress().asBareJid().equals(jid.asBareJid()))) {
@@ -2074,14 +2136,7 @@ public class XmppConnectionService extends Service {
     }
 
     public boolean isConversationStillOpen(final Conversation conversation) {
-        synchronized (this.conversations) {
-            for (Conversation current : this.conversations) {
-                if (current == conversation) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return this.conversations.containsInstance(conversation);
     }
 
     public Conversation findOrCreateConversation(
@@ -2148,7 +2203,7 @@ public class XmppConnectionService extends Service {
                 postProcessConversation(conversation, loadMessagesFromDb, joinAfterCreate, query);
             }
             this.conversations.add(conversation);
-            updateConversationUi();
+            updateConversationUi(conversation, ConversationUpdate.Kind.CONVERSATION);
             return conversation;
         }
     }
@@ -2185,7 +2240,7 @@ public class XmppConnectionService extends Service {
                     .getManager(BookmarkManager.class)
                     .ensureBookmarkIsAutoJoin(existing);
         }
-        updateConversationUi();
+        updateConversationUi(existing, ConversationUpdate.Kind.CONVERSATION);
         return existing;
     }
 
@@ -2216,7 +2271,7 @@ public class XmppConnectionService extends Service {
         final var account = c.getAccount();
         if (loadMessagesFromDb) {
             c.addAll(0, databaseBackend.getMessages(c, Config.PAGE_SIZE));
-            updateConversationUi();
+            updateConversationUi(c, ConversationUpdate.Kind.MESSAGE_ADDED);
             c.messagesLoaded.set(true);
         }
         final var connection = account.getXmppConnection();
@@ -2279,7 +2334,7 @@ public class XmppConnectionService extends Service {
             }
             updateConversation(conversation);
             this.conversations.remove(conversation);
-            updateConversationUi();
+            updateConversationUi(conversation, ConversationUpdate.Kind.CONVERSATION);
         }
     }
 
@@ -2472,11 +2527,13 @@ public class XmppConnectionService extends Service {
             XmppConnection.RECONNNECTION_EXECUTOR.execute(() -> disconnect(account, !connected));
             mDatabaseWriterExecutor.execute(
                     () -> {
+                        messageWriter.flush();
                         if (databaseBackend.deleteAccount(account)) {
                             Log.d(Config.LOGTAG, "deleted account from database");
                         }
                     });
             this.accounts.remove(account);
+            tlsContextCache.invalidate(account.getUuid());
             if (CallIntegration.hasSystemFeature(this)) {
                 CallIntegrationConnectionService.unregisterPhoneAccount(this, account);
             }
@@ -3116,19 +3173,20 @@ public class XmppConnectionService extends Service {
     }
 
     public void updateMessage(Message message, boolean includeBody) {
-        databaseBackend.updateMessage(message, includeBody);
-        updateConversationUi();
+        messageWriter.updateMessage(message, includeBody, false);
+        updateConversationUi(message, ConversationUpdate.Kind.MESSAGE_CHANGED);
     }
 
     public void createMessageAsync(final Message message) {
-        mDatabaseWriterExecutor.execute(() -> databaseBackend.createMessage(message));
+        mDatabaseWriterExecutor.execute(() -> messageWriter.createMessage(message, false));
     }
 
     public void updateMessage(Message message, String uuid) {
+        messageWriter.flush();
         if (!databaseBackend.updateMessage(message, uuid)) {
             Log.e(Config.LOGTAG, "error updated message in DB after edit");
         }
-        updateConversationUi();
+        updateConversationUi(message, ConversationUpdate.Kind.MESSAGE_CHANGED);
     }
 
     public void createContact(final Contact contact) {
@@ -3386,8 +3444,8 @@ public class XmppConnectionService extends Service {
         }
         message.setErrorMessage(errorMessage);
         message.setStatus(status);
-        databaseBackend.updateMessage(message, includeBody);
-        updateConversationUi();
+        messageWriter.updateMessage(message, includeBody, false);
+        updateConversationUi(message, ConversationUpdate.Kind.MESSAGE_CHANGED);
         if (oldStatus != status && status == Message.STATUS_SEND_FAILED) {
             mNotificationService.pushFailedDelivery(message);
         }
@@ -3443,11 +3501,28 @@ public class XmppConnectionService extends Service {
     }
 
     public void updateConversationUi() {
+        conversationUpdateDispatcher.emit();
+    }
+
+    public void updateConversationUi(
+            final Conversational conversation, final ConversationUpdate.Kind kind) {
+        conversationUpdateDispatcher.emit(kind, conversation);
+    }
+
+    public void updateConversationUi(final Message message, final ConversationUpdate.Kind kind) {
+        conversationUpdateDispatcher.emit(kind, message);
+    }
+
+    private void dispatchConversationUpdate(final ConversationUpdate update) {
         for (OnConversationUpdate listener : threadSafeList(this.mOnConversationUpdates)) {
-            listener.onConversationUpdate();
+            listener.onConversationUpdate(update);
         }
     }
 
+    public ConversationUpdateDispatcher getConversationUpdateDispatcher() {
+        return this.conversationUpdateDispatcher;
+    }
+
     public void notifyJingleRtpConnectionUpdate(
             final Account account,
             final Jid with,
@@ -3536,13 +3611,8 @@ public class XmppConnectionService extends Service {
         return null;
     }
 
-    public Conversation findConversationByUuid(String uuid) {
-        for (Conversation conversation : getConversations()) {
-            if (conversation.getUuid().equals(uuid)) {
-                return conversation;
-            }
-        }
-        return null;
+    public Conversation findConversationByUuid(final String uuid) {
+        return this.conversations.findByUuid(uuid);
     }
 
     public Conversation findUniqueConversationByJid(XmppUri xmppUri) {
@@ -3576,11 +3646,11 @@ public class XmppConnectionService extends Service {
             Runnable runnable =
                     () -> {
                         for (Message message : readMessages) {
-                            databaseBackend.updateMessage(message, false);
+                            messageWriter.updateMessage(message, false, false);
                         }
                     };
             mDatabaseWriterExecutor.execute(runnable);
-            updateConversationUi();
+            updateConversationUi(conversation, ConversationUpdate.Kind.READ);
             updateUnreadCountBadge();
             return readMessages;
         } else {
@@ -3608,7 +3678,7 @@ public class XmppConnectionService extends Service {
         }
         final var account = conversation.getAccount();
         final var connection = account.getXmppConnection();
-        updateConversationUi();
+        updateConversationUi(conversation, ConversationUpdate.Kind.READ);
         connection.getManager(DisplayedManager.class).displayed(readMessages);
     }
 
@@ -3691,7 +3761,17 @@ public class XmppConnectionService extends Service {
     }
 
     public void setMemorizingTrustManager(MemorizingTrustManager trustManager) {
+        final var previous = this.mMemorizingTrustManager;
+        trustManager.setOnKeyStoreUpdated(tlsContextCache::invalidateAll);
         this.mMemorizingTrustManager = trustManager;
+        if (previous != null) {
+            // sessions were established under trust settings that no longer apply
+            tlsContextCache.invalidateAll();
+        }
+    }
+
+    public TlsContextCache getTlsContextCache() {
+        return this.tlsContextCache;
     }
 
     public void updateMemorizingTrustManager() {
@@ -3850,6 +3930,10 @@ public class XmppConnectionService extends Service {
         return this.mHttpConnectionManager;
     }
 
+    public MessageWriter getMessageWriter() {
+        return this.messageWriter;
+    }
+
     public void resendFailedMessages(final Message message, final boolean forceP2P) {
         message.setTime(System.currentTimeMillis());
         markMessage(message, Message.STATUS_WAITING);
@@ -3857,7 +3941,7 @@ public class XmppConnectionService extends Service {
         if (message.getConversation() instanceof Conversation c) {
             c.sort();
         }
-        updateConversationUi();
+        updateConversationUi(message, ConversationUpdate.Kind.MESSAGE_CHANGED);
     }
 
     public void clearConversationHistory(final Conversation conversation) {
@@ -3876,6 +3960,8 @@ public class XmppConnectionService extends Service {
         conversation.setLastClearHistory(clearDate, reference);
         Runnable runnable =
                 () -> {
+                    // pending writes must not resurrect the messages deleted here
+                    messageWriter.flush();
                     databaseBackend.deleteMessagesInConversation(conversation);
                     databaseBackend.updateConversation(conversation);
                 };
@@ -4028,6 +4114,7 @@ public class XmppConnectionService extends Service {
         if (mBitmapCache.remove(uuid) != null) {
             Log.d(Config.LOGTAG, "deleted cached preview");
         }
+        fileBackend.evictThumbnails(uuid);
     }
 
     public long getLastActivity() {
@@ -4054,6 +4141,14 @@ public class XmppConnectionService extends Service {
 
     public interface OnConversationUpdate {
         void onConversationUpdate();
+
+        /**
+         * Called on the main thread, at most once per frame. Listeners that can do targeted
+         * updates override this; everybody else refreshes on every update.
+         */
+        default void onConversationUpdate(final ConversationUpdate update) {
+            onConversationUpdate();
+        }
     }
 
     public interface OnJingleRtpConnectionUpdate {
@@ -35,6 +35,7 @@ import eu.siacs.conversations.entities.Conversation;
 import eu.siacs.conversations.entities.Conversational;
 import eu.siacs.conversations.entities.MucOptions;
 import eu.siacs.conversations.entities.MucOptions.User;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.services.XmppConnectionService.OnConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService.OnMucRosterUpdate;
@@ -214,6 +215,13 @@ public class ConferenceDetailsActivity extends XmppActivity
         refreshUi();
     }
 
+    @Override
+    public void onConversationUpdate(final ConversationUpdate update) {
+        if (mConversation == null || update.affects(mConversation)) {
+            refreshUi();
+        }
+    }
+
     @Override
     public void onMucRosterUpdate() {
         refreshUi();
@@ -105,6 +105,7 @@ import eu.siacs.conversations.ui.util.Attachment;
 import eu.siacs.conversations.ui.util.ConversationMenuConfigurator;
 import eu.siacs.conversations.ui.util.DateSeparator;
 import eu.siacs.conversations.ui.util.EditMessageActionModeCallback;
+import eu.siacs.conversations.ui.util.FrameTimeMetrics;
 import eu.siacs.conversations.ui.util.ListViewUtils;
 import eu.siacs.conversations.ui.util.MenuDoubleTabUtil;
 import eu.siacs.conversations.ui.util.MucDetailsContextMenuHelper;
@@ -210,6 +211,7 @@ public class ConversationFragment extends XmppFragment
     private final PendingItem<String> pendingLastMessageUuid = new PendingItem<>();
     private final PendingItem<Message> pendingMessage = new PendingItem<>();
     private final MediaPreviewAdapter mediaPreviewAdapter = new MediaPreviewAdapter(this);
+    private final FrameTimeMetrics frameTimeMetrics = new FrameTimeMetrics();
     public Uri mPendingEditorContent = null;
     protected MessageAdapter messageListAdapter;
     private String lastMessageUuid = null;
@@ -2257,13 +2259,13 @@ public class ConversationFragment extends XmppFragment
         builder.setPositiveButton(
                 R.string.confirm,
                 (dialog, which) -> {
-                    if (requireXmppActivity()
-                            .xmppConnectionService
-                            .getFileBackend()
-                            .deleteFile(message)) {
+                    final var service = requireXmppActivity().xmppConnectionService;
+                    if (service.getFileBackend().deleteFile(message)) {
                         message.setDeleted(true);
-                        requireXmppActivity().xmppConnectionService.evictPreview(message.getUuid());
-                        requireXmppActivity().xmppConnectionService.updateMessage(message, false);
+                        // dropping the thumbnails touches the disk cache
+                        XmppConnectionService.FILE_ATTACHMENT_EXECUTOR.execute(
+                                () -> service.evictPreview(message.getUuid()));
+                        service.updateMessage(message, false);
                         requireConversationsActivity().onConversationsListItemUpdated();
                         refresh();
                     }
@@ -2501,6 +2503,7 @@ public class ConversationFragment extends XmppFragment
     @Override
     public void onStart() {
         super.onStart();
+        frameTimeMetrics.start(requireActivity().getWindow());
         if (this.reInitRequiredOnStart && this.conversation != null) {
             final Bundle extras = pendingExtras.pop();
             reInit(this.conversation, extras != null);
@@ -2523,6 +2526,19 @@ public class ConversationFragment extends XmppFragment
     @Override
     public void onStop() {
         super.onStop();
+        frameTimeMetrics.stop();
+        final var service = requireXmppActivity().xmppConnectionService;
+        Log.d(
+                Config.LOGTAG,
+                "ConversationFragment.onStop() - "
+                        + frameTimeMetrics
+                        + ", "
+                        + messageListAdapter.getBodyRenderer()
+                        + ", "
+                        + messageListAdapter.getUpdateStats()
+                        + (service == null
+                                ? ""
+                                : ", " + service.getConversationUpdateDispatcher()));
         final Activity activity = getActivity();
         messageListAdapter.unregisterListenerInAudioPlayer();
         if (activity == null || !activity.isChangingConfigurations()) {
@@ -2956,6 +2972,7 @@ public class ConversationFragment extends XmppFragment
     private void refresh(boolean notifyConversationRead) {
         synchronized (this.messageList) {
             if (this.conversation != null) {
+                final var previousRows = MessageAdapter.getRowKeys(this.messageList);
                 conversation.populateWithMessages(this.messageList);
                 updateSnackBar(conversation);
                 updateStatusMessages();
@@ -2964,7 +2981,8 @@ public class ConversationFragment extends XmppFragment
                     binding.unreadCountCustomView.setUnreadCount(
                             conversation.getReceivedMessagesCountSinceUuid(lastMessageUuid));
                 }
-                this.messageListAdapter.notifyDataSetChanged();
+                // receipts, markers, reactions and progress only rebind the rows they touch
+                this.messageListAdapter.notifyRowsChanged(binding.messagesView, previousRows);
                 updateChatMsgHint();
                 if (notifyConversationRead) {
                     binding.messagesView.post(this::fireReadEvent);
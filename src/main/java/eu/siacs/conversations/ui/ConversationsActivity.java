@@ -65,6 +65,7 @@ import eu.siacs.conversations.databinding.ActivityConversationsBinding;
 import eu.siacs.conversations.entities.Contact;
 import eu.siacs.conversations.entities.Conversation;
 import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.ui.interfaces.OnBackendConnected;
 import eu.siacs.conversations.ui.interfaces.OnConversationArchived;
@@ -741,6 +742,18 @@ public class ConversationsActivity extends XmppActivity
         this.refreshUi();
     }
 
+    @Override
+    public void onConversationUpdate(final ConversationUpdate update) {
+        // chat states are only shown in the open conversation
+        if (update.isOnly(ConversationUpdate.Kind.CHAT_STATE)) {
+            final Conversation conversation = ConversationFragment.getConversation(this);
+            if (conversation == null || !update.affects(conversation)) {
+                return;
+            }
+        }
+        this.refreshUi();
+    }
+
     @Override
     public void onRosterUpdate() {
         this.refreshUi();
@@ -325,7 +325,7 @@ public class ImportBackupActivity extends ActionBarActivity
                         .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
                         .setInputData(
                                 ImportBackupWorker.data(
-                                        password, backupFile.getUri(), includeOmemo))
+                                        password, backupFile.getUris(), includeOmemo))
                         .addTag(ImportBackupWorker.TAG_IMPORT_BACKUP)
                         .build();
 
@@ -358,6 +358,7 @@ public class ImportBackupActivity extends ActionBarActivity
                         switch (reason) {
                             case DECRYPTION_FAILED -> onBackupDecryptionFailed();
                             case ACCOUNT_ALREADY_EXISTS -> onAccountAlreadySetup();
+                            case INCOMPLETE_BACKUP_CHAIN -> onBackupChainIncomplete();
                             default -> onBackupRestoreFailed();
                         }
                     } else if (state == WorkInfo.State.SUCCEEDED) {
@@ -391,6 +392,11 @@ public class ImportBackupActivity extends ActionBarActivity
         finish();
     }
 
+    private void onBackupChainIncomplete() {
+        Snackbar.make(binding.coordinator, R.string.incomplete_backup_chain, Snackbar.LENGTH_LONG)
+                .show();
+    }
+
     private void onBackupDecryptionFailed() {
         Snackbar.make(binding.coordinator, R.string.unable_to_decrypt_backup, Snackbar.LENGTH_LONG)
                 .show();
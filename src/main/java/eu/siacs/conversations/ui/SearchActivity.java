@@ -47,6 +47,7 @@ import android.widget.EditText;
 import androidx.databinding.DataBindingUtil;
 import com.google.android.material.color.MaterialColors;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import eu.siacs.conversations.R;
 import eu.siacs.conversations.databinding.ActivitySearchBinding;
 import eu.siacs.conversations.entities.Contact;
@@ -65,7 +66,9 @@ import eu.siacs.conversations.utils.FtsUtils;
 import eu.siacs.conversations.utils.MessageUtils;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SearchActivity extends XmppActivity
         implements TextWatcher, OnSearchResultsAvailable, MessageAdapter.OnContactPictureClicked {
@@ -76,6 +79,9 @@ public class SearchActivity extends XmppActivity
     private ActivitySearchBinding binding;
     private MessageAdapter messageListAdapter;
     private final List<Message> messages = new ArrayList<>();
+    // newest first, as they arrive
+    private final List<Message> results = new ArrayList<>();
+    private final Map<String, String> excerpts = new HashMap<>();
     private WeakReference<Message> selectedMessageReference = new WeakReference<>(null);
     private String uuid;
     private final ChangeWatcher<List<String>> currentSearch = new ChangeWatcher<>();
@@ -100,6 +106,7 @@ public class SearchActivity extends XmppActivity
         configureActionBar(getSupportActionBar());
         this.messageListAdapter = new MessageAdapter(this, this.messages, uuid == null);
         this.messageListAdapter.setOnContactPictureClicked(this);
+        this.messageListAdapter.setSearchExcerpts(excerpts);
         this.binding.searchResults.setAdapter(messageListAdapter);
         registerForContextMenu(this.binding.searchResults);
     }
@@ -248,6 +255,8 @@ public class SearchActivity extends XmppActivity
         if (term.isEmpty()) {
             MessageSearchTask.cancelRunningTasks();
             this.messages.clear();
+            this.results.clear();
+            this.excerpts.clear();
             messageListAdapter.setHighlightedTerm(null);
             messageListAdapter.notifyDataSetChanged();
             changeBackground(false, false);
@@ -257,16 +266,36 @@ public class SearchActivity extends XmppActivity
     }
 
     @Override
-    public void onSearchResultsAvailable(List<String> term, List<Message> messages) {
+    public void onSearchResultsAvailable(final MessageSearchTask.Page page) {
         runOnUiThread(
                 () -> {
+                    if (!page.term().equals(currentSearch.get())) {
+                        return;
+                    }
+                    if (page.first()) {
+                        this.results.clear();
+                        this.excerpts.clear();
+                    }
+                    this.results.addAll(page.messages());
+                    this.excerpts.putAll(page.excerpts());
+                    final var listView = this.binding.searchResults;
+                    final int previousCount = this.messages.size();
+                    final int firstVisible = listView.getFirstVisiblePosition();
+                    final View firstChild = listView.getChildAt(0);
                     this.messages.clear();
-                    messageListAdapter.setHighlightedTerm(term);
-                    DateSeparator.addAll(messages);
-                    this.messages.addAll(messages);
+                    this.messages.addAll(Lists.reverse(this.results));
+                    DateSeparator.addAll(this.messages);
+                    messageListAdapter.setHighlightedTerm(page.term());
                     messageListAdapter.notifyDataSetChanged();
-                    changeBackground(true, !messages.isEmpty());
-                    ListViewUtils.scrollToBottom(this.binding.searchResults);
+                    changeBackground(true, !this.results.isEmpty());
+                    if (page.first()) {
+                        ListViewUtils.scrollToBottom(listView);
+                    } else {
+                        // older results go on top; keep what the user is looking at in place
+                        listView.setSelectionFromTop(
+                                firstVisible + this.messages.size() - previousCount,
+                                firstChild == null ? 0 : firstChild.getTop());
+                    }
                 });
     }
 
@@ -70,6 +70,7 @@ import eu.siacs.conversations.entities.Account;
 import eu.siacs.conversations.entities.Contact;
 import eu.siacs.conversations.entities.Conversation;
 import eu.siacs.conversations.entities.ListItem;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.QuickConversationsService;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.services.XmppConnectionService.OnRosterUpdate;
@@ -1282,6 +1283,20 @@ public class StartConversationActivity extends XmppActivity
         refreshUi();
     }
 
+    @Override
+    public void onConversationUpdate(final ConversationUpdate update) {
+        // contacts and bookmarks do not show messages
+        if (update.isOnly(
+                ConversationUpdate.Kind.MESSAGE_ADDED,
+                ConversationUpdate.Kind.MESSAGE_CHANGED,
+                ConversationUpdate.Kind.MESSAGE_REMOVED,
+                ConversationUpdate.Kind.READ,
+                ConversationUpdate.Kind.CHAT_STATE)) {
+            return;
+        }
+        refreshUi();
+    }
+
     @Override
     public void onRefresh() {
         Log.d(Config.LOGTAG, "user requested to refresh");
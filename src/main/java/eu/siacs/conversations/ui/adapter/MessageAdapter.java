@@ -2,6 +2,7 @@ package eu.siacs.conversations.ui.adapter;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.ColorStateList;
@@ -23,6 +24,7 @@ import android.view.WindowManager;
 import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -34,7 +36,9 @@ import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
 import androidx.core.widget.ImageViewCompat;
+import androidx.core.widget.TextViewCompat;
 import androidx.databinding.DataBindingUtil;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.chip.ChipGroup;
@@ -45,7 +49,6 @@ import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
-import de.gultsch.common.Linkify;
 import eu.siacs.conversations.AppSettings;
 import eu.siacs.conversations.Config;
 import eu.siacs.conversations.R;
@@ -63,20 +66,17 @@ import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.entities.Message.FileParams;
 import eu.siacs.conversations.entities.RtpSessionStatus;
 import eu.siacs.conversations.entities.Transferable;
+import eu.siacs.conversations.http.HttpDownloadConnection;
 import eu.siacs.conversations.persistance.FileBackend;
-import eu.siacs.conversations.services.NotificationService;
 import eu.siacs.conversations.ui.Activities;
 import eu.siacs.conversations.ui.BindingAdapters;
 import eu.siacs.conversations.ui.ConversationFragment;
 import eu.siacs.conversations.ui.ConversationsActivity;
 import eu.siacs.conversations.ui.XmppActivity;
 import eu.siacs.conversations.ui.service.AudioPlayer;
-import eu.siacs.conversations.ui.text.DividerSpan;
-import eu.siacs.conversations.ui.text.FixedURLSpan;
-import eu.siacs.conversations.ui.text.QuoteSpan;
+import eu.siacs.conversations.ui.text.MessageBodyRenderer;
 import eu.siacs.conversations.ui.util.Attachment;
 import eu.siacs.conversations.ui.util.AvatarWorkerTask;
-import eu.siacs.conversations.ui.util.QuoteHelper;
 import eu.siacs.conversations.ui.util.ViewUtil;
 import eu.siacs.conversations.ui.widget.ClickableMovementMethod;
 import eu.siacs.conversations.utils.CryptoHelper;
@@ -91,12 +91,13 @@ import eu.siacs.conversations.xmpp.mam.MamReference;
 import eu.siacs.conversations.xmpp.manager.MessageArchiveManager;
 import im.conversations.android.xmpp.model.reactions.Restrictions;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class MessageAdapter extends ArrayAdapter<Message> {
 
@@ -106,10 +107,18 @@ public class MessageAdapter extends ArrayAdapter<Message> {
     private static final int STATUS = 2;
     private static final int DATE_SEPARATOR = 3;
     private static final int RTP_SESSION = 4;
+    // rows rendered ahead on either side when binding hits a body that is not cached
+    private static final int PRERENDER_DISTANCE = 16;
     private final XmppActivity activity;
     private final AudioPlayer audioPlayer;
     private List<String> highlightedTerm = null;
+    private Map<String, String> searchExcerpts = Collections.emptyMap();
     private final DisplayMetrics metrics;
+    private final MessageBodyRenderer bodyRenderer;
+    private final List<Message> messages;
+    private long fullUpdates = 0;
+    private long partialUpdates = 0;
+    private long reboundRows = 0;
     private OnContactPictureClicked mOnContactPictureClickedListener;
     private OnContactPictureLongClicked mOnContactPictureLongClickedListener;
     private BubbleDesign bubbleDesign = new BubbleDesign(false, false, false, true, true);
@@ -121,6 +130,8 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         this.audioPlayer = new AudioPlayer(this);
         this.activity = activity;
         metrics = getContext().getResources().getDisplayMetrics();
+        this.bodyRenderer = new MessageBodyRenderer(metrics);
+        this.messages = messages;
         updatePreferences();
         this.mForceNames = forceNames;
     }
@@ -389,90 +400,9 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         viewHolder.messageBody().setText(span);
     }
 
-    private void applyQuoteSpan(
-            final TextView textView,
-            SpannableStringBuilder body,
-            int start,
-            int end,
-            final BubbleColor bubbleColor) {
-        if (start > 1 && !"\n\n".equals(body.subSequence(start - 2, start).toString())) {
-            body.insert(start++, "\n");
-            body.setSpan(
-                    new DividerSpan(false), start - 2, start, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            end++;
-        }
-        if (end < body.length() - 1 && !"\n\n".equals(body.subSequence(end, end + 2).toString())) {
-            body.insert(end, "\n");
-            body.setSpan(new DividerSpan(false), end, end + 2, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-        final DisplayMetrics metrics = getContext().getResources().getDisplayMetrics();
-        body.setSpan(
-                new QuoteSpan(bubbleToOnSurfaceVariant(textView, bubbleColor), metrics),
-                start,
-                end,
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-    }
-
-    /**
-     * Applies QuoteSpan to group of lines which starts with > or » characters. Appends likebreaks
-     * and applies DividerSpan to them to show a padding between quote and text.
-     */
-    private boolean handleTextQuotes(
-            final TextView textView,
-            final SpannableStringBuilder body,
-            final BubbleColor bubbleColor) {
-        boolean startsWithQuote = false;
-        int quoteDepth = 1;
-        while (QuoteHelper.bodyContainsQuoteStart(body) && quoteDepth <= Config.QUOTE_MAX_DEPTH) {
-            char previous = '\n';
-            int lineStart = -1;
-            int lineTextStart = -1;
-            int quoteStart = -1;
-            for (int i = 0; i <= body.length(); i++) {
-                char current = body.length() > i ? body.charAt(i) : '\n';
-                if (lineStart == -1) {
-                    if (previous == '\n') {
-                        if (i < body.length() && QuoteHelper.isPositionQuoteStart(body, i)) {
-                            // Line start with quote
-                            lineStart = i;
-                            if (quoteStart == -1) quoteStart = i;
-                            if (i == 0) startsWithQuote = true;
-                        } else if (quoteStart >= 0) {
-                            // Line start without quote, apply spans there
-                            applyQuoteSpan(textView, body, quoteStart, i - 1, bubbleColor);
-                            quoteStart = -1;
-                        }
-                    }
-                } else {
-                    // Remove extra spaces between > and first character in the line
-                    // > character will be removed too
-                    if (current != ' ' && lineTextStart == -1) {
-                        lineTextStart = i;
-                    }
-                    if (current == '\n') {
-                        body.delete(lineStart, lineTextStart);
-                        i -= lineTextStart - lineStart;
-                        if (i == lineStart) {
-                            // Avoid empty lines because span over empty line can be hidden
-                            body.insert(i++, " ");
-                        }
-                        lineStart = -1;
-                        lineTextStart = -1;
-                    }
-                }
-                previous = current;
-            }
-            if (quoteStart >= 0) {
-                // Apply spans to finishing open quote
-                applyQuoteSpan(textView, body, quoteStart, body.length(), bubbleColor);
-            }
-            quoteDepth++;
-        }
-        return startsWithQuote;
-    }
-
     private void displayTextMessage(
             final BubbleMessageItemViewHolder viewHolder,
+            final int position,
             final Message message,
             final BubbleColor bubbleColor) {
         viewHolder.downloadButton().setVisibility(View.GONE);
@@ -488,106 +418,109 @@ public class MessageAdapter extends ArrayAdapter<Message> {
             viewHolder.messageBody().setTextIsSelectable(false);
             return;
         }
-        final String nick = UIHelper.getMessageDisplayName(message);
-        final boolean hasMeCommand = message.hasMeCommand();
-        final var trimmedBody = rawBody.trim();
-        final SpannableStringBuilder body;
-        if (trimmedBody.length() > Config.MAX_DISPLAY_MESSAGE_CHARS) {
-            body = new SpannableStringBuilder(trimmedBody, 0, Config.MAX_DISPLAY_MESSAGE_CHARS);
-            body.append("…");
-        } else {
-            body = new SpannableStringBuilder(trimmedBody);
+        final var textView = viewHolder.messageBody();
+        final var excerpt = highlightedTerm == null ? null : searchExcerpts.get(message.getUuid());
+        if (excerpt != null) {
+            final var body = new SpannableStringBuilder(excerpt);
+            StylingHelper.highlight(textView, body, highlightedTerm);
+            textView.setText(body);
+            return;
         }
-        if (hasMeCommand) {
-            body.replace(0, Message.ME_COMMAND.length(), String.format("%s ", nick));
+        final var key = getBodyKey(message, bubbleColor);
+        if (!bodyRenderer.isCached(key)) {
+            // scrolled into a part of the chat that has not been rendered yet
+            prerenderBodies(position - PRERENDER_DISTANCE, position + PRERENDER_DISTANCE);
         }
-        boolean startsWithQuote = handleTextQuotes(viewHolder.messageBody(), body, bubbleColor);
-        if (!message.isPrivateMessage()) {
-            if (hasMeCommand) {
-                body.setSpan(
-                        new StyleSpan(Typeface.BOLD_ITALIC),
-                        0,
-                        nick.length(),
-                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            }
+        final var text = bodyRenderer.get(key, TextViewCompat.getTextMetricsParams(textView));
+        textView.setAutoLinkMask(0);
+        if (highlightedTerm != null) {
+            final var body = new SpannableStringBuilder(text);
+            StylingHelper.highlight(textView, body, highlightedTerm);
+            textView.setText(body);
+        } else if (text instanceof PrecomputedTextCompat precomputed) {
+            TextViewCompat.setPrecomputedText(textView, precomputed);
         } else {
-            String privateMarker;
-            if (message.getStatus() <= Message.STATUS_RECEIVED) {
-                privateMarker = activity.getString(R.string.private_message);
-            } else {
-                Jid cp = message.getCounterpart();
-                privateMarker =
-                        activity.getString(
-                                R.string.private_message_to,
-                                Strings.nullToEmpty(cp == null ? null : cp.getResource()));
-            }
-            body.insert(0, privateMarker);
-            int privateMarkerIndex = privateMarker.length();
-            if (startsWithQuote) {
-                body.insert(privateMarkerIndex, "\n\n");
-                body.setSpan(
-                        new DividerSpan(false),
-                        privateMarkerIndex,
-                        privateMarkerIndex + 2,
-                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            } else {
-                body.insert(privateMarkerIndex, " ");
-            }
-            body.setSpan(
-                    new ForegroundColorSpan(
-                            bubbleToOnSurfaceVariant(viewHolder.messageBody(), bubbleColor)),
-                    0,
-                    privateMarkerIndex,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            body.setSpan(
-                    new StyleSpan(Typeface.BOLD),
-                    0,
-                    privateMarkerIndex,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            if (hasMeCommand) {
-                body.setSpan(
-                        new StyleSpan(Typeface.BOLD_ITALIC),
-                        privateMarkerIndex + 1,
-                        privateMarkerIndex + 1 + nick.length(),
-                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            }
+            textView.setText(text);
         }
+        textView.setMovementMethod(ClickableMovementMethod.getInstance());
+    }
+
+    private MessageBodyRenderer.Key getBodyKey(
+            final Message message, final BubbleColor bubbleColor) {
+        final String meCommandNick =
+                message.hasMeCommand() ? UIHelper.getMessageDisplayName(message) : null;
+        final String privateMarker;
+        if (!message.isPrivateMessage()) {
+            privateMarker = null;
+        } else if (message.getStatus() <= Message.STATUS_RECEIVED) {
+            privateMarker = activity.getString(R.string.private_message);
+        } else {
+            final Jid cp = message.getCounterpart();
+            privateMarker =
+                    activity.getString(
+                            R.string.private_message_to,
+                            Strings.nullToEmpty(cp == null ? null : cp.getResource()));
+        }
+        return new MessageBodyRenderer.Key(
+                message.getUuid(),
+                message.getBody(),
+                meCommandNick,
+                privateMarker,
+                getHighlightNick(message),
+                MaterialColors.getColor(
+                        activity, bubbleToOnSurface(bubbleColor), MessageAdapter.class.getName()),
+                bubbleToOnSurfaceVariant(activity, bubbleColor));
+    }
+
+    // our own nick is highlighted in what others write in a group chat
+    @Nullable
+    private static String getHighlightNick(final Message message) {
         if (message.getConversation().getMode() == Conversation.MODE_MULTI
-                && message.getStatus() == Message.STATUS_RECEIVED) {
-            if (message.getConversation() instanceof Conversation conversation) {
-                Pattern pattern =
-                        NotificationService.generateNickHighlightPattern(
-                                conversation.getMucOptions().getActualNick());
-                Matcher matcher = pattern.matcher(body);
-                while (matcher.find()) {
-                    body.setSpan(
-                            new StyleSpan(Typeface.BOLD),
-                            matcher.start(),
-                            matcher.end(),
-                            Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-                }
-            }
+                && message.getStatus() == Message.STATUS_RECEIVED
+                && message.getConversation() instanceof Conversation conversation) {
+            return conversation.getMucOptions().getActualNick();
         }
-        Matcher matcher = Emoticons.getEmojiPattern(body).matcher(body);
-        while (matcher.find()) {
-            if (matcher.start() < matcher.end()) {
-                body.setSpan(
-                        new RelativeSizeSpan(1.2f),
-                        matcher.start(),
-                        matcher.end(),
-                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return null;
+    }
+
+    // a cheap approximation of the branches in render() that end up in displayTextMessage()
+    private static boolean isDisplayedAsText(final Message message) {
+        return (message.getType() == Message.TYPE_TEXT
+                        || message.getType() == Message.TYPE_PRIVATE)
+                && message.getTransferable() == null
+                && !message.isDeleted()
+                && !Strings.isNullOrEmpty(message.getBody())
+                && message.getEncryption() != Message.ENCRYPTION_PGP
+                && message.getEncryption() != Message.ENCRYPTION_DECRYPTION_FAILED
+                && message.getEncryption() != Message.ENCRYPTION_AXOLOTL_NOT_FOR_THIS_DEVICE
+                && message.getEncryption() != Message.ENCRYPTION_AXOLOTL_FAILED;
+    }
+
+    private void prerenderBodies(final int from, final int to) {
+        final var keys = new ArrayList<MessageBodyRenderer.Key>();
+        for (int i = Math.max(0, from); i < Math.min(getCount(), to); ++i) {
+            final Message message = getItem(i);
+            if (message == null || !isDisplayedAsText(message)) {
+                continue;
+            }
+            final var key = getBodyKey(message, getBubbleColor(message));
+            if (!bodyRenderer.isCached(key)) {
+                keys.add(key);
             }
         }
+        bodyRenderer.prerender(keys);
+    }
 
-        StylingHelper.format(body, viewHolder.messageBody().getCurrentTextColor());
-        Linkify.addLinks(body);
-        FixedURLSpan.fix(body);
-        if (highlightedTerm != null) {
-            StylingHelper.highlight(viewHolder.messageBody(), body, highlightedTerm);
-        }
-        viewHolder.messageBody().setAutoLinkMask(0);
-        viewHolder.messageBody().setText(body);
-        viewHolder.messageBody().setMovementMethod(ClickableMovementMethod.getInstance());
+    @Override
+    public void notifyDataSetChanged() {
+        super.notifyDataSetChanged();
+        // the chat opens at the bottom; get the newest bodies ready before they are bound
+        final int count = getCount();
+        prerenderBodies(count - PRERENDER_DISTANCE * 4, count);
+    }
+
+    public MessageBodyRenderer getBodyRenderer() {
+        return bodyRenderer;
     }
 
     private void displayDownloadableMessage(
@@ -805,6 +738,7 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         final Message message = getItem(position);
         final int type = getItemViewType(message, bubbleDesign.alignStart);
         final MessageItemViewHolder viewHolder = getViewHolder(view, parent, type);
+        viewHolder.bound = getBoundRow(position, message, type);
 
         if (type == DATE_SEPARATOR
                 && viewHolder instanceof DateSeperatorMessageItemViewHolder messageItemViewHolder) {
@@ -829,6 +763,156 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         throw new AssertionError();
     }
 
+    /**
+     * Identifies a row across refreshes. Status rows (date separators, markers, chat states) are
+     * recreated on every refresh and have no uuid; they are identified by what they say.
+     */
+    public static String getRowKey(final Message message) {
+        if (message.getType() == Message.TYPE_STATUS) {
+            return "status:" + message.getTimeSent() + ":" + message.getBody();
+        }
+        return message.getUuid();
+    }
+
+    public static List<String> getRowKeys(final List<Message> messages) {
+        final var keys = new ArrayList<String>(messages.size());
+        for (final Message message : messages) {
+            keys.add(getRowKey(message));
+        }
+        return keys;
+    }
+
+    private BoundRow getBoundRow(final int position, final Message message, final int type) {
+        return new BoundRow(getRowKey(message), type, getRowVersion(position, message, type));
+    }
+
+    // changes whenever anything shown in the row does; compared to skip rebinding unchanged rows
+    private int getRowVersion(final int position, final Message message, final int type) {
+        if (type != START && type != END) {
+            return Objects.hashCode(message.getBody(), message.getCounterparts(), bubbleDesign);
+        }
+        return Objects.hashCode(
+                getContentVersion(message, getHighlightNick(message)),
+                getBubbleColor(message),
+                UIHelper.getMessageDisplayName(message),
+                mergeIntoTop(position, message),
+                mergeIntoBottom(position, message),
+                activity.xmppConnectionService == null
+                        ? 0
+                        : activity.avatarService().getGeneration(),
+                bubbleDesign,
+                highlightedTerm);
+    }
+
+    /**
+     * The part of the row version that only depends on the message and the nick highlighted in
+     * its body.
+     */
+    static int getContentVersion(final Message message, @Nullable final String highlightNick) {
+        final Transferable transferable = message.getTransferable();
+        return Objects.hashCode(
+                message.getStatus(),
+                message.getBody(),
+                message.getEncryption(),
+                message.isDeleted(),
+                message.edited(),
+                message.getErrorMessage(),
+                message.getRelativeFilePath(),
+                System.identityHashCode(message.getReactions()),
+                // the avatars of who read the message are shown, not just how many
+                message.getReadByMarkers(),
+                transferable == null ? null : transferable.getStatus(),
+                transferable == null ? null : transferable.getProgress(),
+                highlightNick);
+    }
+
+    /**
+     * Updates the list view after the backing list was repopulated. If the rows are the same as
+     * before, only visible rows whose content changed are rebound. Rows that were inserted, removed
+     * or reordered need a full {@link #notifyDataSetChanged()}.
+     *
+     * @param previousKeys the {@link #getRowKeys(List) row keys} before repopulating
+     */
+    public void notifyRowsChanged(final ListView listView, final List<String> previousKeys) {
+        if (!previousKeys.equals(getRowKeys(messages))) {
+            fullUpdates++;
+            notifyDataSetChanged();
+            return;
+        }
+        final int first = listView.getFirstVisiblePosition();
+        final int count = Math.min(listView.getChildCount(), getCount() - first);
+        final var bound = new ArrayList<BoundRow>(count);
+        final var current = new ArrayList<BoundRow>(count);
+        for (int i = 0; i < count; ++i) {
+            final int position = first + i;
+            final Message message = getItem(position);
+            final int type = getItemViewType(message, bubbleDesign.alignStart);
+            bound.add(
+                    listView.getChildAt(i).getTag() instanceof MessageItemViewHolder viewHolder
+                            ? viewHolder.bound
+                            : null);
+            current.add(getBoundRow(position, message, type));
+        }
+        final var changed = getRowsToRebind(bound, current);
+        if (changed == null) {
+            // the list view lags behind the adapter
+            fullUpdates++;
+            notifyDataSetChanged();
+            return;
+        }
+        for (final int i : changed) {
+            final View child = listView.getChildAt(i);
+            if (getView(first + i, child, listView) != child) {
+                fullUpdates++;
+                notifyDataSetChanged();
+                return;
+            }
+        }
+        partialUpdates++;
+        reboundRows += changed.size();
+    }
+
+    /**
+     * @param bound what the visible rows were last bound to; null for rows without a view holder
+     * @param current what the same rows would be bound to now
+     * @return the indexes of the rows whose content changed or null if the rows themselves did
+     */
+    @Nullable
+    static List<Integer> getRowsToRebind(
+            final List<BoundRow> bound, final List<BoundRow> current) {
+        final var changed = new ArrayList<Integer>();
+        for (int i = 0; i < current.size(); ++i) {
+            final BoundRow was = bound.get(i);
+            final BoundRow is = current.get(i);
+            if (was == null || was.type() != is.type() || !was.key().equals(is.key())) {
+                return null;
+            }
+            if (was.version() != is.version()) {
+                changed.add(i);
+            }
+        }
+        return changed;
+    }
+
+    public String getUpdateStats() {
+        return String.format(
+                "updates: %d full, %d partial rebinding %d rows",
+                fullUpdates, partialUpdates, reboundRows);
+    }
+
+    private static BubbleColor getBubbleColor(final Message message) {
+        if (message.getStatus() == Message.STATUS_RECEIVED) {
+            final boolean omemoEncryption = message.getEncryption() == Message.ENCRYPTION_AXOLOTL;
+            if (message.isValidInSession() && (!omemoEncryption || message.isTrusted())) {
+                return BubbleColor.SURFACE_HIGH;
+            } else {
+                return BubbleColor.WARNING;
+            }
+        } else {
+            return BubbleColor.PRIMARY;
+        }
+    }
+
     private View render(
             final int position,
             final Message message,
@@ -841,16 +925,7 @@ public class MessageAdapter extends ArrayAdapter<Message> {
 
         final boolean colorfulBackground = this.bubbleDesign.colorfulChatBubbles;
         final boolean received = message.getStatus() == Message.STATUS_RECEIVED;
-        final BubbleColor bubbleColor;
-        if (received) {
-            if (isInValidSession) {
-                bubbleColor = BubbleColor.SURFACE_HIGH;
-            } else {
-                bubbleColor = BubbleColor.WARNING;
-            }
-        } else {
-            bubbleColor = BubbleColor.PRIMARY;
-        }
+        final BubbleColor bubbleColor = getBubbleColor(message);
 
         final var mergeIntoTop = mergeIntoTop(position, message);
         final var mergeIntoBottom = mergeIntoBottom(position, message);
@@ -903,6 +978,9 @@ public class MessageAdapter extends ArrayAdapter<Message> {
                         });
 
         final Transferable transferable = message.getTransferable();
+        if (transferable instanceof HttpDownloadConnection httpDownloadConnection) {
+            httpDownloadConnection.setVisible();
+        }
         final boolean unInitiatedButKnownSize = MessageUtils.unInitiatedButKnownSize(message);
         if (unInitiatedButKnownSize
                 || message.isDeleted()
@@ -998,7 +1076,7 @@ public class MessageAdapter extends ArrayAdapter<Message> {
                             bubbleColor);
                 }
             } else {
-                displayTextMessage(viewHolder, message, bubbleColor);
+                displayTextMessage(viewHolder, position, message, bubbleColor);
             }
         }
 
@@ -1378,6 +1456,13 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         this.highlightedTerm = terms == null ? null : StylingHelper.filterHighlightedWords(terms);
     }
 
+    /**
+     * @param excerpts shown instead of the body of long search results, by message uuid
+     */
+    public void setSearchExcerpts(final Map<String, String> excerpts) {
+        this.searchExcerpts = excerpts;
+    }
+
     public interface OnContactPictureClicked {
         void onContactPictureClicked(Message message);
     }
@@ -1451,13 +1536,19 @@ public class MessageAdapter extends ArrayAdapter<Message> {
 
     private static @ColorInt int bubbleToOnSurfaceVariant(
             final View view, final BubbleColor bubbleColor) {
+        return bubbleToOnSurfaceVariant(view.getContext(), bubbleColor);
+    }
+
+    private static @ColorInt int bubbleToOnSurfaceVariant(
+            final Context context, final BubbleColor bubbleColor) {
         final @AttrRes int colorAttributeResId;
         if (BubbleColor.SURFACES.contains(bubbleColor)) {
             colorAttributeResId = com.google.android.material.R.attr.colorOnSurfaceVariant;
         } else {
             colorAttributeResId = bubbleToOnSurface(bubbleColor);
         }
-        return MaterialColors.getColor(view, colorAttributeResId);
+        return MaterialColors.getColor(
+                context, colorAttributeResId, MessageAdapter.class.getName());
     }
 
     private static @ColorInt int bubbleToOnSurfaceColor(
@@ -1515,9 +1606,18 @@ public class MessageAdapter extends ArrayAdapter<Message> {
         }
     }
 
+    /**
+     * @param key the {@link #getRowKey(Message) row key}
+     * @param type the view type
+     * @param version changes whenever anything shown in the row does
+     */
+    record BoundRow(String key, int type, int version) {}
+
     private abstract static class MessageItemViewHolder /*extends RecyclerView.ViewHolder*/ {
 
         private final View itemView;
+        // what the row was last bound to; see notifyRowsChanged()
+        private BoundRow bound;
 
         private MessageItemViewHolder(@NonNull View itemView) {
             this.itemView = itemView;
@@ -29,12 +29,11 @@
 
 package eu.siacs.conversations.ui.interfaces;
 
-import java.util.List;
-
-import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.services.MessageSearchTask;
 
 public interface OnSearchResultsAvailable {
 
-	void onSearchResultsAvailable(List<String> term, List<Message> messages);
+	/** Called once per page; on a background thread. */
+	void onSearchResultsAvailable(MessageSearchTask.Page page);
 
 }
@@ -0,0 +1,318 @@
+package eu.siacs.conversations.ui.text;
+
+import android.graphics.Typeface;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StyleSpan;
+import android.util.DisplayMetrics;
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+import androidx.core.text.PrecomputedTextCompat;
+import de.gultsch.common.Linkify;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.services.NotificationService;
+import eu.siacs.conversations.ui.util.QuoteHelper;
+import eu.siacs.conversations.utils.Emoticons;
+import eu.siacs.conversations.utils.StylingHelper;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns message bodies into styled text (quotes, /me, private message markers, nick highlights,
+ * emoji sizing, inline styling and links) and caches the result, so that binding a row only has
+ * to attach text that was built before. Bodies near the bottom of the chat and around cache misses
+ * are rendered on a background thread, together with their {@link PrecomputedTextCompat} layout
+ * metrics.
+ *
+ * <p>Everything the styling depends on is part of the {@link Key}; an edit, a nick change or a
+ * different theme yields a different key rather than a stale cache entry.
+ */
+public class MessageBodyRenderer {
+
+    private static final int CACHE_SIZE = 512;
+
+    private static final Executor RENDER_EXECUTOR =
+            Executors.newSingleThreadExecutor(
+                    r -> {
+                        final Thread thread = new Thread(r, "MessageBodyRenderer");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+
+    private final LruCache<Key, Rendered> cache = new LruCache<>(CACHE_SIZE);
+    private final DisplayMetrics metrics;
+
+    // metrics of the message body text view as of the last bind; null until the first bind
+    private volatile PrecomputedTextCompat.Params params;
+    private volatile HighlightPattern highlightPattern;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong precomputed = new AtomicLong();
+    private final AtomicLong prerendered = new AtomicLong();
+    private final AtomicLong bindNanos = new AtomicLong();
+
+    public MessageBodyRenderer(final DisplayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param key the body and everything its styling depends on
+     * @param params the metrics of the text view the body is about to be shown in
+     * @return precomputed text if it matches the text view, immutable styled text otherwise
+     */
+    public CharSequence get(final Key key, final PrecomputedTextCompat.Params params) {
+        final long started = System.nanoTime();
+        this.params = params;
+        Rendered rendered = cache.get(key);
+        if (rendered == null) {
+            misses.incrementAndGet();
+            rendered = new Rendered(render(key), null);
+            cache.put(key, rendered);
+        } else {
+            hits.incrementAndGet();
+        }
+        final CharSequence text;
+        if (rendered.precomputed() != null && rendered.precomputed().getParams().equals(params)) {
+            precomputed.incrementAndGet();
+            text = rendered.precomputed();
+        } else {
+            text = rendered.text();
+        }
+        bindNanos.addAndGet(System.nanoTime() - started);
+        return text;
+    }
+
+    public boolean isCached(final Key key) {
+        return cache.get(key) != null;
+    }
+
+    /** Renders and precomputes the bodies that are not cached yet on a background thread. */
+    public void prerender(final Collection<Key> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        RENDER_EXECUTOR.execute(
+                () -> {
+                    final var params = this.params;
+                    for (final Key key : keys) {
+                        final var cached = cache.get(key);
+                        if (cached != null && (cached.precomputed() != null || params == null)) {
+                            continue;
+                        }
+                        final Spanned text = cached == null ? render(key) : cached.text();
+                        final PrecomputedTextCompat precomputed =
+                                params == null ? null : PrecomputedTextCompat.create(text, params);
+                        cache.put(key, new Rendered(text, precomputed));
+                        prerendered.incrementAndGet();
+                    }
+                });
+    }
+
+    private Spanned render(final Key key) {
+        final var trimmedBody = key.body().trim();
+        final SpannableStringBuilder body;
+        if (trimmedBody.length() > Config.MAX_DISPLAY_MESSAGE_CHARS) {
+            body = new SpannableStringBuilder(trimmedBody, 0, Config.MAX_DISPLAY_MESSAGE_CHARS);
+            body.append("…");
+        } else {
+            body = new SpannableStringBuilder(trimmedBody);
+        }
+        final String nick = key.meCommandNick();
+        if (nick != null) {
+            body.replace(0, Message.ME_COMMAND.length(), String.format("%s ", nick));
+        }
+        final boolean startsWithQuote = handleTextQuotes(body, key.secondaryColor());
+        final String privateMarker = key.privateMarker();
+        if (privateMarker == null) {
+            if (nick != null) {
+                body.setSpan(
+                        new StyleSpan(Typeface.BOLD_ITALIC),
+                        0,
+                        nick.length(),
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        } else {
+            body.insert(0, privateMarker);
+            int privateMarkerIndex = privateMarker.length();
+            if (startsWithQuote) {
+                body.insert(privateMarkerIndex, "\n\n");
+                body.setSpan(
+                        new DividerSpan(false),
+                        privateMarkerIndex,
+                        privateMarkerIndex + 2,
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            } else {
+                body.insert(privateMarkerIndex, " ");
+            }
+            body.setSpan(
+                    new ForegroundColorSpan(key.secondaryColor()),
+                    0,
+                    privateMarkerIndex,
+                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            body.setSpan(
+                    new StyleSpan(Typeface.BOLD),
+                    0,
+                    privateMarkerIndex,
+                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            if (nick != null) {
+                body.setSpan(
+                        new StyleSpan(Typeface.BOLD_ITALIC),
+                        privateMarkerIndex + 1,
+                        privateMarkerIndex + 1 + nick.length(),
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+        if (key.highlightNick() != null) {
+            final Matcher matcher = getHighlightPattern(key.highlightNick()).matcher(body);
+            while (matcher.find()) {
+                body.setSpan(
+                        new StyleSpan(Typeface.BOLD),
+                        matcher.start(),
+                        matcher.end(),
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+        final Matcher matcher = Emoticons.getEmojiPattern(body).matcher(body);
+        while (matcher.find()) {
+            if (matcher.start() < matcher.end()) {
+                body.setSpan(
+                        new RelativeSizeSpan(1.2f),
+                        matcher.start(),
+                        matcher.end(),
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+        StylingHelper.format(body, key.textColor());
+        Linkify.addLinks(body);
+        FixedURLSpan.fix(body);
+        return new SpannedString(body);
+    }
+
+    // the own nick is the same for every message in a MUC; compile its pattern once
+    private Pattern getHighlightPattern(final String nick) {
+        final var highlightPattern = this.highlightPattern;
+        if (highlightPattern != null && highlightPattern.nick().equals(nick)) {
+            return highlightPattern.pattern();
+        }
+        final var pattern = NotificationService.generateNickHighlightPattern(nick);
+        this.highlightPattern = new HighlightPattern(nick, pattern);
+        return pattern;
+    }
+
+    private void applyQuoteSpan(
+            final SpannableStringBuilder body, int start, int end, @ColorInt final int color) {
+        if (start > 1 && !"\n\n".equals(body.subSequence(start - 2, start).toString())) {
+            body.insert(start++, "\n");
+            body.setSpan(
+                    new DividerSpan(false), start - 2, start, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            end++;
+        }
+        if (end < body.length() - 1 && !"\n\n".equals(body.subSequence(end, end + 2).toString())) {
+            body.insert(end, "\n");
+            body.setSpan(new DividerSpan(false), end, end + 2, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        body.setSpan(
+                new QuoteSpan(color, metrics), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    /**
+     * Applies QuoteSpan to group of lines which starts with > or » characters. Appends likebreaks
+     * and applies DividerSpan to them to show a padding between quote and text.
+     */
+    private boolean handleTextQuotes(final SpannableStringBuilder body, @ColorInt final int color) {
+        boolean startsWithQuote = false;
+        int quoteDepth = 1;
+        while (QuoteHelper.bodyContainsQuoteStart(body) && quoteDepth <= Config.QUOTE_MAX_DEPTH) {
+            char previous = '\n';
+            int lineStart = -1;
+            int lineTextStart = -1;
+            int quoteStart = -1;
+            for (int i = 0; i <= body.length(); i++) {
+                char current = body.length() > i ? body.charAt(i) : '\n';
+                if (lineStart == -1) {
+                    if (previous == '\n') {
+                        if (i < body.length() && QuoteHelper.isPositionQuoteStart(body, i)) {
+                            // Line start with quote
+                            lineStart = i;
+                            if (quoteStart == -1) quoteStart = i;
+                            if (i == 0) startsWithQuote = true;
+                        } else if (quoteStart >= 0) {
+                            // Line start without quote, apply spans there
+                            applyQuoteSpan(body, quoteStart, i - 1, color);
+                            quoteStart = -1;
+                        }
+                    }
+                } else {
+                    // Remove extra spaces between > and first character in the line
+                    // > character will be removed too
+                    if (current != ' ' && lineTextStart == -1) {
+                        lineTextStart = i;
+                    }
+                    if (current == '\n') {
+                        body.delete(lineStart, lineTextStart);
+                        i -= lineTextStart - lineStart;
+                        if (i == lineStart) {
+                            // Avoid empty lines because span over empty line can be hidden
+                            body.insert(i++, " ");
+                        }
+                        lineStart = -1;
+                        lineTextStart = -1;
+                    }
+                }
+                previous = current;
+            }
+            if (quoteStart >= 0) {
+                // Apply spans to finishing open quote
+                applyQuoteSpan(body, quoteStart, body.length(), color);
+            }
+            quoteDepth++;
+        }
+        return startsWithQuote;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final long binds = Math.max(1, hits.get() + misses.get());
+        return String.format(
+                "MessageBodyRenderer{hits=%d, misses=%d, precomputed=%d, prerendered=%d,"
+                        + " bind=%dus}",
+                hits.get(),
+                misses.get(),
+                precomputed.get(),
+                prerendered.get(),
+                TimeUnit.NANOSECONDS.toMicros(bindNanos.get() / binds));
+    }
+
+    /**
+     * @param meCommandNick the name /me is replaced with; null if the body has no /me command
+     * @param privateMarker the prefix of a MUC private message; null for other messages
+     * @param highlightNick the own MUC nick to highlight in received messages; null otherwise
+     * @param secondaryColor the color of quotes and private markers
+     */
+    public record Key(
+            String uuid,
+            String body,
+            @Nullable String meCommandNick,
+            @Nullable String privateMarker,
+            @Nullable String highlightNick,
+            @ColorInt int textColor,
+            @ColorInt int secondaryColor) {}
+
+    private record HighlightPattern(String nick, Pattern pattern) {}
+
+    private record Rendered(Spanned text, @Nullable PrecomputedTextCompat precomputed) {}
+}
@@ -0,0 +1,104 @@
+package eu.siacs.conversations.ui.util;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.FrameMetrics;
+import android.view.Window;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects how long the frames of a window took to draw while it is attached. Used to see whether
+ * scrolling through a chat stays within the frame budget. Frame metrics require Android 7; on
+ * older versions nothing is collected.
+ */
+public class FrameTimeMetrics {
+
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    // bucket i counts frames that took i to i + 1 milliseconds; the last one all longer frames
+    private static final int BUCKETS = 64;
+
+    private static Handler handler;
+
+    private final long[] histogram = new long[BUCKETS];
+    private long frames = 0;
+    private long janky = 0;
+    private long dropped = 0;
+    private Window window;
+    private Object listener;
+
+    public synchronized void start(final Window window) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || this.window != null) {
+            return;
+        }
+        final Window.OnFrameMetricsAvailableListener listener = this::onFrameMetricsAvailable;
+        window.addOnFrameMetricsAvailableListener(listener, getHandler());
+        this.window = window;
+        this.listener = listener;
+    }
+
+    public synchronized void stop() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || this.window == null) {
+            return;
+        }
+        try {
+            window.removeOnFrameMetricsAvailableListener(
+                    (Window.OnFrameMetricsAvailableListener) listener);
+        } catch (final IllegalArgumentException e) {
+            // the window has already dropped its listeners
+        }
+        this.window = null;
+        this.listener = null;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private synchronized void onFrameMetricsAvailable(
+            final Window window, final FrameMetrics frameMetrics, final int dropCount) {
+        final long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        final int bucket = (int) Math.min(BUCKETS - 1, TimeUnit.NANOSECONDS.toMillis(duration));
+        histogram[bucket]++;
+        frames++;
+        dropped += dropCount;
+        if (duration > FRAME_BUDGET_NANOS) {
+            janky++;
+        }
+    }
+
+    private static synchronized Handler getHandler() {
+        if (handler == null) {
+            final HandlerThread thread = new HandlerThread("FrameTimeMetrics");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    private long percentile(final double percentile) {
+        final long threshold = (long) Math.ceil(frames * percentile);
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            count += histogram[i];
+            if (count >= threshold) {
+                return i;
+            }
+        }
+        return BUCKETS - 1;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "FrameTimeMetrics{frames=%d, janky=%d, dropped=%d, p50=%dms, p90=%dms,"
+                        + " p99=%dms}",
+                frames,
+                janky,
+                dropped,
+                percentile(0.5),
+                percentile(0.9),
+                percentile(0.99));
+    }
+}
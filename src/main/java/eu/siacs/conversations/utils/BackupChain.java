@@ -0,0 +1,169 @@
+package eu.siacs.conversations.utils;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.List;
+
+/**
+ * State of the incremental backup of one account. A chain starts with a base (all messages,
+ * written in as many files as it takes to get through without being stopped) followed by delta
+ * files holding the messages that changed since the previous file. Changes are tracked by the
+ * message_changes table; the watermark is the last change the chain contains.
+ */
+public class BackupChain {
+
+    public static final String TABLENAME = "backup_chains";
+
+    public static final String ACCOUNT = "accountUuid";
+    public static final String LOCATION = "location";
+    public static final String CHAIN = "chain";
+    public static final String FILES = "files";
+    public static final String WATERMARK = "watermark";
+    public static final String BASE_POSITION = "basePosition";
+    public static final String PASSWORD_DIGEST = "passwordDigest";
+
+    // the base is complete; subsequent files are deltas
+    public static final long BASE_COMPLETE = -1;
+
+    private final String account;
+    private final Uri location;
+    private final long chain;
+    private final List<Uri> files;
+    private final long watermark;
+    private final long basePosition;
+    private final String passwordDigest;
+
+    private BackupChain(
+            final String account,
+            final Uri location,
+            final long chain,
+            final List<Uri> files,
+            final long watermark,
+            final long basePosition,
+            final String passwordDigest) {
+        this.account = account;
+        this.location = location;
+        this.chain = chain;
+        this.files = files;
+        this.watermark = watermark;
+        this.basePosition = basePosition;
+        this.passwordDigest = passwordDigest;
+    }
+
+    public static BackupChain start(
+            final String account,
+            final Uri location,
+            final String password,
+            final long watermark) {
+        return new BackupChain(
+                account,
+                location,
+                System.currentTimeMillis(),
+                ImmutableList.of(),
+                watermark,
+                0,
+                CryptoHelper.getFingerprint(password));
+    }
+
+    /**
+     * @param watermark the last message change contained in the new file
+     * @param basePosition the rowid of the last message written if the base is still incomplete,
+     *     {@link #BASE_COMPLETE} otherwise
+     */
+    public BackupChain append(final Uri file, final long watermark, final long basePosition) {
+        return new BackupChain(
+                account,
+                location,
+                chain,
+                new ImmutableList.Builder<Uri>().addAll(files).add(file).build(),
+                watermark,
+                basePosition,
+                passwordDigest);
+    }
+
+    public boolean isContinuableWith(final Uri location, final String password) {
+        return this.location.equals(location)
+                && this.passwordDigest.equals(CryptoHelper.getFingerprint(password));
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public long getChain() {
+        return chain;
+    }
+
+    public List<Uri> getFiles() {
+        return files;
+    }
+
+    public int getSequence() {
+        return files.size();
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public long getBasePosition() {
+        return basePosition;
+    }
+
+    public boolean isBaseComplete() {
+        return basePosition == BASE_COMPLETE;
+    }
+
+    public ContentValues getContentValues() {
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put(ACCOUNT, account);
+        contentValues.put(LOCATION, location.toString());
+        contentValues.put(CHAIN, chain);
+        contentValues.put(FILES, Joiner.on('\n').join(files));
+        contentValues.put(WATERMARK, watermark);
+        contentValues.put(BASE_POSITION, basePosition);
+        contentValues.put(PASSWORD_DIGEST, passwordDigest);
+        return contentValues;
+    }
+
+    public static BackupChain fromCursor(final Cursor cursor) {
+        final String files = cursor.getString(cursor.getColumnIndexOrThrow(FILES));
+        return new BackupChain(
+                cursor.getString(cursor.getColumnIndexOrThrow(ACCOUNT)),
+                Uri.parse(cursor.getString(cursor.getColumnIndexOrThrow(LOCATION))),
+                cursor.getLong(cursor.getColumnIndexOrThrow(CHAIN)),
+                ImmutableList.copyOf(
+                        Lists.transform(
+                                Splitter.on('\n')
+                                        .omitEmptyStrings()
+                                        .splitToList(Strings.nullToEmpty(files)),
+                                Uri::parse)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(WATERMARK)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(BASE_POSITION)),
+                cursor.getString(cursor.getColumnIndexOrThrow(PASSWORD_DIGEST)));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BackupChain{"
+                + "account="
+                + account
+                + ", chain="
+                + chain
+                + ", files="
+                + files.size()
+                + ", watermark="
+                + watermark
+                + ", basePosition="
+                + basePosition
+                + '}';
+    }
+}
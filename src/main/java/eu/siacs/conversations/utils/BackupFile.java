@@ -11,6 +11,8 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -20,6 +22,7 @@ import eu.siacs.conversations.persistance.DatabaseBackend;
 import eu.siacs.conversations.persistance.FileBackend;
 import eu.siacs.conversations.services.QuickConversationsService;
 import eu.siacs.conversations.worker.ExportBackupWorker;
+import eu.siacs.conversations.xmpp.Jid;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,10 +42,16 @@ public class BackupFile implements Comparable<BackupFile> {
 
     private final Uri uri;
     private final BackupFileHeader header;
+    private final List<Uri> chain;
 
     private BackupFile(Uri uri, BackupFileHeader header) {
+        this(uri, header, ImmutableList.of(uri));
+    }
+
+    private BackupFile(Uri uri, BackupFileHeader header, List<Uri> chain) {
         this.uri = uri;
         this.header = header;
+        this.chain = chain;
     }
 
     public static ListenableFuture<BackupFile> readAsync(final Context context, final Uri uri) {
@@ -76,6 +85,14 @@ public class BackupFile implements Comparable<BackupFile> {
         return uri;
     }
 
+    /**
+     * The files to restore, in order. For incremental backups these are all files of the chain up
+     * to and including this one.
+     */
+    public List<Uri> getUris() {
+        return chain;
+    }
+
     public static ListenableFuture<List<BackupFile>> listAsync(final Context context) {
         return Futures.submit(() -> list(context), BACKUP_FILE_READER_EXECUTOR);
     }
@@ -160,7 +177,7 @@ public class BackupFile implements Comparable<BackupFile> {
                 }
             }
         }
-        final var list = backupFiles.build();
+        final var list = collapseChains(backupFiles.build());
         if (QuickConversationsService.isQuicksy()) {
             return Ordering.natural()
                     .immutableSortedCopy(
@@ -172,9 +189,47 @@ public class BackupFile implements Comparable<BackupFile> {
                                                     .getDomain()
                                                     .equals(Config.QUICKSY_DOMAIN)));
         }
-        return Ordering.natural().immutableSortedCopy(backupFiles.build());
+        return Ordering.natural().immutableSortedCopy(list);
     }
 
+    /**
+     * Replaces the files of each incremental backup with a single entry that restores the chain
+     * up to its most recent file. Files after a gap in the chain can not be restored and are
+     * dropped.
+     */
+    private static List<BackupFile> collapseChains(final List<BackupFile> files) {
+        final var chains =
+                Multimaps.index(files, f -> new ChainKey(f.header.getJid(), f.header.getChain()));
+        final var collapsed = new ImmutableList.Builder<BackupFile>();
+        for (final var chain : chains.asMap().values()) {
+            final var sorted =
+                    Ordering.natural()
+                            .onResultOf((BackupFile f) -> f.header.getSequence())
+                            .sortedCopy(chain);
+            final var uris = new ImmutableList.Builder<Uri>();
+            BackupFile head = null;
+            for (final BackupFile file : sorted) {
+                final int expected = head == null ? 0 : head.header.getSequence() + 1;
+                if (file.header.getSequence() != expected) {
+                    break;
+                }
+                uris.add(file.uri);
+                head = file;
+            }
+            if (head == null) {
+                Log.d(Config.LOGTAG, "base of backup chain is missing: " + sorted);
+                continue;
+            }
+            if (head != Iterables.getLast(sorted)) {
+                Log.d(Config.LOGTAG, "gap in backup chain after " + head.uri);
+            }
+            collapsed.add(new BackupFile(head.uri, head.header, uris.build()));
+        }
+        return collapsed.build();
+    }
+
+    private record ChainKey(Jid jid, long chain) {}
+
     @Override
     public int compareTo(final BackupFile o) {
         return ComparisonChain.start()
@@ -9,13 +9,18 @@ import java.time.Instant;
 
 public class BackupFileHeader {
 
-    private static final int VERSION = 2;
+    // version 3 adds the backup chain and the position of the file within it
+    private static final int VERSION = 3;
+    private static final int VERSION_STANDALONE = 2;
 
     private final String app;
     private final Jid jid;
     private final long timestamp;
     private final byte[] iv;
     private final byte[] salt;
+    private final long chain;
+    private final int sequence;
+    private final boolean standalone;
 
     @NonNull
     @Override
@@ -32,24 +37,54 @@ public class BackupFileHeader {
                 + CryptoHelper.bytesToHex(iv)
                 + ", salt="
                 + CryptoHelper.bytesToHex(salt)
+                + ", chain="
+                + chain
+                + ", sequence="
+                + sequence
                 + '}';
     }
 
+    /** A standalone backup; written as version 2 so older versions can still import it. */
     public BackupFileHeader(String app, Jid jid, long timestamp, byte[] iv, byte[] salt) {
+        this(app, jid, timestamp, iv, salt, timestamp, 0, true);
+    }
+
+    public BackupFileHeader(
+            String app, Jid jid, long timestamp, byte[] iv, byte[] salt, long chain, int sequence) {
+        this(app, jid, timestamp, iv, salt, chain, sequence, false);
+    }
+
+    private BackupFileHeader(
+            String app,
+            Jid jid,
+            long timestamp,
+            byte[] iv,
+            byte[] salt,
+            long chain,
+            int sequence,
+            boolean standalone) {
         this.app = app;
         this.jid = jid;
         this.timestamp = timestamp;
         this.iv = iv;
         this.salt = salt;
+        this.chain = chain;
+        this.sequence = sequence;
+        this.standalone = standalone;
     }
 
     public void write(DataOutputStream dataOutputStream) throws IOException {
-        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeInt(standalone ? VERSION_STANDALONE : VERSION);
         dataOutputStream.writeUTF(app);
         dataOutputStream.writeUTF(jid.asBareJid().toString());
         dataOutputStream.writeLong(timestamp);
         dataOutputStream.write(iv);
         dataOutputStream.write(salt);
+        if (standalone) {
+            return;
+        }
+        dataOutputStream.writeLong(chain);
+        dataOutputStream.writeInt(sequence);
     }
 
     public static BackupFileHeader read(DataInputStream inputStream) throws IOException {
@@ -61,9 +96,13 @@ public class BackupFileHeader {
         inputStream.readFully(iv);
         final byte[] salt = new byte[16];
         inputStream.readFully(salt);
-        if (version < VERSION) {
+        if (version < VERSION_STANDALONE) {
             throw new OutdatedBackupFileVersion();
         }
+        if (version == VERSION_STANDALONE) {
+            // a standalone backup is a chain of its own
+            return new BackupFileHeader(app, Jid.of(jid), timestamp, iv, salt);
+        }
         if (version != VERSION) {
             throw new IllegalArgumentException(
                     "Backup File version was "
@@ -71,7 +110,9 @@ public class BackupFileHeader {
                             + " but app only supports version "
                             + VERSION);
         }
-        return new BackupFileHeader(app, Jid.of(jid), timestamp, iv, salt);
+        final long chain = inputStream.readLong();
+        final int sequence = inputStream.readInt();
+        return new BackupFileHeader(app, Jid.of(jid), timestamp, iv, salt, chain, sequence);
     }
 
     public byte[] getSalt() {
@@ -94,6 +135,15 @@ public class BackupFileHeader {
         return timestamp;
     }
 
+    public long getChain() {
+        return chain;
+    }
+
+    /** Position within the chain; the first file of a chain has sequence 0. */
+    public int getSequence() {
+        return sequence;
+    }
+
     public Instant getInstant() {
         return Instant.ofEpochMilli(this.timestamp);
     }
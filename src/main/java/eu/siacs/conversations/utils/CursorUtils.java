@@ -17,4 +17,19 @@ public class CursorUtils {
             }
         }
     }
+
+    public static Object[] copyRow(final Cursor cursor) {
+        final Object[] row = new Object[cursor.getColumnCount()];
+        for (int i = 0; i < row.length; ++i) {
+            row[i] =
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER -> cursor.getLong(i);
+                        case Cursor.FIELD_TYPE_FLOAT -> cursor.getDouble(i);
+                        case Cursor.FIELD_TYPE_STRING -> cursor.getString(i);
+                        case Cursor.FIELD_TYPE_BLOB -> cursor.getBlob(i);
+                        default -> null;
+                    };
+        }
+        return row;
+    }
 }
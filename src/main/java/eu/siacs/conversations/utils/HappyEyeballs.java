@@ -0,0 +1,210 @@
+package eu.siacs.conversations.utils;
+
+import android.util.Log;
+import com.google.common.collect.ImmutableList;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.persistance.FileBackend;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races connection attempts to several resolver results in the style of RFC 8305 (Happy Eyeballs
+ * Version 2). Attempts are started {@link #CONNECTION_ATTEMPT_DELAY} ms apart, or immediately when
+ * the previous attempt failed, so that a black holed address family or a dead SRV target does not
+ * stall the connection for the full socket timeout. The first socket to complete wins; all other
+ * attempts are aborted by closing their sockets.
+ */
+public final class HappyEyeballs {
+
+    // RFC 8305 section 5 recommends 250ms
+    public static final long CONNECTION_ATTEMPT_DELAY = 250;
+
+    private static final ExecutorService CONNECTION_EXECUTOR =
+            Executors.newCachedThreadPool(r -> new Thread(r, "HappyEyeballs"));
+
+    private HappyEyeballs() {}
+
+    public interface Connector<T> {
+        /**
+         * Connects the given unconnected socket. Closing the socket from another thread aborts the
+         * attempt.
+         *
+         * @return the connected socket, which may be a layer on top of the one passed in
+         */
+        Socket connect(T candidate, Socket socket) throws IOException;
+    }
+
+    public record Winner<T>(T candidate, Socket socket, List<T> failed) {}
+
+    /**
+     * Orders resolver results for racing. Within each SRV priority address families are
+     * interleaved, starting with the family of the result that last connected successfully (IPv6
+     * if there is none). That result itself is moved to the front.
+     */
+    public static List<Resolver.Result> order(
+            final List<Resolver.Result> results, final Resolver.Result lastSuccessful) {
+        final boolean preferIPv6 =
+                lastSuccessful == null
+                        || lastSuccessful.getIp() == null
+                        || lastSuccessful.getIp() instanceof Inet6Address;
+        final Map<Integer, List<Resolver.Result>> byPriority = new LinkedHashMap<>();
+        for (final Resolver.Result result : results) {
+            if (result.equals(lastSuccessful)) {
+                continue;
+            }
+            byPriority.computeIfAbsent(result.getPriority(), p -> new ArrayList<>()).add(result);
+        }
+        final ImmutableList.Builder<Resolver.Result> ordered = new ImmutableList.Builder<>();
+        if (lastSuccessful != null && results.contains(lastSuccessful)) {
+            ordered.add(lastSuccessful);
+        }
+        for (final List<Resolver.Result> group : byPriority.values()) {
+            final List<Resolver.Result> ipv6 = new ArrayList<>();
+            final List<Resolver.Result> ipv4 = new ArrayList<>();
+            final List<Resolver.Result> unresolved = new ArrayList<>();
+            for (final Resolver.Result result : group) {
+                if (result.getIp() == null) {
+                    unresolved.add(result);
+                } else if (result.getIp() instanceof Inet6Address) {
+                    ipv6.add(result);
+                } else {
+                    ipv4.add(result);
+                }
+            }
+            final List<Resolver.Result> first = preferIPv6 ? ipv6 : ipv4;
+            final List<Resolver.Result> second = preferIPv6 ? ipv4 : ipv6;
+            for (int i = 0; i < Math.max(first.size(), second.size()); ++i) {
+                if (i < first.size()) {
+                    ordered.add(first.get(i));
+                }
+                if (i < second.size()) {
+                    ordered.add(second.get(i));
+                }
+            }
+            ordered.addAll(unresolved);
+        }
+        return ordered.build();
+    }
+
+    /**
+     * Races the candidates in the given order and returns the first one that connected.
+     *
+     * @throws IOException the failure of the last candidate if none could be connected
+     * @throws InterruptedException if the calling thread was interrupted; all attempts are aborted
+     */
+    public static <T> Winner<T> race(final List<T> candidates, final Connector<T> connector)
+            throws IOException, InterruptedException {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("no candidates to connect to");
+        }
+        final Race<T> race = new Race<>(connector);
+        int next = 0;
+        int running = 0;
+        final List<T> failed = new ArrayList<>();
+        IOException lastFailure = null;
+        try {
+            race.start(candidates.get(next++));
+            running++;
+            while (true) {
+                final Outcome<T> outcome;
+                if (next < candidates.size()) {
+                    outcome = race.outcomes.poll(CONNECTION_ATTEMPT_DELAY, TimeUnit.MILLISECONDS);
+                } else {
+                    outcome = race.outcomes.take();
+                }
+                if (outcome == null) {
+                    race.start(candidates.get(next++));
+                    running++;
+                    continue;
+                }
+                running--;
+                if (outcome.socket != null) {
+                    return new Winner<>(
+                            outcome.candidate, outcome.socket, ImmutableList.copyOf(failed));
+                }
+                failed.add(outcome.candidate);
+                lastFailure = outcome.failure;
+                if (next < candidates.size()) {
+                    race.start(candidates.get(next++));
+                    running++;
+                } else if (running == 0) {
+                    throw lastFailure;
+                }
+            }
+        } finally {
+            race.finish();
+        }
+    }
+
+    private record Outcome<T>(T candidate, Socket socket, IOException failure) {}
+
+    private static final class Race<T> {
+
+        private final Connector<T> connector;
+        private final LinkedBlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        // unconnected sockets of attempts that have not reported back yet
+        private final IdentityHashMap<Socket, T> pending = new IdentityHashMap<>();
+        private boolean finished = false;
+
+        private Race(final Connector<T> connector) {
+            this.connector = connector;
+        }
+
+        private void start(final T candidate) {
+            final Socket socket = new Socket();
+            synchronized (this) {
+                pending.put(socket, candidate);
+            }
+            CONNECTION_EXECUTOR.execute(() -> attempt(candidate, socket));
+        }
+
+        private void attempt(final T candidate, final Socket socket) {
+            Outcome<T> outcome;
+            try {
+                outcome = new Outcome<>(candidate, connector.connect(candidate, socket), null);
+            } catch (final IOException e) {
+                FileBackend.close(socket);
+                outcome = new Outcome<>(candidate, null, e);
+            } catch (final RuntimeException e) {
+                FileBackend.close(socket);
+                outcome = new Outcome<>(candidate, null, new IOException(e));
+            }
+            synchronized (this) {
+                pending.remove(socket);
+                if (finished) {
+                    if (outcome.socket != null) {
+                        FileBackend.close(outcome.socket);
+                    }
+                    return;
+                }
+                outcomes.add(outcome);
+            }
+        }
+
+        /** Aborts attempts that are still running and closes sockets that lost the race. */
+        private synchronized void finish() {
+            this.finished = true;
+            for (final Map.Entry<Socket, T> attempt : pending.entrySet()) {
+                Log.d(Config.LOGTAG, "aborting connection attempt to " + attempt.getValue());
+                FileBackend.close(attempt.getKey());
+            }
+            pending.clear();
+            for (final Outcome<T> outcome : outcomes) {
+                if (outcome.socket != null) {
+                    FileBackend.close(outcome.socket);
+                }
+            }
+            outcomes.clear();
+        }
+    }
+}
@@ -96,7 +96,9 @@ public class Resolver {
         }
     }
 
-    public static void clearCache() {}
+    public static void clearCache() {
+        AndroidDNSClient.clearCache();
+    }
 
     public static boolean useDirectTls(final int port) {
         return port == 443 || port == XMPP_PORT_DIRECT_TLS;
@@ -418,6 +420,10 @@ public class Resolver {
             return authenticated;
         }
 
+        public int getPriority() {
+            return priority;
+        }
+
         @Override
         @NonNull
         public String toString() {
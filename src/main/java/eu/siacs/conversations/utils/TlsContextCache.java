@@ -0,0 +1,289 @@
+package eu.siacs.conversations.utils;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.common.io.Files;
+import eu.siacs.conversations.Config;
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.X509TrustManager;
+import org.conscrypt.Conscrypt;
+import org.conscrypt.SSLClientSessionCache;
+
+/**
+ * Keeps one {@link SSLContext} per account so that a reconnect can resume the previous TLS session
+ * (a session ID in TLS 1.2, a ticket in TLS 1.3) instead of doing a full handshake that validates
+ * the certificate chain again.
+ *
+ * <p>A resumed session skips the trust manager altogether. Contexts are therefore only reused for
+ * the same {@link Key} and have to be invalidated whenever a trust decision changes. Only contexts
+ * backed by the non-interactive trust manager are cached; an interactive context is built fresh
+ * for every connection since the user might have accepted a certificate only once. Sessions of
+ * cached contexts can additionally be written to disk (Conscrypt only) so that they survive a
+ * restart of the process.
+ */
+public class TlsContextCache {
+
+    private static final int SESSIONS_PER_ACCOUNT = 8;
+
+    @Nullable private final File directory;
+    private final Map<String, CachedContext> contexts = new HashMap<>();
+    private final Map<String, Counters> counters = new HashMap<>();
+
+    public TlsContextCache(@Nullable final File directory) {
+        this.directory = directory;
+    }
+
+    public synchronized CachedContext get(
+            final String account,
+            final Key key,
+            @Nullable final KeyManager[] keyManagers,
+            final X509TrustManager trustManager)
+            throws NoSuchAlgorithmException, KeyManagementException {
+        final var counters = this.counters.computeIfAbsent(account, a -> new Counters());
+        if (key.interactive) {
+            return new CachedContext(key, keyManagers, trustManager, counters);
+        }
+        final var existing = contexts.get(account);
+        if (existing != null && existing.key.equals(key)) {
+            return existing;
+        }
+        if (existing != null && !existing.key.isSameServer(key)) {
+            clearPersisted(account);
+        }
+        final var context = new CachedContext(key, keyManagers, trustManager, counters);
+        if (directory != null && Conscrypt.isConscrypt(context.sslContext)) {
+            Conscrypt.setClientSessionCache(
+                    context.sslContext, new PersistedSessions(new File(directory, account)));
+        }
+        contexts.put(account, context);
+        return context;
+    }
+
+    public synchronized void invalidate(final String account) {
+        contexts.remove(account);
+        clearPersisted(account);
+    }
+
+    public synchronized void invalidateAll() {
+        contexts.clear();
+        final File[] accounts = directory == null ? null : directory.listFiles();
+        if (accounts == null) {
+            return;
+        }
+        for (final File account : accounts) {
+            clearPersisted(account.getName());
+        }
+    }
+
+    private void clearPersisted(final String account) {
+        if (directory == null) {
+            return;
+        }
+        final File[] files = new File(directory, account).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (!file.delete()) {
+                Log.d(Config.LOGTAG, "unable to delete TLS session " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    public synchronized Statistics getStatistics(final String account) {
+        final var counters = this.counters.get(account);
+        return counters == null ? new Statistics(0, 0, 0, 0) : counters.snapshot();
+    }
+
+    /** What a context is built from. A context is only reused when all of these are equal. */
+    public record Key(String domain, @Nullable String privateKeyAlias, boolean interactive) {
+
+        private boolean isSameServer(final Key other) {
+            return domain.equals(other.domain)
+                    && Objects.equals(privateKeyAlias, other.privateKeyAlias);
+        }
+    }
+
+    public record Handshake(boolean resumed, long duration) {}
+
+    public record Statistics(long full, long resumed, long fullDuration, long resumedDuration) {
+
+        public long averageFull() {
+            return full == 0 ? 0 : fullDuration / full;
+        }
+
+        public long averageResumed() {
+            return resumed == 0 ? 0 : resumedDuration / resumed;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "full="
+                    + full
+                    + " (avg "
+                    + averageFull()
+                    + "ms) resumed="
+                    + resumed
+                    + " (avg "
+                    + averageResumed()
+                    + "ms)";
+        }
+    }
+
+    public static class CachedContext {
+
+        private final Key key;
+        private final SSLContext sslContext;
+        private final Counters counters;
+        private final AtomicLong validations = new AtomicLong();
+
+        private CachedContext(
+                final Key key,
+                @Nullable final KeyManager[] keyManagers,
+                final X509TrustManager trustManager,
+                final Counters counters)
+                throws NoSuchAlgorithmException, KeyManagementException {
+            this.key = key;
+            this.counters = counters;
+            this.sslContext = SSLSockets.getSSLContext();
+            this.sslContext.init(
+                    keyManagers,
+                    new X509TrustManager[] {new CountingTrustManager(trustManager, validations)},
+                    Random.SECURE_RANDOM);
+            this.sslContext.getClientSessionContext().setSessionCacheSize(SESSIONS_PER_ACCOUNT);
+        }
+
+        public SSLSocketFactory getSocketFactory() {
+            return sslContext.getSocketFactory();
+        }
+
+        /**
+         * Runs the handshake and records whether the session was resumed. A handshake is
+         * considered resumed if the certificate chain did not have to be validated. Concurrent
+         * handshakes on the same context (which the connection of an account does not do) would
+         * be counted as full handshakes.
+         */
+        public Handshake handshake(final SSLSocket socket) throws IOException {
+            final long validations = this.validations.get();
+            final long start = System.nanoTime();
+            socket.startHandshake();
+            final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            final boolean resumed = this.validations.get() == validations;
+            counters.record(resumed, duration);
+            return new Handshake(resumed, duration);
+        }
+    }
+
+    private static class Counters {
+
+        private final AtomicLong full = new AtomicLong();
+        private final AtomicLong resumed = new AtomicLong();
+        private final AtomicLong fullDuration = new AtomicLong();
+        private final AtomicLong resumedDuration = new AtomicLong();
+
+        private void record(final boolean resumed, final long duration) {
+            if (resumed) {
+                this.resumed.incrementAndGet();
+                this.resumedDuration.addAndGet(duration);
+            } else {
+                this.full.incrementAndGet();
+                this.fullDuration.addAndGet(duration);
+            }
+        }
+
+        private Statistics snapshot() {
+            return new Statistics(
+                    full.get(), resumed.get(), fullDuration.get(), resumedDuration.get());
+        }
+    }
+
+    private static class CountingTrustManager implements X509TrustManager {
+
+        private final X509TrustManager trustManager;
+        private final AtomicLong validations;
+
+        private CountingTrustManager(
+                final X509TrustManager trustManager, final AtomicLong validations) {
+            this.trustManager = trustManager;
+            this.validations = validations;
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType)
+                throws CertificateException {
+            trustManager.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType)
+                throws CertificateException {
+            validations.incrementAndGet();
+            trustManager.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return trustManager.getAcceptedIssuers();
+        }
+    }
+
+    /** Conscrypt consults this when a session is not (or no longer) in memory. */
+    static class PersistedSessions implements SSLClientSessionCache {
+
+        private final File directory;
+
+        PersistedSessions(final File directory) {
+            this.directory = directory;
+        }
+
+        private File file(final String host, final int port) {
+            return new File(directory, host + "_" + port);
+        }
+
+        @Override
+        public byte[] getSessionData(final String host, final int port) {
+            final File file = file(host, port);
+            if (!file.exists()) {
+                return null;
+            }
+            try {
+                return Files.toByteArray(file);
+            } catch (final IOException e) {
+                Log.d(Config.LOGTAG, "unable to read TLS session " + file.getAbsolutePath(), e);
+                return null;
+            }
+        }
+
+        @Override
+        public void putSessionData(final SSLSession session, final byte[] data) {
+            final String host = session.getPeerHost();
+            if (host == null || data == null) {
+                return;
+            }
+            final File file = file(host, session.getPeerPort());
+            try {
+                Files.createParentDirs(file);
+                Files.write(data, file);
+            } catch (final IOException e) {
+                Log.d(Config.LOGTAG, "unable to write TLS session " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+}
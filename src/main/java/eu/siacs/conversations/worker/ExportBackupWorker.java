@@ -12,6 +12,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
@@ -22,6 +23,7 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.gson.stream.JsonWriter;
 import eu.siacs.conversations.AppSettings;
 import eu.siacs.conversations.Config;
@@ -33,6 +35,7 @@ import eu.siacs.conversations.entities.Message;
 import eu.siacs.conversations.persistance.DatabaseBackend;
 import eu.siacs.conversations.persistance.FileBackend;
 import eu.siacs.conversations.services.QuickConversationsService;
+import eu.siacs.conversations.utils.BackupChain;
 import eu.siacs.conversations.utils.BackupFileHeader;
 import eu.siacs.conversations.utils.Compatibility;
 import java.io.DataOutputStream;
@@ -74,6 +77,29 @@ public class ExportBackupWorker extends Worker {
 
     public static final String MIME_TYPE = "application/vnd.conversations.backup";
 
+    // a new chain (and thus a new base) is started after this many files
+    private static final int MAX_CHAIN_LENGTH = 30;
+
+    // bookkeeping columns of the message queries; they are not part of the exported rows
+    private static final String POSITION = "_position";
+    private static final String DELETED_UUID = "_deletedUuid";
+
+    private static final String QUERY_MESSAGES =
+            "select messages.* from messages join conversations on"
+                    + " conversations.uuid=messages.conversationUuid where"
+                    + " conversations.accountUuid=?";
+    private static final String QUERY_MESSAGES_AFTER =
+            "select messages.rowid as _position,messages.* from messages join conversations on"
+                    + " conversations.uuid=messages.conversationUuid where"
+                    + " conversations.accountUuid=? and messages.rowid>? order by messages.rowid";
+    // rows without a message are deletions
+    private static final String QUERY_CHANGED_MESSAGES =
+            "select message_changes.seq as _position,message_changes.uuid as _deletedUuid,"
+                    + "messages.* from message_changes left join messages on"
+                    + " messages.uuid=message_changes.uuid where message_changes.seq>? and"
+                    + " message_changes.conversationUuid in (select uuid from conversations where"
+                    + " accountUuid=?) order by message_changes.seq";
+
     private static final int NOTIFICATION_ID = 19;
     private static final int BACKUP_CREATED_NOTIFICATION_ID = 23;
 
@@ -155,7 +181,7 @@ public class ExportBackupWorker extends Worker {
         for (final Account account : accounts) {
             if (isStopped()) {
                 Log.d(Config.LOGTAG, "ExportBackupWorker has stopped. Returning what we have");
-                return locations.build();
+                break;
             }
             final String password = account.getPassword();
             if (Strings.nullToEmpty(password).trim().isEmpty()) {
@@ -168,24 +194,67 @@ public class ExportBackupWorker extends Worker {
                 count++;
                 continue;
             }
+            final BackupChain chain =
+                    recurringBackup
+                            ? continueOrStartChain(database, account, password, backupLocation)
+                            : null;
             final Uri uri;
             try {
-                uri = export(database, account, password, backupLocation, max, count);
+                uri = export(database, account, password, backupLocation, chain, max, count);
             } catch (final WorkStoppedException e) {
                 Log.d(Config.LOGTAG, "ExportBackupWorker has stopped. Returning what we have");
-                return locations.build();
+                break;
             }
             locations.add(uri);
             count++;
         }
+        final int pruned = database.pruneMessageChanges();
+        Log.d(Config.LOGTAG, "pruned " + pruned + " message changes contained in all backups");
         return locations.build();
     }
 
+    private BackupChain continueOrStartChain(
+            final DatabaseBackend database,
+            final Account account,
+            final String password,
+            final Uri backupLocation) {
+        final var chain = database.findBackupChain(account.getUuid());
+        if (chain == null) {
+            Log.d(Config.LOGTAG, "starting backup chain for " + account.getJid().asBareJid());
+        } else if (!chain.isContinuableWith(backupLocation, password)) {
+            Log.d(Config.LOGTAG, "backup location or password changed. starting new chain");
+        } else if (chain.isBaseComplete() && chain.getFiles().size() >= MAX_CHAIN_LENGTH) {
+            Log.d(Config.LOGTAG, "backup chain reached " + MAX_CHAIN_LENGTH + " files");
+        } else if (!Iterables.all(chain.getFiles(), this::exists)) {
+            Log.d(Config.LOGTAG, "files of backup chain have gone missing. starting new chain");
+        } else {
+            Log.d(Config.LOGTAG, "continuing " + chain);
+            return chain;
+        }
+        final var started =
+                BackupChain.start(
+                        account.getUuid(),
+                        backupLocation,
+                        password,
+                        database.getLastMessageChange());
+        // pins the watermark; changes made while the base is exported must survive until the
+        // first delta. This also turns on logging of the changes in the first place
+        database.saveBackupChain(started);
+        return started;
+    }
+
+    /**
+     * Exports the account into a new file. Without a chain that is a full, standalone backup that
+     * gets deleted if the work is stopped. With a chain it is the next file of the chain: either
+     * the (remainder of the) base or a delta. If the work is stopped those files are finished
+     * early and the chain picks up where they left off next time.
+     */
     private Uri export(
             final DatabaseBackend database,
             final Account account,
             final String password,
             final Uri backupLocation,
+            final BackupChain chain,
             final int max,
             final int count)
             throws IOException,
@@ -207,13 +276,19 @@ public class ExportBackupWorker extends Worker {
         final byte[] salt = new byte[16];
         secureRandom.nextBytes(IV);
         secureRandom.nextBytes(salt);
+        final long timestamp = System.currentTimeMillis();
+        final String app = context.getString(R.string.app_name);
         final BackupFileHeader backupFileHeader =
-                new BackupFileHeader(
-                        context.getString(R.string.app_name),
-                        account.getJid(),
-                        System.currentTimeMillis(),
-                        IV,
-                        salt);
+                chain == null
+                        ? new BackupFileHeader(app, account.getJid(), timestamp, IV, salt)
+                        : new BackupFileHeader(
+                                app,
+                                account.getJid(),
+                                timestamp,
+                                IV,
+                                salt,
+                                chain.getChain(),
+                                chain.getSequence());
         final var notification = getNotification();
         final var cancelPendingIntent =
                 WorkManager.getInstance(context).createCancelPendingIntent(getId());
@@ -224,10 +299,22 @@ public class ExportBackupWorker extends Worker {
                                 cancelPendingIntent)
                         .build());
         final Progress progress = new Progress(notification, max, count);
-        final String filename =
-                String.format(
-                        "%s.%s.ceb",
-                        account.getJid().asBareJid().toString(), DATE_FORMAT.format(new Date()));
+        final String filename;
+        if (chain == null) {
+            filename =
+                    String.format(
+                            "%s.%s.ceb",
+                            account.getJid().asBareJid().toString(),
+                            DATE_FORMAT.format(new Date(timestamp)));
+        } else {
+            filename =
+                    String.format(
+                            Locale.US,
+                            "%s.%s.%03d.ceb",
+                            account.getJid().asBareJid().toString(),
+                            DATE_FORMAT.format(new Date(chain.getChain())),
+                            chain.getSequence());
+        }
         final OutputStream outputStream;
         final Uri location;
         if ("file".equalsIgnoreCase(backupLocation.getScheme())) {
@@ -245,6 +332,11 @@ public class ExportBackupWorker extends Worker {
                         String.format(
                                 "DocumentFile.fromTreeUri returned null for %s", backupLocation));
             }
+            // left over from an export that did not get to finish the file
+            final var existing = tree.findFile(filename);
+            if (existing != null && existing.delete()) {
+                Log.d(Config.LOGTAG, "deleted incomplete " + existing.getUri());
+            }
             final var file = tree.createFile(MIME_TYPE, filename);
             if (file == null) {
                 throw new IOException(
@@ -275,19 +367,56 @@ public class ExportBackupWorker extends Worker {
         final String uuid = account.getUuid();
         accountExport(db, uuid, jsonWriter);
         simpleExport(db, Conversation.TABLENAME, Conversation.ACCOUNT, uuid, jsonWriter);
-        messageExport(db, uuid, location, jsonWriter, progress);
+        final BackupChain next;
+        if (chain == null) {
+            messageExport(
+                    db, QUERY_MESSAGES, new String[] {uuid}, -1, location, jsonWriter, progress);
+            next = null;
+        } else if (chain.isBaseComplete()) {
+            final long watermark =
+                    messageExport(
+                            db,
+                            QUERY_CHANGED_MESSAGES,
+                            new String[] {String.valueOf(chain.getWatermark()), uuid},
+                            chain.getWatermark(),
+                            null,
+                            jsonWriter,
+                            progress);
+            next = chain.append(location, watermark, BackupChain.BASE_COMPLETE);
+        } else {
+            final long position =
+                    messageExport(
+                            db,
+                            QUERY_MESSAGES_AFTER,
+                            new String[] {uuid, String.valueOf(chain.getBasePosition())},
+                            chain.getBasePosition(),
+                            null,
+                            jsonWriter,
+                            progress);
+            next =
+                    chain.append(
+                            location,
+                            chain.getWatermark(),
+                            isStopped() ? position : BackupChain.BASE_COMPLETE);
+        }
         for (final String table :
                 Arrays.asList(
                         SQLiteAxolotlStore.PREKEY_TABLENAME,
                         SQLiteAxolotlStore.SIGNED_PREKEY_TABLENAME,
                         SQLiteAxolotlStore.SESSION_TABLENAME,
                         SQLiteAxolotlStore.IDENTITIES_TABLENAME)) {
-            throwIfWorkStopped(location);
+            if (chain == null) {
+                throwIfWorkStopped(location);
+            }
             simpleExport(db, table, SQLiteAxolotlStore.ACCOUNT, uuid, jsonWriter);
         }
         jsonWriter.endArray();
         jsonWriter.flush();
         jsonWriter.close();
+        if (next != null) {
+            database.saveBackupChain(next);
+            Log.d(Config.LOGTAG, "backup chain is now " + next);
+        }
         final var path = location.getPath();
         if ("file".equalsIgnoreCase(location.getScheme()) && path != null) {
             mediaScannerScanFile(new File(path));
@@ -392,8 +521,23 @@ public class ExportBackupWorker extends Worker {
                 writer.beginObject();
                 for (int i = 0; i < cursor.getColumnCount(); ++i) {
                     final String name = cursor.getColumnName(i);
+                    if (SQLiteAxolotlStore.SESSION_TABLENAME.equals(table)
+                            && SQLiteAxolotlStore.RECORD.equals(name)) {
+                        // sessions are exported as Base64 key so older versions can import them
+                        continue;
+                    }
                     writer.name(name);
-                    final String value = cursor.getString(i);
+                    final String value;
+                    if (SQLiteAxolotlStore.SESSION_TABLENAME.equals(table)
+                            && SQLiteAxolotlStore.KEY.equals(name)) {
+                        final byte[] record = DatabaseBackend.getSessionRecord(cursor);
+                        value =
+                                record == null
+                                        ? null
+                                        : Base64.encodeToString(record, Base64.DEFAULT);
+                    } else {
+                        value = cursor.getString(i);
+                    }
                     writer.value(value);
                 }
                 writer.endObject();
@@ -402,41 +546,65 @@ public class ExportBackupWorker extends Worker {
         }
     }
 
-    private void messageExport(
+    /**
+     * Writes the messages returned by the query. Rows that carry a {@link #DELETED_UUID} but no
+     * message are written as deletions.
+     *
+     * @param location the file to delete when the work is stopped or null to stop early instead
+     * @return the {@link #POSITION} of the last row written
+     */
+    private long messageExport(
             final SQLiteDatabase db,
-            final String uuid,
+            final String query,
+            final String[] args,
+            final long position,
             final Uri location,
             final JsonWriter writer,
             final Progress progress)
             throws IOException, WorkStoppedException {
         final var notificationManager =
                 getApplicationContext().getSystemService(NotificationManager.class);
-        try (final Cursor cursor =
-                db.rawQuery(
-                        "select messages.* from messages join conversations on"
-                                + " conversations.uuid=messages.conversationUuid where"
-                                + " conversations.accountUuid=?",
-                        new String[] {uuid})) {
+        long lastPosition = position;
+        try (final Cursor cursor = db.rawQuery(query, args)) {
             final int size = cursor.getCount();
-            Log.d(Config.LOGTAG, "exporting " + size + " messages for account " + uuid);
+            Log.d(Config.LOGTAG, "exporting " + size + " messages");
+            final int positionIndex = cursor.getColumnIndex(POSITION);
+            final int deletedUuidIndex = cursor.getColumnIndex(DELETED_UUID);
+            final int uuidIndex = cursor.getColumnIndexOrThrow(Message.UUID);
             long lastUpdate = 0;
             int i = 0;
             int p = Integer.MIN_VALUE;
             while (cursor.moveToNext()) {
-                throwIfWorkStopped(location);
+                if (location != null) {
+                    throwIfWorkStopped(location);
+                } else if (isStopped()) {
+                    Log.d(Config.LOGTAG, "stopped after " + i + " messages. finishing file");
+                    break;
+                }
                 writer.beginObject();
                 writer.name("table");
                 writer.value(Message.TABLENAME);
-                writer.name("values");
-                writer.beginObject();
-                for (int j = 0; j < cursor.getColumnCount(); ++j) {
-                    final String name = cursor.getColumnName(j);
-                    writer.name(name);
-                    final String value = cursor.getString(j);
-                    writer.value(value);
+                if (deletedUuidIndex >= 0 && cursor.isNull(uuidIndex)) {
+                    writer.name("deleted");
+                    writer.value(cursor.getString(deletedUuidIndex));
+                } else {
+                    writer.name("values");
+                    writer.beginObject();
+                    for (int j = 0; j < cursor.getColumnCount(); ++j) {
+                        if (j == positionIndex || j == deletedUuidIndex) {
+                            continue;
+                        }
+                        final String name = cursor.getColumnName(j);
+                        writer.name(name);
+                        final String value = cursor.getString(j);
+                        writer.value(value);
+                    }
+                    writer.endObject();
                 }
                 writer.endObject();
-                writer.endObject();
+                if (positionIndex >= 0) {
+                    lastPosition = cursor.getLong(positionIndex);
+                }
                 final int percentage = i * 100 / size;
                 if (p < percentage && (SystemClock.elapsedRealtime() - lastUpdate) > 2_000) {
                     p = percentage;
@@ -450,6 +618,16 @@ public class ExportBackupWorker extends Worker {
                 }
             }
         }
+        return lastPosition;
+    }
+
+    private boolean exists(final Uri uri) {
+        if ("file".equalsIgnoreCase(uri.getScheme())) {
+            final var path = uri.getPath();
+            return path != null && new File(path).exists();
+        }
+        final var documentFile = DocumentFile.fromSingleUri(getApplicationContext(), uri);
+        return documentFile != null && documentFile.exists();
     }
 
     public static byte[] getKey(final String password, final byte[] salt)
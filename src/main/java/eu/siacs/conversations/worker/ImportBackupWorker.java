@@ -23,6 +23,7 @@ import androidx.work.WorkerParameters;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.io.CountingInputStream;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
@@ -70,6 +71,8 @@ public class ImportBackupWorker extends Worker {
     public static final String TAG_IMPORT_BACKUP = "tag-import-backup";
 
     private static final String DATA_KEY_PASSWORD = "password";
+    private static final String DATA_KEY_URIS = "uris";
+    // work enqueued by versions before backup chains
     private static final String DATA_KEY_URI = "uri";
     private static final String DATA_KEY_INCLUDE_OMEMO = "omemo";
 
@@ -91,28 +94,35 @@ public class ImportBackupWorker extends Worker {
     private static final int NOTIFICATION_ID = 21;
 
     private final String password;
-    private final Uri uri;
+    private final List<Uri> uris;
     private final boolean includeOmemo;
 
     public ImportBackupWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
         final var inputData = workerParams.getInputData();
         this.password = inputData.getString(DATA_KEY_PASSWORD);
-        this.uri = Uri.parse(inputData.getString(DATA_KEY_URI));
+        this.uris = getUris(inputData);
         this.includeOmemo = inputData.getBoolean(DATA_KEY_INCLUDE_OMEMO, true);
     }
 
     @NonNull
     @Override
     public Result doWork() {
+        if (this.uris.isEmpty()) {
+            Log.d(Config.LOGTAG, "import backup work is missing the backup files");
+            return failure(Reason.FILE_NOT_FOUND);
+        }
         setForegroundAsync(getForegroundInfo());
         final Result result;
         try {
-            result = importBackup(this.uri, this.password);
+            result = importBackup(this.uris, this.password);
         } catch (final FileNotFoundException e) {
             return failure(Reason.FILE_NOT_FOUND);
+        } catch (final IncompleteBackupChainException e) {
+            Log.d(Config.LOGTAG, "unable to restore backup chain " + uris, e);
+            return failure(Reason.INCOMPLETE_BACKUP_CHAIN);
         } catch (final Exception e) {
-            Log.d(Config.LOGTAG, "error restoring backup " + uri, e);
+            Log.d(Config.LOGTAG, "error restoring backup " + uris, e);
             final Throwable throwable = e.getCause();
             if (throwable instanceof BadPaddingException || e instanceof ZipException) {
                 return failure(Reason.DECRYPTION_FAILED);
@@ -128,6 +138,18 @@ public class ImportBackupWorker extends Worker {
         return result;
     }
 
+    private static List<Uri> getUris(final Data inputData) {
+        final String[] uris = inputData.getStringArray(DATA_KEY_URIS);
+        if (uris != null) {
+            return Lists.transform(Arrays.asList(uris), Uri::parse);
+        }
+        final String uri = inputData.getString(DATA_KEY_URI);
+        if (uri != null) {
+            return ImmutableList.of(Uri.parse(uri));
+        }
+        return ImmutableList.of();
+    }
+
     @NonNull
     @Override
     public ForegroundInfo getForegroundInfo() {
@@ -140,82 +162,120 @@ public class ImportBackupWorker extends Worker {
         }
     }
 
-    private Result importBackup(final Uri uri, final String password)
+    /**
+     * Restores the files of a backup chain in order. The first file is either a standalone backup
+     * or the base of an incremental backup; every following file updates the messages restored
+     * so far. Conversations are updated from every file while OMEMO keys are restored from the
+     * last file only, as every file holds a complete copy of them.
+     */
+    private Result importBackup(final List<Uri> uris, final String password)
             throws IOException, InvalidKeySpecException {
         final var context = getApplicationContext();
         final var database = DatabaseBackend.getInstance(context);
-        Log.d(Config.LOGTAG, "importing backup from " + uri);
+        Log.d(Config.LOGTAG, "importing backup from " + uris);
         final Stopwatch stopwatch = Stopwatch.createStarted();
         final SQLiteDatabase db = database.getWritableDatabase();
-        final InputStream inputStream;
-        final String path = uri.getPath();
-        final long fileSize;
-        if ("file".equals(uri.getScheme()) && path != null) {
-            final File file = new File(path);
-            inputStream = new FileInputStream(file);
-            fileSize = file.length();
-        } else {
-            final Cursor returnCursor =
-                    context.getContentResolver().query(uri, null, null, null, null);
-            if (returnCursor == null) {
-                fileSize = 0;
-            } else {
-                returnCursor.moveToFirst();
-                fileSize =
-                        returnCursor.getLong(
-                                returnCursor.getColumnIndexOrThrow(OpenableColumns.SIZE));
-                returnCursor.close();
-            }
-            inputStream = context.getContentResolver().openInputStream(uri);
-        }
-        if (inputStream == null) {
-            return failure(Reason.FILE_NOT_FOUND);
-        }
-        final CountingInputStream countingInputStream = new CountingInputStream(inputStream);
-        final DataInputStream dataInputStream = new DataInputStream(countingInputStream);
-        final BackupFileHeader backupFileHeader = BackupFileHeader.read(dataInputStream);
-        Log.d(Config.LOGTAG, backupFileHeader.toString());
+        BackupFileHeader base = null;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < uris.size(); ++i) {
+                final var uri = uris.get(i);
+                final InputStream inputStream;
+                final String path = uri.getPath();
+                final long fileSize;
+                if ("file".equals(uri.getScheme()) && path != null) {
+                    final File file = new File(path);
+                    inputStream = new FileInputStream(file);
+                    fileSize = file.length();
+                } else {
+                    final Cursor returnCursor =
+                            context.getContentResolver().query(uri, null, null, null, null);
+                    if (returnCursor == null) {
+                        fileSize = 0;
+                    } else {
+                        returnCursor.moveToFirst();
+                        fileSize =
+                                returnCursor.getLong(
+                                        returnCursor.getColumnIndexOrThrow(OpenableColumns.SIZE));
+                        returnCursor.close();
+                    }
+                    inputStream = context.getContentResolver().openInputStream(uri);
+                }
+                if (inputStream == null) {
+                    return failure(Reason.FILE_NOT_FOUND);
+                }
+                final CountingInputStream countingInputStream =
+                        new CountingInputStream(inputStream);
+                final DataInputStream dataInputStream = new DataInputStream(countingInputStream);
+                final BackupFileHeader backupFileHeader = BackupFileHeader.read(dataInputStream);
+                Log.d(Config.LOGTAG, backupFileHeader.toString());
 
-        final var accounts = database.getAccountAddresses(false);
+                if (base == null) {
+                    if (backupFileHeader.getSequence() != 0) {
+                        throw new IncompleteBackupChainException(
+                                "backup chain does not start with its base");
+                    }
+                    final var accounts = database.getAccountAddresses(false);
 
-        if (QuickConversationsService.isQuicksy() && !accounts.isEmpty()) {
-            return failure(Reason.ACCOUNT_ALREADY_EXISTS);
-        }
+                    if (QuickConversationsService.isQuicksy() && !accounts.isEmpty()) {
+                        return failure(Reason.ACCOUNT_ALREADY_EXISTS);
+                    }
 
-        if (accounts.contains(backupFileHeader.getJid())) {
-            return failure(Reason.ACCOUNT_ALREADY_EXISTS);
-        }
+                    if (accounts.contains(backupFileHeader.getJid())) {
+                        return failure(Reason.ACCOUNT_ALREADY_EXISTS);
+                    }
+                    base = backupFileHeader;
+                } else if (backupFileHeader.getChain() != base.getChain()
+                        || !backupFileHeader.getJid().equals(base.getJid())
+                        || backupFileHeader.getSequence() != i) {
+                    throw new IncompleteBackupChainException(
+                            String.format(
+                                    "expected file %d of chain %d but got %s",
+                                    i, base.getChain(), backupFileHeader));
+                }
 
-        final byte[] key = ExportBackupWorker.getKey(password, backupFileHeader.getSalt());
+                final byte[] key = ExportBackupWorker.getKey(password, backupFileHeader.getSalt());
 
-        final AEADBlockCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
-        cipher.init(
-                false, new AEADParameters(new KeyParameter(key), 128, backupFileHeader.getIv()));
-        final CipherInputStream cipherInputStream =
-                new CipherInputStream(countingInputStream, cipher);
+                final AEADBlockCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
+                cipher.init(
+                        false,
+                        new AEADParameters(
+                                new KeyParameter(key), 128, backupFileHeader.getIv()));
+                final CipherInputStream cipherInputStream =
+                        new CipherInputStream(countingInputStream, cipher);
 
-        final GZIPInputStream gzipInputStream = new GZIPInputStream(cipherInputStream);
-        final BufferedReader reader =
-                new BufferedReader(new InputStreamReader(gzipInputStream, StandardCharsets.UTF_8));
-        final JsonReader jsonReader = new JsonReader(reader);
-        if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
-            jsonReader.beginArray();
-        } else {
-            throw new IllegalStateException("Backup file did not begin with array");
-        }
-        db.beginTransaction();
-        while (jsonReader.hasNext()) {
-            if (jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
-                importRow(db, jsonReader, backupFileHeader.getJid(), password);
-            } else if (jsonReader.peek() == JsonToken.END_ARRAY) {
-                jsonReader.endArray();
-                continue;
+                final GZIPInputStream gzipInputStream = new GZIPInputStream(cipherInputStream);
+                final BufferedReader reader =
+                        new BufferedReader(
+                                new InputStreamReader(gzipInputStream, StandardCharsets.UTF_8));
+                final JsonReader jsonReader = new JsonReader(reader);
+                if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    jsonReader.beginArray();
+                } else {
+                    throw new IllegalStateException("Backup file did not begin with array");
+                }
+                final boolean delta = i > 0;
+                final boolean last = i == uris.size() - 1;
+                while (jsonReader.hasNext()) {
+                    if (jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+                        importRow(db, jsonReader, base.getJid(), password, delta, last);
+                    } else if (jsonReader.peek() == JsonToken.END_ARRAY) {
+                        jsonReader.endArray();
+                        continue;
+                    }
+                    updateImportBackupNotification(
+                            i, uris.size(), fileSize, countingInputStream.getCount());
+                }
+                jsonReader.close();
             }
-            updateImportBackupNotification(fileSize, countingInputStream.getCount());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        db.setTransactionSuccessful();
-        db.endTransaction();
-        final Jid jid = backupFileHeader.getJid();
+        if (base == null) {
+            return failure(Reason.FILE_NOT_FOUND);
+        }
+        final Jid jid = base.getJid();
         final Cursor countCursor =
                 db.rawQuery(
                         "select count(messages.uuid) from messages join conversations on"
@@ -225,7 +285,11 @@ public class ImportBackupWorker extends Worker {
                         new String[] {jid.getLocal(), jid.getDomain().toString()});
         countCursor.moveToFirst();
         final int count = countCursor.getInt(0);
-        Log.d(Config.LOGTAG, String.format("restored %d messages in %s", count, stopwatch.stop()));
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        "restored %d messages from %d files in %s",
+                        count, uris.size(), stopwatch.stop()));
         countCursor.close();
         Conversations.getInstance(getApplicationContext()).resetAccounts();
         stopBackgroundService();
@@ -233,11 +297,17 @@ public class ImportBackupWorker extends Worker {
         return Result.success();
     }
 
+    /**
+     * @param delta whether rows may already exist from an earlier file of the chain
+     * @param last whether this is the last file of the chain
+     */
     private void importRow(
             final SQLiteDatabase db,
             final JsonReader jsonReader,
             final Jid account,
-            final String passphrase)
+            final String passphrase,
+            final boolean delta,
+            final boolean last)
             throws IOException {
         jsonReader.beginObject();
         final String firstParameter = jsonReader.nextName();
@@ -250,6 +320,12 @@ public class ImportBackupWorker extends Worker {
         }
         final ContentValues contentValues = new ContentValues();
         final String secondParameter = jsonReader.nextName();
+        if (secondParameter.equals("deleted") && Message.TABLENAME.equals(table)) {
+            final String uuid = jsonReader.nextString();
+            jsonReader.endObject();
+            db.delete(Message.TABLENAME, Message.UUID + "=?", new String[] {uuid});
+            return;
+        }
         if (!secondParameter.equals("values")) {
             throw new IllegalStateException("Expected key 'values'");
         }
@@ -300,19 +376,25 @@ public class ImportBackupWorker extends Worker {
             }
             contentValues.put(Account.KEYS, importReadyKeys.toString());
         }
-        if (this.includeOmemo) {
-            db.insert(table, null, contentValues);
-        } else {
-            if (OMEMO_TABLE_LIST.contains(table)) {
-                if (SQLiteAxolotlStore.IDENTITIES_TABLENAME.equals(table)
-                        && contentValues.getAsInteger(SQLiteAxolotlStore.OWN) == 0) {
-                    db.insert(table, null, contentValues);
-                } else {
-                    Log.d(Config.LOGTAG, "skipping over omemo key material in table " + table);
-                }
+        if (OMEMO_TABLE_LIST.contains(table)) {
+            if (!last) {
+                return;
+            }
+            if (this.includeOmemo
+                    || (SQLiteAxolotlStore.IDENTITIES_TABLENAME.equals(table)
+                            && contentValues.getAsInteger(SQLiteAxolotlStore.OWN) == 0)) {
+                db.insert(table, null, contentValues);
             } else {
+                Log.d(Config.LOGTAG, "skipping over omemo key material in table " + table);
+            }
+        } else if (delta) {
+            // accounts, conversations and messages are all keyed by uuid
+            final String uuid = contentValues.getAsString(Message.UUID);
+            if (db.update(table, contentValues, Message.UUID + "=?", new String[] {uuid}) == 0) {
                 db.insert(table, null, contentValues);
             }
+        } else {
+            db.insert(table, null, contentValues);
         }
     }
 
@@ -321,15 +403,16 @@ public class ImportBackupWorker extends Worker {
         getApplicationContext().stopService(intent);
     }
 
-    private void updateImportBackupNotification(final long total, final long current) {
+    private void updateImportBackupNotification(
+            final int file, final int files, final long total, final long current) {
         final int max;
         final int progress;
         if (total == 0) {
             max = 1;
             progress = 0;
         } else {
-            max = 100;
-            progress = (int) (current * 100 / total);
+            max = 100 * files;
+            progress = file * 100 + (int) (current * 100 / total);
         }
         getApplicationContext()
                 .getSystemService(NotificationManager.class)
@@ -371,14 +454,22 @@ public class ImportBackupWorker extends Worker {
                 .notify(NOTIFICATION_ID + 2, builder.build());
     }
 
-    public static Data data(final String password, final Uri uri, final boolean includeOmemo) {
+    public static Data data(
+            final String password, final List<Uri> uris, final boolean includeOmemo) {
         return new Data.Builder()
                 .putString(DATA_KEY_PASSWORD, password)
-                .putString(DATA_KEY_URI, uri.toString())
+                .putStringArray(
+                        DATA_KEY_URIS, Lists.transform(uris, Uri::toString).toArray(new String[0]))
                 .putBoolean(DATA_KEY_INCLUDE_OMEMO, includeOmemo)
                 .build();
     }
 
+    private static class IncompleteBackupChainException extends IOException {
+        private IncompleteBackupChainException(final String message) {
+            super(message);
+        }
+    }
+
     private static Result failure(final Reason reason) {
         return Result.failure(new Data.Builder().putString("reason", reason.toString()).build());
     }
@@ -387,6 +478,7 @@ public class ImportBackupWorker extends Worker {
         ACCOUNT_ALREADY_EXISTS,
         DECRYPTION_FAILED,
         FILE_NOT_FOUND,
+        INCOMPLETE_BACKUP_CHAIN,
         GENERIC;
 
         public static Reason valueOfOrGeneric(final String value) {
@@ -0,0 +1,188 @@
+package eu.siacs.conversations.xml;
+
+import androidx.annotation.NonNull;
+import com.google.common.base.Preconditions;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Insertion ordered attribute map backed by two parallel arrays. XML elements rarely carry more
+ * than a handful of attributes, so a linear scan beats hashing and the map costs three objects
+ * instead of a {@link java.util.Hashtable} with its bucket array and one entry per attribute.
+ *
+ * <p>Unlike Hashtable this map is not synchronized. Like Hashtable it does not permit null keys or
+ * values.
+ */
+public final class Attributes extends AbstractMap<String, String> {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys;
+    private String[] values;
+    private int size = 0;
+    private int modCount = 0;
+
+    public Attributes() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private Attributes(final int capacity) {
+        this.keys = new String[capacity];
+        this.values = new String[capacity];
+    }
+
+    public static Attributes copyOf(final Map<String, String> attributes) {
+        final Attributes copy = new Attributes(Math.max(INITIAL_CAPACITY, attributes.size()));
+        if (attributes instanceof Attributes other) {
+            System.arraycopy(other.keys, 0, copy.keys, 0, other.size);
+            System.arraycopy(other.values, 0, copy.values, 0, other.size);
+            copy.size = other.size;
+        } else {
+            copy.putAll(attributes);
+        }
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final String previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public String remove(final Object key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        final String previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @NonNull
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new EntrySet();
+    }
+
+    private int indexOf(final Object key) {
+        if (key == null) {
+            return -1;
+        }
+        for (int i = 0; i < size; ++i) {
+            // names coming from the reader and from code are usually the same (interned) instance
+            if (keys[i] == key || keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(final int index) {
+        final int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, String>> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @NonNull
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<>() {
+
+                private int next = 0;
+                private int last = -1;
+                private int expectedModCount = modCount;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    if (expectedModCount != modCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new SimpleImmutableEntry<>(keys[last], values[last]);
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    if (expectedModCount != modCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                    expectedModCount = modCount;
+                }
+            };
+        }
+    }
+}
@@ -12,12 +12,11 @@ import im.conversations.android.xmpp.model.stanza.Message;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
 public class Element {
     private final String name;
-    private Hashtable<String, String> attributes = new Hashtable<>();
+    private Attributes attributes = new Attributes();
     private String content;
     protected List<Element> children = new ArrayList<>();
 
@@ -146,17 +145,13 @@ public class Element {
         this.attributes.remove(name);
     }
 
-    public Element setAttributes(Hashtable<String, String> attributes) {
+    public Element setAttributes(final Attributes attributes) {
         this.attributes = attributes;
         return this;
     }
 
     public String getAttribute(String name) {
-        if (this.attributes.containsKey(name)) {
-            return this.attributes.get(name);
-        } else {
-            return null;
-        }
+        return name == null ? null : this.attributes.get(name);
     }
 
     public long getLongAttribute(final String name) {
@@ -180,7 +175,7 @@ public class Element {
         return Jid.ofOrInvalid(jid, this instanceof Message);
     }
 
-    public Hashtable<String, String> getAttributes() {
+    public Attributes getAttributes() {
         return this.attributes;
     }
 
@@ -0,0 +1,180 @@
+package eu.siacs.conversations.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Serializes elements straight into a buffered UTF-8 byte sink. Other than {@link
+ * Element#toString()} this does not build the stanza as an intermediate String, which matters for
+ * large stanzas like OMEMO bundles, avatars and IBB blocks. Escaping matches {@link
+ * eu.siacs.conversations.utils.XmlHelper#encodeEntities(String)}.
+ *
+ * <p>Not thread safe; {@link TagWriter} serializes access.
+ */
+public class StreamSerializer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private long bytesWritten = 0;
+
+    public StreamSerializer(final OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    public void write(final Element element) throws IOException {
+        final String content = element.getContent();
+        final var children = element.getChildren();
+        writeStart(element.getName(), element.getAttributes());
+        if (content == null && children.isEmpty()) {
+            writeAscii('/');
+            writeAscii('>');
+            return;
+        }
+        writeAscii('>');
+        if (content != null) {
+            writeEscaped(content);
+        } else {
+            for (final Element child : children) {
+                write(child);
+            }
+        }
+        writeEnd(element.getName());
+    }
+
+    public void write(final Tag tag) throws IOException {
+        if (tag.type == Tag.END) {
+            writeEnd(tag.name);
+            return;
+        }
+        writeStart(tag.name, tag.attributes);
+        if (tag.type == Tag.EMPTY) {
+            writeAscii('/');
+        }
+        writeAscii('>');
+    }
+
+    public void writeRaw(final String string) throws IOException {
+        writeEncoded(string, false);
+    }
+
+    public void flush() throws IOException {
+        drain();
+        outputStream.flush();
+    }
+
+    public void close() throws IOException {
+        outputStream.close();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    private void writeStart(final String name, final Map<String, String> attributes)
+            throws IOException {
+        writeAscii('<');
+        writeRaw(name);
+        for (final Map.Entry<String, String> attribute : attributes.entrySet()) {
+            writeAscii(' ');
+            writeRaw(attribute.getKey());
+            writeAscii('=');
+            writeAscii('"');
+            writeEscaped(attribute.getValue());
+            writeAscii('"');
+        }
+    }
+
+    private void writeEnd(final String name) throws IOException {
+        writeAscii('<');
+        writeAscii('/');
+        writeRaw(name);
+        writeAscii('>');
+    }
+
+    private void writeEscaped(final String string) throws IOException {
+        writeEncoded(string, true);
+    }
+
+    private void writeEncoded(final String string, final boolean escape) throws IOException {
+        final int length = string.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                if (escape) {
+                    writeEscapedAscii(c);
+                } else {
+                    writeAscii(c);
+                }
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate; OutputStreamWriter would have substituted it as well
+                writeAscii('?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writeEscapedAscii(final char c) throws IOException {
+        switch (c) {
+            case '&' -> writeAscii("&amp;");
+            case '<' -> writeAscii("&lt;");
+            case '>' -> writeAscii("&gt;");
+            case '"' -> writeAscii("&quot;");
+            case '\'' -> writeAscii("&apos;");
+            case '\n', '\t', '\r' -> writeAscii(c);
+            default -> {
+                // control characters are not allowed in XML 1.0
+                if (c >= 0x20 && c != 0x7f) {
+                    writeAscii(c);
+                }
+            }
+        }
+    }
+
+    private void writeAscii(final String string) throws IOException {
+        for (int i = 0; i < string.length(); ++i) {
+            writeAscii(string.charAt(i));
+        }
+    }
+
+    private void writeAscii(final char c) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    private void ensureCapacity(final int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            outputStream.write(buffer, 0, position);
+            bytesWritten += position;
+            position = 0;
+        }
+    }
+}
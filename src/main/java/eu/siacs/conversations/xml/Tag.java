@@ -2,7 +2,6 @@ package eu.siacs.conversations.xml;
 
 import androidx.annotation.NonNull;
 
-import java.util.Hashtable;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -16,7 +15,7 @@ public class Tag {
 
     protected int type;
     protected String name;
-    protected Hashtable<String, String> attributes = new Hashtable<String, String>();
+    protected Attributes attributes = new Attributes();
 
     protected Tag(int type, String name) {
         this.type = type;
@@ -56,7 +55,7 @@ public class Tag {
         return this;
     }
 
-    public void setAttributes(final Hashtable<String, String> attributes) {
+    public void setAttributes(final Attributes attributes) {
         this.attributes = attributes;
     }
 
@@ -105,7 +104,7 @@ public class Tag {
         return tagOutput.toString();
     }
 
-    public Hashtable<String, String> getAttributes() {
+    public Attributes getAttributes() {
         return this.attributes;
     }
 }
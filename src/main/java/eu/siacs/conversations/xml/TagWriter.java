@@ -2,9 +2,12 @@ package eu.siacs.conversations.xml;
 
 import android.util.Log;
 
+import com.google.common.base.Stopwatch;
+
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -14,9 +17,15 @@ import im.conversations.android.xmpp.model.StreamElement;
 
 public class TagWriter {
 
-    private OutputStreamWriter outputStream;
+    private StreamSerializer outputStream;
     private boolean finished = false;
 
+    // guards the serializer; separate from the monitor so forceClose() can close a blocked stream
+    private final Object writeLock = new Object();
+    private volatile long bytesWrittenToPreviousStreams = 0;
+    private volatile long flushes = 0;
+    private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+
     private final LinkedBlockingQueue<StreamElement> writeQueue = new LinkedBlockingQueue<>();
     private CountDownLatch stanzaWriterCountDownLatch = null;
 
@@ -25,20 +34,35 @@ public class TagWriter {
         @Override
         public void run() {
             stanzaWriterCountDownLatch = new CountDownLatch(1);
+            final List<StreamElement> batch = new ArrayList<>();
             while (!isInterrupted()) {
                 if (finished && writeQueue.isEmpty()) {
                     break;
                 }
                 try {
-                    final var output = writeQueue.take();
-                    outputStream.write(output.toString());
-                    if (writeQueue.isEmpty()) {
-                        outputStream.flush();
+                    batch.add(writeQueue.take());
+                    // everything that queued up while we were blocked goes out with one flush
+                    writeQueue.drainTo(batch);
+                    synchronized (writeLock) {
+                        for (final StreamElement output : batch) {
+                            outputStream.write(output);
+                        }
+                        flush();
                     }
+                    batch.clear();
                 } catch (Exception e) {
                     break;
                 }
             }
+            Log.d(
+                    Config.LOGTAG,
+                    String.format(
+                            "stanza writer wrote %d bytes with %d flushes (%d bytes/s, %d"
+                                    + " flushes/s)",
+                            getBytesWritten(),
+                            getFlushes(),
+                            perSecond(getBytesWritten()),
+                            perSecond(getFlushes())));
             stanzaWriterCountDownLatch.countDown();
         }
 
@@ -51,14 +75,22 @@ public class TagWriter {
         if (out == null) {
             throw new IOException();
         }
-        this.outputStream = new OutputStreamWriter(out);
+        if (this.outputStream != null) {
+            this.bytesWrittenToPreviousStreams += this.outputStream.getBytesWritten();
+        }
+        if (!stopwatch.isRunning()) {
+            stopwatch.start();
+        }
+        this.outputStream = new StreamSerializer(out);
     }
 
     public void beginDocument() throws IOException {
         if (outputStream == null) {
             throw new IOException("output stream was null");
         }
-        outputStream.write("<?xml version='1.0'?>");
+        synchronized (writeLock) {
+            outputStream.writeRaw("<?xml version='1.0'?>");
+        }
     }
 
     public void writeTag(final Tag tag) throws IOException {
@@ -69,9 +101,11 @@ public class TagWriter {
         if (outputStream == null) {
             throw new IOException("output stream was null");
         }
-        outputStream.write(tag.toString());
-        if (flush) {
-            outputStream.flush();
+        synchronized (writeLock) {
+            outputStream.write(tag);
+            if (flush) {
+                flush();
+            }
         }
     }
 
@@ -79,8 +113,29 @@ public class TagWriter {
         if (outputStream == null) {
             throw new IOException("output stream was null");
         }
-        outputStream.write(element.toString());
+        synchronized (writeLock) {
+            outputStream.write(element);
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
         outputStream.flush();
+        flushes++;
+    }
+
+    public long getBytesWritten() {
+        final var current = this.outputStream;
+        return bytesWrittenToPreviousStreams + (current == null ? 0 : current.getBytesWritten());
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    private long perSecond(final long count) {
+        final long millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        return millis <= 0 ? 0 : count * 1000 / millis;
     }
 
     public void writeStanzaAsync(StreamElement stanza) {
@@ -117,6 +172,7 @@ public class TagWriter {
     public synchronized void forceClose() {
         asyncStanzaWriter.interrupt();
         if (outputStream != null) {
+            bytesWrittenToPreviousStreams += outputStream.getBytesWritten();
             try {
                 outputStream.close();
             } catch (IOException e) {
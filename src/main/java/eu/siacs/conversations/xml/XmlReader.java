@@ -9,11 +9,17 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 public class XmlReader implements Closeable {
+
+    // bounds the pool in case a peer sends an endless stream of distinct names
+    private static final int MAX_INTERNED_STRINGS = 2048;
+
     private final XmlPullParser parser;
+    private final HashMap<String, String> internedStrings = new HashMap<>();
     private InputStream is;
 
     public XmlReader() {
@@ -57,8 +63,8 @@ public class XmlReader implements Closeable {
         try {
             while (this.is != null && parser.next() != XmlPullParser.END_DOCUMENT) {
                 if (parser.getEventType() == XmlPullParser.START_TAG) {
-                    Tag tag = Tag.start(parser.getName());
-                    final String xmlns = parser.getNamespace();
+                    Tag tag = Tag.start(intern(parser.getName()));
+                    final String xmlns = intern(parser.getNamespace());
                     for (int i = 0; i < parser.getAttributeCount(); ++i) {
                         // TODO we would also look at parser.getAttributeNamespace()
                         final String prefix = parser.getAttributePrefix(i);
@@ -68,14 +74,14 @@ public class XmlReader implements Closeable {
                         } else {
                             name = parser.getAttributeName(i);
                         }
-                        tag.setAttribute(name, parser.getAttributeValue(i));
+                        tag.setAttribute(intern(name), parser.getAttributeValue(i));
                     }
                     if (xmlns != null) {
                         tag.setAttribute("xmlns", xmlns);
                     }
                     return tag;
                 } else if (parser.getEventType() == XmlPullParser.END_TAG) {
-                    return Tag.end(parser.getName());
+                    return Tag.end(intern(parser.getName()));
                 } else if (parser.getEventType() == XmlPullParser.TEXT) {
                     return Tag.no(parser.getText());
                 }
@@ -93,6 +99,25 @@ public class XmlReader implements Closeable {
         return null;
     }
 
+    /**
+     * Element names, attribute names and namespaces repeat in every stanza. Handing out one instance
+     * per distinct string means elements that are kept around (and there are a lot of them during
+     * a MUC join) do not each retain their own copies.
+     */
+    private String intern(final String string) {
+        if (string == null) {
+            return null;
+        }
+        final String interned = internedStrings.get(string);
+        if (interned != null) {
+            return interned;
+        }
+        if (internedStrings.size() < MAX_INTERNED_STRINGS) {
+            internedStrings.put(string, string);
+        }
+        return string;
+    }
+
     public <T extends StreamElement> T readElement(final Tag current, final Class<T> clazz)
             throws IOException {
         final Element element = readElement(current);
@@ -2,6 +2,9 @@ package eu.siacs.conversations.xmpp;
 
 import androidx.annotation.NonNull;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Iterables;
 import eu.siacs.conversations.services.QuickConversationsService;
 import eu.siacs.conversations.utils.IP;
@@ -23,6 +26,12 @@ public abstract class Jid implements Comparable<Jid>, Serializable, CharSequence
             Pattern.compile(
                     "^(?=.{1,253}$)(?!-)[\\p{L}\\p{N}](?:[\\p{L}\\p{N}-]{0,61}[\\p{L}\\p{N}])?(?:\\.(?!-)[\\p{L}\\p{N}](?:[\\p{L}\\p{N}-]{0,61}[\\p{L}\\p{N}])?)*\\.?$");
 
+    // parsed jids by the string they were parsed from and by their canonical form. A busy MUC
+    // sends the same few thousand addresses over and over; handing out one instance per address
+    // skips stringprep and makes equals() a reference comparison
+    private static final Cache<String, Jid> INTERNED =
+            CacheBuilder.newBuilder().maximumSize(4096).recordStats().build();
+
     private static final Collection<Jid> PS_DISABLED_DOMAINS =
             Arrays.asList(Jid.ofDomain("gmail.com"), Jid.ofDomain("googlemail.com"));
 
@@ -82,11 +91,30 @@ public abstract class Jid implements Comparable<Jid>, Serializable, CharSequence
         if (input instanceof Jid jid) {
             return jid;
         }
+        final String string = input.toString();
+        final Jid cached = INTERNED.getIfPresent(string);
+        if (cached != null) {
+            return cached;
+        }
+        final Jid jid;
         try {
-            return new InternalRepresentation(JidCreate.from(input));
+            jid = intern(new InternalRepresentation(JidCreate.from(string)));
         } catch (final XmppStringprepException e) {
             throw new IllegalArgumentException(e);
         }
+        if (!string.equals(jid.toString())) {
+            INTERNED.put(string, jid);
+        }
+        return jid;
+    }
+
+    private static Jid intern(final Jid jid) {
+        final Jid canonical = INTERNED.asMap().putIfAbsent(jid.toString(), jid);
+        return canonical == null ? jid : canonical;
+    }
+
+    public static CacheStats getInternStats() {
+        return INTERNED.stats();
     }
 
     public static Jid ofUserInput(final CharSequence input) {
@@ -162,6 +190,10 @@ public abstract class Jid implements Comparable<Jid>, Serializable, CharSequence
     private static class InternalRepresentation extends Jid {
         private final org.jxmpp.jid.Jid inner;
 
+        // memoized projections; computing one twice in a race is harmless
+        private transient Jid bare;
+        private transient Jid domain;
+
         private InternalRepresentation(final org.jxmpp.jid.Jid inner) {
             this.inner = inner;
         }
@@ -183,7 +215,15 @@ public abstract class Jid implements Comparable<Jid>, Serializable, CharSequence
 
         @Override
         public Jid asBareJid() {
-            return new InternalRepresentation(inner.asBareJid());
+            if (isBareJid()) {
+                return this;
+            }
+            Jid bare = this.bare;
+            if (bare == null) {
+                bare = intern(new InternalRepresentation(inner.asBareJid()));
+                this.bare = bare;
+            }
+            return bare;
         }
 
         @Override
@@ -211,7 +251,15 @@ public abstract class Jid implements Comparable<Jid>, Serializable, CharSequence
 
         @Override
         public Jid getDomain() {
-            return new InternalRepresentation(inner.asDomainBareJid());
+            if (inner.isDomainBareJid()) {
+                return this;
+            }
+            Jid domain = this.domain;
+            if (domain == null) {
+                domain = intern(new InternalRepresentation(inner.asDomainBareJid()));
+                this.domain = domain;
+            }
+            return domain;
         }
 
         @Override
@@ -0,0 +1,104 @@
+package eu.siacs.conversations.xmpp;
+
+import androidx.annotation.NonNull;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies received stanzas on a thread other than the one reading the socket, so that database
+ * writes, OMEMO decryption and UI callbacks do not stall TCP reads and stream management acks.
+ *
+ * <p>Stanzas are applied one at a time in the order they were read. That keeps them in order per
+ * conversation and keeps MAM results ahead of the IQ that ends the query. At most {@link
+ * #CAPACITY} stanzas are waiting at any time; beyond that the reader blocks, which lets TCP flow
+ * control push back on the server instead of buffering without bound.
+ */
+public class StanzaPipeline {
+
+    public static final int CAPACITY = 256;
+
+    private static final ExecutorService PROCESSING_EXECUTOR =
+            Executors.newCachedThreadPool(r -> new Thread(r, "StanzaPipeline"));
+
+    private final Executor executor = MoreExecutors.newSequentialExecutor(PROCESSING_EXECUTOR);
+    private final Semaphore capacity = new Semaphore(CAPACITY);
+
+    private final AtomicLong stanzas = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+
+    /**
+     * Queues the task behind all stanzas read before it. Blocks while the pipeline is full.
+     *
+     * @param readNanos how long it took to read and parse the stanza; 0 for other tasks
+     */
+    public void execute(final Runnable task, final long readNanos) {
+        final long enqueueStarted = System.nanoTime();
+        boolean acquired;
+        try {
+            capacity.acquire();
+            acquired = true;
+        } catch (final InterruptedException e) {
+            // the stanza has been read and counted already; dropping it would lose it
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        final long enqueued = System.nanoTime();
+        this.readNanos.addAndGet(readNanos);
+        this.blockedNanos.addAndGet(enqueued - enqueueStarted);
+        final int depth = getDepth() + (acquired ? 0 : 1);
+        maxDepth.accumulateAndGet(depth, Math::max);
+        final boolean release = acquired;
+        executor.execute(
+                () -> {
+                    final long started = System.nanoTime();
+                    waitNanos.addAndGet(started - enqueued);
+                    try {
+                        task.run();
+                    } finally {
+                        processNanos.addAndGet(System.nanoTime() - started);
+                        stanzas.incrementAndGet();
+                        if (release) {
+                            capacity.release();
+                        }
+                    }
+                });
+    }
+
+    public int getDepth() {
+        return CAPACITY - capacity.availablePermits();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getStanzas() {
+        return stanzas.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        final long count = Math.max(1, stanzas.get());
+        return String.format(
+                "StanzaPipeline{stanzas=%d, depth=%d, maxDepth=%d, read=%dus, blocked=%dus,"
+                        + " wait=%dus, process=%dus}",
+                stanzas.get(),
+                getDepth(),
+                maxDepth.get(),
+                TimeUnit.NANOSECONDS.toMicros(readNanos.get() / count),
+                TimeUnit.NANOSECONDS.toMicros(blockedNanos.get() / count),
+                TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / count),
+                TimeUnit.NANOSECONDS.toMicros(processNanos.get() / count));
+    }
+}
@@ -1,7 +1,5 @@
 package eu.siacs.conversations.xmpp;
 
-import static eu.siacs.conversations.utils.Random.SECURE_RANDOM;
-
 import android.content.Context;
 import android.os.Build;
 import android.os.SystemClock;
@@ -56,9 +54,11 @@ import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.ui.util.PendingItem;
 import eu.siacs.conversations.utils.AccountUtils;
 import eu.siacs.conversations.utils.CryptoHelper;
+import eu.siacs.conversations.utils.HappyEyeballs;
 import eu.siacs.conversations.utils.Resolver;
 import eu.siacs.conversations.utils.SSLSockets;
 import eu.siacs.conversations.utils.SocksSocketFactory;
+import eu.siacs.conversations.utils.TlsContextCache;
 import eu.siacs.conversations.utils.XmlHelper;
 import eu.siacs.conversations.xml.Element;
 import eu.siacs.conversations.xml.LocalizedContent;
@@ -136,7 +136,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -150,14 +149,11 @@ import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLProtocolException;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509KeyManager;
-import javax.net.ssl.X509TrustManager;
 import okhttp3.HttpUrl;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -186,6 +182,8 @@ public class XmppConnection implements Runnable {
     private im.conversations.android.xmpp.model.streams.Features boundStreamFeatures;
     private StreamId streamId = null;
     private int stanzasReceived = 0;
+    private final StanzaPipeline stanzaPipeline = new StanzaPipeline();
+    private volatile Account.State processingFailure = null;
     private int stanzasSent = 0;
     private int stanzasSentBeforeAuthentication;
     private long lastPacketReceived = 0;
@@ -323,6 +321,7 @@ public class XmppConnection implements Runnable {
         this.inSmacksSession = false;
         this.quickStartInProgress = false;
         this.isBound = false;
+        this.processingFailure = null;
         this.attempt++;
         this.currentResolverResult = null;
         // will be set if user entered hostname is being used or hostname was verified with dnssec
@@ -409,13 +408,19 @@ public class XmppConnection implements Runnable {
                     return;
                 }
                 final Resolver.Result storedBackupResult;
+                final Resolver.Result preferredResult;
                 if (hardcoded) {
                     storedBackupResult = null;
+                    preferredResult = null;
                 } else {
                     storedBackupResult =
                             mXmppConnectionService.databaseBackend.findResolverResult(domain);
-                    if (storedBackupResult != null && !results.contains(storedBackupResult)) {
-                        results.add(storedBackupResult);
+                    if (storedBackupResult == null || results.contains(storedBackupResult)) {
+                        // the last result that connected goes first, and its address family leads
+                        preferredResult = storedBackupResult;
+                    } else {
+                        // no longer in DNS; only a last resort
+                        preferredResult = null;
                         Log.d(
                                 Config.LOGTAG,
                                 account.getJid().asBareJid()
@@ -423,6 +428,11 @@ public class XmppConnection implements Runnable {
                                         + storedBackupResult);
                     }
                 }
+                final List<Resolver.Result> candidates =
+                        new ArrayList<>(HappyEyeballs.order(results, preferredResult));
+                if (storedBackupResult != null && preferredResult == null) {
+                    candidates.add(storedBackupResult);
+                }
                 final StreamId streamId = this.streamId;
                 final Resolver.Result resumeLocation = streamId == null ? null : streamId.location;
                 if (resumeLocation != null) {
@@ -430,7 +440,7 @@ public class XmppConnection implements Runnable {
                             Config.LOGTAG,
                             account.getJid().asBareJid()
                                     + ": injected resume location on position 0");
-                    results.add(0, resumeLocation);
+                    candidates.add(0, resumeLocation);
                 }
                 final Resolver.Result seeOtherHost = this.seeOtherHostResolverResult;
                 if (seeOtherHost != null) {
@@ -438,58 +448,46 @@ public class XmppConnection implements Runnable {
                             Config.LOGTAG,
                             account.getJid().asBareJid()
                                     + ": injected see-other-host on position 0");
-                    results.add(0, seeOtherHost);
+                    candidates.add(0, seeOtherHost);
                 }
-                for (final Iterator<Resolver.Result> iterator = results.iterator();
-                        iterator.hasNext(); ) {
-                    final Resolver.Result result = iterator.next();
+                while (true) {
                     if (Thread.currentThread().isInterrupted()) {
                         Log.d(
                                 Config.LOGTAG,
                                 account.getJid().asBareJid() + ": Thread was interrupted");
                         return;
                     }
+                    final HappyEyeballs.Winner<Resolver.Result> winner;
                     try {
-                        // if tls is true, encryption is implied and must not be started
-                        features.encryptionEnabled = result.isDirectTls();
-                        verifiedHostname =
-                                result.isAuthenticated() ? result.getHostname().toString() : null;
-                        final InetSocketAddress addr;
-                        if (result.getIp() != null) {
-                            addr = new InetSocketAddress(result.getIp(), result.getPort());
-                            Log.d(
-                                    Config.LOGTAG,
-                                    account.getJid().asBareJid().toString()
-                                            + ": using values from resolver "
-                                            + (result.getHostname() == null
-                                                    ? ""
-                                                    : result.getHostname().toString() + "/")
-                                            + result.getIp().getHostAddress()
-                                            + ":"
-                                            + result.getPort()
-                                            + " tls: "
-                                            + features.encryptionEnabled);
-                        } else {
-                            addr =
-                                    new InetSocketAddress(
-                                            IDN.toASCII(result.getHostname().toString()),
-                                            result.getPort());
-                            Log.d(
-                                    Config.LOGTAG,
-                                    account.getJid().asBareJid().toString()
-                                            + ": using values from resolver "
-                                            + result.getHostname().toString()
-                                            + ":"
-                                            + result.getPort()
-                                            + " tls: "
-                                            + features.encryptionEnabled);
-                        }
-
-                        localSocket = new Socket();
-                        localSocket.connect(addr, Config.SOCKET_TIMEOUT * 1000);
-                        localSocket.setSoTimeout(Config.SOCKET_TIMEOUT * 1000);
-                        if (features.encryptionEnabled) {
-                            localSocket = upgradeSocketToTls(localSocket);
+                        winner = HappyEyeballs.race(candidates, this::connectTo);
+                    } catch (final InterruptedException e) {
+                        Log.d(
+                                Config.LOGTAG,
+                                account.getJid().asBareJid()
+                                        + ": thread was interrupted while connecting");
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (final StateChangingException e) {
+                        throw e;
+                    } catch (final IOException e) {
+                        throw new UnknownHostException();
+                    }
+                    candidates.removeAll(winner.failed());
+                    candidates.remove(winner.candidate());
+                    final Resolver.Result result = winner.candidate();
+                    localSocket = winner.socket();
+                    // if tls is true, encryption is implied and must not be started
+                    features.encryptionEnabled = result.isDirectTls();
+                    verifiedHostname = verifiedHostname(result);
+                    try {
+                        if (result.isDirectTls()) {
+                            // the handshake may prompt the user; only the winner gets that far
+                            try {
+                                localSocket = upgradeSocketToTls(localSocket);
+                            } catch (final IOException e) {
+                                FileBackend.close(localSocket);
+                                throw e;
+                            }
                         }
                         if (startXmpp(localSocket)) {
                             // reset to 0; once the connection is established we don't want this
@@ -506,7 +504,7 @@ public class XmppConnection implements Runnable {
                             throw new StateChangingException(Account.State.STREAM_OPENING_ERROR);
                         }
                     } catch (final StateChangingException e) {
-                        if (!iterator.hasNext()) {
+                        if (candidates.isEmpty()) {
                             throw e;
                         }
                     } catch (InterruptedException e) {
@@ -524,7 +522,7 @@ public class XmppConnection implements Runnable {
                                         + "("
                                         + e.getClass().getName()
                                         + ")");
-                        if (!iterator.hasNext()) {
+                        if (candidates.isEmpty()) {
                             throw new UnknownHostException();
                         }
                     }
@@ -549,10 +547,24 @@ public class XmppConnection implements Runnable {
         } catch (final SocksSocketFactory.SocksProxyNotFoundException e) {
             this.changeState(Account.State.TOR_NOT_AVAILABLE);
         } catch (final IOException | XmlPullParserException e) {
-            Log.d(Config.LOGTAG, account.getJid().asBareJid().toString() + ": " + e.getMessage());
-            this.changeState(Account.State.OFFLINE);
-            this.attempt = Math.max(0, this.attempt - 1);
+            final var processingFailure = this.processingFailure;
+            if (processingFailure != null) {
+                // the socket was closed by the stanza pipeline
+                this.changeState(processingFailure);
+            } else {
+                Log.d(
+                        Config.LOGTAG,
+                        account.getJid().asBareJid().toString() + ": " + e.getMessage());
+                this.changeState(Account.State.OFFLINE);
+                this.attempt = Math.max(0, this.attempt - 1);
+            }
         } finally {
+            Log.d(Config.LOGTAG, account.getJid().asBareJid() + ": " + stanzaPipeline);
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid()
+                            + ": caps cache "
+                            + mXmppConnectionService.databaseBackend.getCapsCacheStats());
             if (Thread.currentThread().isInterrupted()) {
                 Log.d(
                         Config.LOGTAG,
@@ -564,6 +576,62 @@ public class XmppConnection implements Runnable {
         }
     }
 
+    /**
+     * Connection attempt for {@link HappyEyeballs}; runs concurrently with other attempts. Only
+     * connects TCP; direct TLS is negotiated on the winning socket once the race is over.
+     */
+    private Socket connectTo(final Resolver.Result result, final Socket socket)
+            throws IOException {
+        final InetSocketAddress addr;
+        if (result.getIp() != null) {
+            addr = new InetSocketAddress(result.getIp(), result.getPort());
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid().toString()
+                            + ": using values from resolver "
+                            + (result.getHostname() == null
+                                    ? ""
+                                    : result.getHostname().toString() + "/")
+                            + result.getIp().getHostAddress()
+                            + ":"
+                            + result.getPort()
+                            + " tls: "
+                            + result.isDirectTls());
+        } else {
+            addr =
+                    new InetSocketAddress(
+                            IDN.toASCII(result.getHostname().toString()), result.getPort());
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid().toString()
+                            + ": using values from resolver "
+                            + result.getHostname().toString()
+                            + ":"
+                            + result.getPort()
+                            + " tls: "
+                            + result.isDirectTls());
+        }
+        try {
+            socket.connect(addr, Config.SOCKET_TIMEOUT * 1000);
+            socket.setSoTimeout(Config.SOCKET_TIMEOUT * 1000);
+            return socket;
+        } catch (final IOException e) {
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid().toString()
+                            + ": "
+                            + e.getMessage()
+                            + "("
+                            + e.getClass().getName()
+                            + ")");
+            throw e;
+        }
+    }
+
+    private static String verifiedHostname(final Resolver.Result result) {
+        return result.isAuthenticated() ? result.getHostname().toString() : null;
+    }
+
     /**
      * Starts xmpp protocol, call after connecting to socket
      *
@@ -611,9 +679,8 @@ public class XmppConnection implements Runnable {
         return success;
     }
 
-    private SSLSocketFactory getSSLSocketFactory()
+    private TlsContextCache.CachedContext getTlsContext()
             throws NoSuchAlgorithmException, KeyManagementException {
-        final SSLContext sc = SSLSockets.getSSLContext();
         final MemorizingTrustManager trustManager =
                 this.mXmppConnectionService.getMemorizingTrustManager();
         final KeyManager[] keyManager;
@@ -623,15 +690,16 @@ public class XmppConnection implements Runnable {
             keyManager = null;
         }
         final String domain = account.getServer();
-        sc.init(
-                keyManager,
-                new X509TrustManager[] {
-                    mInteractive
-                            ? trustManager.getInteractive(domain)
-                            : trustManager.getNonInteractive(domain)
-                },
-                SECURE_RANDOM);
-        return sc.getSocketFactory();
+        return mXmppConnectionService
+                .getTlsContextCache()
+                .get(
+                        account.getUuid(),
+                        new TlsContextCache.Key(
+                                domain, account.getPrivateKeyAlias(), mInteractive),
+                        keyManager,
+                        mInteractive
+                                ? trustManager.getInteractive(domain)
+                                : trustManager.getNonInteractive(domain));
     }
 
     @Override
@@ -724,58 +792,39 @@ public class XmppConnection implements Runnable {
                 processEnabled(enabled);
             } else if (nextTag.isStart("r", Namespace.STREAM_MANAGEMENT)) {
                 tagReader.readElement(nextTag);
-                if (Config.EXTENDED_SM_LOGGING) {
-                    Log.d(
-                            Config.LOGTAG,
-                            account.getJid().asBareJid()
-                                    + ": acknowledging stanza #"
-                                    + this.stanzasReceived);
-                }
-                final Ack ack = new Ack(this.stanzasReceived);
-                tagWriter.writeStanzaAsync(ack);
+                // only acknowledge stanzas once they have made it through the pipeline
+                final int handled = this.stanzasReceived;
+                final TagWriter currentTagWriter = this.tagWriter;
+                stanzaPipeline.execute(
+                        () -> {
+                            if (Config.EXTENDED_SM_LOGGING) {
+                                Log.d(
+                                        Config.LOGTAG,
+                                        account.getJid().asBareJid()
+                                                + ": acknowledging stanza #"
+                                                + handled);
+                            }
+                            // the server drops what we acknowledge; it has to be on disk first
+                            mXmppConnectionService.getMessageWriter().flush();
+                            currentTagWriter.writeStanzaAsync(new Ack(handled));
+                        },
+                        0);
             } else if (nextTag.isStart("a", Namespace.STREAM_MANAGEMENT)) {
-                boolean accountUiNeedsRefresh = false;
-                synchronized (NotificationService.CATCHUP_LOCK) {
-                    if (mWaitingForSmCatchup.compareAndSet(true, false)) {
-                        final int messageCount = mSmCatchupMessageCounter.get();
-                        final int pendingIQs = packetCallbacks.size();
-                        Log.d(
-                                Config.LOGTAG,
-                                account.getJid().asBareJid()
-                                        + ": SM catchup complete (messages="
-                                        + messageCount
-                                        + ", pending IQs="
-                                        + pendingIQs
-                                        + ")");
-                        accountUiNeedsRefresh = true;
-                        if (messageCount > 0) {
-                            mXmppConnectionService
-                                    .getNotificationService()
-                                    .finishBacklog(true, account);
-                        }
-                    }
-                }
-                if (accountUiNeedsRefresh) {
-                    mXmppConnectionService.updateAccountUi();
-                }
+                // the backlog is complete once the stanzas before the ack have been processed
+                stanzaPipeline.execute(this::processSmCatchup, 0);
                 final var ack = tagReader.readElement(nextTag, Ack.class);
                 lastPacketReceived = SystemClock.elapsedRealtime();
-                final boolean acknowledgedMessages;
                 synchronized (this.mStanzaQueue) {
                     final Optional<Integer> serverSequence = ack.getHandled();
                     if (serverSequence.isPresent()) {
-                        acknowledgedMessages = acknowledgeStanzaUpTo(serverSequence.get());
+                        acknowledgeStanzaUpTo(serverSequence.get());
                     } else {
-                        acknowledgedMessages = false;
                         Log.d(
                                 Config.LOGTAG,
                                 account.getJid().asBareJid()
                                         + ": server send ack without sequence number");
                     }
                 }
-                if (acknowledgedMessages) {
-                    mXmppConnectionService.updateConversationUi();
-                }
             } else {
                 throw new StateChangingException(
                         Account.State.INCOMPATIBLE_SERVER,
@@ -788,6 +837,32 @@ public class XmppConnection implements Runnable {
         }
     }
 
+    private void processSmCatchup() {
+        boolean accountUiNeedsRefresh = false;
+        synchronized (NotificationService.CATCHUP_LOCK) {
+            if (mWaitingForSmCatchup.compareAndSet(true, false)) {
+                final int messageCount = mSmCatchupMessageCounter.get();
+                final int pendingIQs = packetCallbacks.size();
+                Log.d(
+                        Config.LOGTAG,
+                        account.getJid().asBareJid()
+                                + ": SM catchup complete (messages="
+                                + messageCount
+                                + ", pending IQs="
+                                + pendingIQs
+                                + ")");
+                accountUiNeedsRefresh = true;
+                if (messageCount > 0) {
+                    mXmppConnectionService.getMessageWriter().flushAsync();
+                    mXmppConnectionService.getNotificationService().finishBacklog(true, account);
+                }
+            }
+        }
+        if (accountUiNeedsRefresh) {
+            mXmppConnectionService.updateAccountUi();
+        }
+    }
+
     private void processChallenge(final Element challenge) throws IOException {
         final SaslMechanism.Version version;
         try {
@@ -1163,7 +1238,6 @@ public class XmppConnection implements Runnable {
                     Account.State.INCOMPATIBLE_SERVER, "no 'h' count on resumed");
         }
         final ArrayList<Stanza> failedStanzas = new ArrayList<>();
-        final boolean acknowledgedMessages;
         synchronized (this.mStanzaQueue) {
             if (serverCount < stanzasSent) {
                 Log.d(
@@ -1173,15 +1247,12 @@ public class XmppConnection implements Runnable {
             } else {
                 Log.d(Config.LOGTAG, account.getJid().asBareJid() + ": session resumed");
             }
-            acknowledgedMessages = acknowledgeStanzaUpTo(serverCount);
+            acknowledgeStanzaUpTo(serverCount);
             for (int i = 0; i < this.mStanzaQueue.size(); ++i) {
                 failedStanzas.add(mStanzaQueue.valueAt(i));
             }
             mStanzaQueue.clear();
         }
-        if (acknowledgedMessages) {
-            mXmppConnectionService.updateConversationUi();
-        }
         Log.d(
                 Config.LOGTAG,
                 account.getJid().asBareJid() + ": resending " + failedStanzas.size() + " stanzas");
@@ -1221,12 +1292,8 @@ public class XmppConnection implements Runnable {
                     account.getJid().asBareJid()
                             + ": resumption failed but server acknowledged stanza #"
                             + serverCount.get());
-            final boolean acknowledgedMessages;
             synchronized (this.mStanzaQueue) {
-                acknowledgedMessages = acknowledgeStanzaUpTo(serverCount.get());
-            }
-            if (acknowledgedMessages) {
-                mXmppConnectionService.updateConversationUi();
+                acknowledgeStanzaUpTo(serverCount.get());
             }
         } else {
             Log.d(
@@ -1242,7 +1309,8 @@ public class XmppConnection implements Runnable {
         }
     }
 
-    private boolean acknowledgeStanzaUpTo(final int serverCount) {
+    // the processor updates the UI for every message it marks as sent
+    private void acknowledgeStanzaUpTo(final int serverCount) {
         if (serverCount > stanzasSent) {
             Log.e(
                     Config.LOGTAG,
@@ -1251,7 +1319,6 @@ public class XmppConnection implements Runnable {
                             + ", ourCount="
                             + stanzasSent);
         }
-        boolean acknowledgedMessages = false;
         for (int i = 0; i < mStanzaQueue.size(); ++i) {
             if (serverCount >= mStanzaQueue.keyAt(i)) {
                 if (Config.EXTENDED_SM_LOGGING) {
@@ -1267,14 +1334,13 @@ public class XmppConnection implements Runnable {
                     final String id = packet.getId();
                     final Jid to = packet.getTo();
                     if (id != null && to != null) {
-                        acknowledgedMessages |= messageAcknowledgedProcessor.apply(to, id);
+                        messageAcknowledgedProcessor.apply(to, id);
                     }
                 }
                 mStanzaQueue.removeAt(i);
                 i--;
             }
         }
-        return acknowledgedMessages;
     }
 
     private <S extends Stanza> @NonNull S processPacket(final Tag currentTag, final Class<S> clazz)
@@ -1302,6 +1368,7 @@ public class XmppConnection implements Runnable {
     }
 
     private void processIq(final Tag currentTag) throws IOException {
+        final long readStarted = System.nanoTime();
         final Iq packet = processPacket(currentTag, Iq.class);
         if (packet.isInvalid()) {
             Log.e(
@@ -1329,6 +1396,11 @@ public class XmppConnection implements Runnable {
                             + packet.getFrom());
             return;
         }
+        if (isBound) {
+            enqueue(() -> callback.accept(packet), readStarted);
+            return;
+        }
+        // login and bind run on the reader thread; they change how the stream is read
         try {
             callback.accept(packet);
         } catch (final StateChangingError error) {
@@ -1336,6 +1408,31 @@ public class XmppConnection implements Runnable {
         }
     }
 
+    /** Hands the processing of a stanza that has just been read to the stanza pipeline. */
+    private void enqueue(final Runnable task, final long readStarted) {
+        final Socket socket = this.socket;
+        stanzaPipeline.execute(
+                () -> {
+                    try {
+                        task.run();
+                    } catch (final StateChangingError error) {
+                        if (socket != this.socket) {
+                            Log.d(
+                                    Config.LOGTAG,
+                                    account.getJid().asBareJid()
+                                            + ": ignoring StateChangingError("
+                                            + error.state
+                                            + ") from previous connection");
+                            return;
+                        }
+                        this.processingFailure = error.state;
+                        // makes the reader fail; it then reports processingFailure
+                        FileBackend.close(socket);
+                    }
+                },
+                System.nanoTime() - readStarted);
+    }
+
     private Consumer<Iq> getIqPacketReceivedCallback(final Iq stanza)
             throws StateChangingException {
         final boolean isRequest =
@@ -1380,6 +1477,7 @@ public class XmppConnection implements Runnable {
     }
 
     private void processMessage(final Tag currentTag) throws IOException {
+        final long readStarted = System.nanoTime();
         final var packet =
                 processPacket(currentTag, im.conversations.android.xmpp.model.stanza.Message.class);
         if (packet.isInvalid()) {
@@ -1399,10 +1497,11 @@ public class XmppConnection implements Runnable {
                             + "Not processing message. Thread was interrupted");
             return;
         }
-        this.messageListener.accept(packet);
+        enqueue(() -> this.messageListener.accept(packet), readStarted);
     }
 
     private void processPresence(final Tag currentTag) throws IOException {
+        final long readStarted = System.nanoTime();
         final var packet = processPacket(currentTag, Presence.class);
         if (packet.isInvalid()) {
             Log.e(
@@ -1421,7 +1520,7 @@ public class XmppConnection implements Runnable {
                             + "Not processing presence. Thread was interrupted");
             return;
         }
-        this.presenceListener.accept(packet);
+        enqueue(() -> this.presenceListener.accept(packet), readStarted);
     }
 
     private void sendStartTLS() throws IOException {
@@ -1457,9 +1556,9 @@ public class XmppConnection implements Runnable {
     }
 
     private SSLSocket upgradeSocketToTls(final Socket socket) throws IOException {
-        final SSLSocketFactory sslSocketFactory;
+        final TlsContextCache.CachedContext tlsContext;
         try {
-            sslSocketFactory = getSSLSocketFactory();
+            tlsContext = getTlsContext();
         } catch (final NoSuchAlgorithmException | KeyManagementException e) {
             Log.d(Config.LOGTAG, "could not create TLS Socket Factory", e);
             throw new StateChangingException(Account.State.TLS_ERROR);
@@ -1467,14 +1566,24 @@ public class XmppConnection implements Runnable {
         final InetAddress address = socket.getInetAddress();
         final SSLSocket sslSocket =
                 (SSLSocket)
-                        sslSocketFactory.createSocket(
-                                socket, address.getHostAddress(), socket.getPort(), true);
+                        tlsContext
+                                .getSocketFactory()
+                                .createSocket(
+                                        socket, address.getHostAddress(), socket.getPort(), true);
         SSLSockets.setSecurity(sslSocket, isRequireTlsV13());
         SSLSockets.setHostname(sslSocket, IDN.toASCII(account.getServer()));
         SSLSockets.setApplicationProtocol(sslSocket, "xmpp-client");
         final XmppDomainVerifier xmppDomainVerifier = new XmppDomainVerifier();
         try {
-            sslSocket.startHandshake();
+            final var handshake = tlsContext.handshake(sslSocket);
+            Log.d(
+                    Config.LOGTAG,
+                    account.getJid().asBareJid()
+                            + ": TLS handshake took "
+                            + handshake.duration()
+                            + "ms (resumed="
+                            + handshake.resumed()
+                            + ")");
             if (!xmppDomainVerifier.verify(
                     account.getServer(), this.verifiedHostname, sslSocket.getSession())) {
                 Log.d(
@@ -610,7 +610,7 @@ public class JingleConnectionManager extends AbstractConnectionManager {
         final Conversational conversational = message.getConversation();
         if (conversational instanceof Conversation) {
             ((Conversation) conversational).add(message);
-            mXmppConnectionService.databaseBackend.createMessage(message);
+            mXmppConnectionService.getMessageWriter().createMessage(message, false);
             mXmppConnectionService.updateConversationUi();
         } else {
             throw new IllegalStateException("Somehow the conversation in a message was a stub");
@@ -927,7 +927,7 @@ public class JingleFileTransferConnection extends AbstractJingleConnection
     private void messageReceivedSuccess() {
         this.message.setTransferable(null);
         xmppConnectionService.getFileBackend().updateFileParams(message);
-        xmppConnectionService.databaseBackend.createMessage(message);
+        xmppConnectionService.getMessageWriter().createMessage(message, false);
         final File file = xmppConnectionService.getFileBackend().getFile(message);
         if (acceptedAutomatically) {
             message.markUnread();
@@ -971,7 +971,8 @@ public class JingleFileTransferConnection extends AbstractJingleConnection
         }
         final var fileDescription = getLocalContentMap().requireOnlyFile();
         final File file = xmppConnectionService.getFileBackend().getFile(message);
-        final Runnable updateRunnable = () -> jingleConnectionManager.updateConversationUi(false);
+        final Runnable updateRunnable =
+                () -> jingleConnectionManager.updateConversationUi(message, false);
         if (receiving) {
             return new FileReceiver(
                     file,
@@ -1420,8 +1421,8 @@ public class JingleFileTransferConnection extends AbstractJingleConnection
             } catch (final Exception e) {
                 complete.setException(e);
             }
-            // the transport implementations backed by PipedOutputStreams do not like it when
-            // the writing Thread (this thread) goes away. so we just wait until the other peer
+            // closing the output stream would close the socket of a SOCKS5 transport before the
+            // other peer might have received everything. so we just wait until the other peer
             // has received our file and we are shutting down the transport
             Log.d(Config.LOGTAG, "waiting for transport to terminate before stopping thread");
             awaitTransportTermination();
@@ -14,6 +14,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import eu.siacs.conversations.Config;
+import eu.siacs.conversations.xml.Attributes;
 import eu.siacs.conversations.xml.Element;
 import eu.siacs.conversations.xml.Namespace;
 import eu.siacs.conversations.xmpp.jingle.SessionDescription;
@@ -22,7 +23,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -128,7 +128,7 @@ public class IceUdpTransportInfo extends GenericTransportInfo {
 
     public IceUdpTransportInfo cloneWrapper() {
         final IceUdpTransportInfo transportInfo = new IceUdpTransportInfo();
-        transportInfo.setAttributes(new Hashtable<>(getAttributes()));
+        transportInfo.setAttributes(Attributes.copyOf(getAttributes()));
         return transportInfo;
     }
 
@@ -140,7 +140,7 @@ public class IceUdpTransportInfo extends GenericTransportInfo {
             if (child.getName().equals("fingerprint")
                     && Namespace.JINGLE_APPS_DTLS.equals(child.getNamespace())) {
                 final Fingerprint fingerprint = new Fingerprint();
-                fingerprint.setAttributes(new Hashtable<>(child.getAttributes()));
+                fingerprint.setAttributes(Attributes.copyOf(child.getAttributes()));
                 fingerprint.setContent(child.getContent());
                 fingerprint.setAttribute("setup", setup.toString().toLowerCase(Locale.ROOT));
                 transportInfo.addChild(fingerprint);
@@ -154,7 +154,7 @@ public class IceUdpTransportInfo extends GenericTransportInfo {
 
     public IceUdpTransportInfo withCandidates(ImmutableCollection<Candidate> candidates) {
         final IceUdpTransportInfo transportInfo = new IceUdpTransportInfo();
-        transportInfo.setAttributes(new Hashtable<>(getAttributes()));
+        transportInfo.setAttributes(Attributes.copyOf(getAttributes()));
         transportInfo.setChildren(this.getChildren());
         for (final Candidate candidate : candidates) {
             transportInfo.addChild(candidate);
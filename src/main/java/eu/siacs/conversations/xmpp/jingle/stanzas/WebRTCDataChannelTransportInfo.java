@@ -5,9 +5,9 @@ import com.google.common.collect.Iterables;
 import com.google.common.primitives.Ints;
 
 import java.util.Collections;
-import java.util.Hashtable;
 import java.util.List;
 
+import eu.siacs.conversations.xml.Attributes;
 import eu.siacs.conversations.xml.Element;
 import eu.siacs.conversations.xml.Namespace;
 import eu.siacs.conversations.xmpp.jingle.SessionDescription;
@@ -87,7 +87,7 @@ public class WebRTCDataChannelTransportInfo extends GenericTransportInfo {
     public WebRTCDataChannelTransportInfo cloneWrapper() {
         final var iceUdpTransport = this.innerIceUdpTransportInfo();
         final WebRTCDataChannelTransportInfo transportInfo = new WebRTCDataChannelTransportInfo();
-        transportInfo.setAttributes(new Hashtable<>(getAttributes()));
+        transportInfo.setAttributes(Attributes.copyOf(getAttributes()));
         transportInfo.addChild(iceUdpTransport.cloneWrapper());
         return transportInfo;
     }
@@ -0,0 +1,234 @@
+package eu.siacs.conversations.xmpp.jingle.transports;
+
+import androidx.annotation.NonNull;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded byte channel between exactly one writing and one reading thread; the replacement for
+ * {@link java.io.PipedInputStream} and {@link java.io.PipedOutputStream} in the transports.
+ *
+ * <p>Neither side takes a lock. Positions are published through volatile fields and a thread only
+ * parks when the buffer is empty (reader) or full (writer), to be unparked by the other side as
+ * soon as there is something to do. {@link #offer(ByteBuffer)} and {@link #poll(byte[], int, int)}
+ * never block; {@link #write(ByteBuffer)} and {@link #read(byte[], int, int)} do and can be
+ * interrupted. Unlike pipes the channel does not care which threads are alive.
+ *
+ * <p>Closing the writing end lets the reader drain what is left and then see EOF. Closing the
+ * reading end makes every following write fail.
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    // both positions only ever grow; the index into the buffer is position & mask
+    private volatile long readPosition = 0;
+    private volatile long writePosition = 0;
+
+    private volatile boolean writeClosed = false;
+    private volatile boolean readClosed = false;
+
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+
+    private final InputStream inputStream = new RingBufferInputStream();
+    private final OutputStream outputStream = new RingBufferOutputStream();
+
+    /**
+     * @param capacity in bytes; rounded up to the next power of two
+     */
+    public ByteRingBuffer(final int capacity) {
+        Preconditions.checkArgument(
+                capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new byte[size];
+        this.mask = this.buffer.length - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    /**
+     * Copies as much of the source as currently fits without waiting.
+     *
+     * @return the number of bytes copied; possibly zero
+     * @throws IOException if either end has been closed
+     */
+    public int offer(final ByteBuffer source) throws IOException {
+        if (writeClosed || readClosed) {
+            throw new IOException("Pipe closed");
+        }
+        final long write = this.writePosition;
+        final int free = buffer.length - (int) (write - readPosition);
+        final int count = Math.min(free, source.remaining());
+        if (count == 0) {
+            return 0;
+        }
+        final int offset = (int) (write & mask);
+        final int first = Math.min(count, buffer.length - offset);
+        source.get(buffer, offset, first);
+        source.get(buffer, 0, count - first);
+        this.writePosition = write + count;
+        unpark(waitingReader);
+        return count;
+    }
+
+    /** Copies all of the source, waiting for the reader to make room as often as necessary. */
+    public void write(final ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (offer(source) > 0) {
+                continue;
+            }
+            this.waitingWriter = Thread.currentThread();
+            // re-check after announcing ourselves; the reader might have just made room
+            if (available() == buffer.length && !readClosed && !writeClosed) {
+                LockSupport.park(this);
+            }
+            this.waitingWriter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Copies whatever is available without waiting.
+     *
+     * @return the number of bytes copied; zero if the buffer is empty or -1 on EOF
+     * @throws IOException if the reading end has been closed
+     */
+    public int poll(final byte[] destination, final int offset, final int length)
+            throws IOException {
+        if (readClosed) {
+            throw new IOException("Pipe closed");
+        }
+        final long read = this.readPosition;
+        final int available = (int) (writePosition - read);
+        if (available == 0) {
+            // read writeClosed only after finding the buffer empty; the writer sets it last
+            return writeClosed && writePosition == read ? -1 : 0;
+        }
+        final int count = Math.min(available, length);
+        final int index = (int) (read & mask);
+        final int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, destination, offset, first);
+        System.arraycopy(buffer, 0, destination, offset + first, count - first);
+        this.readPosition = read + count;
+        unpark(waitingWriter);
+        return count;
+    }
+
+    /**
+     * Copies at least one byte, waiting for the writer if the buffer is empty.
+     *
+     * @return the number of bytes copied or -1 on EOF
+     */
+    public int read(final byte[] destination, final int offset, final int length)
+            throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            final int count = poll(destination, offset, length);
+            if (count != 0) {
+                return count;
+            }
+            this.waitingReader = Thread.currentThread();
+            if (available() == 0 && !writeClosed && !readClosed) {
+                LockSupport.park(this);
+            }
+            this.waitingReader = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /** No more data is coming; the reader sees EOF once it has read what is buffered. */
+    public void closeWrite() {
+        this.writeClosed = true;
+        unpark(waitingReader);
+        unpark(waitingWriter);
+    }
+
+    /** Nobody is reading anymore; pending and following writes fail. */
+    public void closeRead() {
+        this.readClosed = true;
+        unpark(waitingWriter);
+        unpark(waitingReader);
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    private static void unpark(final Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private class RingBufferInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            final int count = ByteRingBuffer.this.read(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] bytes, final int offset, final int length)
+                throws IOException {
+            return ByteRingBuffer.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return ByteRingBuffer.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    }
+
+    private class RingBufferOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) throws IOException {
+            ByteRingBuffer.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull final byte[] bytes, final int offset, final int length)
+                throws IOException {
+            ByteRingBuffer.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
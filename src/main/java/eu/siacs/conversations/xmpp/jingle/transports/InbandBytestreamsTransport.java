@@ -4,7 +4,6 @@ import android.util.Log;
 
 import com.google.common.base.Strings;
 import com.google.common.io.BaseEncoding;
-import com.google.common.io.Closeables;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -23,8 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -34,9 +31,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class InbandBytestreamsTransport implements Transport {
 
     private static final int DEFAULT_BLOCK_SIZE = 8192;
+    private static final int BUFFER_SIZE = 8 * DEFAULT_BLOCK_SIZE;
 
-    private final PipedInputStream pipedInputStream = new PipedInputStream(DEFAULT_BLOCK_SIZE);
-    private final PipedOutputStream pipedOutputStream = new PipedOutputStream();
+    // from the file transmitter to the block sender
+    private final ByteRingBuffer outgoing = new ByteRingBuffer(BUFFER_SIZE);
+    // from received data blocks to the file receiver
+    private final ByteRingBuffer incoming = new ByteRingBuffer(BUFFER_SIZE);
     private final CountDownLatch terminationLatch = new CountDownLatch(1);
 
     private final XmppConnection xmppConnection;
@@ -72,7 +72,7 @@ public class InbandBytestreamsTransport implements Transport {
         this.streamId = streamId;
         this.blockSize = Math.min(DEFAULT_BLOCK_SIZE, blockSize);
         this.blockSender =
-                new BlockSender(xmppConnection, with, streamId, this.blockSize, pipedInputStream);
+                new BlockSender(xmppConnection, with, streamId, this.blockSize, outgoing);
         this.blockSenderThread = new Thread(blockSender);
     }
 
@@ -141,8 +141,7 @@ public class InbandBytestreamsTransport implements Transport {
         }
         Log.d(Config.LOGTAG, "ibb received " + buffer.length + " bytes");
         try {
-            pipedOutputStream.write(buffer);
-            pipedOutputStream.flush();
+            incoming.write(buffer, 0, buffer.length);
             return true;
         } catch (final IOException e) {
             Log.d(Config.LOGTAG, "unable to receive ibb data", e);
@@ -152,13 +151,8 @@ public class InbandBytestreamsTransport implements Transport {
 
     private boolean receiveClose() {
         if (this.isReceiving.compareAndSet(true, false)) {
-            try {
-                this.pipedOutputStream.close();
-                return true;
-            } catch (final IOException e) {
-                Log.d(Config.LOGTAG, "could not close pipedOutStream");
-                return false;
-            }
+            this.incoming.closeWrite();
+            return true;
         } else {
             Log.d(Config.LOGTAG, "received ibb close but was not receiving");
             return false;
@@ -182,29 +176,18 @@ public class InbandBytestreamsTransport implements Transport {
         this.terminationLatch.countDown();
         this.blockSender.close();
         this.blockSenderThread.interrupt();
-        closeQuietly(this.pipedOutputStream);
-    }
-
-    private static void closeQuietly(final OutputStream outputStream) {
-        try {
-            outputStream.close();
-        } catch (final IOException ignored) {
-
-        }
+        this.outgoing.closeRead();
+        this.incoming.closeWrite();
     }
 
     @Override
-    public OutputStream getOutputStream() throws IOException {
-        final var outputStream = new PipedOutputStream();
-        this.pipedInputStream.connect(outputStream);
-        return outputStream;
+    public OutputStream getOutputStream() {
+        return this.outgoing.getOutputStream();
     }
 
     @Override
-    public InputStream getInputStream() throws IOException {
-        final var inputStream = new PipedInputStream();
-        this.pipedOutputStream.connect(inputStream);
-        return inputStream;
+    public InputStream getInputStream() {
+        return this.incoming.getInputStream();
     }
 
     @Override
@@ -238,7 +221,7 @@ public class InbandBytestreamsTransport implements Transport {
         private final String streamId;
 
         private int blockSize;
-        private final PipedInputStream inputStream;
+        private final ByteRingBuffer outgoing;
         private final Semaphore semaphore = new Semaphore(3);
         private final AtomicInteger sequencer = new AtomicInteger();
         private final AtomicBoolean isSending = new AtomicBoolean(true);
@@ -248,12 +231,12 @@ public class InbandBytestreamsTransport implements Transport {
                 final Jid with,
                 String streamId,
                 int blockSize,
-                PipedInputStream inputStream) {
+                ByteRingBuffer outgoing) {
             this.xmppConnection = xmppConnection;
             this.with = with;
             this.streamId = streamId;
             this.blockSize = blockSize;
-            this.inputStream = inputStream;
+            this.outgoing = outgoing;
         }
 
         @Override
@@ -261,7 +244,8 @@ public class InbandBytestreamsTransport implements Transport {
             final var buffer = new byte[blockSize];
             try {
                 while (isSending.get()) {
-                    final int count = this.inputStream.read(buffer);
+                    final int count =
+                            this.outgoing.read(buffer, 0, Math.min(blockSize, buffer.length));
                     if (count < 0) {
                         Log.d(Config.LOGTAG, "block sender reached EOF");
                         return;
@@ -278,7 +262,7 @@ public class InbandBytestreamsTransport implements Transport {
             } catch (final IOException e) {
                 Log.d(Config.LOGTAG, "block sender terminated", e);
             } finally {
-                Closeables.closeQuietly(inputStream);
+                outgoing.closeRead();
             }
         }
 
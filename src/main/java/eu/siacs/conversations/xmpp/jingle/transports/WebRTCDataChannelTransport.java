@@ -8,7 +8,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -25,11 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -40,7 +35,9 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import org.webrtc.CandidatePairChangeEvent;
 import org.webrtc.DataChannel;
 import org.webrtc.IceCandidate;
@@ -51,7 +48,8 @@ import org.webrtc.SessionDescription;
 
 public class WebRTCDataChannelTransport implements Transport {
 
-    private static final int BUFFER_SIZE = 16_384;
+    // the largest message every data channel implementation is known to accept
+    private static final int CHUNK_SIZE = 16_384;
     private static final int MAX_SENT_BUFFER = 256 * 1024;
 
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
@@ -61,9 +59,10 @@ public class WebRTCDataChannelTransport implements Transport {
     private final AtomicBoolean readyToSentIceCandidates = new AtomicBoolean(false);
     private final Queue<IceCandidate> pendingOutgoingIceCandidates = new LinkedList<>();
 
-    private final PipedOutputStream pipedOutputStream = new PipedOutputStream();
-    private final WritableByteChannel writableByteChannel = Channels.newChannel(pipedOutputStream);
-    private final PipedInputStream pipedInputStream = new PipedInputStream(BUFFER_SIZE);
+    // from the file transmitter to the data channel writer
+    private final ByteRingBuffer outgoing = new ByteRingBuffer(4 * CHUNK_SIZE);
+    // from the receiving data channel to the file receiver; a full send window of the peer
+    private final ByteRingBuffer incoming = new ByteRingBuffer(MAX_SENT_BUFFER);
 
     private final AtomicBoolean connected = new AtomicBoolean(false);
 
@@ -188,7 +187,7 @@ public class WebRTCDataChannelTransport implements Transport {
                     @Override
                     public void onMessage(final DataChannel.Buffer buffer) {
                         try {
-                            WebRTCDataChannelTransport.this.writableByteChannel.write(buffer.data);
+                            WebRTCDataChannelTransport.this.incoming.write(buffer.data);
                         } catch (final IOException e) {
                             Log.d(Config.LOGTAG, "error writing to output stream");
                         }
@@ -254,25 +253,20 @@ public class WebRTCDataChannelTransport implements Transport {
         final var dataChannelInit = new DataChannel.Init();
         dataChannelInit.protocol = "xmpp-jingle";
         final var dataChannel = peerConnection.createDataChannel("test", dataChannelInit);
-        this.dataChannelWriter = new DataChannelWriter(this.pipedInputStream, dataChannel);
+        this.dataChannelWriter = new DataChannelWriter(this.outgoing, dataChannel);
         Log.d(Config.LOGTAG, "the 'sending' data channel has id " + dataChannel.id());
         new Thread(this.dataChannelWriter).start();
         return peerConnection;
     }
 
     @Override
-    public OutputStream getOutputStream() throws IOException {
-        final var outputStream = new PipedOutputStream();
-        this.pipedInputStream.connect(outputStream);
-        this.dataChannelWriter.pipedInputStreamLatch.countDown();
-        return outputStream;
+    public OutputStream getOutputStream() {
+        return this.outgoing.getOutputStream();
     }
 
     @Override
-    public InputStream getInputStream() throws IOException {
-        final var inputStream = new PipedInputStream(BUFFER_SIZE);
-        this.pipedOutputStream.connect(inputStream);
-        return inputStream;
+    public InputStream getInputStream() {
+        return this.incoming.getInputStream();
     }
 
     @Override
@@ -332,19 +326,12 @@ public class WebRTCDataChannelTransport implements Transport {
             peerConnectionFactory.dispose();
         }
         this.peerConnectionFactory = null;
-        closeQuietly(this.pipedOutputStream);
+        this.outgoing.closeRead();
+        this.incoming.closeWrite();
         this.terminationLatch.countDown();
         Log.d(Config.LOGTAG, WebRTCDataChannelTransport.class.getSimpleName() + " terminated");
     }
 
-    private static void closeQuietly(final OutputStream outputStream) {
-        try {
-            outputStream.close();
-        } catch (final IOException ignored) {
-
-        }
-    }
-
     private static void terminate(final DataChannel dataChannel) {
         if (dataChannel == null) {
             Log.d(Config.LOGTAG, "nothing to terminate. data channel is already null");
@@ -531,14 +518,14 @@ public class WebRTCDataChannelTransport implements Transport {
 
     private static class DataChannelWriter implements Runnable {
 
-        private final CountDownLatch pipedInputStreamLatch = new CountDownLatch(1);
         private final CountDownLatch dataChannelLatch = new CountDownLatch(1);
         private final AtomicBoolean isSending = new AtomicBoolean(true);
-        private final InputStream inputStream;
+        private final ByteRingBuffer outgoing;
         private final DataChannel dataChannel;
+        private volatile Thread thread;
 
-        private DataChannelWriter(InputStream inputStream, DataChannel dataChannel) {
-            this.inputStream = inputStream;
+        private DataChannelWriter(final ByteRingBuffer outgoing, final DataChannel dataChannel) {
+            this.outgoing = outgoing;
             this.dataChannel = dataChannel;
             final StateChangeObserver stateChangeObserver =
                     new StateChangeObserver() {
@@ -549,22 +536,34 @@ public class WebRTCDataChannelTransport implements Transport {
                                 dataChannelLatch.countDown();
                             }
                         }
+
+                        @Override
+                        public void onBufferedAmountChange(final long previousAmount) {
+                            final var thread = DataChannelWriter.this.thread;
+                            if (thread != null) {
+                                LockSupport.unpark(thread);
+                            }
+                        }
                     };
             this.dataChannel.registerObserver(stateChangeObserver);
         }
 
         public void run() {
+            this.thread = Thread.currentThread();
             try {
-                this.pipedInputStreamLatch.await();
                 this.dataChannelLatch.await();
-                final var buffer = new byte[4096];
+                final var buffer = new byte[CHUNK_SIZE];
                 while (isSending.get()) {
                     final long bufferedAmount = dataChannel.bufferedAmount();
                     if (bufferedAmount > MAX_SENT_BUFFER) {
-                        Thread.sleep(50);
+                        // woken up early when the data channel reports progress
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50));
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
                         continue;
                     }
-                    final int count = this.inputStream.read(buffer);
+                    final int count = this.outgoing.read(buffer, 0, buffer.length);
                     if (count < 0) {
                         Log.d(Config.LOGTAG, "DataChannelWriter reached EOF");
                         return;
@@ -578,7 +577,8 @@ public class WebRTCDataChannelTransport implements Transport {
             } catch (final IOException e) {
                 Log.d(Config.LOGTAG, "DataChannelWriter terminated", e);
             } finally {
-                Closeables.closeQuietly(inputStream);
+                this.thread = null;
+                outgoing.closeRead();
             }
         }
 
@@ -594,6 +594,8 @@ public class WebRTCDataChannelTransport implements Transport {
 
         public void close() {
             this.isSending.set(false);
+            // wakes up the writer if it is waiting for the file transmitter
+            this.outgoing.closeRead();
             terminate(this.dataChannel);
         }
     }
@@ -6,6 +6,7 @@ import com.google.common.collect.ImmutableClassToInstanceMap;
 import eu.siacs.conversations.AppSettings;
 import eu.siacs.conversations.Config;
 import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.xmpp.Jid;
 import eu.siacs.conversations.xmpp.XmppConnection;
@@ -90,8 +91,10 @@ public class ChatStateManager extends AbstractManager {
             } else {
                 Log.d(Config.LOGTAG, "put incoming " + from.asBareJid() + "=" + chatState);
                 final var previous = this.incoming.put(from.asBareJid(), chatState);
-                if (!Objects.equals(previous, chatState)) {
-                    this.service.updateConversationUi();
+                final var conversation = this.service.find(getAccount(), from.asBareJid());
+                if (conversation != null && !Objects.equals(previous, chatState)) {
+                    this.service.updateConversationUi(
+                            conversation, ConversationUpdate.Kind.CHAT_STATE);
                 }
             }
         }
@@ -53,6 +53,7 @@ public class MessageArchiveManager extends AbstractManager {
             // TODO there was no 'kill' before but maybe we need one?
             this.queries.clear();
         }
+        mXmppConnectionService.getMessageWriter().flush();
         MamReference mamReference =
                 MamReference.max(
                         mXmppConnectionService.databaseBackend.getLastMessageReceived(getAccount()),
@@ -362,6 +363,9 @@ public class MessageArchiveManager extends AbstractManager {
             }
             done = done || (query.getActualMessageCount() == 0 && !query.isCatchup());
             this.finalizeQuery(query, done);
+            if (query.isCatchup()) {
+                mXmppConnectionService.getMessageWriter().flushAsync();
+            }
 
             Log.d(
                     Config.LOGTAG,
@@ -411,6 +415,7 @@ public class MessageArchiveManager extends AbstractManager {
         Log.d(Config.LOGTAG, getAccount().getJid().asBareJid() + ": killing mam query prematurely");
         query.callback = null;
         this.finalizeQuery(query, false);
+        mXmppConnectionService.getMessageWriter().flushAsync();
         if (query.isCatchup() && query.getActualMessageCount() > 0) {
             mXmppConnectionService.getNotificationService().finishBacklog(true, getAccount());
         }
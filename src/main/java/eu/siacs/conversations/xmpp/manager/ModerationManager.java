@@ -8,6 +8,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import eu.siacs.conversations.Config;
 import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.xmpp.Jid;
 import eu.siacs.conversations.xmpp.XmppConnection;
@@ -50,7 +51,8 @@ public class ModerationManager extends AbstractManager {
                         if (getDatabase().deleteMessage(message.getUuid())) {
                             Log.d(Config.LOGTAG, "deleted local copy of moderated message");
                         }
-                        this.service.updateConversationUi();
+                        this.service.updateConversationUi(
+                                message, ConversationUpdate.Kind.MESSAGE_REMOVED);
                         return null;
                     } else {
                         throw new IllegalStateException("Message was not part of conversation");
@@ -119,6 +121,7 @@ public class ModerationManager extends AbstractManager {
                     Config.LOGTAG,
                     "received retraction for " + stanzaId + " in " + from + " by " + by);
         }
-        this.service.updateConversationUi();
+        this.service.updateConversationUi(
+                retractedMessage, ConversationUpdate.Kind.MESSAGE_REMOVED);
     }
 }
@@ -13,7 +13,6 @@ import eu.siacs.conversations.android.AbstractPhoneContact;
 import eu.siacs.conversations.entities.Contact;
 import eu.siacs.conversations.entities.Roster;
 import eu.siacs.conversations.services.XmppConnectionService;
-import eu.siacs.conversations.utils.ReplacingSerialSingleThreadExecutor;
 import eu.siacs.conversations.xmpp.Jid;
 import eu.siacs.conversations.xmpp.XmppConnection;
 import im.conversations.android.xmpp.model.error.Condition;
@@ -25,11 +24,23 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RosterManager extends AbstractManager implements Roster {
 
-    private final ReplacingSerialSingleThreadExecutor dbExecutor =
-            new ReplacingSerialSingleThreadExecutor(RosterManager.class.getName());
+    // changes that come in within this window are written in one transaction
+    private static final long WRITE_DELAY = 250; // in milliseconds
+
+    private static final ScheduledExecutorService WRITE_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "RosterWriter"));
+
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    private final AtomicLong rowsWritten = new AtomicLong();
 
     private final Map<Jid, Contact> contacts = new HashMap<>();
     private String version;
@@ -250,18 +261,50 @@ public class RosterManager extends AbstractManager implements Roster {
     }
 
     public void writeToDatabaseAsync() {
-        this.dbExecutor.execute(this::writeToDatabase);
+        if (this.writeScheduled.compareAndSet(false, true)) {
+            WRITE_EXECUTOR.schedule(this::writeToDatabase, WRITE_DELAY, TimeUnit.MILLISECONDS);
+        }
     }
 
+    /** Writes the contacts that changed since the last write. */
     public void writeToDatabase() {
         final var account = getAccount();
-        final List<Contact> contacts;
-        final String version;
-        synchronized (this.contacts) {
-            contacts = ImmutableList.copyOf(this.contacts.values());
-            version = this.version;
+        synchronized (this.writeLock) {
+            // changes from here on schedule another write
+            this.writeScheduled.set(false);
+            final List<Contact> contacts;
+            final String version;
+            synchronized (this.contacts) {
+                contacts = takeDirty(this.contacts.values());
+                version = this.version;
+            }
+            if (contacts.isEmpty() && Objects.equals(version, account.getRosterVersion())) {
+                return;
+            }
+            try {
+                this.rowsWritten.addAndGet(getDatabase().writeRoster(account, version, contacts));
+            } catch (final RuntimeException e) {
+                Log.d(Config.LOGTAG, account.getJid().asBareJid() + ": could not write roster", e);
+                for (final var contact : contacts) {
+                    contact.markDirty();
+                }
+            }
         }
-        getDatabase().writeRoster(account, version, contacts);
+    }
+
+    static List<Contact> takeDirty(final Collection<Contact> contacts) {
+        final var builder = new ImmutableList.Builder<Contact>();
+        for (final var contact : contacts) {
+            if (contact.isDirty()) {
+                contact.markClean();
+                builder.add(contact);
+            }
+        }
+        return builder.build();
+    }
+
+    public long getRowsWritten() {
+        return this.rowsWritten.get();
     }
 
     public void syncDirtyContacts() {
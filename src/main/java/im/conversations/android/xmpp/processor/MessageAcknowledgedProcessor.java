@@ -2,6 +2,7 @@ package im.conversations.android.xmpp.processor;
 
 import eu.siacs.conversations.entities.Conversation;
 import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.services.ConversationUpdate;
 import eu.siacs.conversations.services.XmppConnectionService;
 import eu.siacs.conversations.xmpp.Jid;
 import eu.siacs.conversations.xmpp.XmppConnection;
@@ -44,6 +45,8 @@ public class MessageAcknowledgedProcessor extends XmppConnection.Delegate
                     message.setStatus(Message.STATUS_SEND);
                     message.setErrorMessage(null);
                     getDatabase().updateMessage(message, false);
+                    service.updateConversationUi(
+                            message, ConversationUpdate.Kind.MESSAGE_CHANGED);
                     return true;
                 }
             }
@@ -0,0 +1,189 @@
+package de.gultsch.minidns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minidns.dnsmessage.DnsMessage;
+import org.minidns.dnsmessage.Question;
+import org.minidns.dnsqueryresult.DnsQueryResult;
+import org.minidns.record.A;
+import org.minidns.record.Record;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class AndroidDNSClientTest {
+
+    private static final String HOSTNAME = "xmpp.example.com";
+
+    private FakeDnsServer fakeDnsServer;
+    private AndroidDNSClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        this.fakeDnsServer = new FakeDnsServer();
+        this.client = new AndroidDNSClient(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        this.fakeDnsServer.close();
+    }
+
+    private DnsQueryResult query() throws Exception {
+        final DnsMessage question =
+                client.buildMessage(new Question(HOSTNAME, Record.TYPE.A)).build();
+        final var dnsServers = new LinkedList<>(ImmutableList.of(fakeDnsServer.dnsServer));
+        return client.queryAsFuture(question, dnsServers).get(5, TimeUnit.SECONDS);
+    }
+
+    private static String address(final DnsQueryResult result) {
+        final A a = (A) result.response.answerSection.get(0).payloadData;
+        return a.getInetAddress().getHostAddress();
+    }
+
+    @Test
+    public void answersAreCachedForTheirTtl() throws Exception {
+        fakeDnsServer.answer("192.0.2.1", 300);
+        final long hits = AndroidDNSClient.getCacheHits();
+
+        final DnsQueryResult first = query();
+        final DnsQueryResult second = query();
+
+        assertEquals(1, fakeDnsServer.queries.get());
+        assertTrue(second instanceof AndroidDNSClient.CachedDnsQueryResult);
+        assertEquals("192.0.2.1", address(second));
+        assertTrue(first.response.authenticData);
+        assertTrue(second.response.authenticData);
+        assertEquals(hits + 1, AndroidDNSClient.getCacheHits());
+    }
+
+    @Test
+    public void staleAnswersAreServedWhileRefreshing() throws Exception {
+        fakeDnsServer.answer("192.0.2.1", 1);
+        query();
+        Thread.sleep(1_100);
+        fakeDnsServer.answer("192.0.2.2", 300);
+        final long staleHits = AndroidDNSClient.getCacheStaleHits();
+
+        final DnsQueryResult stale = query();
+
+        assertEquals("192.0.2.1", address(stale));
+        assertTrue(stale.response.authenticData);
+        assertEquals(staleHits + 1, AndroidDNSClient.getCacheStaleHits());
+        fakeDnsServer.awaitQueries(2);
+        // refresh is asynchronous; wait for it to be written to the cache
+        Thread.sleep(200);
+        final DnsQueryResult refreshed = query();
+        assertTrue(refreshed instanceof AndroidDNSClient.CachedDnsQueryResult);
+        assertEquals("192.0.2.2", address(refreshed));
+        assertEquals(2, fakeDnsServer.queries.get());
+    }
+
+    @Test
+    public void clearCacheDropsExpiredAnswers() throws Exception {
+        fakeDnsServer.answer("192.0.2.1", 1);
+        query();
+        Thread.sleep(1_100);
+        AndroidDNSClient.clearCache();
+        final long misses = AndroidDNSClient.getCacheMisses();
+
+        final DnsQueryResult result = query();
+
+        assertEquals(2, fakeDnsServer.queries.get());
+        assertEquals(misses + 1, AndroidDNSClient.getCacheMisses());
+        assertFalse(result instanceof AndroidDNSClient.CachedDnsQueryResult);
+    }
+
+    /** Answers every A query over UDP on loopback with a configurable, DNSSEC signed address. */
+    private static class FakeDnsServer {
+
+        private final DatagramSocket socket;
+        private final DNSServer dnsServer;
+        private final AtomicInteger queries = new AtomicInteger();
+        private volatile String address;
+        private volatile long ttl;
+
+        private FakeDnsServer() throws IOException {
+            this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            this.dnsServer =
+                    new DNSServer(
+                            InetAddress.getLoopbackAddress(),
+                            socket.getLocalPort(),
+                            ImmutableList.of(Transport.UDP));
+            final Thread thread = new Thread(this::serve, "FakeDnsServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void answer(final String address, final long ttl) {
+            this.address = address;
+            this.ttl = ttl;
+        }
+
+        private void awaitQueries(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5_000;
+            while (queries.get() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, queries.get());
+        }
+
+        private void serve() {
+            final byte[] buffer = new byte[1500];
+            while (!socket.isClosed()) {
+                try {
+                    final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    final DnsMessage query = new DnsMessage(packet.getData());
+                    queries.incrementAndGet();
+                    final Question question = query.getQuestion();
+                    final DnsMessage response =
+                            DnsMessage.builder()
+                                    .setId(query.id)
+                                    .setQrFlag(true)
+                                    .setRecursionAvailable(true)
+                                    .setAuthenticData(true)
+                                    .setResponseCode(DnsMessage.RESPONSE_CODE.NO_ERROR)
+                                    .setQuestion(question)
+                                    .addAnswer(
+                                            new Record<>(
+                                                    question.name,
+                                                    Record.TYPE.A,
+                                                    Record.CLASS.IN,
+                                                    ttl,
+                                                    new A(
+                                                            (Inet4Address)
+                                                                    InetAddresses.forString(
+                                                                            address)),
+                                                    false))
+                                    .build();
+                    socket.send(response.asDatagram(packet.getAddress(), packet.getPort()));
+                } catch (final IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void close() {
+            socket.close();
+        }
+    }
+}
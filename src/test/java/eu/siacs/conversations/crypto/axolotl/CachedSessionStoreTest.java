@@ -0,0 +1,244 @@
+package eu.siacs.conversations.crypto.axolotl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.util.Base64;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.persistance.DatabaseBackend;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.SessionBuilder;
+import org.whispersystems.libsignal.SessionCipher;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.ecc.Curve;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+import org.whispersystems.libsignal.protocol.PreKeySignalMessage;
+import org.whispersystems.libsignal.state.PreKeyBundle;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+import org.whispersystems.libsignal.state.impl.InMemorySignalProtocolStore;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class CachedSessionStoreTest {
+
+    private static final int DEVICES = 6;
+    private static final int MESSAGES = 200;
+
+    private static final SignalProtocolAddress ROMEO_PHONE =
+            new SignalProtocolAddress("romeo@example.com", 1);
+    private static final SignalProtocolAddress ROMEO_LAPTOP =
+            new SignalProtocolAddress("romeo@example.com", 2);
+
+    private DatabaseBackend database;
+    private Account account;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        // the database backend is a singleton and may outlive a single test
+        database.getWritableDatabase().delete(SQLiteAxolotlStore.SESSION_TABLENAME, null, null);
+        this.account = new Account(Jid.of("juliet@example.com"), "secret");
+        database.createAccount(account);
+    }
+
+    private static SessionRecord session() {
+        final SessionRecord record = new SessionRecord();
+        record.getSessionState().setRemoteIdentityKey(identityKey());
+        return record;
+    }
+
+    private static IdentityKey identityKey() {
+        return KeyHelper.generateIdentityKeyPair().getPublicKey();
+    }
+
+    @Test
+    public void storedSessionIsWrittenBehind() {
+        final var store = new CachedSessionStore(database, account);
+        final var record = session();
+        store.storeSession(ROMEO_PHONE, record);
+
+        assertTrue(store.containsSession(ROMEO_PHONE));
+        assertEquals(List.of(1), store.getSubDeviceSessions("romeo@example.com"));
+        assertTrue(store.getKnownAddresses().contains("romeo@example.com"));
+        assertNull(database.loadSession(account, ROMEO_PHONE));
+
+        assertEquals(1, store.flush());
+        assertEquals(0, store.flush());
+        assertArrayEquals(record.serialize(), database.loadSession(account, ROMEO_PHONE));
+
+        // what a restarted service would see
+        final var restarted = new CachedSessionStore(database, account);
+        assertArrayEquals(record.serialize(), restarted.loadSession(ROMEO_PHONE).serialize());
+    }
+
+    @Test
+    public void loadedSessionIsACopy() {
+        final var store = new CachedSessionStore(database, account);
+        final var record = session();
+        store.storeSession(ROMEO_PHONE, record);
+        // changes to a loaded record only count once it is stored
+        store.loadSession(ROMEO_PHONE).getSessionState().setRemoteIdentityKey(identityKey());
+        assertEquals(
+                record.getSessionState().getRemoteIdentityKey(),
+                store.loadSession(ROMEO_PHONE).getSessionState().getRemoteIdentityKey());
+    }
+
+    @Test
+    public void deleteDropsPendingWrite() {
+        final var store = new CachedSessionStore(database, account);
+        store.storeSession(ROMEO_PHONE, session());
+        store.flush();
+        store.storeSession(ROMEO_PHONE, session());
+        store.storeSession(ROMEO_LAPTOP, session());
+        store.deleteAllSessions("romeo@example.com");
+
+        assertEquals(0, store.flush());
+        assertFalse(store.containsSession(ROMEO_PHONE));
+        assertFalse(store.containsSession(ROMEO_LAPTOP));
+        assertNull(database.loadSession(account, ROMEO_PHONE));
+    }
+
+    @Test
+    public void readsSessionsWrittenAsBase64() {
+        final var record = session();
+        final ContentValues values = new ContentValues();
+        values.put(SQLiteAxolotlStore.ACCOUNT, account.getUuid());
+        values.put(SQLiteAxolotlStore.NAME, ROMEO_PHONE.getName());
+        values.put(SQLiteAxolotlStore.DEVICE_ID, ROMEO_PHONE.getDeviceId());
+        values.put(
+                SQLiteAxolotlStore.KEY, Base64.encodeToString(record.serialize(), Base64.DEFAULT));
+        database.getWritableDatabase().insert(SQLiteAxolotlStore.SESSION_TABLENAME, null, values);
+
+        final var store = new CachedSessionStore(database, account);
+        assertArrayEquals(record.serialize(), store.loadSession(ROMEO_PHONE).serialize());
+    }
+
+    @Test
+    public void writeBehindKeepsTheRatchetGoing() throws Exception {
+        final var cached = new CachedSessionStore(database, account);
+        encrypt(cached, MESSAGES);
+
+        // every session is stored once when it is built and once per message
+        assertEquals((long) DEVICES * (1 + MESSAGES), cached.getStored());
+        assertEquals(0, cached.flush());
+    }
+
+    /**
+     * Builds sessions with {@link #DEVICES} devices and then encrypts message keys for all of them
+     * the way {@link XmppAxolotlMessage} does.
+     */
+    private static void encrypt(final CachedSessionStore sessions, final int messages)
+            throws Exception {
+        final var alice =
+                new DelegatingProtocolStore(
+                        KeyHelper.generateIdentityKeyPair(),
+                        KeyHelper.generateRegistrationId(false),
+                        sessions);
+        final List<SignalProtocolAddress> devices = new ArrayList<>();
+        final List<InMemorySignalProtocolStore> recipients = new ArrayList<>();
+        for (int i = 1; i <= DEVICES; ++i) {
+            final var address = new SignalProtocolAddress("romeo@example.com", i);
+            final var recipient = recipient();
+            new SessionBuilder(alice, address).process(bundle(recipient, i));
+            devices.add(address);
+            recipients.add(recipient);
+        }
+        final byte[] key = new byte[32];
+        CiphertextMessage last = null;
+        for (int m = 0; m < messages; ++m) {
+            for (final SignalProtocolAddress device : devices) {
+                last = new SessionCipher(alice, device).encrypt(key);
+            }
+            sessions.flush();
+        }
+        // the ratchet kept advancing correctly: the last device can decrypt the last message
+        final var juliet = new SignalProtocolAddress("juliet@example.com", 1);
+        final var plaintext =
+                new SessionCipher(recipients.get(DEVICES - 1), juliet)
+                        .decrypt(new PreKeySignalMessage(last.serialize()));
+        assertArrayEquals(key, plaintext);
+    }
+
+    private static InMemorySignalProtocolStore recipient() {
+        return new InMemorySignalProtocolStore(
+                KeyHelper.generateIdentityKeyPair(), KeyHelper.generateRegistrationId(false));
+    }
+
+    private static PreKeyBundle bundle(final InMemorySignalProtocolStore recipient, final int id)
+            throws Exception {
+        final IdentityKeyPair identity = recipient.getIdentityKeyPair();
+        final PreKeyRecord preKey = new PreKeyRecord(1, Curve.generateKeyPair());
+        final SignedPreKeyRecord signedPreKey = KeyHelper.generateSignedPreKey(identity, 1);
+        recipient.storePreKey(preKey.getId(), preKey);
+        recipient.storeSignedPreKey(signedPreKey.getId(), signedPreKey);
+        return new PreKeyBundle(
+                recipient.getLocalRegistrationId(),
+                id,
+                preKey.getId(),
+                preKey.getKeyPair().getPublicKey(),
+                signedPreKey.getId(),
+                signedPreKey.getKeyPair().getPublicKey(),
+                signedPreKey.getSignature(),
+                identity.getPublicKey());
+    }
+
+    private static class DelegatingProtocolStore extends InMemorySignalProtocolStore {
+
+        private final CachedSessionStore sessions;
+
+        private DelegatingProtocolStore(
+                final IdentityKeyPair identityKeyPair,
+                final int registrationId,
+                final CachedSessionStore sessions) {
+            super(identityKeyPair, registrationId);
+            this.sessions = sessions;
+        }
+
+        @Override
+        public SessionRecord loadSession(final SignalProtocolAddress address) {
+            return sessions.loadSession(address);
+        }
+
+        @Override
+        public List<Integer> getSubDeviceSessions(final String name) {
+            return sessions.getSubDeviceSessions(name);
+        }
+
+        @Override
+        public void storeSession(final SignalProtocolAddress address, final SessionRecord record) {
+            sessions.storeSession(address, record);
+        }
+
+        @Override
+        public boolean containsSession(final SignalProtocolAddress address) {
+            return sessions.containsSession(address);
+        }
+
+        @Override
+        public void deleteSession(final SignalProtocolAddress address) {
+            sessions.deleteSession(address);
+        }
+
+        @Override
+        public void deleteAllSessions(final String name) {
+            sessions.deleteAllSessions(name);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package eu.siacs.conversations.entities;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+import com.google.common.base.Stopwatch;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class ConversationListTest {
+
+    private static final int OPEN_CONVERSATIONS = 500;
+    private static final int LOOKUPS = 20_000;
+
+    private static final Account JULIET = new Account(Jid.of("juliet@example.com"), "secret");
+    private static final Account ROMEO = new Account(Jid.of("romeo@example.net"), "secret");
+
+    private static Conversation conversation(final Account account, final String address) {
+        return new Conversation(address, account, Jid.of(address), Conversational.MODE_SINGLE);
+    }
+
+    @Test
+    public void lookupsFollowStructuralChanges() {
+        final var list = new ConversationList();
+        final var nurse = conversation(JULIET, "nurse@example.com");
+        final var tybalt = conversation(JULIET, "tybalt@example.com");
+        list.add(nurse);
+        list.add(0, tybalt);
+
+        assertSame(nurse, list.find(JULIET, Jid.of("nurse@example.com/balcony")));
+        assertNull(list.find(ROMEO, Jid.of("nurse@example.com")));
+        assertSame(tybalt, list.findByUuid(tybalt.getUuid()));
+        assertTrue(list.containsInstance(nurse));
+
+        list.remove(nurse);
+        assertNull(list.find(JULIET, Jid.of("nurse@example.com")));
+        assertNull(list.findByUuid(nurse.getUuid()));
+        assertFalse(list.containsInstance(nurse));
+
+        list.removeIf(c -> c == tybalt);
+        assertNull(list.findByUuid(tybalt.getUuid()));
+
+        list.addAll(List.of(nurse, tybalt));
+        assertSame(tybalt, list.find(JULIET, Jid.of("tybalt@example.com")));
+        list.clear();
+        assertNull(list.find(JULIET, Jid.of("tybalt@example.com")));
+    }
+
+    @Test
+    public void sameAddressOnDifferentAccounts() {
+        final var list = new ConversationList();
+        final var ofJuliet = conversation(JULIET, "friar@example.org");
+        final var ofRomeo = conversation(ROMEO, "friar@example.org");
+        list.add(ofJuliet);
+        list.add(ofRomeo);
+        assertSame(ofJuliet, list.find(JULIET, Jid.of("friar@example.org")));
+        assertSame(ofRomeo, list.find(ROMEO, Jid.of("friar@example.org")));
+    }
+
+    @Test
+    public void removingDuplicateUncoversTheOther() {
+        final var list = new ConversationList();
+        final var first = conversation(JULIET, "mercutio@example.com");
+        final var second = conversation(JULIET, "mercutio@example.com");
+        list.add(first);
+        list.add(second);
+        assertSame(first, list.find(JULIET, Jid.of("mercutio@example.com")));
+        list.remove(first);
+        assertSame(second, list.find(JULIET, Jid.of("mercutio@example.com")));
+    }
+
+    @Test
+    public void indexedLookupsMatchLinearScan() {
+        final var plain = new ArrayList<Conversation>();
+        final var indexed = new ConversationList();
+        for (int i = 0; i < OPEN_CONVERSATIONS; ++i) {
+            final var conversation =
+                    conversation(i % 2 == 0 ? JULIET : ROMEO, "contact" + i + "@example.com");
+            plain.add(conversation);
+            indexed.add(conversation);
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; ++i) {
+            // receipts and chat states also arrive from contacts without an open conversation
+            final int n = random.nextInt(OPEN_CONVERSATIONS + OPEN_CONVERSATIONS / 4);
+            final Jid address = Jid.of("contact" + n + "@example.com/phone");
+            // what XmppConnectionService.find(account, jid) did before
+            Conversation expected = null;
+            for (final Conversation conversation : plain) {
+                if (conversation.getAccount() == JULIET
+                        && conversation.getAddress().asBareJid().equals(address.asBareJid())) {
+                    expected = conversation;
+                    break;
+                }
+            }
+            assertSame(expected, indexed.find(JULIET, address));
+        }
+    }
+
+    @Ignore("benchmark; run manually with -Drobolectric.logging=stdout")
+    @Test
+    public void lookupBenchmark() {
+        final var plain = new ArrayList<Conversation>();
+        final var indexed = new ConversationList();
+        for (int i = 0; i < OPEN_CONVERSATIONS; ++i) {
+            final var conversation =
+                    conversation(i % 2 == 0 ? JULIET : ROMEO, "contact" + i + "@example.com");
+            plain.add(conversation);
+            indexed.add(conversation);
+        }
+        final List<Jid> addresses = new ArrayList<>();
+        final Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; ++i) {
+            final int n = random.nextInt(OPEN_CONVERSATIONS + OPEN_CONVERSATIONS / 4);
+            addresses.add(Jid.of("contact" + n + "@example.com/phone"));
+        }
+
+        final Stopwatch linear = Stopwatch.createStarted();
+        for (final Jid address : addresses) {
+            for (final Conversation conversation : plain) {
+                if (conversation.getAccount() == JULIET
+                        && conversation.getAddress().asBareJid().equals(address.asBareJid())) {
+                    break;
+                }
+            }
+        }
+        linear.stop();
+        final Stopwatch hashed = Stopwatch.createStarted();
+        for (final Jid address : addresses) {
+            indexed.find(JULIET, address);
+        }
+        hashed.stop();
+
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        Locale.ROOT,
+                        "%d lookups over %d conversations in µs: linear=%d indexed=%d",
+                        LOOKUPS,
+                        OPEN_CONVERSATIONS,
+                        linear.elapsed(TimeUnit.MICROSECONDS),
+                        hashed.elapsed(TimeUnit.MICROSECONDS)));
+    }
+}
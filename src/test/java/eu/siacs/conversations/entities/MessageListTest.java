@@ -0,0 +1,247 @@
+package eu.siacs.conversations.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+import com.google.common.base.Stopwatch;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageListTest {
+
+    private static final int LOADED_MESSAGES = 10_000;
+    private static final int LOOKUPS = 10_000;
+    private static final int PARTICIPANTS = 50;
+
+    private static final Conversational CONVERSATION =
+            new StubConversation(
+                    null,
+                    "6a4a9a5e-1b0a-4b9b-9e0a-3b1f4e0c2d11",
+                    Jid.of("juliet@example.com"),
+                    Conversational.MODE_SINGLE);
+
+    private static Message message(final int i) {
+        final var message = new Message(CONVERSATION, "body " + i, Message.ENCRYPTION_NONE);
+        message.setRemoteMsgId("remote-" + i);
+        message.setServerMsgId("server-" + i);
+        message.setCounterpart(participant(i));
+        return message;
+    }
+
+    private static Jid participant(final int i) {
+        return Jid.of("room@conference.example.com/participant-" + i % PARTICIPANTS);
+    }
+
+    private static Predicate<Message> from(final Jid counterpart) {
+        return m -> counterpart.equals(m.getCounterpart());
+    }
+
+    /** How Conversation looked up the message a correction refers to before it used the index. */
+    private static Message linearLastMatching(
+            final List<Message> messages, final String remoteMsgId, final Jid counterpart) {
+        for (int i = messages.size() - 1; i >= 0; --i) {
+            final Message message = messages.get(i);
+            if (counterpart.equals(message.getCounterpart())) {
+                return remoteMsgId.equals(message.getRemoteMsgId()) ? message : null;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void indexesFollowStructuralChanges() {
+        final var list = new MessageList();
+        final var first = message(1);
+        final var second = message(2);
+        list.add(first);
+        list.add(second);
+        assertSame(first, list.findByUuid(first.getUuid()));
+        assertSame(second, list.first(list.withServerMsgId("server-2")));
+
+        list.subList(0, 1).clear();
+        assertNull(list.findByUuid(first.getUuid()));
+        assertFalse(list.hasRemoteMsgId("remote-1"));
+        assertTrue(list.hasRemoteMsgId("remote-2"));
+
+        list.addAll(0, List.of(first));
+        assertEquals(0, list.indexOf(first));
+        assertSame(first, list.findByUuid(first.getUuid()));
+
+        list.removeIf(m -> m == second);
+        assertFalse(list.hasServerMsgId("server-2"));
+
+        list.clear();
+        assertNull(list.findByUuid(first.getUuid()));
+        assertFalse(list.hasServerMsgId("server-1"));
+    }
+
+    @Test
+    public void indexesFollowIdChanges() {
+        final var list = new MessageList();
+        final var message = message(1);
+        list.add(message);
+        // messages of a Conversation call this from their setters
+        message.setServerMsgId("server-changed");
+        list.reindex(message);
+        assertFalse(list.hasServerMsgId("server-1"));
+        assertSame(message, list.first(list.withServerMsgId("server-changed")));
+    }
+
+    @Test
+    public void firstAndLastRespectListOrder() {
+        final var list = new MessageList();
+        final var older = message(1);
+        final var newer = message(2);
+        newer.setRemoteMsgId("remote-1");
+        list.add(older);
+        list.add(newer);
+        assertSame(older, list.first(list.withRemoteMsgId("remote-1")));
+        assertSame(newer, list.last(list.withRemoteMsgId("remote-1")));
+        list.sort((a, b) -> a == newer ? -1 : 1);
+        assertSame(newer, list.first(list.withRemoteMsgId("remote-1")));
+    }
+
+    @Test
+    public void indexOfFindsTheFirstOccurrence() {
+        final var list = new MessageList();
+        final var message = message(1);
+        final var other = message(2);
+        list.add(message);
+        list.add(other);
+        list.add(message);
+        assertEquals(0, list.indexOf(message));
+        assertEquals(2, list.lastIndexOf(message));
+        assertEquals(1, list.indexOf(other));
+        assertEquals(1, list.lastIndexOf(other));
+        assertEquals(-1, list.indexOf(message(3)));
+        list.remove(0);
+        assertEquals(1, list.indexOf(message));
+    }
+
+    @Test
+    public void lastMatchingIfCandidateOnlyTakesTheLastMatch() {
+        final var list = new MessageList();
+        final var older = message(1);
+        final var newer = message(1 + PARTICIPANTS);
+        final var other = message(2);
+        list.add(older);
+        list.add(newer);
+        list.add(other);
+        final Jid participant = participant(1);
+        assertSame(
+                newer,
+                list.lastMatchingIfCandidate(
+                        list.withRemoteMsgId(newer.getRemoteMsgId()), from(participant)));
+        // only the last message of a participant can be corrected
+        assertNull(
+                list.lastMatchingIfCandidate(
+                        list.withRemoteMsgId(older.getRemoteMsgId()), from(participant)));
+        assertNull(
+                list.lastMatchingIfCandidate(
+                        list.withRemoteMsgId(other.getRemoteMsgId()), from(participant)));
+        assertNull(
+                list.lastMatchingIfCandidate(list.withRemoteMsgId("unknown"), from(participant)));
+    }
+
+    @Test
+    public void indexedLookupsMatchLinearScan() {
+        final var plain = new ArrayList<Message>();
+        final var indexed = new MessageList();
+        for (int i = 0; i < LOADED_MESSAGES; ++i) {
+            final var message = message(i);
+            plain.add(message);
+            indexed.add(message);
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; ++i) {
+            // a quarter of lookups miss, like receipts for messages that are no longer loaded
+            final String id = "server-" + random.nextInt(LOADED_MESSAGES + LOADED_MESSAGES / 3);
+            Message expected = null;
+            for (final Message message : plain) {
+                if (id.equals(message.getServerMsgId())) {
+                    expected = message;
+                    break;
+                }
+            }
+            assertSame(expected, indexed.first(indexed.withServerMsgId(id)));
+        }
+    }
+
+    @Ignore("benchmark; run manually with -Drobolectric.logging=stdout")
+    @Test
+    public void lookupBenchmark() {
+        final var plain = new ArrayList<Message>();
+        final var indexed = new MessageList();
+        for (int i = 0; i < LOADED_MESSAGES; ++i) {
+            final var message = message(i);
+            plain.add(message);
+            indexed.add(message);
+        }
+        final Random random = new Random(42);
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS; ++i) {
+            // a quarter of lookups miss, like receipts for messages that are no longer loaded
+            ids.add(random.nextInt(LOADED_MESSAGES + LOADED_MESSAGES / 3));
+        }
+
+        final Stopwatch linear = Stopwatch.createStarted();
+        for (final int id : ids) {
+            final String serverMsgId = "server-" + id;
+            for (final Message message : plain) {
+                if (serverMsgId.equals(message.getServerMsgId())) {
+                    break;
+                }
+            }
+        }
+        linear.stop();
+        final Stopwatch hashed = Stopwatch.createStarted();
+        for (final int id : ids) {
+            indexed.first(indexed.withServerMsgId("server-" + id));
+        }
+        hashed.stop();
+
+        // corrections from a participant that has not written anything recently
+        final Jid stranger = Jid.of("room@conference.example.com/stranger");
+        final Stopwatch linearCorrection = Stopwatch.createStarted();
+        for (final int id : ids) {
+            linearLastMatching(plain, "remote-" + id, stranger);
+        }
+        linearCorrection.stop();
+        final Stopwatch hashedCorrection = Stopwatch.createStarted();
+        for (final int id : ids) {
+            indexed.lastMatchingIfCandidate(
+                    indexed.withRemoteMsgId("remote-" + id), from(stranger));
+        }
+        hashedCorrection.stop();
+
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        Locale.ROOT,
+                        "%d lookups over %d messages in µs: server id linear=%d indexed=%d,"
+                                + " correction linear=%d indexed=%d",
+                        LOOKUPS,
+                        LOADED_MESSAGES,
+                        linear.elapsed(TimeUnit.MICROSECONDS),
+                        hashed.elapsed(TimeUnit.MICROSECONDS),
+                        linearCorrection.elapsed(TimeUnit.MICROSECONDS),
+                        hashedCorrection.elapsed(TimeUnit.MICROSECONDS)));
+    }
+}
@@ -0,0 +1,165 @@
+package eu.siacs.conversations.http;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Ticker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class DownloadSchedulerTest {
+
+    // downloads that have been handed to the executor but not run yet
+    private final List<Runnable> started = new ArrayList<>();
+    // names of downloads in the order they were handed to the executor
+    private final List<String> order = new ArrayList<>();
+    private boolean metered = false;
+    private long nanos = 0;
+    private DownloadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        this.scheduler =
+                new DownloadScheduler(
+                        started::add,
+                        () -> metered,
+                        new Ticker() {
+                            @Override
+                            public long read() {
+                                return nanos;
+                            }
+                        },
+                        3,
+                        2);
+    }
+
+    private DownloadScheduler.Task schedule(
+            final String name, final String host, final DownloadScheduler.Priority priority) {
+        return scheduler.schedule(name, host, priority, () -> order.add(name));
+    }
+
+    /** Runs the download that was started first; which may start the next one. */
+    private void finishOne() {
+        started.remove(0).run();
+    }
+
+    private void finishAll() {
+        while (!started.isEmpty()) {
+            finishOne();
+        }
+    }
+
+    @Test
+    public void concurrencyIsBoundedGloballyAndPerHost() {
+        schedule("a1", "a.example", DownloadScheduler.Priority.VISIBLE);
+        schedule("a2", "a.example", DownloadScheduler.Priority.VISIBLE);
+        schedule("a3", "a.example", DownloadScheduler.Priority.VISIBLE);
+        schedule("b1", "b.example", DownloadScheduler.Priority.VISIBLE);
+        schedule("c1", "c.example", DownloadScheduler.Priority.VISIBLE);
+        // a3 waits for its host, b1 overtakes it, c1 waits for a free slot
+        assertEquals(3, started.size());
+        assertEquals(3, scheduler.getRunning());
+        assertEquals(2, scheduler.getQueueLength());
+        finishOne();
+        // a1 is done, which frees both a slot and the host for a3
+        finishAll();
+        assertEquals(List.of("a1", "a2", "b1", "a3", "c1"), order);
+        assertEquals(0, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueueLength());
+    }
+
+    @Test
+    public void tappedDownloadGetsAheadOfHistory() {
+        for (int i = 0; i < 10; ++i) {
+            schedule("history" + i, "host" + i, DownloadScheduler.Priority.BACKGROUND);
+        }
+        // background downloads leave one slot free
+        assertEquals(2, started.size());
+        schedule("tapped", "host0", DownloadScheduler.Priority.INTERACTIVE);
+        assertEquals(3, started.size());
+        schedule("other", "host5", DownloadScheduler.Priority.VISIBLE);
+        finishAll();
+        // the first two started before anything else was queued, the tapped one right away
+        assertEquals(List.of("history0", "history1", "tapped", "other"), order.subList(0, 4));
+        // after that newest history first
+        assertEquals(List.of("history9", "history8", "history7"), order.subList(4, 7));
+        assertEquals(12, order.size());
+    }
+
+    @Test
+    public void scrollingIntoViewPromotes() {
+        schedule("running1", "host1", DownloadScheduler.Priority.BACKGROUND);
+        schedule("running2", "host2", DownloadScheduler.Priority.BACKGROUND);
+        final var old = schedule("old", "host3", DownloadScheduler.Priority.BACKGROUND);
+        final var queued = schedule("new", "host4", DownloadScheduler.Priority.BACKGROUND);
+        scheduler.promote("old", DownloadScheduler.Priority.VISIBLE);
+        assertEquals(DownloadScheduler.Priority.VISIBLE, old.getPriority());
+        // a visible download may take the slot background downloads leave free
+        assertEquals(3, started.size());
+        // promoting never lowers
+        scheduler.promote("old", DownloadScheduler.Priority.BACKGROUND);
+        assertEquals(DownloadScheduler.Priority.VISIBLE, old.getPriority());
+        // scheduling again keeps the queued download; its downloader reads the raised priority
+        schedule("new", "host4", DownloadScheduler.Priority.INTERACTIVE);
+        assertEquals(1, scheduler.getQueueLength());
+        assertEquals(DownloadScheduler.Priority.INTERACTIVE, queued.getPriority());
+        finishAll();
+        assertEquals(List.of("running1", "running2", "old", "new"), order);
+    }
+
+    @Test
+    public void backgroundWaitsForUnmeteredNetwork() {
+        metered = true;
+        schedule("history", "host1", DownloadScheduler.Priority.BACKGROUND);
+        schedule("visible", "host2", DownloadScheduler.Priority.VISIBLE);
+        finishAll();
+        assertEquals(List.of("visible"), order);
+        assertEquals(1, scheduler.getQueueLength());
+        metered = false;
+        scheduler.dispatch();
+        finishAll();
+        assertEquals(List.of("visible", "history"), order);
+    }
+
+    @Test
+    public void cancelledDownloadDoesNotStart() {
+        metered = true;
+        schedule("history", "host1", DownloadScheduler.Priority.BACKGROUND);
+        scheduler.cancel("history");
+        metered = false;
+        scheduler.dispatch();
+        assertEquals(0, started.size());
+        assertEquals(0, scheduler.getQueueLength());
+    }
+
+    @Test
+    public void bytesPerSecondPerClass() {
+        final var visible = schedule("visible", "host1", DownloadScheduler.Priority.VISIBLE);
+        final var history = schedule("history", "host2", DownloadScheduler.Priority.BACKGROUND);
+        for (int second = 0; second < 5; ++second) {
+            nanos = TimeUnit.SECONDS.toNanos(second);
+            visible.transferred(100_000);
+            history.transferred(10_000);
+        }
+        assertEquals(100_000, scheduler.getBytesPerSecond(DownloadScheduler.Priority.VISIBLE));
+        assertEquals(10_000, scheduler.getBytesPerSecond(DownloadScheduler.Priority.BACKGROUND));
+        assertEquals(0, scheduler.getBytesPerSecond(DownloadScheduler.Priority.INTERACTIVE));
+
+        // bytes are accounted to the class a download currently belongs to
+        scheduler.promote("history", DownloadScheduler.Priority.INTERACTIVE);
+        nanos = TimeUnit.SECONDS.toNanos(5);
+        history.transferred(50_000);
+        assertEquals(10_000, scheduler.getBytesPerSecond(DownloadScheduler.Priority.INTERACTIVE));
+
+        // nothing transferred for a while
+        nanos = TimeUnit.SECONDS.toNanos(60);
+        assertEquals(0, scheduler.getBytesPerSecond(DownloadScheduler.Priority.VISIBLE));
+    }
+}
@@ -0,0 +1,93 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import im.conversations.android.xml.XmlElementReader;
+import im.conversations.android.xmpp.EntityCapabilities;
+import im.conversations.android.xmpp.EntityCapabilities2;
+import im.conversations.android.xmpp.model.disco.info.InfoQuery;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class CapsCacheTest {
+
+    private DatabaseBackend database;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        this.db = database.getWritableDatabase();
+    }
+
+    private static InfoQuery infoQuery(final String name) throws IOException {
+        return (InfoQuery)
+                XmlElementReader.read(
+                        """
+                        <query xmlns='http://jabber.org/protocol/disco#info'>
+                          <identity category='client' name='%s' type='phone'/>
+                          <feature var='http://jabber.org/protocol/caps'/>
+                          <feature var='http://jabber.org/protocol/muc'/>
+                        </query>\
+                        """
+                                .formatted(name));
+    }
+
+    private void insertBehindCache(final InfoQuery infoQuery) {
+        final var contentValues = new ContentValues();
+        contentValues.put("caps", EntityCapabilities.hash(infoQuery).encoded());
+        contentValues.put("caps2", EntityCapabilities2.hash(infoQuery).encoded());
+        contentValues.put("disco_info", infoQuery.toString());
+        db.insertWithOnConflict("caps_cache", null, contentValues, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Test
+    public void storedInfoIsParsedOnce() throws IOException {
+        final var infoQuery = infoQuery("parsed once");
+        insertBehindCache(infoQuery);
+        final var caps = EntityCapabilities.hash(infoQuery);
+
+        final var first = database.getInfoQuery(caps);
+        assertEquals(infoQuery.toString(), first.toString());
+        assertSame(first, database.getInfoQuery(caps));
+    }
+
+    @Test
+    public void unknownHashIsForgottenOnInsert() throws IOException {
+        final var infoQuery = infoQuery("unknown until inserted");
+        final var caps = EntityCapabilities.hash(infoQuery);
+        final var caps2 = EntityCapabilities2.hash(infoQuery);
+        assertNull(database.getInfoQuery(caps));
+        assertNull(database.getInfoQuery(caps));
+
+        database.insertCapsCache(caps, caps2, infoQuery);
+
+        assertSame(infoQuery, database.getInfoQuery(caps));
+        assertSame(infoQuery, database.getInfoQuery(caps2));
+    }
+
+    @Test
+    public void prewarmServesBothHashes() throws IOException {
+        final var infoQuery = infoQuery("prewarmed");
+        insertBehindCache(infoQuery);
+
+        database.prewarmCapsCache();
+
+        final var byCaps = database.getInfoQuery(EntityCapabilities.hash(infoQuery));
+        assertEquals(infoQuery.toString(), byCaps.toString());
+        assertSame(byCaps, database.getInfoQuery(EntityCapabilities2.hash(infoQuery)));
+        assertTrue(database.getCapsCacheHitRate() > 0);
+    }
+}
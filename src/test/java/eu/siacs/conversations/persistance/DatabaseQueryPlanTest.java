@@ -0,0 +1,133 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertFalse;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Message;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class DatabaseQueryPlanTest {
+
+    // 'SCAN (subquery-n)' is fine; scanning a table (with or without an index) is not. Older
+    // versions of SQLite print 'SCAN TABLE messages'
+    private static final Pattern TABLE_SCAN =
+            Pattern.compile(
+                    "^SCAN (TABLE )?("
+                            + Message.TABLENAME
+                            + "|"
+                            + Conversation.TABLENAME
+                            + "|"
+                            + Account.TABLENAME
+                            + ")\\b");
+
+    private static final String TEMP_B_TREE = "USE TEMP B-TREE";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void openDatabase() {
+        this.db =
+                DatabaseBackend.getInstance(RuntimeEnvironment.getApplication())
+                        .getReadableDatabase();
+    }
+
+    @Test
+    public void messages() {
+        assertIndexedAndSorted(DatabaseBackend.QUERY_MESSAGES + " LIMIT 50", "c");
+    }
+
+    @Test
+    public void messagesBefore() {
+        assertIndexedAndSorted(DatabaseBackend.QUERY_MESSAGES_BEFORE + " LIMIT 50", "c", "0");
+    }
+
+    @Test
+    public void restoreMessages() {
+        assertIndexedAndSorted(DatabaseBackend.restoreMessagesQuery(3, 50), "a", "b", "c");
+    }
+
+    @Test
+    public void lastMessageReceived() {
+        assertIndexed(DatabaseBackend.QUERY_LAST_MESSAGE_RECEIVED, "a");
+    }
+
+    @Test
+    public void lastTimeFingerprintUsed() {
+        assertIndexed(DatabaseBackend.QUERY_LAST_TIME_FINGERPRINT_USED, "a", "f");
+    }
+
+    @Test
+    public void lastClearDate() {
+        assertIndexed(DatabaseBackend.QUERY_CONVERSATION_ATTRIBUTES, "a");
+    }
+
+    @Test
+    public void messageWithServerMsgId() {
+        assertIndexed(DatabaseBackend.QUERY_MESSAGE_WITH_SERVER_MSG_ID, "c", "s");
+    }
+
+    @Test
+    public void messageWithUuidOrRemoteId() {
+        assertIndexed(DatabaseBackend.QUERY_MESSAGE_WITH_UUID_OR_REMOTE_ID, "c", "u", "u");
+    }
+
+    @Test
+    public void updateMessage() {
+        assertIndexed(
+                "UPDATE "
+                        + Message.TABLENAME
+                        + " SET "
+                        + Message.BODY
+                        + "=? WHERE "
+                        + Message.UUID
+                        + "=?",
+                "b",
+                "u");
+    }
+
+    private void assertIndexed(final String sql, final String... args) {
+        for (final String detail : queryPlan(sql, args)) {
+            assertFalse(
+                    "full scan in plan of '" + sql + "': " + detail,
+                    TABLE_SCAN.matcher(detail).find());
+        }
+    }
+
+    private void assertIndexedAndSorted(final String sql, final String... args) {
+        for (final String detail : queryPlan(sql, args)) {
+            assertFalse(
+                    "full scan in plan of '" + sql + "': " + detail,
+                    TABLE_SCAN.matcher(detail).find());
+            assertFalse(
+                    "sort in plan of '" + sql + "': " + detail, detail.contains(TEMP_B_TREE));
+        }
+    }
+
+    private List<String> queryPlan(final String sql, final String... args) {
+        final List<String> details = new ArrayList<>();
+        try (final Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            final int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detail));
+            }
+        }
+        if (details.isEmpty()) {
+            throw new AssertionError("no query plan for " + sql + Arrays.toString(args));
+        }
+        return details;
+    }
+}
@@ -0,0 +1,135 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import com.google.common.collect.ImmutableList;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.utils.BackupChain;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageChangesTest {
+
+    private DatabaseBackend database;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        this.db = database.getWritableDatabase();
+        // the database backend is a singleton and may outlive a single test
+        db.delete(Account.TABLENAME, null, null);
+        db.delete(BackupChain.TABLENAME, null, null);
+        db.delete(DatabaseBackend.MESSAGE_CHANGES_TABLENAME, null, null);
+        final ContentValues account = new ContentValues();
+        account.put(Account.UUID, "a");
+        account.put(Account.USERNAME, "juliet");
+        account.put(Account.SERVER, "example.com");
+        db.insert(Account.TABLENAME, null, account);
+        final ContentValues conversation = new ContentValues();
+        conversation.put(Conversation.UUID, "c");
+        conversation.put(Conversation.ACCOUNT, "a");
+        db.insert(Conversation.TABLENAME, null, conversation);
+    }
+
+    private void insertMessage(final String uuid) {
+        final ContentValues message = new ContentValues();
+        message.put(Message.UUID, uuid);
+        message.put(Message.CONVERSATION, "c");
+        message.put(Message.BODY, "hello");
+        db.insert(Message.TABLENAME, null, message);
+    }
+
+    private void startChain(final long watermark) {
+        database.saveBackupChain(
+                BackupChain.start("a", Uri.parse("file:///backup"), "secret", watermark));
+    }
+
+    private List<String> changes() {
+        final List<String> changes = new ArrayList<>();
+        try (final Cursor cursor =
+                db.rawQuery(
+                        "SELECT uuid FROM "
+                                + DatabaseBackend.MESSAGE_CHANGES_TABLENAME
+                                + " ORDER BY seq",
+                        null)) {
+            while (cursor.moveToNext()) {
+                changes.add(cursor.getString(0));
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void changesAreLoggedInOrderOfLastModification() {
+        startChain(0);
+        insertMessage("m1");
+        insertMessage("m2");
+        insertMessage("m3");
+        final ContentValues update = new ContentValues();
+        update.put(Message.BODY, "edited");
+        db.update(Message.TABLENAME, update, Message.UUID + "=?", new String[] {"m1"});
+        db.delete(Message.TABLENAME, Message.UUID + "=?", new String[] {"m2"});
+
+        assertEquals(ImmutableList.of("m3", "m1", "m2"), changes());
+    }
+
+    @Test
+    public void nothingIsLoggedWithoutChain() {
+        insertMessage("m1");
+        final ContentValues update = new ContentValues();
+        update.put(Message.BODY, "edited");
+        db.update(Message.TABLENAME, update, Message.UUID + "=?", new String[] {"m1"});
+        db.delete(Message.TABLENAME, Message.UUID + "=?", new String[] {"m1"});
+
+        assertEquals(ImmutableList.of(), changes());
+    }
+
+    @Test
+    public void pruneKeepsChangesNewerThanOldestChain() {
+        startChain(0);
+        insertMessage("m1");
+        final long watermark = database.getLastMessageChange();
+        insertMessage("m2");
+        startChain(watermark);
+
+        assertEquals(1, database.pruneMessageChanges());
+        assertEquals(ImmutableList.of("m2"), changes());
+    }
+
+    @Test
+    public void pruneKeepsChangesOfChainWithoutFiles() {
+        // saved before the base is exported; nothing of it has been written yet
+        startChain(database.getLastMessageChange());
+        insertMessage("m1");
+        insertMessage("m2");
+
+        assertEquals(0, database.pruneMessageChanges());
+        assertEquals(ImmutableList.of("m1", "m2"), changes());
+    }
+
+    @Test
+    public void pruneDropsEverythingWithoutChain() {
+        startChain(0);
+        insertMessage("m1");
+        insertMessage("m2");
+        db.delete(BackupChain.TABLENAME, null, null);
+
+        assertEquals(2, database.pruneMessageChanges());
+        assertEquals(ImmutableList.of(), changes());
+    }
+}
@@ -0,0 +1,139 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import com.google.common.base.Strings;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Message;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageSearchTest {
+
+    private static final int PAGE_SIZE = 50;
+
+    private DatabaseBackend database;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        this.db = database.getWritableDatabase();
+        // the database backend is a singleton and may outlive a single test
+        db.delete(Account.TABLENAME, null, null);
+        db.delete(Message.TABLENAME, null, null);
+        final ContentValues account = new ContentValues();
+        account.put(Account.UUID, "a");
+        account.put(Account.USERNAME, "juliet");
+        account.put(Account.SERVER, "example.com");
+        db.insert(Account.TABLENAME, null, account);
+        final ContentValues conversation = new ContentValues();
+        conversation.put(Conversation.UUID, "c");
+        conversation.put(Conversation.ACCOUNT, "a");
+        conversation.put(Conversation.CONTACTJID, "romeo@example.com");
+        conversation.put(Conversation.MODE, Conversation.MODE_SINGLE);
+        db.insert(Conversation.TABLENAME, null, conversation);
+    }
+
+    private void insertMessage(final String uuid, final long timeSent, final String body) {
+        final ContentValues message = new ContentValues();
+        message.put(Message.UUID, uuid);
+        message.put(Message.CONVERSATION, "c");
+        message.put(Message.BODY, body);
+        message.put(Message.TIME_SENT, timeSent);
+        message.put(Message.TYPE, Message.TYPE_TEXT);
+        message.put(Message.ENCRYPTION, Message.ENCRYPTION_NONE);
+        db.insert(Message.TABLENAME, null, message);
+    }
+
+    @Test
+    public void pagesFollowEachOtherWithoutGapsOrDuplicates() {
+        for (int i = 0; i < 120; ++i) {
+            // pairs of messages sent in the same millisecond straddle the page boundaries
+            insertMessage("m" + i, 1_000 + i / 2, "wherefore art thou " + i);
+            insertMessage("n" + i, 1_000 + i / 2, "deny thy father " + i);
+        }
+        final List<String> found = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        long beforeTime = Long.MAX_VALUE;
+        long beforeRowId = Long.MAX_VALUE;
+        int pages = 0;
+        int rows;
+        do {
+            rows = 0;
+            try (final Cursor cursor =
+                    database.getMessageSearchCursor(
+                            List.of("wher"),
+                            null,
+                            beforeTime,
+                            beforeRowId,
+                            PAGE_SIZE,
+                            new CancellationSignal())) {
+                while (cursor.moveToNext()) {
+                    rows++;
+                    found.add(cursor.getString(cursor.getColumnIndexOrThrow(Message.UUID)));
+                    beforeTime = cursor.getLong(cursor.getColumnIndexOrThrow(Message.TIME_SENT));
+                    beforeRowId =
+                            cursor.getLong(
+                                    cursor.getColumnIndexOrThrow(DatabaseBackend.SEARCH_ROWID));
+                    times.add(beforeTime);
+                }
+            }
+            pages++;
+        } while (rows == PAGE_SIZE);
+
+        assertEquals(3, pages);
+        assertEquals(120, found.size());
+        assertEquals(120, new HashSet<>(found).size());
+        assertEquals("m119", found.get(0));
+        for (int i = 1; i < times.size(); ++i) {
+            assertTrue(times.get(i - 1) >= times.get(i));
+        }
+    }
+
+    @Test
+    public void longBodiesAreShortenedToTheMatch() {
+        final String filler = Strings.repeat("lorem ipsum dolor sit amet ", 20);
+        final String body = filler + "meet me on the balcony " + filler;
+        insertMessage("m", 1_000, body);
+        insertMessage("s", 1_001, "the balcony");
+        final List<String> snippets = new ArrayList<>();
+        try (final Cursor cursor =
+                database.getMessageSearchCursor(
+                        List.of("balcony"),
+                        "c",
+                        Long.MAX_VALUE,
+                        Long.MAX_VALUE,
+                        PAGE_SIZE,
+                        new CancellationSignal())) {
+            while (cursor.moveToNext()) {
+                snippets.add(
+                        cursor.getString(
+                                cursor.getColumnIndexOrThrow(DatabaseBackend.SEARCH_SNIPPET)));
+            }
+        }
+        assertEquals(2, snippets.size());
+        assertEquals("the balcony", snippets.get(0));
+        final String excerpt = snippets.get(1);
+        assertNotEquals(body, excerpt);
+        assertTrue(excerpt.length() < body.length() / 4);
+        assertTrue(excerpt.contains("balcony"));
+        assertTrue(excerpt.startsWith("…"));
+    }
+}
@@ -0,0 +1,151 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageWriterTest {
+
+    private DatabaseBackend database;
+    private MessageWriter messageWriter;
+    private Conversation conversation;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        // the database backend is a singleton and may outlive a single test
+        database.getWritableDatabase().delete(Message.TABLENAME, null, null);
+        final Account account = new Account(Jid.of("juliet@example.com"), "secret");
+        database.createAccount(account);
+        this.conversation =
+                new Conversation(
+                        "romeo@example.com",
+                        account,
+                        Jid.of("romeo@example.com"),
+                        Conversational.MODE_SINGLE);
+        database.createConversation(conversation);
+        this.messageWriter = new MessageWriter(database);
+    }
+
+    private Message message(final String body) {
+        return new Message(conversation, body, Message.ENCRYPTION_NONE);
+    }
+
+    private List<String> bodies() {
+        final List<String> bodies = new ArrayList<>();
+        try (final Cursor cursor =
+                database.getReadableDatabase()
+                        .query(
+                                Message.TABLENAME,
+                                new String[] {Message.BODY},
+                                Message.CONVERSATION + "=?",
+                                new String[] {conversation.getUuid()},
+                                null,
+                                null,
+                                "rowid")) {
+            while (cursor.moveToNext()) {
+                bodies.add(cursor.getString(0));
+            }
+        }
+        return bodies;
+    }
+
+    @Test
+    public void batchedWritesAreCommittedTogetherOnFlush() {
+        for (int i = 0; i < 10; ++i) {
+            messageWriter.createMessage(message("body " + i), true);
+        }
+        // the batch is only committed after a delay
+        assertEquals(List.of(), bodies());
+        messageWriter.flush();
+        assertEquals(10, bodies().size());
+        assertEquals(1, messageWriter.getTransactions());
+        assertEquals(10, messageWriter.getMessagesWritten());
+    }
+
+    @Test
+    public void updatesAreMergedIntoPendingInserts() {
+        final Message message = message("wherefore art thou");
+        messageWriter.createMessage(message, true);
+        message.setBody("deny thy father");
+        messageWriter.updateMessage(message, true, true);
+        messageWriter.flush();
+        assertEquals(List.of("deny thy father"), bodies());
+        assertEquals(1, messageWriter.getMessagesWritten());
+    }
+
+    @Test
+    public void writesQueueBehindPendingWrites() {
+        final Message first = message("first");
+        messageWriter.createMessage(first, true);
+        // would be written right away if nothing was pending
+        messageWriter.createMessage(message("second"), false);
+        first.setBody("first, edited");
+        messageWriter.updateMessage(first, true, false);
+        messageWriter.flush();
+        assertEquals(List.of("first, edited", "second"), bodies());
+    }
+
+    @Test
+    public void directUpdateDuringCommitIsNotOverwritten() throws Exception {
+        final Message message = message("wherefore art thou");
+        messageWriter.createMessage(message, true);
+        // hold the database so that the batch gets stuck in writeMessages()
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread blocker =
+                new Thread(
+                        () -> {
+                            final var db = database.getWritableDatabase();
+                            db.beginTransaction();
+                            locked.countDown();
+                            try {
+                                release.await();
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                db.endTransaction();
+                            }
+                        });
+        blocker.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        final Thread catchUp = new Thread(messageWriter::flush);
+        catchUp.start();
+        while (messageWriter.getPendingWrites() > 0) {
+            Thread.sleep(1);
+        }
+        // the batch has been drained but is not committed yet
+        message.setBody("deny thy father");
+        messageWriter.updateMessage(message, true, false);
+        release.countDown();
+        blocker.join(5000);
+        catchUp.join(5000);
+        messageWriter.flush();
+        assertEquals(List.of("deny thy father"), bodies());
+    }
+
+    @Test
+    public void writesGoStraightToTheDatabaseWhenNothingIsPending() {
+        messageWriter.createMessage(message("hello"), false);
+        assertEquals(List.of("hello"), bodies());
+        assertEquals(0, messageWriter.getTransactions());
+    }
+}
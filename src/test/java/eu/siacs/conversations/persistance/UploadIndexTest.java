@@ -0,0 +1,120 @@
+package eu.siacs.conversations.persistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.http.UploadIndex;
+import eu.siacs.conversations.xmpp.Jid;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class UploadIndexTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private DatabaseBackend database;
+    private Account account;
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        this.account = new Account(Jid.of("juliet@example.com"), "secret");
+        this.database.createAccount(account);
+    }
+
+    private Conversation conversation(final String address) {
+        return new Conversation(address, account, Jid.of(address), Conversational.MODE_SINGLE);
+    }
+
+    private Message message(final String address, final int encryption) {
+        return new Message(conversation(address), "", encryption);
+    }
+
+    private UploadIndex.Entry entry(final String scope, final String hash, final long expires) {
+        return new UploadIndex.Entry(
+                account.getUuid(),
+                scope,
+                hash,
+                "https://upload.example.com/" + hash + "/video.mp4",
+                expires,
+                0);
+    }
+
+    @Test
+    public void plainUploadsAreSharedAcrossConversations() {
+        final var romeo = message("romeo@example.com", Message.ENCRYPTION_NONE);
+        final var nurse = message("nurse@example.com", Message.ENCRYPTION_NONE);
+        assertEquals(UploadIndex.scope(romeo), UploadIndex.scope(nurse));
+
+        final String scope = UploadIndex.scope(romeo);
+        database.storeUpload(entry(scope, "abc", NOW + 1_000), NOW);
+        final var found = database.findUpload(account.getUuid(), scope, "abc", NOW);
+        assertEquals("https://upload.example.com/abc/video.mp4", found.url());
+
+        database.countUploadReuse(found);
+        database.countUploadReuse(found);
+        assertEquals(2, database.findUpload(account.getUuid(), scope, "abc", NOW).hits());
+    }
+
+    @Test
+    public void encryptedUploadsStayInTheirConversation() {
+        final var romeo = message("romeo@example.com", Message.ENCRYPTION_AXOLOTL);
+        final var nurse = message("nurse@example.com", Message.ENCRYPTION_AXOLOTL);
+        final var plain = message("nurse@example.com", Message.ENCRYPTION_NONE);
+        assertNotEquals(UploadIndex.scope(romeo), UploadIndex.scope(nurse));
+        assertNotEquals(UploadIndex.scope(plain), UploadIndex.scope(nurse));
+
+        database.storeUpload(entry(UploadIndex.scope(romeo), "abc", NOW + 1_000), NOW);
+        assertNull(database.findUpload(account.getUuid(), UploadIndex.scope(nurse), "abc", NOW));
+        assertNull(database.findUpload(account.getUuid(), UploadIndex.scope(plain), "abc", NOW));
+
+        final var pgp = message("romeo@example.com", Message.ENCRYPTION_PGP);
+        assertNull(UploadIndex.scope(pgp));
+    }
+
+    @Test
+    public void expiredUploadsAreNotReused() {
+        final String scope = UploadIndex.scope(message("a@example.com", Message.ENCRYPTION_NONE));
+        database.storeUpload(entry(scope, "old", NOW + 1_000), NOW);
+        assertNull(database.findUpload(account.getUuid(), scope, "old", NOW + 1_000));
+
+        // the server knows best when it deletes the file
+        final long serverExpiry = NOW + 60_000;
+        assertEquals(serverExpiry, UploadIndex.expires(NOW, new Date(serverExpiry)));
+        assertEquals(
+                NOW + Config.HTTP_UPLOAD_REUSE_MAX_AGE,
+                UploadIndex.expires(NOW, new Date(NOW + 365 * Config.MILLISECONDS_IN_DAY)));
+        assertEquals(NOW + Config.HTTP_UPLOAD_REUSE_MAX_AGE, UploadIndex.expires(NOW, null));
+
+        database.storeUpload(entry(scope, "gone", NOW + 1_000), NOW);
+        database.deleteUpload(entry(scope, "gone", 0));
+        assertNull(database.findUpload(account.getUuid(), scope, "gone", NOW));
+    }
+
+    @Test
+    public void sameContentSameHash() throws Exception {
+        final File a = File.createTempFile("upload", ".txt");
+        final File b = File.createTempFile("upload", ".txt");
+        Files.write(a.toPath(), "wherefore art thou".getBytes(StandardCharsets.UTF_8));
+        Files.write(b.toPath(), "wherefore art thou".getBytes(StandardCharsets.UTF_8));
+        assertEquals(UploadIndex.hash(a), UploadIndex.hash(b));
+        Files.write(b.toPath(), "deny thy father".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(UploadIndex.hash(a), UploadIndex.hash(b));
+    }
+}
@@ -0,0 +1,105 @@
+package eu.siacs.conversations.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.entities.StubConversation;
+import eu.siacs.conversations.xmpp.Jid;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class ConversationUpdateDispatcherTest {
+
+    private static final Conversational JULIET =
+            new StubConversation(
+                    null,
+                    "0b6f1c52-7d0e-4c1e-a2a4-5f0b3e4c9a01",
+                    Jid.of("juliet@example.com"),
+                    Conversational.MODE_SINGLE);
+    private static final Conversational ROMEO =
+            new StubConversation(
+                    null,
+                    "9d2e7a10-3c5b-4f4e-8b6d-1a7c2e9f0b42",
+                    Jid.of("romeo@example.com"),
+                    Conversational.MODE_SINGLE);
+
+    private final List<ConversationUpdate> updates = new ArrayList<>();
+    private ConversationUpdateDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new ConversationUpdateDispatcher(updates::add);
+    }
+
+    private static void nextFrame() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+    }
+
+    @Test
+    public void burstIsDispatchedOnce() {
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            final var message = new Message(JULIET, "body " + i, Message.ENCRYPTION_NONE);
+            messages.add(message);
+            dispatcher.emit(ConversationUpdate.Kind.MESSAGE_ADDED, message);
+        }
+        dispatcher.emit(ConversationUpdate.Kind.CHAT_STATE, JULIET);
+        assertTrue(updates.isEmpty());
+
+        nextFrame();
+
+        assertEquals(1, updates.size());
+        final var update = updates.get(0);
+        assertFalse(update.everything());
+        assertEquals(
+                EnumSet.of(
+                        ConversationUpdate.Kind.MESSAGE_ADDED, ConversationUpdate.Kind.CHAT_STATE),
+                update.kinds());
+        assertTrue(update.affects(JULIET));
+        assertFalse(update.affects(ROMEO));
+        assertTrue(update.affects(messages.get(42)));
+        assertEquals(100, update.messages().size());
+        assertFalse(update.isOnly(ConversationUpdate.Kind.CHAT_STATE));
+        assertEquals(101, dispatcher.getEmitted());
+        assertEquals(1, dispatcher.getDispatched());
+    }
+
+    @Test
+    public void untargetedUpdateAffectsEverything() {
+        dispatcher.emit(ConversationUpdate.Kind.READ, ROMEO);
+        dispatcher.emit();
+        nextFrame();
+        assertEquals(1, updates.size());
+        assertSame(ConversationUpdate.EVERYTHING, updates.get(0));
+        assertTrue(updates.get(0).affects(JULIET));
+        assertFalse(updates.get(0).isOnly(ConversationUpdate.Kind.READ));
+    }
+
+    @Test
+    public void laterChangesGetTheirOwnDispatch() {
+        dispatcher.emit(ConversationUpdate.Kind.READ, ROMEO);
+        nextFrame();
+        dispatcher.emit(ConversationUpdate.Kind.CHAT_STATE, JULIET);
+        nextFrame();
+        assertEquals(2, updates.size());
+        assertTrue(updates.get(0).isOnly(ConversationUpdate.Kind.READ));
+        assertFalse(updates.get(1).affects(ROMEO));
+        assertTrue(updates.get(1).affects(JULIET));
+        assertEquals(2, dispatcher.getDispatched());
+    }
+}
@@ -0,0 +1,150 @@
+package eu.siacs.conversations.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class NotificationCoalescerTest {
+
+    private static final long WINDOW = 1000;
+    private static final String JULIET = "0b6f1c52-7d0e-4c1e-a2a4-5f0b3e4c9a01";
+    private static final String ROMEO = "9d2e7a10-3c5b-4f4e-8b6d-1a7c2e9f0b42";
+
+    private final List<NotificationCoalescer.Batch> batches = new ArrayList<>();
+    private NotificationCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        this.coalescer =
+                new NotificationCoalescer(
+                        new Handler(Looper.getMainLooper()), WINDOW, batches::add);
+    }
+
+    private static void sleep(final long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+
+    @Test
+    public void firstMessageAlertsRightAway() {
+        coalescer.request(true, List.of(JULIET), false);
+        assertEquals(1, batches.size());
+        final var batch = batches.get(0);
+        assertTrue(batch.alert());
+        assertEquals(Set.of(JULIET), batch.alerting());
+        assertTrue(batch.hasChanged(JULIET));
+        assertFalse(batch.hasChanged(ROMEO));
+    }
+
+    @Test
+    public void burstIsRebuiltOnceAfterTheWindow() {
+        coalescer.request(true, List.of(JULIET), false);
+        for (int i = 0; i < 50; ++i) {
+            sleep(10);
+            // messages from juliet, read markers from romeo
+            final boolean message = i % 2 == 0;
+            coalescer.request(message, List.of(message ? JULIET : ROMEO), false);
+        }
+        assertEquals(1, batches.size());
+        sleep(WINDOW);
+        assertEquals(2, batches.size());
+        final var batch = batches.get(1);
+        assertEquals(50, batch.requests());
+        assertEquals(Set.of(JULIET, ROMEO), batch.changed());
+        // the first message of the burst already made a sound
+        assertFalse(batch.alert());
+        assertEquals(51, coalescer.getRequested());
+        assertEquals(2, coalescer.getRebuilt());
+    }
+
+    @Test
+    public void longBurstAlertsEveryOtherWindow() {
+        final List<Boolean> alerts = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            coalescer.request(true, List.of(JULIET), false);
+            sleep(100);
+        }
+        sleep(WINDOW);
+        for (final var batch : batches) {
+            alerts.add(batch.alert());
+        }
+        // five seconds of messages
+        assertEquals(List.of(true, false, true, false, true, false), alerts);
+    }
+
+    @Test
+    public void newConversationInMergedBatchAlerts() {
+        coalescer.request(true, List.of(JULIET), false);
+        sleep(10);
+        coalescer.request(true, List.of(JULIET), false);
+        coalescer.request(true, List.of(ROMEO), false);
+        sleep(WINDOW);
+        assertEquals(2, batches.size());
+        // romeo has not made a sound yet
+        assertTrue(batches.get(1).alert());
+        assertEquals(Set.of(JULIET, ROMEO), batches.get(1).alerting());
+
+        coalescer.request(true, List.of(ROMEO), false);
+        sleep(WINDOW);
+        coalescer.request(true, List.of(JULIET), false);
+        sleep(WINDOW);
+        assertEquals(4, batches.size());
+        assertFalse(batches.get(2).alert());
+        // every other window for conversations that already alerted
+        assertTrue(batches.get(3).alert());
+    }
+
+    @Test
+    public void silentUpdateFollowedByMessageStillAlerts() {
+        coalescer.request(false, null, false);
+        sleep(100);
+        coalescer.request(true, List.of(ROMEO), false);
+        sleep(WINDOW);
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(1).alert());
+        assertEquals(Set.of(ROMEO), batches.get(1).changed());
+    }
+
+    @Test
+    public void mergesWhatChanged() {
+        coalescer.request(false, List.of(JULIET), false);
+        coalescer.request(false, List.of(ROMEO), true);
+        sleep(WINDOW);
+        // only the summary changed for romeo
+        assertEquals(Set.of(), batches.get(1).changed());
+
+        sleep(WINDOW);
+        coalescer.request(false, List.of(JULIET), false);
+        coalescer.request(false, null, false);
+        coalescer.request(true, null, false);
+        sleep(WINDOW);
+        final var batch = batches.get(3);
+        assertNull(batch.changed());
+        assertNull(batch.alerting());
+        assertTrue(batch.hasChanged(ROMEO));
+    }
+
+    @Test
+    public void quietPeriodResetsTheWindow() {
+        coalescer.request(true, List.of(JULIET), false);
+        sleep(WINDOW + 1);
+        coalescer.request(true, List.of(ROMEO), false);
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(1).alert());
+    }
+}
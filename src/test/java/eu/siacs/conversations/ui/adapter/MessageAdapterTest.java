@@ -0,0 +1,87 @@
+package eu.siacs.conversations.ui.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.entities.ReadByMarker;
+import eu.siacs.conversations.entities.StubConversation;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageAdapterTest {
+
+    private static final Conversational ROOM =
+            new StubConversation(
+                    null,
+                    "2f0c3f8e-5b7d-4c1a-9e3b-7d2a6c4e1f90",
+                    Jid.of("capulet@conference.example.com"),
+                    Conversational.MODE_MULTI);
+
+    private static final int TYPE = 1;
+
+    private static MessageAdapter.BoundRow row(final String key, final int version) {
+        return new MessageAdapter.BoundRow(key, TYPE, version);
+    }
+
+    private static ReadByMarker marker(final String nick, final String realJid) {
+        final var message = new Message(ROOM, "", Message.ENCRYPTION_NONE);
+        message.setCounterpart(Jid.of("capulet@conference.example.com/" + nick));
+        message.setTrueCounterpart(realJid == null ? null : Jid.of(realJid));
+        return ReadByMarker.from(message);
+    }
+
+    @Test
+    public void unchangedRowsAreSkipped() {
+        final var bound = List.of(row("a", 1), row("b", 2), row("c", 3));
+        assertEquals(List.of(), MessageAdapter.getRowsToRebind(bound, bound));
+    }
+
+    @Test
+    public void onlyChangedRowsAreRebound() {
+        final var bound = List.of(row("a", 1), row("b", 2), row("c", 3));
+        final var current = List.of(row("a", 1), row("b", 5), row("c", 3));
+        assertEquals(List.of(1), MessageAdapter.getRowsToRebind(bound, current));
+    }
+
+    @Test
+    public void differentRowsNeedFullUpdate() {
+        final var bound = List.of(row("a", 1), row("b", 2));
+        assertNull(MessageAdapter.getRowsToRebind(bound, List.of(row("a", 1), row("c", 2))));
+        assertNull(
+                MessageAdapter.getRowsToRebind(
+                        bound, List.of(row("a", 1), new MessageAdapter.BoundRow("b", 2, 2))));
+        // a view that was not bound by the adapter
+        assertNull(
+                MessageAdapter.getRowsToRebind(
+                        Arrays.asList(row("a", 1), null), List.of(row("a", 1), row("b", 2))));
+    }
+
+    @Test
+    public void readMarkerFromSomeoneElseChangesTheVersion() {
+        final var message = new Message(ROOM, "wherefore art thou", Message.ENCRYPTION_NONE);
+        message.addReadByMarker(marker("romeo", null));
+        final int romeo = MessageAdapter.getContentVersion(message, null);
+        // the same nick turns out to be someone else; still one marker
+        message.addReadByMarker(marker("romeo", "benvolio@example.com"));
+        assertEquals(1, message.getReadByMarkers().size());
+        assertNotEquals(romeo, MessageAdapter.getContentVersion(message, null));
+    }
+
+    @Test
+    public void ownNickChangesTheVersion() {
+        final var message = new Message(ROOM, "juliet, are you there?", Message.ENCRYPTION_NONE);
+        assertNotEquals(
+                MessageAdapter.getContentVersion(message, "juliet"),
+                MessageAdapter.getContentVersion(message, "jules"));
+    }
+}
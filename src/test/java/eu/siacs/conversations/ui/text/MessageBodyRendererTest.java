@@ -0,0 +1,69 @@
+package eu.siacs.conversations.ui.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Color;
+import android.text.Spanned;
+import android.text.style.URLSpan;
+import android.widget.TextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class MessageBodyRendererTest {
+
+    private MessageBodyRenderer renderer;
+    private PrecomputedTextCompat.Params params;
+
+    @Before
+    public void setUp() {
+        final var context = RuntimeEnvironment.getApplication();
+        this.renderer = new MessageBodyRenderer(context.getResources().getDisplayMetrics());
+        this.params = TextViewCompat.getTextMetricsParams(new TextView(context));
+    }
+
+    private static MessageBodyRenderer.Key key(final String uuid, final String body) {
+        return new MessageBodyRenderer.Key(uuid, body, null, null, null, Color.BLACK, Color.GRAY);
+    }
+
+    @Test
+    public void boundBodiesAreCached() {
+        final var key = key("m1", "see https://example.com");
+        final var first = renderer.get(key, params);
+        assertEquals(1, ((Spanned) first).getSpans(0, first.length(), URLSpan.class).length);
+        assertSame(first, renderer.get(key, params));
+        // an edit is a different key
+        assertNotSame(first, renderer.get(key("m1", "see https://example.org"), params));
+    }
+
+    @Test
+    public void meCommandAndPrivateMarker() {
+        final var key =
+                new MessageBodyRenderer.Key(
+                        "m2", "/me waves", "Juliet", "Private", null, Color.BLACK, Color.GRAY);
+        assertEquals("Private Juliet waves", renderer.get(key, params).toString());
+    }
+
+    @Test
+    public void prerenderedBodiesArePrecomputed() throws InterruptedException {
+        final var key = key("m3", "hello *world*");
+        renderer.get(key("m0", "capture the text view metrics"), params);
+        renderer.prerender(ImmutableList.of(key));
+        for (int i = 0; i < 100 && !renderer.isCached(key); ++i) {
+            Thread.sleep(10);
+        }
+        assertTrue(renderer.isCached(key));
+        assertTrue(renderer.get(key, params) instanceof PrecomputedTextCompat);
+    }
+}
@@ -0,0 +1,123 @@
+package eu.siacs.conversations.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.minidns.dnsname.DnsName;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class HappyEyeballsTest {
+
+    // a server that accepts TCP but never answers, like a black holed TLS handshake
+    private ServerSocket silentServer;
+    private ServerSocket server;
+    private int closedPort;
+
+    @Before
+    public void startServers() throws IOException {
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.silentServer = new ServerSocket(0, 50, loopback);
+        this.server = new ServerSocket(0, 50, loopback);
+        try (final ServerSocket closed = new ServerSocket(0, 50, loopback)) {
+            this.closedPort = closed.getLocalPort();
+        }
+    }
+
+    @After
+    public void stopServers() throws IOException {
+        silentServer.close();
+        server.close();
+    }
+
+    private Socket connect(final int port, final Socket socket) throws IOException {
+        socket.connect(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                (int) TimeUnit.SECONDS.toMillis(5));
+        return socket;
+    }
+
+    @Test
+    public void stalledCandidateIsOvertakenAndAborted() throws Exception {
+        final CountDownLatch stalledAborted = new CountDownLatch(1);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final var winner =
+                HappyEyeballs.race(
+                        ImmutableList.of("stalled", "good"),
+                        (candidate, socket) -> {
+                            if (candidate.equals("stalled")) {
+                                connect(silentServer.getLocalPort(), socket);
+                                try {
+                                    // blocks until the racer closes the socket
+                                    socket.getInputStream().read();
+                                } finally {
+                                    stalledAborted.countDown();
+                                }
+                                throw new IOException("stalled candidate should not complete");
+                            }
+                            return connect(server.getLocalPort(), socket);
+                        });
+        assertEquals("good", winner.candidate());
+        assertTrue(winner.socket().isConnected());
+        assertTrue(stopwatch.elapsed(TimeUnit.SECONDS) < 5);
+        assertTrue(stalledAborted.await(5, TimeUnit.SECONDS));
+        winner.socket().close();
+    }
+
+    @Test
+    public void failureStartsNextAttempt() throws Exception {
+        final var winner =
+                HappyEyeballs.race(
+                        ImmutableList.of(closedPort, server.getLocalPort()), this::connect);
+        assertEquals(server.getLocalPort(), (int) winner.candidate());
+        assertEquals(ImmutableList.of(closedPort), winner.failed());
+        winner.socket().close();
+    }
+
+    @Test
+    public void throwsWhenAllCandidatesFail() throws InterruptedException {
+        try {
+            HappyEyeballs.race(ImmutableList.of(closedPort, closedPort), this::connect);
+            fail("expected connection to fail");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void orderInterleavesFamiliesAndPrefersLastSuccessful() {
+        final DnsName hostname = DnsName.from("xmpp.example.com");
+        final var v4a = Resolver.Result.createDefault(hostname, ip("192.0.2.1"), 5222);
+        final var v4b = Resolver.Result.createDefault(hostname, ip("192.0.2.2"), 5222);
+        final var v6a = Resolver.Result.createDefault(hostname, ip("2001:db8::1"), 5222);
+        final var v6b = Resolver.Result.createDefault(hostname, ip("2001:db8::2"), 5222);
+        final List<Resolver.Result> resolved = ImmutableList.of(v4a, v4b, v6a, v6b);
+
+        assertEquals(
+                ImmutableList.of(v6a, v4a, v6b, v4b), HappyEyeballs.order(resolved, null));
+        assertEquals(
+                ImmutableList.of(v4b, v4a, v6a, v6b), HappyEyeballs.order(resolved, v4b));
+    }
+
+    private static InetAddress ip(final String address) {
+        return InetAddresses.forString(address);
+    }
+}
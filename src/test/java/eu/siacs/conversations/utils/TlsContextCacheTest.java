@@ -0,0 +1,242 @@
+package eu.siacs.conversations.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class TlsContextCacheTest {
+
+    private static final char[] PASSWORD = "secret".toCharArray();
+    private static final String ACCOUNT = "juliet";
+    private static final TlsContextCache.Key KEY =
+            new TlsContextCache.Key("example.com", null, false);
+
+    // a stand-in for the XMPP server: completes the handshake and sends one byte of application
+    // data, which is what makes the client pick up TLS 1.3 session tickets
+    private SSLServerSocket server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private X509TrustManager trustManager;
+
+    @Before
+    public void startServer() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        final KeyPair keyPair = generator.generateKeyPair();
+        final X500Name name = new X500Name("CN=example.com");
+        final long now = System.currentTimeMillis();
+        final X509Certificate certificate =
+                new JcaX509CertificateConverter()
+                        .getCertificate(
+                                new JcaX509v3CertificateBuilder(
+                                                name,
+                                                BigInteger.ONE,
+                                                new Date(now - TimeUnit.DAYS.toMillis(1)),
+                                                new Date(now + TimeUnit.DAYS.toMillis(1)),
+                                                name,
+                                                keyPair.getPublic())
+                                        .build(
+                                                new JcaContentSignerBuilder("SHA256withECDSA")
+                                                        .build(keyPair.getPrivate())));
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(
+                "server", keyPair.getPrivate(), PASSWORD, new X509Certificate[] {certificate});
+        final KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        this.server =
+                (SSLServerSocket)
+                        serverContext
+                                .getServerSocketFactory()
+                                .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        final KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("server", certificate);
+        final TrustManagerFactory trustManagerFactory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        this.trustManager = (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+
+        executor.execute(
+                () -> {
+                    while (!server.isClosed()) {
+                        try (final SSLSocket socket = (SSLSocket) server.accept()) {
+                            socket.startHandshake();
+                            socket.getOutputStream().write('>');
+                            socket.getOutputStream().flush();
+                            // wait for the client to hang up
+                            socket.getInputStream().read();
+                        } catch (final IOException e) {
+                            // closed by the client or by stopServer()
+                        }
+                    }
+                });
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private TlsContextCache.Handshake connect(
+            final TlsContextCache.CachedContext context, final String protocol)
+            throws IOException {
+        final Socket socket = new Socket();
+        socket.connect(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()),
+                (int) TimeUnit.SECONDS.toMillis(5));
+        try (final SSLSocket sslSocket =
+                (SSLSocket)
+                        context.getSocketFactory()
+                                .createSocket(
+                                        socket,
+                                        socket.getInetAddress().getHostAddress(),
+                                        socket.getPort(),
+                                        true)) {
+            sslSocket.setEnabledProtocols(new String[] {protocol});
+            final var handshake = context.handshake(sslSocket);
+            // the peer certificate is what XmppDomainVerifier looks at, resumed or not
+            assertEquals(1, sslSocket.getSession().getPeerCertificates().length);
+            assertEquals('>', sslSocket.getInputStream().read());
+            return handshake;
+        }
+    }
+
+    private TlsContextCache.CachedContext get(
+            final TlsContextCache cache, final TlsContextCache.Key key) throws Exception {
+        return cache.get(ACCOUNT, key, null, trustManager);
+    }
+
+    @Test
+    public void reconnectResumesTls13Session() throws Exception {
+        final var cache = new TlsContextCache(null);
+        assertFalse(connect(get(cache, KEY), "TLSv1.3").resumed());
+        assertTrue(connect(get(cache, KEY), "TLSv1.3").resumed());
+        assertTrue(connect(get(cache, KEY), "TLSv1.3").resumed());
+        final var statistics = cache.getStatistics(ACCOUNT);
+        assertEquals(1, statistics.full());
+        assertEquals(2, statistics.resumed());
+    }
+
+    @Test
+    public void reconnectResumesTls12Session() throws Exception {
+        final var cache = new TlsContextCache(null);
+        assertFalse(connect(get(cache, KEY), "TLSv1.2").resumed());
+        assertTrue(connect(get(cache, KEY), "TLSv1.2").resumed());
+    }
+
+    @Test
+    public void invalidationForcesFullHandshake() throws Exception {
+        final var cache = new TlsContextCache(null);
+        connect(get(cache, KEY), "TLSv1.3");
+        cache.invalidate(ACCOUNT);
+        assertFalse(connect(get(cache, KEY), "TLSv1.3").resumed());
+        cache.invalidateAll();
+        assertFalse(connect(get(cache, KEY), "TLSv1.3").resumed());
+        assertEquals(3, cache.getStatistics(ACCOUNT).full());
+    }
+
+    @Test
+    public void interactiveSessionsAreNotShared() throws Exception {
+        final var cache = new TlsContextCache(null);
+        final var interactive = new TlsContextCache.Key("example.com", null, true);
+        connect(get(cache, interactive), "TLSv1.3");
+        assertFalse(connect(get(cache, KEY), "TLSv1.3").resumed());
+        assertFalse(connect(get(cache, interactive), "TLSv1.3").resumed());
+        assertFalse(connect(get(cache, interactive), "TLSv1.3").resumed());
+        // the interactive connections did not replace the cached context
+        assertTrue(connect(get(cache, KEY), "TLSv1.3").resumed());
+    }
+
+    @Test
+    public void persistedSessionsAreClearedOnInvalidation() throws Exception {
+        final File directory = Files.createTempDirectory("tls_sessions").toFile();
+        final var cache = new TlsContextCache(directory);
+        final var persisted =
+                new TlsContextCache.PersistedSessions(new File(directory, ACCOUNT));
+        final SSLSession session = handshake();
+        final byte[] data = {1, 2, 3};
+        persisted.putSessionData(session, data);
+        assertArrayEquals(
+                data, persisted.getSessionData(session.getPeerHost(), session.getPeerPort()));
+        cache.invalidateAll();
+        assertNull(persisted.getSessionData(session.getPeerHost(), session.getPeerPort()));
+    }
+
+    private SSLSession handshake() throws Exception {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new X509TrustManager[] {trustManager}, null);
+        final Socket socket = new Socket();
+        socket.connect(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()),
+                (int) TimeUnit.SECONDS.toMillis(5));
+        try (final SSLSocket sslSocket =
+                (SSLSocket)
+                        context.getSocketFactory()
+                                .createSocket(
+                                        socket,
+                                        socket.getInetAddress().getHostAddress(),
+                                        socket.getPort(),
+                                        true)) {
+            sslSocket.startHandshake();
+            return sslSocket.getSession();
+        }
+    }
+
+    @Test
+    public void invalidationEveryFewReconnects() throws Exception {
+        final var cache = new TlsContextCache(null);
+        for (int i = 0; i < 20; ++i) {
+            if (i % 5 == 0) {
+                // a change of trust decisions every now and then
+                cache.invalidate(ACCOUNT);
+            }
+            connect(get(cache, KEY), "TLSv1.3");
+        }
+        final var statistics = cache.getStatistics(ACCOUNT);
+        assertEquals(4, statistics.full());
+        assertEquals(16, statistics.resumed());
+    }
+}
@@ -0,0 +1,152 @@
+package eu.siacs.conversations.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import androidx.preference.PreferenceManager;
+import androidx.work.Data;
+import androidx.work.ListenableWorker;
+import androidx.work.testing.TestWorkerBuilder;
+import androidx.work.testing.WorkManagerTestInitHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import eu.siacs.conversations.AppSettings;
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Conversation;
+import eu.siacs.conversations.entities.Conversational;
+import eu.siacs.conversations.entities.Message;
+import eu.siacs.conversations.persistance.DatabaseBackend;
+import eu.siacs.conversations.utils.BackupChain;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class IncrementalBackupTest {
+
+    private static final String PASSWORD = "secret";
+
+    @Rule public final TemporaryFolder backupLocation = new TemporaryFolder();
+
+    private Context context;
+    private DatabaseBackend database;
+    private Account account;
+    private Conversation conversation;
+
+    @Before
+    public void setUp() {
+        this.context = RuntimeEnvironment.getApplication();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context);
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putString(
+                        AppSettings.BACKUP_LOCATION,
+                        Uri.fromFile(backupLocation.getRoot()).toString())
+                .commit();
+        this.database = DatabaseBackend.getInstance(context);
+        // the database backend is a singleton and may outlive a single test
+        database.getWritableDatabase().delete(Account.TABLENAME, null, null);
+        this.account = new Account(Jid.of("juliet@example.com"), PASSWORD);
+        database.createAccount(account);
+        this.conversation =
+                new Conversation(
+                        "romeo@example.com",
+                        account,
+                        Jid.of("romeo@example.com"),
+                        Conversational.MODE_SINGLE);
+        database.createConversation(conversation);
+    }
+
+    private Message message(final String body) {
+        final Message message = new Message(conversation, body, Message.ENCRYPTION_NONE);
+        database.createMessage(message);
+        return message;
+    }
+
+    private void export() {
+        final var worker =
+                TestWorkerBuilder.from(
+                                context,
+                                ExportBackupWorker.class,
+                                MoreExecutors.directExecutor())
+                        .setInputData(
+                                new Data.Builder().putBoolean("recurring_backup", true).build())
+                        .build();
+        assertEquals(ListenableWorker.Result.success(), worker.doWork());
+    }
+
+    private Map<String, String> bodies() {
+        final Map<String, String> bodies = new HashMap<>();
+        try (final Cursor cursor =
+                database.getReadableDatabase()
+                        .query(
+                                Message.TABLENAME,
+                                new String[] {Message.UUID, Message.BODY},
+                                null,
+                                null,
+                                null,
+                                null,
+                                null)) {
+            while (cursor.moveToNext()) {
+                bodies.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return bodies;
+    }
+
+    @Test
+    public void baseAndDeltasRestoreEditsAndDeletions() {
+        final Message edited = message("wherefore art thou");
+        final Message deleted = message("deny thy father");
+        final Message kept = message("refuse thy name");
+        export();
+
+        edited.setBody("wherefore art thou, romeo");
+        database.updateMessage(edited, true);
+        database.getWritableDatabase()
+                .delete(Message.TABLENAME, Message.UUID + "=?", new String[] {deleted.getUuid()});
+        // what the service does on start and when expiring old messages
+        database.pruneMessageChanges();
+        export();
+
+        final Message added = message("or be but sworn my love");
+        export();
+
+        final BackupChain chain = database.findBackupChain(account.getUuid());
+        assertNotNull(chain);
+        final List<Uri> files = chain.getFiles();
+        assertEquals(3, files.size());
+        final Map<String, String> expected = bodies();
+        assertEquals(
+                ImmutableMap.of(
+                        edited.getUuid(), "wherefore art thou, romeo",
+                        kept.getUuid(), "refuse thy name",
+                        added.getUuid(), "or be but sworn my love"),
+                expected);
+
+        database.deleteAccount(account);
+        assertEquals(ImmutableMap.of(), bodies());
+        final var worker =
+                TestWorkerBuilder.from(
+                                context,
+                                ImportBackupWorker.class,
+                                MoreExecutors.directExecutor())
+                        .setInputData(ImportBackupWorker.data(PASSWORD, files, false))
+                        .build();
+        assertEquals(ListenableWorker.Result.success(), worker.doWork());
+        assertEquals(expected, bodies());
+    }
+}
@@ -0,0 +1,53 @@
+package eu.siacs.conversations.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import im.conversations.android.xml.XmlElementReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class StreamSerializerTest {
+
+    private static String serialize(final Element element) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamSerializer serializer = new StreamSerializer(outputStream);
+        serializer.write(element);
+        serializer.flush();
+        assertEquals(outputStream.size(), serializer.getBytesWritten());
+        return outputStream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    @Test
+    public void matchesToString() throws IOException {
+        final Element element =
+                XmlElementReader.read(
+                        """
+                        <message xmlns="jabber:client" to="juliet@example.com" type="chat">\
+                        <body>Tom &amp; Jerry say &lt;3 &quot;hi&quot; &apos;ok&apos; \
+                        über 🤷🏽 ✓</body><active xmlns="http://jabber.org/protocol/chatstates"/>\
+                        </message>""");
+        assertEquals(element.toString(), serialize(element));
+    }
+
+    @Test
+    public void dropsControlCharacters() throws IOException {
+        final Element element = new Element("body");
+        element.setContent("a\u0000b\u0007c\nd\te\u007f");
+        assertEquals("<body>abc\nd\te</body>", serialize(element));
+        assertEquals(element.toString(), serialize(element));
+    }
+
+    @Test
+    public void writesLargeContentAcrossBuffers() throws IOException {
+        final Element element = new Element("data", "urn:xmpp:bob");
+        element.setContent("ä".repeat(10_000) + "<&>");
+        assertEquals(element.toString(), serialize(element));
+    }
+}
@@ -0,0 +1,166 @@
+package eu.siacs.conversations.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import eu.siacs.conversations.Config;
+import im.conversations.android.xmpp.ExtensionFactory;
+import im.conversations.android.xmpp.Extensions;
+import im.conversations.android.xmpp.model.Extension;
+import im.conversations.android.xmpp.model.muc.user.MucUser;
+import im.conversations.android.xmpp.model.occupant.OccupantId;
+import im.conversations.android.xmpp.model.stanza.Message;
+import im.conversations.android.xmpp.model.stanza.Presence;
+import im.conversations.android.xmpp.model.unique.StanzaId;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class XmlReaderTest {
+
+    private static final int ITERATIONS = 200;
+
+    private static final List<ExtensionFactory.Id> CORPUS_IDS =
+            ImmutableList.of(
+                    new ExtensionFactory.Id("presence", Namespace.JABBER_CLIENT),
+                    new ExtensionFactory.Id("x", Namespace.MUC_USER),
+                    new ExtensionFactory.Id("item", Namespace.MUC_USER),
+                    new ExtensionFactory.Id("occupant-id", Namespace.OCCUPANT_ID),
+                    new ExtensionFactory.Id("stanza-id", Namespace.STANZA_IDS));
+
+    private static byte[] corpus() throws IOException {
+        // presence flood and history of joining a busy MUC, captured from a stream and anonymized
+        return Resources.toByteArray(Resources.getResource("muc-join.xml"));
+    }
+
+    private static List<Element> parse(final byte[] corpus) throws IOException {
+        final List<Element> stanzas = new ArrayList<>();
+        try (final XmlReader reader = new XmlReader()) {
+            reader.setInputStream(new ByteArrayInputStream(corpus));
+            final Tag stream = reader.readTag();
+            assertTrue(stream.isStart("stream", Namespace.STREAMS));
+            Tag tag = reader.readTag();
+            while (tag != null && !tag.isEnd("stream")) {
+                if (!tag.isNo()) {
+                    stanzas.add(reader.readElement(tag));
+                }
+                tag = reader.readTag();
+            }
+        }
+        return stanzas;
+    }
+
+    @Test
+    public void corpusIsReadIntoTypedElements() throws IOException {
+        final List<Element> stanzas = parse(corpus());
+        assertEquals(104, stanzas.size());
+        final Presence presence = (Presence) stanzas.get(0);
+        assertNotNull(presence.getExtension(MucUser.class));
+        assertNotNull(presence.getExtension(OccupantId.class));
+        final Message message = (Message) stanzas.get(62);
+        assertEquals("groupchat", message.getAttribute("type"));
+        assertNotNull(message.getExtension(StanzaId.class));
+        // element names and namespaces are shared between stanzas
+        assertSame(stanzas.get(0).getName(), stanzas.get(1).getName());
+        assertSame(
+                presence.getExtension(MucUser.class).getNamespace(),
+                ((Presence) stanzas.get(1)).getExtension(MucUser.class).getNamespace());
+    }
+
+    @Test
+    public void attributesKeepInsertionOrder() {
+        final Attributes attributes = new Attributes();
+        for (int i = 0; i < 10; ++i) {
+            attributes.put("a" + i, Integer.toString(i));
+        }
+        attributes.put("a3", "three");
+        attributes.remove("a0");
+        assertEquals(9, attributes.size());
+        assertEquals("three", attributes.get("a3"));
+        assertNull(attributes.get("a0"));
+        assertEquals("a1", attributes.keySet().iterator().next());
+        final Attributes copy = Attributes.copyOf(attributes);
+        copy.remove("a1");
+        assertEquals(9, attributes.size());
+        assertEquals(attributes.entrySet().size() - 1, copy.size());
+    }
+
+    @Test
+    public void generatedFactoryMatchesReflection() {
+        for (final ExtensionFactory.Id id : CORPUS_IDS) {
+            assertSame(
+                    reflectiveCreate(id).getClass(),
+                    ExtensionFactory.create(id.name, id.namespace).getClass());
+        }
+    }
+
+    @Ignore("benchmark; run manually with -Drobolectric.logging=stdout")
+    @Test
+    public void corpusBenchmark() throws IOException {
+        final byte[] corpus = corpus();
+        // warm up
+        parse(corpus);
+
+        final Stopwatch parsing = Stopwatch.createStarted();
+        int stanzas = 0;
+        for (int i = 0; i < ITERATIONS; ++i) {
+            stanzas += parse(corpus).size();
+        }
+        parsing.stop();
+
+        final int constructions = ITERATIONS * 1_000;
+        final Stopwatch generated = Stopwatch.createStarted();
+        for (int i = 0; i < constructions; ++i) {
+            final var id = CORPUS_IDS.get(i % CORPUS_IDS.size());
+            ExtensionFactory.create(id.name, id.namespace);
+        }
+        generated.stop();
+        final Stopwatch reflective = Stopwatch.createStarted();
+        for (int i = 0; i < constructions; ++i) {
+            reflectiveCreate(CORPUS_IDS.get(i % CORPUS_IDS.size()));
+        }
+        reflective.stop();
+
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        Locale.ROOT,
+                        "parsed %d stanzas (%d bytes x %d) in %dms, %d constructions in µs:"
+                                + " generated=%d reflective=%d",
+                        stanzas,
+                        corpus.length,
+                        ITERATIONS,
+                        parsing.elapsed(TimeUnit.MILLISECONDS),
+                        constructions,
+                        generated.elapsed(TimeUnit.MICROSECONDS),
+                        reflective.elapsed(TimeUnit.MICROSECONDS)));
+    }
+
+    // the lookup ExtensionFactory did before elements got a generated factory
+    private static Element reflectiveCreate(final ExtensionFactory.Id id) {
+        final Class<? extends Extension> clazz =
+                Extensions.EXTENSION_CLASS_MAP.get(id);
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package eu.siacs.conversations.xmpp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Resources;
+import eu.siacs.conversations.Config;
+import eu.siacs.conversations.xml.Namespace;
+import eu.siacs.conversations.xml.Tag;
+import eu.siacs.conversations.xml.XmlReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class JidCacheTest {
+
+    private static final int ITERATIONS = 2_000;
+    private static final int OCCUPANTS = 1_500;
+    private static final int FLOOD_ITERATIONS = 10;
+
+    // the from and to attributes of the recorded MUC join, in stream order
+    private static List<String> addresses() throws IOException {
+        final List<String> addresses = new ArrayList<>();
+        try (final XmlReader reader = new XmlReader()) {
+            reader.setInputStream(
+                    new ByteArrayInputStream(
+                            Resources.toByteArray(Resources.getResource("muc-join.xml"))));
+            final Tag stream = reader.readTag();
+            assertTrue(stream.isStart("stream", Namespace.STREAMS));
+            Tag tag = reader.readTag();
+            while (tag != null && !tag.isEnd("stream")) {
+                if (!tag.isNo()) {
+                    final var stanza = reader.readElement(tag);
+                    for (final String attribute : new String[] {"from", "to"}) {
+                        final String address = stanza.getAttribute(attribute);
+                        if (address != null) {
+                            addresses.add(address);
+                        }
+                    }
+                }
+                tag = reader.readTag();
+            }
+        }
+        return addresses;
+    }
+
+    // a busy room with more occupants than jxmpp caches; every presence is routed to our resource
+    private static List<String> occupantFlood() {
+        final List<String> addresses = new ArrayList<>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 20_000; ++i) {
+            addresses.add("verona@conference.example.com/occupant-" + random.nextInt(OCCUPANTS));
+            addresses.add("juliet@example.com/balcony");
+        }
+        return addresses;
+    }
+
+    @Test
+    public void equalJidsAreSameInstance() {
+        final Jid occupant = Jid.of("verona@conference.example.com/romeo");
+        assertSame(occupant, Jid.of("verona@conference.example.com/romeo"));
+        // stringprep maps both spellings to the same canonical jid
+        assertSame(Jid.of("juliet@example.com/balcony"), Jid.of("Juliet@Example.com/balcony"));
+        assertSame(Jid.of("verona@conference.example.com"), occupant.asBareJid());
+        assertSame(
+                occupant.asBareJid(), Jid.of("verona@conference.example.com/juliet").asBareJid());
+        assertSame(Jid.of("conference.example.com"), occupant.getDomain());
+        final Jid bare = occupant.asBareJid();
+        assertSame(bare, bare.asBareJid());
+        assertNotSame(occupant, bare);
+    }
+
+    @Test
+    public void resourcesAreNotFolded() {
+        assertEquals("Balcony", Jid.of("juliet@example.com/Balcony").getResource());
+        assertEquals("balcony", Jid.of("juliet@example.com/balcony").getResource());
+    }
+
+    @Test
+    public void presenceFloodHitsTheInternCache() throws IOException, XmppStringprepException {
+        final List<String> addresses = addresses();
+        final long hitsBefore = Jid.getInternStats().hitCount();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            for (final String address : addresses) {
+                Jid.ofOrInvalid(address).asBareJid();
+            }
+        }
+        final long lookups = (long) ITERATIONS * addresses.size();
+        final long hits = Jid.getInternStats().hitCount() - hitsBefore;
+        assertTrue(hits >= lookups - addresses.size());
+
+        // what Jid.of() and asBareJid() did before: a fresh wrapper around jxmpp on every call
+        for (final String address : addresses) {
+            assertEquals(
+                    JidCreate.from(address).asBareJid().toString(),
+                    Jid.ofOrInvalid(address).asBareJid().toString());
+        }
+    }
+
+    @Ignore("benchmark; run manually with -Drobolectric.logging=stdout")
+    @Test
+    public void presenceFloodBenchmark() throws IOException, XmppStringprepException {
+        final List<String> recorded = addresses();
+        final List<String> flood = occupantFlood();
+        // warm up
+        interned(recorded, ITERATIONS);
+        uncached(recorded, ITERATIONS);
+
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        Locale.ROOT,
+                        "bare jids in ms: recorded join (%d x %d) interned=%d jxmpp=%d, occupant"
+                                + " flood (%d x %d) interned=%d jxmpp=%d",
+                        recorded.size(),
+                        ITERATIONS,
+                        interned(recorded, ITERATIONS),
+                        uncached(recorded, ITERATIONS),
+                        flood.size(),
+                        FLOOD_ITERATIONS,
+                        interned(flood, FLOOD_ITERATIONS),
+                        uncached(flood, FLOOD_ITERATIONS)));
+    }
+
+    private static long interned(final List<String> addresses, final int iterations) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        for (int i = 0; i < iterations; ++i) {
+            for (final String address : addresses) {
+                Jid.ofOrInvalid(address).asBareJid().hashCode();
+            }
+        }
+        return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    }
+
+    // what Jid.of() and asBareJid() did before: a fresh wrapper around jxmpp on every call
+    private static long uncached(final List<String> addresses, final int iterations)
+            throws XmppStringprepException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        for (int i = 0; i < iterations; ++i) {
+            for (final String address : addresses) {
+                JidCreate.from(address).asBareJid().toString().hashCode();
+            }
+        }
+        return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,70 @@
+package eu.siacs.conversations.xmpp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class StanzaPipelineTest {
+
+    @Test
+    public void tasksRunInOrder() throws InterruptedException {
+        final StanzaPipeline pipeline = new StanzaPipeline();
+        final List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 1_000; ++i) {
+            final int stanza = i;
+            pipeline.execute(() -> applied.add(stanza), 0);
+        }
+        pipeline.execute(done::countDown, 0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1_000; ++i) {
+            assertEquals(i, (int) applied.get(i));
+        }
+        assertEquals(1_001, pipeline.getStanzas());
+    }
+
+    @Test
+    public void readerBlocksWhenFull() throws InterruptedException {
+        final StanzaPipeline pipeline = new StanzaPipeline();
+        final CountDownLatch slowDatabase = new CountDownLatch(1);
+        pipeline.execute(
+                () -> {
+                    try {
+                        slowDatabase.await();
+                    } catch (final InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                },
+                0);
+        for (int i = 1; i < StanzaPipeline.CAPACITY; ++i) {
+            pipeline.execute(() -> {}, 0);
+        }
+        assertEquals(StanzaPipeline.CAPACITY, pipeline.getDepth());
+
+        final CountDownLatch enqueued = new CountDownLatch(1);
+        final Thread reader =
+                new Thread(
+                        () -> {
+                            pipeline.execute(() -> {}, 0);
+                            enqueued.countDown();
+                        });
+        reader.start();
+        assertFalse(enqueued.await(200, TimeUnit.MILLISECONDS));
+
+        slowDatabase.countDown();
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+        assertEquals(StanzaPipeline.CAPACITY, pipeline.getMaxDepth());
+    }
+}
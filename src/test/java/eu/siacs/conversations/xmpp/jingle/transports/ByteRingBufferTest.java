@@ -0,0 +1,222 @@
+package eu.siacs.conversations.xmpp.jingle.transports;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+import com.google.common.hash.Hashing;
+import eu.siacs.conversations.Config;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class ByteRingBufferTest {
+
+    private static final int BENCHMARK_SIZE = 64 * 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void nonBlockingWrapsAround() throws IOException {
+        final var ringBuffer = new ByteRingBuffer(10);
+        assertEquals(16, ringBuffer.capacity());
+        final byte[] destination = new byte[16];
+        assertEquals(0, ringBuffer.poll(destination, 0, destination.length));
+        assertEquals(12, ringBuffer.offer(ByteBuffer.wrap(new byte[12])));
+        assertEquals(8, ringBuffer.poll(destination, 0, 8));
+        final byte[] source = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        // only 12 of 16 bytes are free; 4 are still left behind at the end of the buffer
+        final var remaining = ByteBuffer.wrap(source);
+        assertEquals(12, ringBuffer.offer(remaining));
+        assertEquals(0, ringBuffer.offer(ByteBuffer.wrap(source)));
+        assertEquals(16, ringBuffer.poll(destination, 0, destination.length));
+        final byte[] expected = new byte[16];
+        System.arraycopy(source, 0, expected, 4, 12);
+        assertArrayEquals(expected, destination);
+    }
+
+    @Test
+    public void readerSeesEofAfterDraining() throws IOException {
+        final var ringBuffer = new ByteRingBuffer(16);
+        ringBuffer.write(new byte[] {1, 2, 3}, 0, 3);
+        ringBuffer.getOutputStream().close();
+        final InputStream inputStream = ringBuffer.getInputStream();
+        assertEquals(3, inputStream.read(new byte[8]));
+        assertEquals(-1, inputStream.read(new byte[8]));
+        assertEquals(-1, inputStream.read());
+        assertThrows(IOException.class, () -> ringBuffer.write(new byte[1], 0, 1));
+    }
+
+    @Test
+    public void closingTheReaderWakesUpTheWriter() throws Exception {
+        final var ringBuffer = new ByteRingBuffer(16);
+        final Future<?> writer =
+                executor.submit(
+                        () -> {
+                            ringBuffer.write(new byte[64], 0, 64);
+                            return null;
+                        });
+        while (ringBuffer.available() < 16) {
+            Thread.sleep(1);
+        }
+        ringBuffer.getInputStream().close();
+        final var exception =
+                assertThrows(Exception.class, () -> writer.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void blockedReaderCanBeInterrupted() throws Exception {
+        final var ringBuffer = new ByteRingBuffer(16);
+        final var reader = executor.submit(() -> ringBuffer.read(new byte[8], 0, 8));
+        Thread.sleep(50);
+        reader.cancel(true);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        final var next = new ByteRingBuffer(16);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedIOException.class, () -> next.read(new byte[8], 0, 8));
+    }
+
+    @Test
+    public void transfersEverythingInOrder() throws Exception {
+        final var ringBuffer = new ByteRingBuffer(1000);
+        final byte[] data = new byte[1024 * 1024];
+        new Random(42).nextBytes(data);
+        final var result =
+                executor.submit(
+                        () -> {
+                            // reads with odd sizes so that reads and writes never line up
+                            return Hashing.sha256()
+                                    .hashBytes(drain(ringBuffer.getInputStream(), 777))
+                                    .toString();
+                        });
+        final OutputStream outputStream = ringBuffer.getOutputStream();
+        for (int offset = 0; offset < data.length; offset += 1500) {
+            outputStream.write(data, offset, Math.min(1500, data.length - offset));
+        }
+        outputStream.close();
+        assertEquals(
+                Hashing.sha256().hashBytes(data).toString(), result.get(10, TimeUnit.SECONDS));
+    }
+
+    private static byte[] drain(final InputStream inputStream, final int readSize)
+            throws IOException {
+        final var out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[readSize];
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Pushes data through a channel the way the transports do and returns MiB/s. The file
+     * transmitter writes 4 KiB at a time; the other side reads in chunks of {@code readSize}.
+     */
+    private double throughput(
+            final OutputStream outputStream, final InputStream inputStream, final int readSize)
+            throws Exception {
+        final Future<Long> reader =
+                executor.submit(
+                        () -> {
+                            final byte[] buffer = new byte[readSize];
+                            long total = 0;
+                            int count;
+                            while ((count = inputStream.read(buffer)) >= 0) {
+                                total += count;
+                            }
+                            return total;
+                        });
+        final byte[] chunk = new byte[4096];
+        final long start = System.nanoTime();
+        for (int written = 0; written < BENCHMARK_SIZE; written += chunk.length) {
+            outputStream.write(chunk);
+        }
+        outputStream.close();
+        assertEquals(BENCHMARK_SIZE, (long) reader.get(60, TimeUnit.SECONDS));
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        return BENCHMARK_SIZE / seconds / (1024 * 1024);
+    }
+
+    private double pipe(final int bufferSize, final int readSize) throws Exception {
+        final var inputStream = new PipedInputStream(bufferSize);
+        final var outputStream = new PipedOutputStream(inputStream);
+        return throughput(outputStream, inputStream, readSize);
+    }
+
+    private double ringBuffer(final int bufferSize, final int readSize) throws Exception {
+        final var ringBuffer = new ByteRingBuffer(bufferSize);
+        return throughput(ringBuffer.getOutputStream(), ringBuffer.getInputStream(), readSize);
+    }
+
+    private double socks5() throws Exception {
+        try (final ServerSocket serverSocket =
+                new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Future<Socket> accepted = executor.submit(serverSocket::accept);
+            final int port = serverSocket.getLocalPort();
+            try (final Socket client = new Socket(InetAddress.getLoopbackAddress(), port);
+                    final Socket server = accepted.get(5, TimeUnit.SECONDS)) {
+                return throughput(client.getOutputStream(), server.getInputStream(), 4096);
+            }
+        }
+    }
+
+    @Ignore("benchmark; run manually with -Drobolectric.logging=stdout")
+    @Test
+    public void loopbackThroughput() throws Exception {
+        // warm up
+        ringBuffer(65_536, 8192);
+        pipe(8192, 8192);
+
+        // in-band bytestreams: the block sender reads up to the 8 KiB block size
+        final double ibbPipe = pipe(8192, 8192);
+        final double ibbRingBuffer = ringBuffer(65_536, 8192);
+        // data channel: the writer reads 16 KiB messages
+        final double dataChannelPipe = pipe(16_384, 4096);
+        final double dataChannelRingBuffer = ringBuffer(65_536, 16_384);
+        // SOCKS5 hands out the socket streams; for reference
+        final double socks5 = socks5();
+        Log.d(
+                Config.LOGTAG,
+                String.format(
+                        Locale.ROOT,
+                        "loopback throughput in MiB/s: ibb pipe=%.0f ring=%.0f, data channel"
+                                + " pipe=%.0f ring=%.0f, socks5 socket=%.0f",
+                        ibbPipe,
+                        ibbRingBuffer,
+                        dataChannelPipe,
+                        dataChannelRingBuffer,
+                        socks5));
+    }
+}
@@ -0,0 +1,89 @@
+package eu.siacs.conversations.xmpp.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import eu.siacs.conversations.entities.Account;
+import eu.siacs.conversations.entities.Contact;
+import eu.siacs.conversations.persistance.DatabaseBackend;
+import eu.siacs.conversations.xmpp.Jid;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.ConscryptMode;
+
+@RunWith(RobolectricTestRunner.class)
+@ConscryptMode(ConscryptMode.Mode.OFF)
+public class RosterWriteTest {
+
+    private static final int ROSTER_SIZE = 2_000;
+
+    private DatabaseBackend database;
+    private Account account;
+    private final List<Contact> roster = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        this.database = DatabaseBackend.getInstance(RuntimeEnvironment.getApplication());
+        this.account = new Account(Jid.of("juliet@example.com"), "secret");
+        this.database.createAccount(account);
+        for (int i = 0; i < ROSTER_SIZE; ++i) {
+            final var contact = new Contact(Jid.of("contact" + i + "@example.com"));
+            contact.setAccount(account);
+            contact.setOption(Contact.Options.IN_ROSTER);
+            contact.setOption(Contact.Options.TO);
+            roster.add(contact);
+        }
+    }
+
+    private int write(final String version) {
+        return database.writeRoster(account, version, RosterManager.takeDirty(roster));
+    }
+
+    @Test
+    public void onlyChangedContactsAreWritten() {
+        assertEquals(ROSTER_SIZE, write("1"));
+        assertEquals(0, write("1"));
+
+        // a nick from presence
+        roster.get(7).setPresenceName("Nurse");
+        assertEquals(1, write("1"));
+
+        // setting what is already there is not a change
+        roster.get(7).setPresenceName("Nurse");
+        roster.get(8).setOption(Contact.Options.IN_ROSTER);
+        assertEquals(0, write("1"));
+
+        // a roster push that adds a subscription and a push that removes a contact
+        roster.get(9).setOption(Contact.Options.FROM);
+        roster.get(10).resetOption(Contact.Options.IN_ROSTER);
+        assertEquals(2, write("2"));
+
+        final var stored = database.readRoster(account);
+        assertEquals(ROSTER_SIZE - 1, stored.size());
+        assertFalse(stored.containsKey(roster.get(10).getAddress()));
+        assertTrue(stored.get(roster.get(9).getAddress()).getOption(Contact.Options.FROM));
+        assertTrue(stored.get(roster.get(7).getAddress()).hasAvatarOrPresenceName());
+        assertEquals("2", account.getRosterVersion());
+    }
+
+    @Test
+    public void changeWhileWritingIsKeptForNextWrite() {
+        write("1");
+        final var contact = roster.get(3);
+        contact.setAvatar("avatar-1");
+        final var dirty = RosterManager.takeDirty(roster);
+        // the avatar changes again after the writer picked the contact up
+        contact.setAvatar("avatar-2");
+        assertEquals(1, database.writeRoster(account, "1", dirty));
+        assertTrue(contact.isDirty());
+        assertEquals(1, write("1"));
+        assertEquals(
+                "avatar-2", database.readRoster(account).get(contact.getAddress()).getAvatar());
+    }
+}